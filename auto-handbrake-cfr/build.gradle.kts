@@ -3,6 +3,7 @@ import org.unbrokendome.gradle.plugins.testsets.dsl.testSets
 
 plugins {
   id("org.unbroken-dome.test-sets") version "4.1.0"
+  id("me.champeau.jmh") version "0.7.2"
   id("com.google.cloud.tools.jib") version "3.4.0"
   id("org.ajoberstar.grgit") version "5.2.0"
 }
@@ -24,7 +24,8 @@ import org.junit.jupiter.params.provider.ArgumentsProvider;
 /**
  * Various scenarios testing {@link App} as a black box.
  *
- * <p>Requires HandBrakeCLI to be installed.
+ * <p>Requires HandBrakeCLI to be installed. (ffmpeg is stubbed if it isn't, see {@link
+ * FfmpegEngineTest}.)
  *
  * <p>May require re-encoding the encoded files in resources directory.
  *
@@ -56,10 +57,25 @@ abstract class BaseIntegrationTest {
 
   protected static boolean runApp(Path inputDirectory, Path outputDirectory, Path archiveDirectory)
       throws Exception {
+    return runApp(inputDirectory, outputDirectory, archiveDirectory, Config.defaults());
+  }
+
+  protected static boolean runApp(
+      Path inputDirectory, Path outputDirectory, Path archiveDirectory, Config config)
+      throws Exception {
+    FileTransfer fileTransfer = new FileTransfer(config);
     app =
         new App(
             new DirectoryScanner(inputDirectory, outputDirectory, archiveDirectory),
-            new JobQueue(new VideoEncoder(HandBrake.newInstance()), new VideoArchiver()));
+            new JobQueue(
+                new VideoEncoder(
+                    HandBrake.newInstance(),
+                    HandBrake.newFfmpegInstance(config.ffmpegPath(), config::watchdogLimits),
+                    InputStager.disabled(config, fileTransfer),
+                    OutputPublisher.disabled(fileTransfer),
+                    config),
+                new VideoArchiver(fileTransfer, config),
+                new DiskSpaceGuard(config)));
     return app.run();
   }
 
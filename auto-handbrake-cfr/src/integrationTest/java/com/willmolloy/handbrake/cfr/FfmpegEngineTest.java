@@ -0,0 +1,64 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.Resources;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+/**
+ * Encoding with the ffmpeg engine (i.e. {@code encode.engine=ffmpeg}).
+ *
+ * <p>ffmpeg's output differs from HandBrake's, so only its existence is compared. If ffmpeg isn't
+ * installed, a stub stands in for it (reporting progress as ffmpeg does, and copying the input).
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class FfmpegEngineTest extends BaseIntegrationTest {
+
+  @ParameterizedTest
+  @ArgumentsSource(EncodeAndArchiveToDifferentDirectory.class)
+  void canEncodeASingleVideoWithFfmpeg(
+      Path inputDirectory, Path outputDirectory, Path archiveDirectory) throws Exception {
+    // Given
+    // video to encode
+    createVideoAt(inputDirectory.resolve("my video.mp4"), unencodedVideo1);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.engine", "ffmpeg");
+    properties.setProperty("ffmpeg.path", ffmpegPath());
+    Config config = Config.of(properties);
+
+    // When
+    boolean result = runApp(inputDirectory, outputDirectory, archiveDirectory, config);
+
+    // Then
+    assertThat(result).isTrue();
+    // encoding
+    Path encodedVideo = outputDirectory.resolve("my video.cfr.mp4");
+    assertThat(Files.isRegularFile(encodedVideo)).isTrue();
+    assertThat(Files.size(encodedVideo)).isGreaterThan(0);
+    // archive
+    assertThatTestDirectory()
+        .contains(pathAndContents(archiveDirectory.resolve("my video.mp4"), unencodedVideo1));
+  }
+
+  private static String ffmpegPath() throws Exception {
+    boolean installed =
+        Splitter.on(File.pathSeparatorChar)
+            .splitToStream(System.getenv().getOrDefault("PATH", ""))
+            .anyMatch(directory -> Files.isExecutable(Path.of(directory, "ffmpeg")));
+    if (installed) {
+      return "ffmpeg";
+    }
+    Path stub = Path.of(Resources.getResource("ffmpeg-stub.sh").toURI());
+    // (the executable bit isn't always kept when resources are copied)
+    assertThat(stub.toFile().setExecutable(true)).isTrue();
+    return stub.toAbsolutePath().toString();
+  }
+}
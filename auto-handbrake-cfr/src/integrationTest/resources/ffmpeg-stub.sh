@@ -0,0 +1,45 @@
+#!/bin/sh
+# Stands in for ffmpeg, when it isn't installed (see FfmpegEngineTest).
+#
+# Describes the input and reports -progress pipe:1 blocks as ffmpeg does, then "encodes" by copying
+# the input to the output (the last arg, unless it's "-", e.g. when scanning to a null output).
+
+input=
+output=
+while [ $# -gt 0 ]; do
+  if [ "$1" = "-i" ]; then
+    shift
+    input=$1
+  fi
+  output=$1
+  shift
+done
+
+if [ ! -f "$input" ]; then
+  echo "$input: No such file or directory"
+  exit 1
+fi
+
+echo "Input #0, mov,mp4,m4a,3gp,3g2,mj2, from '$input':"
+echo "  Duration: 00:00:10.00, start: 0.000000, bitrate: 816 kb/s"
+echo "  Stream #0:0[0x1](und): Video: h264 (High) (avc1 / 0x31637661), yuv420p(progressive)," \
+  "640x360 [SAR 1:1 DAR 16:9], 683 kb/s, 30 fps, 30 tbr, 15360 tbn (default)"
+echo "  Stream #0:1[0x2](und): Audio: aac (LC) (mp4a / 0x6134706D), 48000 Hz, stereo, fltp," \
+  "128 kb/s (default)"
+
+if [ "$output" = "-" ]; then
+  exit 0
+fi
+
+cp "$input" "$output" || exit 1
+for out_time_us in 5000000 10000000; do
+  echo "frame=$((out_time_us * 30 / 1000000))"
+  echo "fps=300.00"
+  echo "out_time_us=$out_time_us"
+  echo "speed=10.0x"
+  if [ "$out_time_us" = 10000000 ]; then
+    echo "progress=end"
+  else
+    echo "progress=continue"
+  fi
+done
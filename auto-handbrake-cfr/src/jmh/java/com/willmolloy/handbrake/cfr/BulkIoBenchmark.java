@@ -0,0 +1,192 @@
+package com.willmolloy.handbrake.cfr;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.willmolloy.handbrake.cfr.util.Files2;
+import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.FrameRateControl;
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Preset;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks bulk I/O (archive copies and file comparisons) with and without direct I/O.
+ *
+ * <p>Besides the time taken, logs how much the page cache grew (read from /proc/meminfo, so Linux
+ * only) during each iteration.
+ *
+ * <p>{@link #encodeWhileArchiving} requires HandBrakeCLI to be installed. It measures the time
+ * taken to encode the test video (lower time = higher fps), while the archive copy runs in the
+ * background.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+public class BulkIoBenchmark {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final Path TEST_VIDEO =
+      Path.of("src/test/resources/Big_Buck_Bunny_360_10s_1MB.mp4");
+
+  @Param({"false", "true"})
+  public boolean direct;
+
+  @Param({"2147483648"})
+  public long fileSize;
+
+  private Path directory;
+  private Path source;
+  private Path target;
+  private FileTransfer fileTransfer;
+  private long pageCacheBefore;
+
+  /** Creates the (large) file to archive. */
+  @Setup(Level.Trial)
+  public void setUpTrial() throws IOException {
+    directory = Files.createTempDirectory(Path.of("build"), "BulkIoBenchmark");
+    source = directory.resolve("source.mp4");
+    target = directory.resolve("target.mp4");
+
+    byte[] chunk = new byte[1024 * 1024];
+    Random random = new Random(0);
+    try (OutputStream out = Files.newOutputStream(source)) {
+      for (long written = 0; written < fileSize; written += chunk.length) {
+        random.nextBytes(chunk);
+        out.write(chunk);
+      }
+    }
+    Files.copy(source, target);
+
+    Properties properties = new Properties();
+    properties.setProperty("archive.direct", String.valueOf(direct));
+    fileTransfer = new FileTransfer(Config.of(properties));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() throws IOException {
+    MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() throws IOException {
+    pageCacheBefore = pageCacheKb();
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() throws IOException {
+    long growthMb = (pageCacheKb() - pageCacheBefore) / 1024;
+    log.info("direct={}, page cache growth: {} MB", direct, growthMb);
+  }
+
+  /** Archive copy. */
+  @Benchmark
+  public void copy() throws IOException {
+    copy("copy.mp4");
+  }
+
+  private void copy(String name) throws IOException {
+    Path copy = directory.resolve(name);
+    fileTransfer.copy(source, directory.resolve(name + ".part"), copy);
+    Files.delete(copy);
+  }
+
+  /** Archive verification. */
+  @Benchmark
+  public long mismatch() throws IOException {
+    return direct ? Files2.mismatch(source, target) : Files.mismatch(source, target);
+  }
+
+  /** Encode verification. (Always prefers direct I/O.) */
+  @Benchmark
+  public boolean contentsSimilar() {
+    return Files2.contentsSimilar(source, target);
+  }
+
+  /** Encoding while archiving. */
+  @Benchmark
+  public boolean encodeWhileArchiving(BackgroundArchive backgroundArchive) {
+    return HandBrake.newInstance()
+        .encode(
+            Input.of(TEST_VIDEO),
+            Output.of(directory.resolve("encoded.cfr.mp4")),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant());
+  }
+
+  /** Archives in a loop, in the background, for the duration of each invocation. */
+  @State(Scope.Benchmark)
+  @SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+  public static class BackgroundArchive {
+    private Thread thread;
+
+    @Setup(Level.Invocation)
+    public void start(BulkIoBenchmark benchmark) {
+      thread =
+          Thread.ofVirtual()
+              .start(
+                  () -> {
+                    try {
+                      while (!Thread.currentThread().isInterrupted()) {
+                        benchmark.copy("background.mp4");
+                      }
+                    } catch (IOException e) {
+                      // interrupted mid copy
+                      log.debug("Background archive stopped", e);
+                    }
+                  });
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() throws InterruptedException {
+      thread.interrupt();
+      thread.join();
+    }
+  }
+
+  private static long pageCacheKb() throws IOException {
+    Path memInfo = Path.of("/proc/meminfo");
+    if (!Files.exists(memInfo)) {
+      return 0;
+    }
+    List<String> lines = Files.readAllLines(memInfo);
+    return lines.stream()
+        .filter(line -> line.startsWith("Cached:"))
+        .map(line -> line.replaceAll("\\D", ""))
+        .mapToLong(Long::parseLong)
+        .findFirst()
+        .orElse(0);
+  }
+}
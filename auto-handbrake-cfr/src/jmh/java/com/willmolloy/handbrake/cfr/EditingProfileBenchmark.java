@@ -0,0 +1,129 @@
+package com.willmolloy.handbrake.cfr;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.willmolloy.handbrake.core.HandBrake;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the encode profiles (see {@link Config#encodeProfile}) on the test videos.
+ *
+ * <p>Besides the time taken to encode, records the size of the output, i.e. the cost of the editing
+ * profile (its faster seeking and scrubbing is in the editing software, so isn't measured here).
+ * Each iteration appends a row to {@code build/results/jmh/EditingProfileBenchmark.csv} (video,
+ * profile, encode time, output size), to compare the profiles side by side.
+ *
+ * <p>Requires HandBrakeCLI to be installed. Run with {@code ./gradlew :auto-handbrake-cfr:jmh}.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+public class EditingProfileBenchmark {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final Path RESULTS = Path.of("build/results/jmh/EditingProfileBenchmark.csv");
+
+  @Param({"Big_Buck_Bunny_360_10s_1MB.mp4", "Big_Buck_Bunny_360_10s_2MB.mp4"})
+  public String video;
+
+  @Param({"standard", "editing"})
+  public String profile;
+
+  private Path directory;
+  private UnencodedVideo unencodedVideo;
+  private VideoEncoder videoEncoder;
+  private OutputPublisher outputPublisher;
+  private Stopwatch stopwatch;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws IOException {
+    directory = Files.createTempDirectory(Path.of("build"), "EditingProfileBenchmark");
+    Path inputDirectory = Files.createDirectories(directory.resolve("input"));
+    Path outputDirectory = Files.createDirectories(directory.resolve("output"));
+    Path archiveDirectory = Files.createDirectories(directory.resolve("archive"));
+    Path input = Files.copy(Path.of("src/test/resources", video), inputDirectory.resolve(video));
+    unencodedVideo =
+        new UnencodedVideo.Factory(inputDirectory, outputDirectory, archiveDirectory)
+            .newUnencodedVideo(input);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.profile", profile);
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    outputPublisher = OutputPublisher.disabled(fileTransfer);
+    videoEncoder =
+        new VideoEncoder(
+            HandBrake.newInstance(),
+            HandBrake.newFfmpegInstance(config.ffmpegPath(), config::watchdogLimits),
+            InputStager.disabled(config, fileTransfer),
+            outputPublisher,
+            config);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() throws IOException {
+    MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() throws IOException {
+    long inputSize = Files.size(unencodedVideo.originalPath());
+    long outputSize = Files.size(outputPublisher.tempEncodedPath(unencodedVideo));
+    long encodeMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    log.info(
+        "profile={}, video={}, encode time: {} ms, output size: {} bytes ({}% of input)",
+        profile,
+        video,
+        encodeMillis,
+        outputSize,
+        outputSize * 100 / inputSize);
+
+    Files.createDirectories(RESULTS.getParent());
+    if (!Files.exists(RESULTS)) {
+      Files.writeString(RESULTS, "video,profile,encode millis,output bytes,input bytes\n");
+    }
+    Files.writeString(
+        RESULTS,
+        "%s,%s,%d,%d,%d%n".formatted(video, profile, encodeMillis, outputSize, inputSize),
+        StandardOpenOption.APPEND);
+  }
+
+  /** Encode. */
+  @Benchmark
+  public boolean encode() {
+    videoEncoder.acquire();
+    stopwatch = Stopwatch.createStarted();
+    boolean encoded = videoEncoder.encode(unencodedVideo);
+    stopwatch.stop();
+    return encoded;
+  }
+}
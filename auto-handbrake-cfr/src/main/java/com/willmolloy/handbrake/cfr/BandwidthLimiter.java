@@ -0,0 +1,61 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Limits bandwidth of bulk I/O. Share a single instance between all I/O which should count towards
+ * the limit.
+ *
+ * <p>Token bucket ({@link RateLimiter}), which can store up to 1 second of unused bandwidth. So a
+ * single transfer can use the entire limit when no others are running. The limit is re-read on
+ * every call, so it can be adjusted while running.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class BandwidthLimiter {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private final LongSupplier bytesPerSecond;
+
+  private final RateLimiter rateLimiter = RateLimiter.create(Double.MAX_VALUE);
+  private long currentBytesPerSecond;
+
+  /**
+   * Constructor.
+   *
+   * @param bytesPerSecond supplies the current limit, {@code 0} if unlimited
+   */
+  BandwidthLimiter(LongSupplier bytesPerSecond) {
+    this.bytesPerSecond = checkNotNull(bytesPerSecond);
+  }
+
+  /**
+   * Acquires the given number of bytes, blocking until they're available.
+   *
+   * @param bytes number of bytes about to be read/written
+   */
+  void acquire(int bytes) {
+    if (bytes > 0 && updateRate()) {
+      rateLimiter.acquire(bytes);
+    }
+  }
+
+  /** Updates the rate, returning {@code true} if limited. */
+  private synchronized boolean updateRate() {
+    long limit = bytesPerSecond.getAsLong();
+    if (limit != currentBytesPerSecond) {
+      log.info("Bandwidth limit: {}", limit > 0 ? limit + " bytes/s" : "unlimited");
+      if (limit > 0) {
+        rateLimiter.setRate(limit);
+      }
+      currentBytesPerSecond = limit;
+    }
+    return limit > 0;
+  }
+}
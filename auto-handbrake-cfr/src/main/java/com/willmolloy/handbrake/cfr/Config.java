@@ -0,0 +1,622 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.willmolloy.handbrake.core.WatchdogLimits;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * App configuration.
+ *
+ * <p>Read from an optional properties file (path given by the {@value #FILE_ENV_VAR} environment
+ * variable). Every setting has a default, so the file only needs to contain overrides. The file is
+ * reloaded when it changes, so settings can be adjusted without restarting. Every setting is
+ * validated before the reloaded file is used, if any is invalid the previous settings are kept.
+ *
+ * <p>The file can name a tuning profile, {@code tuning.profile} (e.g. as written by {@link
+ * HostCalibrator}, relative to the file). Its settings are defaults, the file's own override them.
+ *
+ * <p>Settings marked "per directory" can be overridden for a given directory (and its children) by
+ * appending the directory to the key, e.g. {@code archive.streams./mnt/nas=8}.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+final class Config {
+
+  private static final Logger log = LogManager.getLogger();
+
+  static final String FILE_ENV_VAR = "AUTO_HANDBRAKE_CONFIG";
+
+  private static final long RELOAD_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  @Nullable private final Path file;
+  private volatile Properties properties;
+  @Nullable private volatile FileTime lastModifiedTime;
+  private volatile long nextReloadNanos;
+
+  private Config(@Nullable Path file, Properties properties) {
+    this.file = file;
+    this.properties = checkNotNull(properties);
+  }
+
+  static Config defaults() {
+    return new Config(null, new Properties());
+  }
+
+  static Config of(Properties properties) {
+    Properties copy = new Properties();
+    copy.putAll(properties);
+    return new Config(null, copy);
+  }
+
+  /**
+   * Loads the given properties file.
+   *
+   * @param file properties file
+   * @return config, reloaded when the file changes
+   * @throws IOException if reading the file failed
+   * @throws IllegalArgumentException if a setting is invalid
+   */
+  static Config load(Path file) throws IOException {
+    Config config = new Config(file, new Properties());
+    config.lastModifiedTime = Files.getLastModifiedTime(file);
+    config.properties = validate(read(file));
+    config.nextReloadNanos = System.nanoTime() + RELOAD_INTERVAL_NANOS;
+    return config;
+  }
+
+  /**
+   * Number of concurrent transfer streams to use when archiving to the given path. Per directory.
+   *
+   * <p>Large files are split into this many byte ranges and several files are archived in
+   * parallel, up to this many streams in total. Default: 1.
+   */
+  int archiveStreams(Path path) {
+    int streams = perDirectory("archive.streams", path, Integer::parseInt, 1);
+    checkArgument(streams > 0, "archive.streams (%s) must be positive", streams);
+    return streams;
+  }
+
+  /**
+   * Directory whose {@link #archiveStreams} the given path uses, i.e. the longest directory
+   * configured with its own streams which contains it, otherwise the root of the path.
+   */
+  Path archiveStreamsDirectory(Path path) {
+    String prefix = "archive.streams.";
+    String name = perDirectoryName(properties(), "archive.streams", path);
+    return name == null
+        ? checkNotNull(path.toAbsolutePath().getRoot())
+        : path.getFileSystem().getPath(name.substring(prefix.length())).toAbsolutePath();
+  }
+
+  /**
+   * Whether to copy to the given path with direct I/O (bypassing the page cache), where the file
+   * systems allow it. Per directory.
+   *
+   * <p>Otherwise, the OS copies the file without going through user space, but through the page
+   * cache. (Written pages are flushed regularly, but stay cached until the OS reclaims them.)
+   * Default: false.
+   */
+  boolean archiveDirect(Path path) {
+    return perDirectory("archive.direct", path, Boolean::parseBoolean, false);
+  }
+
+  /**
+   * Number of videos to archive concurrently. Their copies share the streams of each archive file
+   * store (see {@link #archiveStreams}). Default: 1.
+   */
+  int archiveConcurrency() {
+    int concurrency =
+        Integer.parseInt(properties().getProperty("archive.concurrency", "1").strip());
+    checkArgument(concurrency > 0, "archive.concurrency (%s) must be positive", concurrency);
+    return concurrency;
+  }
+
+  /**
+   * Number of encoded videos to verify and publish concurrently. (Copies from {@link
+   * #encodeDirectory} are still one at a time.) Default: 1.
+   */
+  int publishConcurrency() {
+    int concurrency =
+        Integer.parseInt(properties().getProperty("publish.concurrency", "1").strip());
+    checkArgument(concurrency > 0, "publish.concurrency (%s) must be positive", concurrency);
+    return concurrency;
+  }
+
+  /**
+   * Local scratch directory to stage (prefetch) inputs in, e.g. if inputs are on a network mount.
+   * Not reloaded. Default: none (staging disabled).
+   */
+  Optional<Path> stageDirectory() {
+    return pathProperty("stage.directory");
+  }
+
+  /** Byte budget of the scratch directory. Default: 10 GB. */
+  long stageBudget() {
+    long budget = Long.parseLong(properties().getProperty("stage.budget", "10000000000").strip());
+    checkArgument(budget > 0, "stage.budget (%s) must be positive", budget);
+    return budget;
+  }
+
+  /** Number of upcoming inputs to stage ahead of time. Default: 2. */
+  int stagePrefetch() {
+    int prefetch = Integer.parseInt(properties().getProperty("stage.prefetch", "2").strip());
+    checkArgument(prefetch >= 0, "stage.prefetch (%s) must not be negative", prefetch);
+    return prefetch;
+  }
+
+  /**
+   * Maximum time to wait for space in the scratch directory (i.e. for staged inputs to be
+   * released), before giving up and encoding from the original. Default: 600 seconds.
+   */
+  Duration stageWait() {
+    long wait = Long.parseLong(properties().getProperty("stage.wait", "600").strip());
+    checkArgument(wait >= 0, "stage.wait (%s) must not be negative", wait);
+    return Duration.ofSeconds(wait);
+  }
+
+  /**
+   * Local scratch directory to encode to, before publishing to the output directory, e.g. if the
+   * output directory is on a slow or network disk. Not reloaded. Default: none (encode directly to
+   * the output directory).
+   */
+  Optional<Path> encodeDirectory() {
+    return pathProperty("encode.directory");
+  }
+
+  /**
+   * Free space (bytes) to keep on each disk written to (output, scratch and archive). Jobs aren't
+   * started until there's room for their estimated output plus this. Default: 1 GB.
+   */
+  long spaceReserve() {
+    long reserve =
+        Long.parseLong(properties().getProperty("space.reserve", "1000000000").strip());
+    checkArgument(reserve >= 0, "space.reserve (%s) must not be negative", reserve);
+    return reserve;
+  }
+
+  /**
+   * Estimated size of encoded videos relative to their source, until actual sizes are known.
+   * Default: 2.
+   */
+  double spaceOutputRatio() {
+    double ratio = Double.parseDouble(properties().getProperty("space.output.ratio", "2").strip());
+    checkArgument(ratio > 0, "space.output.ratio (%s) must be positive", ratio);
+    return ratio;
+  }
+
+  /**
+   * Estimated size of encoded {@link UnencodedVideo#proxy proxies} relative to their source, until
+   * actual sizes are known. Default: 0.25.
+   */
+  double spaceProxyRatio() {
+    double ratio =
+        Double.parseDouble(properties().getProperty("space.proxy.ratio", "0.25").strip());
+    checkArgument(ratio > 0, "space.proxy.ratio (%s) must be positive", ratio);
+    return ratio;
+  }
+
+  /**
+   * Output profile of encodes, {@code encode.profile}: {@code standard}, or {@code editing} for
+   * output which is quicker to seek and scrub in editing software, but larger (see {@link
+   * EncodeProfile}). Default: standard.
+   */
+  EncodeProfile encodeProfile() {
+    String value = properties().getProperty("encode.profile", "standard").strip();
+    return Arrays.stream(EncodeProfile.values())
+        .filter(profile -> profile.name().equalsIgnoreCase(value))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("Invalid encode.profile: " + value));
+  }
+
+  /**
+   * Frame rate of the editing timeline, {@code encode.rate}. Sources with a higher frame rate are
+   * encoded at this rate (rather than encoding frames the editor would drop), sources with a lower
+   * frame rate keep theirs. Default: 0 (always keep the source's).
+   */
+  double encodeRate() {
+    double rate = Double.parseDouble(properties().getProperty("encode.rate", "0").strip());
+    checkArgument(
+        rate == 0 || (rate >= 1 && rate <= 1000),
+        "encode.rate (%s) must be 0 or between 1 and 1000",
+        rate);
+    return rate;
+  }
+
+  /**
+   * Audio of encodes, {@code encode.audio}: {@code preset}, or {@code passthrough} to keep every
+   * audio track unchanged (see {@link AudioMode}). Default: preset.
+   */
+  AudioMode encodeAudio() {
+    String value = properties().getProperty("encode.audio", "preset").strip();
+    return Arrays.stream(AudioMode.values())
+        .filter(mode -> mode.name().equalsIgnoreCase(value))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("Invalid encode.audio: " + value));
+  }
+
+  /**
+   * Engine to encode the given video with, {@code encode.engine}: {@code handbrake}, or {@code
+   * ffmpeg} (see {@link Engine}). Per directory. Default: handbrake.
+   */
+  Engine encodeEngine(Path path) {
+    String value = perDirectory("encode.engine", path, Function.identity(), "handbrake");
+    return Arrays.stream(Engine.values())
+        .filter(engine -> engine.name().equalsIgnoreCase(value))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("Invalid encode.engine: " + value));
+  }
+
+  /** ffmpeg executable, {@code ffmpeg.path}. Not reloaded. Default: ffmpeg (on the path). */
+  String ffmpegPath() {
+    String value = properties().getProperty("ffmpeg.path", "ffmpeg").strip();
+    checkArgument(!value.isEmpty(), "ffmpeg.path must not be empty");
+    return value;
+  }
+
+  /**
+   * Whether to encode proxies first, {@code encode.proxy}: i.e. fast, low resolution proxies of
+   * every video (to start editing with), then the full quality encodings at a lower priority (see
+   * {@link UnencodedVideo#proxy}). Default: false.
+   */
+  boolean encodeProxyFirst() {
+    return Boolean.parseBoolean(properties().getProperty("encode.proxy", "false").strip());
+  }
+
+  /**
+   * Target bitrate (kbit/s) of encodes, {@code speed.bitrate}. If set, the encoder speed is
+   * calibrated per class of source, to the fastest within the target (see {@link
+   * SpeedCalibrator}). Default: 0 (disabled, i.e. the preset's speed).
+   */
+  long speedBitrate() {
+    long bitrate = Long.parseLong(properties().getProperty("speed.bitrate", "0").strip());
+    checkArgument(bitrate >= 0, "speed.bitrate (%s) must not be negative", bitrate);
+    return bitrate;
+  }
+
+  /**
+   * File to cache encoder speed calibrations in, so later runs reuse them. Not reloaded. Default:
+   * none (cached for this run only).
+   */
+  Optional<Path> speedCache() {
+    return pathProperty("speed.cache");
+  }
+
+  /**
+   * File to cache source scans in, so later runs don't rescan unchanged sources (see {@link
+   * ScanCache}). Not reloaded. Default: none (cached for this run only).
+   */
+  Optional<Path> scanCache() {
+    return pathProperty("scan.cache");
+  }
+
+  /**
+   * Scheduling of encodes, i.e. how HandBrake competes with the rest of the host: {@code
+   * encode.nice} niceness adjustment, from -20 to 19 (default: 0), and {@code encode.ionice} I/O
+   * class, one of {@code realtime}, {@code best-effort} or {@code idle} (default: none).
+   */
+  List<Scheduling> encodeScheduling() {
+    Properties properties = properties();
+    List<Scheduling> scheduling = new ArrayList<>();
+
+    int nice = Integer.parseInt(properties.getProperty("encode.nice", "0").strip());
+    checkArgument(nice >= -20 && nice <= 19, "encode.nice (%s) must be between -20 and 19", nice);
+    if (nice != 0) {
+      scheduling.add(Scheduling.nice(nice));
+    }
+
+    String ionice = properties.getProperty("encode.ionice", "").strip();
+    if (!ionice.isEmpty()) {
+      Scheduling.IoClass ioClass =
+          Arrays.stream(Scheduling.IoClass.values())
+              .filter(value -> value.name().replace('_', '-').equalsIgnoreCase(ionice))
+              .findFirst()
+              .orElseThrow(() -> new IllegalArgumentException("Invalid encode.ionice: " + ionice));
+      scheduling.add(Scheduling.ioClass(ioClass));
+    }
+    return scheduling;
+  }
+
+  /**
+   * Number of encoder threads per encode, {@code encode.threads}. Default: 0 (sized to the CPUs the
+   * encode may run on, see {@link #encodeCoreGroups}).
+   */
+  int encodeThreads() {
+    int threads = Integer.parseInt(properties().getProperty("encode.threads", "0").strip());
+    checkArgument(threads >= 0, "encode.threads (%s) must not be negative", threads);
+    return threads;
+  }
+
+  /**
+   * Groups of CPUs to encode on, one encode per group, e.g. {@code encode.cores=0-7;8-15} for two
+   * concurrent encodes, each on its own 8 cores. Groups are separated by {@code ;}, each is a list
+   * of CPUs and ranges (as in {@code taskset}), groups must not overlap.
+   *
+   * <p>Grouping cores (e.g. by NUMA node or shared cache) stops concurrent encodes evicting each
+   * other's caches or moving between nodes. Not reloaded. Default: none (one encode at a time, on
+   * any core).
+   */
+  List<Set<Integer>> encodeCoreGroups() {
+    String value = properties().getProperty("encode.cores", "");
+    List<Set<Integer>> groups = new ArrayList<>();
+    Set<Integer> allCpus = new HashSet<>();
+    for (String group : Splitter.on(';').trimResults().omitEmptyStrings().split(value)) {
+      Set<Integer> cpus = new TreeSet<>();
+      for (String cpuRange : Splitter.on(',').trimResults().split(group)) {
+        List<String> bounds = Splitter.on('-').trimResults().splitToList(cpuRange);
+        checkArgument(bounds.size() <= 2, "Invalid encode.cores group: %s", group);
+        int first = Integer.parseInt(bounds.get(0));
+        int last = Integer.parseInt(bounds.get(bounds.size() - 1));
+        checkArgument(first >= 0 && first <= last, "Invalid encode.cores group: %s", group);
+        for (int cpu = first; cpu <= last; cpu++) {
+          checkArgument(allCpus.add(cpu), "encode.cores (%s) repeats CPU %s", value, cpu);
+          cpus.add(cpu);
+        }
+      }
+      groups.add(Collections.unmodifiableSet(cpus));
+    }
+    return List.copyOf(groups);
+  }
+
+  /**
+   * Limits on how long HandBrake may run before it's stopped (and the queue moves on), e.g. if it
+   * hangs: {@code watchdog.stall} seconds without progress (default: 600), or {@code
+   * watchdog.duration.factor} times the expected duration (default: 3). 0 disables a limit.
+   */
+  WatchdogLimits watchdogLimits() {
+    Properties properties = properties();
+    long stall = Long.parseLong(properties.getProperty("watchdog.stall", "600").strip());
+    checkArgument(stall >= 0, "watchdog.stall (%s) must not be negative", stall);
+    double durationFactor =
+        Double.parseDouble(properties.getProperty("watchdog.duration.factor", "3").strip());
+    checkArgument(
+        durationFactor >= 0, "watchdog.duration.factor (%s) must not be negative", durationFactor);
+    return new WatchdogLimits(Duration.ofSeconds(stall), durationFactor);
+  }
+
+  /**
+   * Bandwidth limit (bytes per second) for bulk I/O (e.g. archiving) at the given time of day.
+   *
+   * <p>{@code bandwidth.limit} applies at all times, unless overridden by a window in {@code
+   * bandwidth.limit.schedule}, e.g. {@code 09:00-18:00=10000000, 18:00-09:00=0}. Default: 0
+   * (unlimited).
+   */
+  long bandwidthLimit(LocalTime time) {
+    Properties properties = properties();
+    long limit = parseBandwidthLimit(properties.getProperty("bandwidth.limit", "0"));
+
+    // (every window is parsed, not just up to the first match, so they're all validated)
+    Long windowLimit = null;
+    String schedule = properties.getProperty("bandwidth.limit.schedule", "");
+    for (String window : Splitter.on(',').trimResults().omitEmptyStrings().split(schedule)) {
+      List<String> parts = Splitter.on('=').trimResults().splitToList(window);
+      checkArgument(parts.size() == 2, "Invalid bandwidth.limit.schedule window: %s", window);
+      List<String> times = Splitter.on('-').trimResults().splitToList(parts.get(0));
+      checkArgument(times.size() == 2, "Invalid bandwidth.limit.schedule window: %s", window);
+
+      LocalTime start = LocalTime.parse(times.get(0));
+      LocalTime end = LocalTime.parse(times.get(1));
+      long limitInWindow = parseBandwidthLimit(parts.get(1));
+      boolean inWindow =
+          start.isBefore(end)
+              ? !time.isBefore(start) && time.isBefore(end)
+              // window wraps around midnight
+              : !time.isBefore(start) || time.isBefore(end);
+      if (inWindow && windowLimit == null) {
+        windowLimit = limitInWindow;
+      }
+    }
+    return windowLimit != null ? windowLimit : limit;
+  }
+
+  private static long parseBandwidthLimit(String value) {
+    long limit = Long.parseLong(value.strip());
+    checkArgument(limit >= 0, "bandwidth.limit (%s) must not be negative", limit);
+    return limit;
+  }
+
+  /** Output profile of encodes. */
+  enum EncodeProfile {
+    /** The preset as is. */
+    STANDARD,
+    /**
+     * Tuned for editing (see {@link com.willmolloy.handbrake.core.options.EncoderTuning#editing}).
+     */
+    EDITING
+  }
+
+  /** Audio of encodes. */
+  enum AudioMode {
+    /** As per the preset, i.e. the first track, re-encoded. */
+    PRESET,
+    /**
+     * Every track, passed through unchanged (see {@link
+     * com.willmolloy.handbrake.core.options.Audio#passthrough}). E.g. so separately recorded game
+     * and mic tracks can be used in the editor as is.
+     */
+    PASSTHROUGH
+  }
+
+  /** Engine of encodes. */
+  enum Engine {
+    /** HandBrake. */
+    HANDBRAKE,
+    /**
+     * ffmpeg, given the same options (see {@link
+     * com.willmolloy.handbrake.core.HandBrake#newFfmpegInstance}). Much quicker for some sources,
+     * e.g. converting to CFR with the audio passed through, but approximates HandBrake's presets.
+     */
+    FFMPEG
+  }
+
+  private Optional<Path> pathProperty(String key) {
+    return Optional.ofNullable(properties().getProperty(key))
+        .map(String::strip)
+        .filter(value -> !value.isEmpty())
+        .map(Path::of);
+  }
+
+  private <T> T perDirectory(String key, Path path, Function<String, T> parser, T defaultValue) {
+    Properties properties = properties();
+    String name = perDirectoryName(properties, key, path);
+    String value = properties.getProperty(name == null ? key : name);
+    return value == null ? defaultValue : parser.apply(value.strip());
+  }
+
+  /** Name of the longest matching per-directory setting of the given path, if any. */
+  @Nullable
+  private static String perDirectoryName(Properties properties, String key, Path path) {
+    String name = null;
+    int longestMatch = -1;
+
+    String prefix = key + ".";
+    Path absolutePath = path.toAbsolutePath();
+    for (String candidate : properties.stringPropertyNames()) {
+      if (candidate.startsWith(prefix)) {
+        Path directory =
+            path.getFileSystem().getPath(candidate.substring(prefix.length())).toAbsolutePath();
+        if (absolutePath.startsWith(directory) && directory.getNameCount() > longestMatch) {
+          name = candidate;
+          longestMatch = directory.getNameCount();
+        }
+      }
+    }
+
+    return name;
+  }
+
+  private Properties properties() {
+    if (file != null && System.nanoTime() - nextReloadNanos >= 0) {
+      reload();
+    }
+    return properties;
+  }
+
+  /** Reloads the properties file, if it has changed. */
+  @VisibleForTesting
+  synchronized void reload() {
+    if (file == null) {
+      return;
+    }
+    nextReloadNanos = System.nanoTime() + RELOAD_INTERVAL_NANOS;
+    try {
+      FileTime modifiedTime = Files.getLastModifiedTime(file);
+      if (!modifiedTime.equals(lastModifiedTime)) {
+        // (so it's not retried until it changes again)
+        lastModifiedTime = modifiedTime;
+        // swapped in only once it's valid, so an invalid edit can't fail a running job
+        properties = validate(read(file));
+        log.info("Reloaded config: {}", properties);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Error reloading config: %s. Retaining previous config".formatted(file), e);
+    }
+  }
+
+  /**
+   * Validates the given properties, i.e. parses every setting, as of now and for every directory
+   * with its own settings.
+   *
+   * @return the properties
+   * @throws IllegalArgumentException if a setting is invalid
+   */
+  private static Properties validate(Properties properties) {
+    Config config = new Config(null, properties);
+    List<Path> directories = new ArrayList<>();
+    directories.add(Path.of("").toAbsolutePath());
+    for (String name : properties.stringPropertyNames()) {
+      for (String key : List.of("archive.streams.", "archive.direct.", "encode.engine.")) {
+        if (name.startsWith(key)) {
+          directories.add(Path.of(name.substring(key.length())));
+        }
+      }
+    }
+    List<Object> settings = new ArrayList<>();
+    for (Path directory : directories) {
+      settings.add(config.archiveStreams(directory));
+      settings.add(config.archiveDirect(directory));
+      settings.add(config.encodeEngine(directory));
+    }
+    settings.addAll(
+        List.of(
+            config.archiveConcurrency(),
+            config.publishConcurrency(),
+            config.stageDirectory(),
+            config.stageBudget(),
+            config.stagePrefetch(),
+            config.stageWait(),
+            config.encodeDirectory(),
+            config.spaceReserve(),
+            config.spaceOutputRatio(),
+            config.spaceProxyRatio(),
+            config.encodeProfile(),
+            config.encodeRate(),
+            config.encodeAudio(),
+            config.ffmpegPath(),
+            config.speedBitrate(),
+            config.speedCache(),
+            config.scanCache(),
+            config.encodeScheduling(),
+            config.encodeThreads(),
+            config.encodeCoreGroups(),
+            config.watchdogLimits(),
+            config.bandwidthLimit(LocalTime.now())));
+    log.debug("Validated settings: {}", settings);
+    return properties;
+  }
+
+  private static Properties read(Path file) throws IOException {
+    Properties fileProperties = readProperties(file);
+    String profile = fileProperties.getProperty("tuning.profile", "").strip();
+    if (profile.isEmpty()) {
+      return fileProperties;
+    }
+
+    Path profileFile = file.resolveSibling(profile);
+    if (!Files.exists(profileFile)) {
+      log.warn("Tuning profile ({}) doesn't exist, run calibrate to create it", profileFile);
+      return fileProperties;
+    }
+    // (merged, rather than as defaults, so they're logged too)
+    Properties properties = readProperties(profileFile);
+    properties.putAll(fileProperties);
+    return properties;
+  }
+
+  private static Properties readProperties(Path file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    }
+    return properties;
+  }
+
+  @Override
+  public String toString() {
+    return properties.toString();
+  }
+}
@@ -23,14 +23,18 @@ class DirectoryScanner {
 
   private final Path inputDirectory;
   private final Path outputDirectory;
-  private final Path archiveDirectory;
+  private final List<Path> archiveDirectories;
   private final UnencodedVideo.Factory factory;
 
   DirectoryScanner(Path inputDirectory, Path outputDirectory, Path archiveDirectory) {
+    this(inputDirectory, outputDirectory, List.of(archiveDirectory));
+  }
+
+  DirectoryScanner(Path inputDirectory, Path outputDirectory, List<Path> archiveDirectories) {
     this.inputDirectory = checkNotNull(inputDirectory);
     this.outputDirectory = checkNotNull(outputDirectory);
-    this.archiveDirectory = checkNotNull(archiveDirectory);
-    factory = new UnencodedVideo.Factory(inputDirectory, outputDirectory, archiveDirectory);
+    this.archiveDirectories = List.copyOf(archiveDirectories);
+    factory = new UnencodedVideo.Factory(inputDirectory, outputDirectory, archiveDirectories);
   }
 
   List<UnencodedVideo> scan() throws IOException {
@@ -40,7 +44,7 @@ class DirectoryScanner {
 
   private void deleteIncompleteEncodingsAndArchives() throws IOException {
     List<Path> tempFiles =
-        Stream.of(inputDirectory, outputDirectory, archiveDirectory)
+        Stream.concat(Stream.of(inputDirectory, outputDirectory), archiveDirectories.stream())
             .distinct()
             .flatMap(
                 directory -> {
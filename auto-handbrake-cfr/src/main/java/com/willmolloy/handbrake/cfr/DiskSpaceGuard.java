@@ -0,0 +1,251 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Responsible for holding jobs until there's disk space for them.
+ *
+ * <p>"Production Standard" outputs are often larger than their source, and a disk filling up
+ * mid-encode wastes hours of CPU. So before a job starts, the space it needs on each disk (output,
+ * scratch and archive) is estimated and reserved. The job is held until every disk has room for it
+ * (see {@link Config#spaceReserve}), on top of what running jobs have reserved. Running jobs are
+ * never held, so they're the ones that complete. A job which doesn't fit even with nothing else
+ * running is skipped, rather than held forever.
+ *
+ * <p>The space reserved for encoding is released once the output is published (it then takes up
+ * that space itself), the rest once the job finishes (i.e. is archived).
+ *
+ * <p>The output size is estimated from the source size, and the largest recent ratio of encoded to
+ * source size of successful encodes (i.e. bitrate history), or {@link Config#spaceOutputRatio}
+ * until there's history. Proxies are far smaller, so they're estimated separately, from their own
+ * history or {@link Config#spaceProxyRatio}.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class DiskSpaceGuard {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final long RECHECK_INTERVAL_SECONDS = 30;
+
+  private static final int HISTORY_SIZE = 10;
+
+  private final Config config;
+  @Nullable private final Path stageDirectory;
+  @Nullable private final Path encodeDirectory;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  private final Map<FileStore, Long> reservedBytes = new HashMap<>();
+  private final Map<Path, Reservation> reservations = new HashMap<>();
+  private final Deque<Double> ratios = new ArrayDeque<>();
+  private final Deque<Double> proxyRatios = new ArrayDeque<>();
+
+  DiskSpaceGuard(Config config) {
+    this.config = checkNotNull(config);
+    this.stageDirectory = config.stageDirectory().orElse(null);
+    this.encodeDirectory = config.encodeDirectory().orElse(null);
+  }
+
+  /**
+   * Reserves space for the given video's job, waiting until there's room.
+   *
+   * @param video video about to be encoded and archived
+   * @return {@code true} if reserved, {@code false} if there's no room even with no other jobs
+   *     running (i.e. the job should be skipped)
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean reserve(UnencodedVideo video) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (!tryReserve(video)) {
+        if (reservations.isEmpty()) {
+          // nothing to wait for
+          log.error("Not enough disk space, even with no other jobs running. Skipping: {}", video);
+          return false;
+        }
+        log.info("Waiting for disk space: {}", video);
+        released.await(RECHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reserves space for the given video's job, if there's room.
+   *
+   * @param video video about to be encoded and archived
+   * @return {@code true} if reserved (or the space needed couldn't be determined)
+   */
+  @VisibleForTesting
+  boolean tryReserve(UnencodedVideo video) {
+    lock.lock();
+    try {
+      long sourceSize = Files.size(video.originalPath());
+      Reservation reservation = reservation(video, sourceSize);
+      Map<FileStore, Long> neededBytes = reservation.neededBytes();
+
+      long reserve = config.spaceReserve();
+      for (Map.Entry<FileStore, Long> entry : neededBytes.entrySet()) {
+        FileStore fileStore = entry.getKey();
+        long available =
+            fileStore.getUsableSpace() - reservedBytes.getOrDefault(fileStore, 0L) - reserve;
+        if (entry.getValue() > available) {
+          log.warn(
+              "Not enough disk space on {} ({} MB needed, {} MB available): {}",
+              fileStore,
+              entry.getValue() / 1_000_000,
+              Math.max(available, 0) / 1_000_000,
+              video);
+          return false;
+        }
+      }
+
+      neededBytes.forEach((fileStore, bytes) -> reservedBytes.merge(fileStore, bytes, Long::sum));
+      reservations.put(video.originalPath(), reservation);
+      return true;
+    } catch (IOException e) {
+      // don't hold the job, it'll fail (or not) by itself
+      log.warn("Error estimating disk space: %s".formatted(video), e);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Releases the space reserved for encoding the given video, once its output is published. Records
+   * the actual encoded size, to improve future estimates.
+   *
+   * @param video video which was successfully encoded and published
+   */
+  void published(UnencodedVideo video) {
+    lock.lock();
+    try {
+      Reservation reservation = reservations.get(video.originalPath());
+      if (reservation == null) {
+        return;
+      }
+      release(reservation.encodeBytes());
+      reservations.put(
+          video.originalPath(),
+          new Reservation(reservation.sourceSize(), Map.of(), reservation.archiveBytes()));
+
+      // (proxies are far smaller, they'd skew the estimates of full quality encodings, so they have
+      // their own history)
+      Deque<Double> history = video.isProxy() ? proxyRatios : ratios;
+      if (reservation.sourceSize() > 0) {
+        history.addLast((double) Files.size(video.encodedPath()) / reservation.sourceSize());
+        if (history.size() > HISTORY_SIZE) {
+          history.removeFirst();
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Error recording encoded size: %s".formatted(video), e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Releases the space still reserved for the given video's job, once finished (successfully or
+   * not).
+   *
+   * @param video video which was encoded and archived
+   */
+  void release(UnencodedVideo video) {
+    lock.lock();
+    try {
+      Reservation reservation = reservations.remove(video.originalPath());
+      if (reservation != null) {
+        release(reservation.neededBytes());
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(Map<FileStore, Long> bytes) {
+    bytes.forEach((fileStore, size) -> reservedBytes.merge(fileStore, -size, Long::sum));
+    released.signalAll();
+  }
+
+  /** Estimates the encoded size of a source, or of its proxy. */
+  @VisibleForTesting
+  long estimateEncodedSize(long sourceSize, boolean proxy) {
+    lock.lock();
+    try {
+      Deque<Double> history = proxy ? proxyRatios : ratios;
+      double ratio =
+          history.stream()
+              .mapToDouble(Double::doubleValue)
+              .max()
+              .orElse(proxy ? config.spaceProxyRatio() : config.spaceOutputRatio());
+      return (long) Math.ceil(sourceSize * ratio);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Reservation reservation(UnencodedVideo video, long sourceSize) throws IOException {
+    Map<FileStore, Long> encodeBytes = new HashMap<>();
+    Map<FileStore, Long> archiveBytes = new HashMap<>();
+    FileStore sourceFileStore = Files.getFileStore(video.originalPath());
+
+    long encodedSize = estimateEncodedSize(sourceSize, video.isProxy());
+    encodeBytes.merge(fileStore(video.encodedPath()), encodedSize, Long::sum);
+    if (encodeDirectory != null) {
+      encodeBytes.merge(fileStore(encodeDirectory), encodedSize, Long::sum);
+    }
+    if (stageDirectory != null && !fileStore(stageDirectory).equals(sourceFileStore)) {
+      encodeBytes.merge(fileStore(stageDirectory), sourceSize, Long::sum);
+    }
+    // proxies aren't archived
+    for (Path archivedPath : video.isProxy() ? List.<Path>of() : video.archivedPaths()) {
+      // archiving within a file store is a rename
+      FileStore archiveFileStore = fileStore(archivedPath);
+      if (!archiveFileStore.equals(sourceFileStore)) {
+        archiveBytes.merge(archiveFileStore, sourceSize, Long::sum);
+      }
+    }
+    return new Reservation(sourceSize, encodeBytes, archiveBytes);
+  }
+
+  private static FileStore fileStore(Path path) throws IOException {
+    // path (or its parent directories) may not exist yet
+    Path existing = path.toAbsolutePath();
+    while (!Files.exists(existing) && existing.getParent() != null) {
+      existing = existing.getParent();
+    }
+    return Files.getFileStore(existing);
+  }
+
+  private record Reservation(
+      long sourceSize, Map<FileStore, Long> encodeBytes, Map<FileStore, Long> archiveBytes) {
+
+    Map<FileStore, Long> neededBytes() {
+      Map<FileStore, Long> neededBytes = new HashMap<>(encodeBytes);
+      archiveBytes.forEach((fileStore, bytes) -> neededBytes.merge(fileStore, bytes, Long::sum));
+      return neededBytes;
+    }
+  }
+}
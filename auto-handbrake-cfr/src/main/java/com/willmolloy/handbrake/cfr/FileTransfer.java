@@ -0,0 +1,679 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Closer;
+import com.willmolloy.handbrake.cfr.util.DirectIo;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Responsible for transferring files, potentially across file systems (e.g. to a NAS).
+ *
+ * <p>If the source and target share a {@link FileStore} the file is simply renamed. Otherwise, the
+ * file is copied (via {@link FileChannel#transferTo}, so the OS can copy without going through
+ * user space) to a temp file, which is flushed to disk before being atomically renamed to the
+ * target.
+ *
+ * <p>Copies use several concurrent streams (see {@link Config#archiveStreams}), which helps with
+ * high latency targets (e.g. SMB/NFS) where a single stream can't saturate the link. Large files
+ * are split into byte ranges, each written by its own virtual thread, and the total number of
+ * streams to a target {@link FileStore} (across all files) is bounded.
+ *
+ * <p>Copies can optionally use {@link DirectIo} (see {@link Config#archiveDirect}), so multi-GB
+ * copies don't evict everything else from the page cache. Otherwise, copies go through the page
+ * cache (pages can't be dropped behind from Java, see {@link DirectIo}), but are flushed regularly
+ * so they don't pile up as dirty pages.
+ *
+ * <p>Files can be replicated to several targets at once. The source is read once, each chunk is
+ * written to all targets concurrently, and a checksum (CRC32C) of each range is computed as it's
+ * read. Each replica is then read back and verified against the checksums before it's committed.
+ *
+ * <p>All copies share a {@link BandwidthLimiter} (see {@link Config#bandwidthLimit}), so bulk I/O
+ * doesn't saturate the network.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class FileTransfer {
+
+  private static final Logger log = LogManager.getLogger();
+
+  // transfer in chunks so progress can be logged and bandwidth limited
+  private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+  // not worth splitting smaller files
+  private static final long MIN_RANGE_SIZE = 256L * 1024 * 1024;
+
+  // flush written pages regularly, so they're clean (cheap for the OS to reclaim), rather than
+  // piling up as dirty pages. (This doesn't drop them from the page cache.)
+  private static final long FLUSH_SIZE = 64L * 1024 * 1024;
+
+  private final Config config;
+
+  private final Map<FileStore, Streams> streamsPerFileStore = new ConcurrentHashMap<>();
+  private final AtomicLong fileStoreCount = new AtomicLong();
+
+  private final BandwidthLimiter bandwidthLimiter;
+
+  private final Throughput throughput = new Throughput();
+
+  FileTransfer(Config config) {
+    this.config = checkNotNull(config);
+    bandwidthLimiter = new BandwidthLimiter(() -> config.bandwidthLimit(LocalTime.now()));
+  }
+
+  /**
+   * Moves the given file.
+   *
+   * @param source file to move
+   * @param tempTarget temp file to copy to, before renaming to the target (if a copy is required)
+   * @param target file to move to
+   * @throws IOException if an I/O error occurs
+   */
+  void move(Path source, Path tempTarget, Path target) throws IOException {
+    if (Files.getFileStore(source).equals(fileStore(target))) {
+      rename(source, target);
+      return;
+    }
+
+    copy(source, tempTarget, target);
+    Files.delete(source);
+  }
+
+  /**
+   * Moves the given file to several targets. The source is only deleted once all replicas are
+   * durable.
+   *
+   * @param source file to move
+   * @param tempTargets temp files to copy to, before renaming to the targets
+   * @param targets files to move to
+   * @throws IOException if an I/O error occurs
+   */
+  void move(Path source, List<Path> tempTargets, List<Path> targets) throws IOException {
+    checkArgument(tempTargets.size() == targets.size(), "tempTargets and targets differ in size");
+
+    // a target sharing the source's file store can simply be renamed (after copying to the others)
+    FileStore sourceFileStore = Files.getFileStore(source);
+    int renameIndex = -1;
+    for (int i = 0; i < targets.size() && renameIndex == -1; i++) {
+      if (fileStore(targets.get(i)).equals(sourceFileStore)) {
+        renameIndex = i;
+      }
+    }
+
+    if (renameIndex == -1 || targets.size() > 1) {
+      copy(source, without(tempTargets, renameIndex), without(targets, renameIndex));
+    }
+    if (renameIndex != -1) {
+      rename(source, targets.get(renameIndex));
+    } else {
+      Files.delete(source);
+    }
+  }
+
+  /**
+   * Copies the given file. The target is only created once its contents are durable.
+   *
+   * @param source file to copy
+   * @param tempTarget temp file to copy to, before renaming to the target
+   * @param target file to copy to
+   * @throws IOException if an I/O error occurs
+   */
+  void copy(Path source, Path tempTarget, Path target) throws IOException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    throughput.started();
+    try {
+      long size = Files.size(source);
+      int streams = config.archiveStreams(target);
+      boolean direct = config.archiveDirect(target);
+      Semaphore semaphore = streams(target).semaphore();
+
+      try (FileChannel out = FileChannel.open(tempTarget, WRITE, CREATE, TRUNCATE_EXISTING)) {
+        copyRanges(
+            source, tempTarget, ranges(size, streams), direct, semaphore, new Progress(size));
+        // direct I/O pads the last block
+        out.truncate(size);
+        out.force(true);
+      }
+
+      log.info(
+          "Transferred {} MB in {} ({} MB/s)",
+          size / 1_000_000,
+          stopwatch,
+          megabytesPerSecond(size, stopwatch.elapsed(TimeUnit.NANOSECONDS)));
+    } finally {
+      throughput.finished();
+      log.info("Aggregate throughput: {}", throughput);
+    }
+
+    commit(source, tempTarget, target);
+  }
+
+  /**
+   * Copies the given file to several targets, reading it only once. The targets are only created
+   * once their contents are durable and verified (even if there's only one target).
+   *
+   * @param source file to copy
+   * @param tempTargets temp files to copy to, before renaming to the targets
+   * @param targets files to copy to
+   * @throws IOException if an I/O error occurs
+   */
+  void copy(Path source, List<Path> tempTargets, List<Path> targets) throws IOException {
+    checkArgument(tempTargets.size() == targets.size(), "tempTargets and targets differ in size");
+    checkArgument(!targets.isEmpty(), "targets is empty");
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    throughput.started();
+    try {
+      long size = Files.size(source);
+      int streams = Integer.MAX_VALUE;
+      List<Boolean> direct = new ArrayList<>();
+      List<Streams> targetStreams = new ArrayList<>();
+      for (Path target : targets) {
+        streams = Math.min(streams, config.archiveStreams(target));
+        direct.add(config.archiveDirect(target));
+        targetStreams.add(streams(target));
+      }
+      List<Range> ranges = ranges(size, streams);
+      // acquire streams in a consistent order, so concurrent replications can't deadlock
+      List<Semaphore> semaphores =
+          targetStreams.stream()
+              .distinct()
+              .sorted(Comparator.comparingLong(Streams::order))
+              .map(Streams::semaphore)
+              .toList();
+
+      List<Long> checksums;
+      try (Closer closer = Closer.create()) {
+        List<FileChannel> outs = new ArrayList<>();
+        for (Path tempTarget : tempTargets) {
+          outs.add(
+              closer.register(FileChannel.open(tempTarget, WRITE, CREATE, TRUNCATE_EXISTING)));
+        }
+        Progress progress = new Progress(size);
+        checksums =
+            forEachRange(
+                source,
+                ranges,
+                semaphores,
+                range -> teeRange(source, tempTargets, direct, range, progress));
+        for (FileChannel out : outs) {
+          // direct I/O pads the last block
+          out.truncate(size);
+          out.force(true);
+        }
+      }
+
+      log.info(
+          "Transferred {} MB to {} targets in {} ({} MB/s)",
+          size / 1_000_000,
+          targets.size(),
+          stopwatch,
+          megabytesPerSecond(size, stopwatch.elapsed(TimeUnit.NANOSECONDS)));
+
+      for (int i = 0; i < targets.size(); i++) {
+        Path tempTarget = tempTargets.get(i);
+        List<Long> replicaChecksums =
+            forEachRange(
+                tempTarget,
+                ranges,
+                List.of(targetStreams.get(i).semaphore()),
+                range -> checksum(tempTarget, range));
+        if (!replicaChecksums.equals(checksums)) {
+          throw new IOException("Checksum mismatch: %s".formatted(tempTarget));
+        }
+        log.debug("Verified: {}", tempTarget);
+      }
+    } finally {
+      throughput.finished();
+      log.info("Aggregate throughput: {}", throughput);
+    }
+
+    for (int i = 0; i < targets.size(); i++) {
+      commit(source, tempTargets.get(i), targets.get(i));
+    }
+  }
+
+  private void commit(Path source, Path tempTarget, Path target) throws IOException {
+    Files.setLastModifiedTime(tempTarget, Files.getLastModifiedTime(source));
+    fsyncDirectory(tempTarget.getParent());
+    Files.move(tempTarget, target, StandardCopyOption.ATOMIC_MOVE);
+    fsyncDirectory(target.getParent());
+  }
+
+  private static void rename(Path source, Path target) throws IOException {
+    log.debug("Renaming: {} -> {}", source, target);
+    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    // make the rename durable, in both directories
+    fsyncDirectory(target.toAbsolutePath().getParent());
+    fsyncDirectory(source.toAbsolutePath().getParent());
+  }
+
+  private void copyRanges(
+      Path source,
+      Path tempTarget,
+      List<Range> ranges,
+      boolean direct,
+      Semaphore semaphore,
+      Progress progress)
+      throws IOException {
+    forEachRange(
+        source,
+        ranges,
+        List.of(semaphore),
+        range -> {
+          if (direct) {
+            copyRangeDirect(source, tempTarget, range, progress);
+          } else {
+            copyRange(source, tempTarget, range, progress);
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Runs the given task for each range, each in its own virtual thread, while holding a stream
+   * from each of the given semaphores. Returns the results in range order.
+   */
+  private static <T> List<T> forEachRange(
+      Path path, List<Range> ranges, List<Semaphore> semaphores, RangeTask<T> task)
+      throws IOException {
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      return awaitAll(
+          path,
+          ranges.stream()
+              .map(
+                  range ->
+                      executor.submit(
+                          () -> {
+                            int acquired = 0;
+                            try {
+                              for (Semaphore semaphore : semaphores) {
+                                semaphore.acquire();
+                                acquired++;
+                              }
+                              return task.run(range);
+                            } finally {
+                              for (int i = 0; i < acquired; i++) {
+                                semaphores.get(i).release();
+                              }
+                            }
+                          }))
+              .toList());
+    }
+  }
+
+  private static <T> List<T> awaitAll(Path path, List<Future<T>> futures) throws IOException {
+    try {
+      List<T> results = new ArrayList<>();
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      if (e.getCause() instanceof IOException ioException) {
+        throw ioException;
+      }
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted transferring: %s".formatted(path));
+    }
+  }
+
+  private void copyRange(Path source, Path tempTarget, Range range, Progress progress)
+      throws IOException {
+    // separate channels per range, so each range has its own (target) position
+    try (FileChannel in = FileChannel.open(source, READ);
+        FileChannel out = FileChannel.open(tempTarget, WRITE)) {
+      out.position(range.start());
+      long unflushed = 0;
+
+      for (long position = range.start(); position < range.end(); ) {
+        int count = (int) Math.min(CHUNK_SIZE, range.end() - position);
+        bandwidthLimiter.acquire(count);
+        long transferred = in.transferTo(position, count, out);
+        if (transferred <= 0) {
+          throw new IOException("Unexpected end of file: %s".formatted(source));
+        }
+        position += transferred;
+        progress.transferred(transferred);
+        throughput.transferred(transferred);
+
+        unflushed += transferred;
+        if (unflushed >= FLUSH_SIZE) {
+          out.force(false);
+          unflushed = 0;
+        }
+      }
+    }
+  }
+
+  private void copyRangeDirect(Path source, Path tempTarget, Range range, Progress progress)
+      throws IOException {
+    try (FileChannel in = DirectIo.openPreferringDirect(source, READ);
+        FileChannel out = DirectIo.openPreferringDirect(tempTarget, WRITE)) {
+      ByteBuffer buffer = DirectIo.allocate(CHUNK_SIZE);
+      long unflushed = 0;
+
+      for (long position = range.start(); position < range.end(); ) {
+        int count = (int) Math.min(CHUNK_SIZE, range.end() - position);
+        bandwidthLimiter.acquire(count);
+
+        readFully(in, buffer, position, count, source);
+        writeFully(out, buffer.rewind(), position);
+        position += count;
+        progress.transferred(count);
+        throughput.transferred(count);
+
+        // (only has an effect if direct I/O is unsupported)
+        unflushed += count;
+        if (unflushed >= FLUSH_SIZE) {
+          out.force(false);
+          unflushed = 0;
+        }
+      }
+    }
+  }
+
+  /** Copies the range to all targets, returning the checksum of the range. */
+  private long teeRange(
+      Path source, List<Path> tempTargets, List<Boolean> direct, Range range, Progress progress)
+      throws IOException {
+    try (Closer closer = Closer.create();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      // the source is read into a buffer anyway, so it can bypass the page cache regardless
+      FileChannel in = closer.register(DirectIo.openPreferringDirect(source, READ));
+      List<FileChannel> outs = new ArrayList<>();
+      for (int i = 0; i < tempTargets.size(); i++) {
+        outs.add(
+            closer.register(
+                direct.get(i)
+                    ? DirectIo.openPreferringDirect(tempTargets.get(i), WRITE)
+                    : FileChannel.open(tempTargets.get(i), WRITE)));
+      }
+      ByteBuffer buffer = DirectIo.allocate(CHUNK_SIZE);
+      Checksum checksum = new CRC32C();
+      long unflushed = 0;
+
+      for (long position = range.start(); position < range.end(); ) {
+        int count = (int) Math.min(CHUNK_SIZE, range.end() - position);
+        // bandwidth is used writing to each target
+        bandwidthLimiter.acquire(Math.multiplyExact(count, outs.size()));
+
+        readFully(in, buffer, position, count, source);
+        checksum.update(buffer.slice(0, count));
+        long chunkPosition = position;
+        awaitAll(
+            source,
+            outs.stream()
+                .map(
+                    out ->
+                        executor.submit(
+                            () -> {
+                              writeFully(out, buffer.duplicate().rewind(), chunkPosition);
+                              return null;
+                            }))
+                .toList());
+        position += count;
+        progress.transferred(count);
+        throughput.transferred((long) count * outs.size());
+
+        unflushed += count;
+        if (unflushed >= FLUSH_SIZE) {
+          for (FileChannel out : outs) {
+            out.force(false);
+          }
+          unflushed = 0;
+        }
+      }
+
+      return checksum.getValue();
+    }
+  }
+
+  /** Reads back the range (bypassing the page cache if possible) and returns its checksum. */
+  private long checksum(Path path, Range range) throws IOException {
+    try (FileChannel in = DirectIo.openPreferringDirect(path, READ)) {
+      ByteBuffer buffer = DirectIo.allocate(CHUNK_SIZE);
+      Checksum checksum = new CRC32C();
+      for (long position = range.start(); position < range.end(); ) {
+        int count = (int) Math.min(CHUNK_SIZE, range.end() - position);
+        bandwidthLimiter.acquire(count);
+        readFully(in, buffer, position, count, path);
+        checksum.update(buffer.slice(0, count));
+        position += count;
+      }
+      return checksum.getValue();
+    }
+  }
+
+  /** Reads the given number of bytes into the buffer. */
+  private static void readFully(
+      FileChannel in, ByteBuffer buffer, long position, int count, Path path) throws IOException {
+    // direct I/O requires aligned sizes, so the last block is padded
+    buffer.clear().limit((int) DirectIo.alignUp(count));
+    while (buffer.position() < count) {
+      if (in.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file: %s".formatted(path));
+      }
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer, position + buffer.position());
+    }
+  }
+
+  @VisibleForTesting
+  static List<Range> ranges(long size, int streams) {
+    long count = Math.max(1, Math.min(streams, size / MIN_RANGE_SIZE));
+    // align ranges to chunks, so direct I/O is aligned
+    long rangeSize = Math.ceilDiv(Math.ceilDiv(size, count), CHUNK_SIZE) * CHUNK_SIZE;
+    return LongStream.iterate(0, start -> start < size, start -> start + rangeSize)
+        .mapToObj(start -> new Range(start, Math.min(size, start + rangeSize)))
+        .toList();
+  }
+
+  private Streams streams(Path target) throws IOException {
+    Streams streams =
+        streamsPerFileStore.computeIfAbsent(
+            fileStore(target), k -> new Streams(fileStoreCount.getAndIncrement()));
+    streams.limit(config.archiveStreamsDirectory(target), config::archiveStreams);
+    return streams;
+  }
+
+  /**
+   * Limit of concurrent streams to the given target's file store, i.e. the least {@link
+   * Config#archiveStreams} of the archive roots on it which have been copied to.
+   */
+  @VisibleForTesting
+  int fileStoreStreams(Path target) throws IOException {
+    return streams(target).limit();
+  }
+
+  private static <T> List<T> without(List<T> list, int index) {
+    return IntStream.range(0, list.size()).filter(i -> i != index).mapToObj(list::get).toList();
+  }
+
+  private static FileStore fileStore(Path target) throws IOException {
+    // target doesn't exist yet, but its parent should
+    return Files.getFileStore(checkNotNull(target.toAbsolutePath().getParent()));
+  }
+
+  private static void fsyncDirectory(Path directory) {
+    // directories can't be opened on all platforms (e.g. Windows), so this is best effort
+    try (FileChannel channel = FileChannel.open(directory.toAbsolutePath(), READ)) {
+      channel.force(true);
+    } catch (IOException | UnsupportedOperationException e) {
+      log.debug("Unable to fsync directory: {}", directory, e);
+    }
+  }
+
+  private static String megabytesPerSecond(long bytes, long nanos) {
+    return "%.2f".formatted(bytes / 1e6 / (Math.max(nanos, 1) / 1e9));
+  }
+
+  /** Byte range, start inclusive, end exclusive. */
+  record Range(long start, long end) {}
+
+  /**
+   * Bounds the concurrent streams to a file store. Ordered to avoid deadlock.
+   *
+   * <p>Several archive roots can share a file store (e.g. shares of the same NAS), each configured
+   * with its own streams. The store is limited to the least of them, as it's the store (e.g. its
+   * link) which is limited.
+   */
+  private static final class Streams {
+    private final long order;
+    private final ResizableSemaphore semaphore = new ResizableSemaphore();
+    // archive roots copied to, i.e. the directories their streams are configured for
+    private final Set<Path> roots = new HashSet<>();
+    private int limit;
+
+    Streams(long order) {
+      this.order = order;
+    }
+
+    long order() {
+      return order;
+    }
+
+    Semaphore semaphore() {
+      return semaphore;
+    }
+
+    synchronized int limit() {
+      return limit;
+    }
+
+    /**
+     * Adds the given archive root, resizing the limit of the store to the least streams of its
+     * roots, as currently configured (so a reload takes effect).
+     */
+    synchronized void limit(Path root, ToIntFunction<Path> streamsOfRoot) {
+      roots.add(root);
+      int newLimit = roots.stream().mapToInt(streamsOfRoot).min().orElseThrow();
+      if (newLimit > limit) {
+        semaphore.release(newLimit - limit);
+      } else if (newLimit < limit) {
+        // (streams in use are returned before new ones are acquired)
+        semaphore.reducePermits(limit - newLimit);
+      }
+      limit = newLimit;
+    }
+  }
+
+  /** Semaphore whose permits can be reduced, i.e. resized. */
+  private static final class ResizableSemaphore extends Semaphore {
+    ResizableSemaphore() {
+      super(0);
+    }
+
+    @Override
+    protected void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+
+  @FunctionalInterface
+  private interface RangeTask<T> {
+    T run(Range range) throws IOException;
+  }
+
+  /** Logs progress of a single file, every 10%. */
+  private static final class Progress {
+    private final Stopwatch stopwatch = Stopwatch.createStarted();
+    private final long size;
+    private final AtomicLong transferred = new AtomicLong();
+    private int nextPercentToLog = 10;
+
+    Progress(long size) {
+      this.size = size;
+    }
+
+    void transferred(long bytes) {
+      long total = transferred.addAndGet(bytes);
+      int percent = (int) (100 * total / size);
+      synchronized (this) {
+        if (percent >= nextPercentToLog) {
+          log.info(
+              "Transferred {}% ({} MB/s)",
+              percent, megabytesPerSecond(total, stopwatch.elapsed(TimeUnit.NANOSECONDS)));
+          nextPercentToLog = percent - percent % 10 + 10;
+        }
+      }
+    }
+  }
+
+  /** Aggregate throughput across all (concurrent) transfers, over the time any were active. */
+  private static final class Throughput {
+    private final LongAdder bytes = new LongAdder();
+    private int active;
+    private long activeNanos;
+    private long activeSince;
+
+    synchronized void started() {
+      if (active++ == 0) {
+        activeSince = System.nanoTime();
+      }
+    }
+
+    synchronized void finished() {
+      if (--active == 0) {
+        activeNanos += System.nanoTime() - activeSince;
+      }
+    }
+
+    void transferred(long count) {
+      bytes.add(count);
+    }
+
+    @Override
+    public synchronized String toString() {
+      long nanos = activeNanos + (active > 0 ? System.nanoTime() - activeSince : 0);
+      return "%d MB, %d active, %s MB/s"
+          .formatted(bytes.sum() / 1_000_000, active, megabytesPerSecond(bytes.sum(), nanos));
+    }
+  }
+}
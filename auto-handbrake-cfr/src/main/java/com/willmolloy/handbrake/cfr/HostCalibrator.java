@@ -0,0 +1,219 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.willmolloy.handbrake.core.EncodeResult;
+import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
+import com.willmolloy.handbrake.core.options.FrameRateControl;
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.LogFormat;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Range;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Responsible for calibrating the encode host, i.e. finding the encode concurrency and threads
+ * which maximise its throughput.
+ *
+ * <p>Hosts differ in core counts and memory bandwidth, so the best tuning differs too. A short
+ * sample of a fixture video is encoded for each {@link Tuning} of a grid (concurrent encodes, each
+ * on its own group of cores, times encoder threads per encode), measuring the aggregate frames per
+ * second. The best is written as a tuning profile (see {@link Config}), i.e. {@code encode.cores}
+ * and {@code encode.threads}.
+ *
+ * <p>Assumes CPUs are numbered from 0 (as in {@code /proc/cpuinfo}), e.g. the host isn't limited to
+ * a subset of its CPUs.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class HostCalibrator {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final Duration SAMPLE_DURATION = Duration.ofSeconds(10);
+
+  // so each encode still has a few cores to itself
+  private static final int MIN_CORES_PER_ENCODE = 2;
+
+  private final HandBrake handBrake;
+  private final int cpus;
+
+  /**
+   * Constructor.
+   *
+   * @param handBrake HandBrake
+   * @param cpus number of CPUs of the host
+   */
+  HostCalibrator(HandBrake handBrake, int cpus) {
+    checkArgument(cpus > 0, "cpus (%s) must be positive", cpus);
+    this.handBrake = checkNotNull(handBrake);
+    this.cpus = cpus;
+  }
+
+  /**
+   * Calibrates the host, writing the best tuning to the given profile file.
+   *
+   * @param video fixture video, to encode samples of (at least 10 seconds, e.g. a recent recording)
+   * @param profileFile tuning profile file to write
+   * @return best tuning
+   * @throws IOException if an encode failed, or writing the profile failed
+   */
+  Tuning calibrate(Path video, Path profileFile) throws IOException {
+    Tuning best = null;
+    double bestFps = 0;
+    List<String> results = new ArrayList<>();
+    for (Tuning tuning : grid()) {
+      double fps = measure(Input.of(video), tuning);
+      log.info("Calibrated {}: {} fps", tuning, Math.round(fps));
+      results.add("%s: %d fps".formatted(tuning, Math.round(fps)));
+      if (best == null || fps > bestFps) {
+        best = tuning;
+        bestFps = fps;
+      }
+    }
+    best = checkNotNull(best);
+    log.info("Best: {} ({} fps)", best, Math.round(bestFps));
+
+    Properties profile = new Properties();
+    profile.setProperty("encode.cores", best.cores(cpus));
+    profile.setProperty("encode.threads", String.valueOf(best.threads()));
+    // write then rename, so a running app never reads a partial file
+    Path temp = profileFile.resolveSibling(profileFile.getFileName() + ".part");
+    try (OutputStream out = Files.newOutputStream(temp)) {
+      profile.store(
+          out,
+          "Tuning profile of %s CPUs (see HostCalibrator)%n%s"
+              .formatted(cpus, String.join(System.lineSeparator(), results)));
+    }
+    Files.move(temp, profileFile, StandardCopyOption.REPLACE_EXISTING);
+    log.info("Written: {}", profileFile);
+    return best;
+  }
+
+  /**
+   * Grid of tunings to calibrate: 1, 2, 4, ... concurrent encodes (while each has at least {@value
+   * #MIN_CORES_PER_ENCODE} cores), times 0 (automatic), 1 and 2 encoder threads per core.
+   */
+  @VisibleForTesting
+  List<Tuning> grid() {
+    List<Tuning> grid = new ArrayList<>();
+    for (int concurrency = 1;
+        concurrency == 1 || cpus / concurrency >= MIN_CORES_PER_ENCODE;
+        concurrency *= 2) {
+      int cores = cpus / concurrency;
+      Set<Integer> threads = new LinkedHashSet<>(List.of(0, cores, cores * 2));
+      for (int thread : threads) {
+        grid.add(new Tuning(concurrency, thread));
+      }
+    }
+    return grid;
+  }
+
+  /** Measures the aggregate frames per second of the given tuning. */
+  @VisibleForTesting
+  double measure(Input input, Tuning tuning) throws IOException {
+    Path directory = Files.createTempDirectory("calibration-");
+    try {
+      List<Set<Integer>> coreGroups = tuning.coreGroups(cpus);
+      List<CompletableFuture<EncodeResult>> encodes = new ArrayList<>();
+      for (int i = 0; i < coreGroups.size(); i++) {
+        List<Option> options =
+            new ArrayList<>(
+                List.of(
+                    Preset.productionStandard(),
+                    Encoder.h264(),
+                    FrameRateControl.constant(),
+                    LogFormat.json(),
+                    Range.of(Duration.ZERO, SAMPLE_DURATION)));
+        if (tuning.concurrency() > 1) {
+          options.add(Scheduling.cpus(coreGroups.get(i)));
+        }
+        if (tuning.threads() > 0) {
+          options.add(EncoderTuning.settings(EncoderTuning.Setting.threads(tuning.threads())));
+        }
+        encodes.add(
+            handBrake.encodeAsync(
+                input,
+                Output.of(directory.resolve("sample%d.mp4".formatted(i))),
+                options.toArray(Option[]::new)));
+      }
+
+      double fps = 0;
+      for (CompletableFuture<EncodeResult> encode : encodes) {
+        EncodeResult result = encode.get();
+        if (!result.successful()) {
+          throw new IOException("Error calibrating %s: %s".formatted(tuning, input.path()));
+        }
+        fps += result.averageFps().orElse(0);
+      }
+      return fps;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted calibrating: %s".formatted(tuning));
+    } catch (ExecutionException e) {
+      throw new IOException("Error calibrating %s: %s".formatted(tuning, input.path()), e);
+    } finally {
+      MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+  }
+
+  /**
+   * Tuning of the encode host.
+   *
+   * @param concurrency number of concurrent encodes, each on its own group of cores
+   * @param threads number of encoder threads per encode, or 0 for automatic
+   */
+  record Tuning(int concurrency, int threads) {
+
+    /** Groups of cores, one per concurrent encode, of consecutive CPUs. */
+    List<Set<Integer>> coreGroups(int cpus) {
+      int cores = cpus / concurrency;
+      return IntStream.range(0, concurrency)
+          .mapToObj(
+              i ->
+                  IntStream.range(i * cores, (i + 1) * cores)
+                      .boxed()
+                      .collect(Collectors.toCollection(LinkedHashSet::new)))
+          .map(Collections::unmodifiableSet)
+          .toList();
+    }
+
+    /** Value of {@code encode.cores}, e.g. {@code 0-3;4-7} (empty if not concurrent). */
+    String cores(int cpus) {
+      if (concurrency == 1) {
+        return "";
+      }
+      int cores = cpus / concurrency;
+      return IntStream.range(0, concurrency)
+          .mapToObj(i -> "%d-%d".formatted(i * cores, (i + 1) * cores - 1))
+          .collect(Collectors.joining(";"));
+    }
+  }
+}
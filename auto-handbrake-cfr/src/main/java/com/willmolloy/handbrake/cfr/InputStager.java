@@ -0,0 +1,309 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.Hashing;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Responsible for staging (prefetching) inputs to a local scratch directory.
+ *
+ * <p>HandBrake's decoder stalls on slow (e.g. network) reads, which drops encode fps. So upcoming
+ * inputs on another file store are copied to the scratch directory in the background (one at a
+ * time, in queue order), while the current video encodes. HandBrake is then given the staged copy.
+ *
+ * <p>The scratch directory has a byte budget (see {@link Config#stageBudget}). Staged inputs are
+ * pinned until released, i.e. encoded (then deleted if the encode succeeded) or skipped, otherwise
+ * kept in case of a rerun. An input is pinned while its video is staging (i.e. prefetched and not
+ * yet released), so releasing it unpins it even if it's still being staged.
+ * When the budget is exceeded the least recently used unpinned inputs are evicted, if all inputs
+ * are pinned staging waits for one to be released (up to {@link Config#stageWait}, then the
+ * original is used).
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class InputStager {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final String TEMP_SUFFIX = ".part";
+
+  @Nullable private final Path directory;
+  private final Config config;
+  private final FileTransfer fileTransfer;
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(Thread.ofVirtual().name("stager").factory());
+
+  // original path -> staged path (or the original path, if not staged), until released
+  private final Map<Path, Future<Path>> staging = new ConcurrentHashMap<>();
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  // staged path -> entry, in access order (least recently used first)
+  private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private boolean loaded;
+
+  /**
+   * Constructor.
+   *
+   * @param directory scratch directory
+   * @param config config
+   * @param fileTransfer used to copy inputs (so they count towards the bandwidth limit)
+   */
+  InputStager(Path directory, Config config, FileTransfer fileTransfer) {
+    this.directory = checkNotNull(directory);
+    this.config = checkNotNull(config);
+    this.fileTransfer = checkNotNull(fileTransfer);
+  }
+
+  private InputStager(Config config, FileTransfer fileTransfer) {
+    this.directory = null;
+    this.config = checkNotNull(config);
+    this.fileTransfer = checkNotNull(fileTransfer);
+  }
+
+  /** Returns an instance which doesn't stage inputs. */
+  static InputStager disabled(Config config, FileTransfer fileTransfer) {
+    return new InputStager(config, fileTransfer);
+  }
+
+  /**
+   * Starts staging the next {@link Config#stagePrefetch} of the given videos, if not already.
+   *
+   * @param upcoming videos to encode, in order
+   */
+  void prefetch(List<UnencodedVideo> upcoming) {
+    if (directory == null) {
+      return;
+    }
+    int count = Math.min(config.stagePrefetch(), upcoming.size());
+    for (UnencodedVideo video : upcoming.subList(0, count)) {
+      staging.computeIfAbsent(
+          video.originalPath(), k -> executor.submit(() -> stage(video.originalPath())));
+    }
+  }
+
+  /**
+   * Returns the input to give HandBrake for the given video. Waits for it to be staged, if
+   * staging.
+   *
+   * @param video video to encode
+   * @return staged input, or the original if not staged
+   * @throws InterruptedException if interrupted while waiting
+   */
+  Path input(UnencodedVideo video) throws InterruptedException {
+    Future<Path> future = staging.get(video.originalPath());
+    if (future == null) {
+      return video.originalPath();
+    }
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      log.warn("Error staging: %s. Using original".formatted(video), e.getCause());
+      return video.originalPath();
+    }
+  }
+
+  /**
+   * Releases the staged input for the given video, once encoded, or if it won't be (e.g. skipped).
+   * Does nothing if already released.
+   *
+   * @param video video which was encoded (or skipped)
+   * @param encoded {@code true} if encoding was successful (so the staged input isn't needed)
+   */
+  void release(UnencodedVideo video, boolean encoded) {
+    Future<Path> future = staging.remove(video.originalPath());
+    if (future == null) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      if (future.state() != Future.State.SUCCESS) {
+        // (unpinned now, so evictable if it's staged regardless)
+        future.cancel(true);
+      } else if (encoded && !future.resultNow().equals(video.originalPath())) {
+        evict(future.resultNow());
+      }
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Path stage(Path original) throws IOException, InterruptedException {
+    Path directory = checkNotNull(this.directory);
+    load(directory);
+    if (Files.getFileStore(original).equals(Files.getFileStore(directory))) {
+      log.debug("Not staging (already local): {}", original);
+      return original;
+    }
+
+    long size = Files.size(original);
+    long budget = config.stageBudget();
+    if (size > budget) {
+      log.warn("Not staging (larger than stage.budget): {}", original);
+      return original;
+    }
+
+    Path staged = directory.resolve(stagedName(original));
+    FileTime lastModifiedTime = Files.getLastModifiedTime(original);
+    lock.lockInterruptibly();
+    try {
+      Entry existing = entries.get(staged);
+      if (existing != null
+          && existing.size == size
+          && Files.getLastModifiedTime(staged).equals(lastModifiedTime)) {
+        log.info("Already staged: {} -> {}", original, staged);
+        existing.original = original;
+        return staged;
+      }
+      if (existing != null) {
+        // original has changed
+        evict(staged);
+      }
+
+      long waitNanos = config.stageWait().toNanos();
+      while (usedBytes() + size > budget) {
+        if (!evictLeastRecentlyUsed()) {
+          if (waitNanos <= 0) {
+            log.warn("Not staging (timed out waiting for space): {}", original);
+            return original;
+          }
+          log.debug("Waiting for space to stage: {}", original);
+          waitNanos = released.awaitNanos(waitNanos);
+        }
+      }
+      entries.put(staged, new Entry(size, original));
+    } finally {
+      lock.unlock();
+    }
+
+    try {
+      log.info("Staging: {} -> {}", original, staged);
+      fileTransfer.copy(original, tempPath(staged), staged);
+      return staged;
+    } catch (IOException e) {
+      lock.lock();
+      try {
+        evict(staged);
+        Files.deleteIfExists(tempPath(staged));
+        released.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      throw e;
+    }
+  }
+
+  /** Loads inputs staged by a previous run (cleaning up incomplete ones). */
+  private void load(Path directory) throws IOException {
+    lock.lock();
+    try {
+      if (loaded) {
+        return;
+      }
+      Files.createDirectories(directory);
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file :
+            files
+                .filter(Files::isRegularFile)
+                .sorted(Comparator.comparing(InputStager::lastModifiedTime))
+                .toList()) {
+          if (file.toString().endsWith(TEMP_SUFFIX)) {
+            Files.delete(file);
+          } else {
+            entries.put(file, new Entry(Files.size(file), null));
+          }
+        }
+      }
+      log.info("Loaded {} staged input(s) from: {}", entries.size(), directory);
+      loaded = true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long usedBytes() {
+    return entries.values().stream().mapToLong(entry -> entry.size).sum();
+  }
+
+  private boolean evictLeastRecentlyUsed() throws IOException {
+    Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Path, Entry> entry = iterator.next();
+      if (!pinned(entry.getValue())) {
+        log.debug("Evicting: {}", entry.getKey());
+        iterator.remove();
+        Files.deleteIfExists(entry.getKey());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean pinned(Entry entry) {
+    return entry.original != null && staging.containsKey(entry.original);
+  }
+
+  private void evict(Path staged) {
+    entries.remove(staged);
+    try {
+      Files.deleteIfExists(staged);
+    } catch (IOException e) {
+      log.warn("Error deleting staged input: %s".formatted(staged), e);
+    }
+  }
+
+  private static String stagedName(Path original) {
+    // unique per original path, but retaining the file name for readability
+    String hash =
+        Hashing.sha256().hashString(original.toAbsolutePath().toString(), UTF_8).toString();
+    return hash.substring(0, 16) + "-" + checkNotNull(original.getFileName());
+  }
+
+  private static Path tempPath(Path staged) {
+    return staged.resolveSibling(staged.getFileName() + TEMP_SUFFIX);
+  }
+
+  private static FileTime lastModifiedTime(Path path) {
+    try {
+      return Files.getLastModifiedTime(path);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  /** Staged input. Pinned while its original is staging (see {@link #pinned}). */
+  private static final class Entry {
+    private final long size;
+    // null if staged by a previous run (so unpinned until staged again)
+    @Nullable private Path original;
+
+    Entry(long size, @Nullable Path original) {
+      this.size = size;
+      this.original = original;
+    }
+  }
+}
@@ -3,89 +3,194 @@ package com.willmolloy.handbrake.cfr;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.primitives.Booleans;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.stream.IntStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Responsible for running the jobs.
  *
+ * <p>Jobs flow through a pipeline of {@link Stage}s, each with its own bounded queue and executor
+ * sized to the resource it uses:
+ *
+ * <ol>
+ *   <li>probe: holds jobs until there's disk space for them (skipping jobs which can't fit),
+ *       stages upcoming inputs, and scans sources (see {@link VideoEncoder#probe})
+ *   <li>encode: CPU, a single instance of HandBrake (it uses all cores), or one per core group
+ *       (see {@link VideoEncoder#concurrency})
+ *   <li>verify: output disk, verifies and publishes encoded files (see {@link
+ *       VideoEncoder#publishConcurrency})
+ *   <li>archive: archive disk/network (see {@link VideoArchiver#concurrency})
+ * </ol>
+ *
+ * <p>So while one video encodes, the previous video is published and archived. The probe and
+ * encode stages are single threaded, so videos are encoded in order (with core groups, the encode
+ * stage has a thread per group, so videos are started in order).
+ *
+ * <p>In proxy first mode (see {@link VideoEncoder#proxyFirst}), the pipeline first runs over the
+ * {@link UnencodedVideo#proxy proxies} of every video (which aren't archived), then over the videos
+ * themselves.
+ *
  * @author <a href=https://willmolloy.com>Will Molloy</a>
  */
 class JobQueue {
 
   private static final Logger log = LogManager.getLogger();
 
+  // a single video ready to encode as soon as HandBrake is free (further inputs are prefetched)
+  private static final int ENCODE_QUEUE_CAPACITY = 1;
+  // encoded videos waiting on I/O, beyond which encoding waits (rather than filling up scratch)
+  private static final int IO_QUEUE_CAPACITY = 2;
+
   private final VideoEncoder videoEncoder;
   private final VideoArchiver videoArchiver;
+  private final DiskSpaceGuard diskSpaceGuard;
 
-  JobQueue(VideoEncoder videoEncoder, VideoArchiver videoArchiver) {
+  JobQueue(VideoEncoder videoEncoder, VideoArchiver videoArchiver, DiskSpaceGuard diskSpaceGuard) {
     this.videoEncoder = checkNotNull(videoEncoder);
     this.videoArchiver = checkNotNull(videoArchiver);
+    this.diskSpaceGuard = checkNotNull(diskSpaceGuard);
   }
 
   boolean process(List<UnencodedVideo> videos) {
-    List<CountDownLatch> latches =
-        // extra latch to avoid IOOB
-        IntStream.rangeClosed(0, videos.size())
-            .mapToObj(
-                i -> {
-                  if (i == 0) {
-                    // let the first job start immediately.
-                    return new CountDownLatch(0);
-                  } else {
-                    return new CountDownLatch(1);
-                  }
-                })
+    if (!videoEncoder.proxyFirst()) {
+      return run(videos);
+    }
+    // (unless already encoded, e.g. by a previous run)
+    List<UnencodedVideo> proxies =
+        videos.stream()
+            .filter(video -> !Files.exists(video.encodedPath()))
+            .map(UnencodedVideo::proxy)
+            .filter(proxy -> !Files.exists(proxy.encodedPath()))
             .toList();
+    log.info("Encoding {} proxy(s) first", proxies.size());
+    boolean proxiesSuccessful = run(proxies);
+    // full quality encodings regardless, they don't depend on the proxies
+    return run(videos) && proxiesSuccessful;
+  }
 
+  private boolean run(List<UnencodedVideo> videos) {
     boolean[] results = new boolean[videos.size()];
-
-    List<Thread> threads =
-        IntStream.range(0, videos.size())
-            .mapToObj(i -> startJob(i, videos, latches, results))
-            .toList();
-
-    for (Thread thread : threads) {
-      try {
-        thread.join();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+    CountDownLatch finished = new CountDownLatch(videos.size());
+    Pipeline pipeline = new Pipeline(videos, results, finished);
+    try (pipeline) {
+      for (int i = 0; i < videos.size(); i++) {
+        pipeline.probe.put(new Job(i, videos.get(i)));
       }
+      finished.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
 
+    log.info("Stages: {}", pipeline);
     return Booleans.asList(results).stream().reduce(true, Boolean::logicalAnd);
   }
 
-  private Thread startJob(
-      int i, List<UnencodedVideo> videos, List<CountDownLatch> latches, boolean[] results) {
-    UnencodedVideo video = videos.get(i);
-    CountDownLatch latch = latches.get(i);
-    CountDownLatch nextLatch = latches.get(i + 1);
-
-    return Thread.ofVirtual()
-        .name("job-", i + 1)
-        .start(
-            () -> {
-              try {
-                // latch ensures videos are processed in order
-                // while lock ensures a single instance of handbrake is running (at one time)
-
-                // all jobs await the latch, until the previous job has started
-                // then a single job awaits the lock, until the previous job has finished encoding
-
-                latch.await();
-                videoEncoder.acquire();
-                nextLatch.countDown();
-
-                log.info("Encoding ({}/{}): {}", i + 1, videos.size(), video);
-                results[i] = videoEncoder.encode(video) && videoArchiver.archive(video);
-
-              } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-              }
-            });
+  private record Job(int index, UnencodedVideo video) {}
+
+  private final class Pipeline implements AutoCloseable {
+
+    private final List<UnencodedVideo> videos;
+    private final boolean[] results;
+    private final CountDownLatch finished;
+
+    private final Stage<Job> archive;
+    private final Stage<Job> verify;
+    private final Stage<Job> encode;
+    private final Stage<Job> probe;
+
+    private Pipeline(List<UnencodedVideo> videos, boolean[] results, CountDownLatch finished) {
+      this.videos = videos;
+      this.results = results;
+      this.finished = finished;
+
+      archive =
+          new Stage<>(
+              "archive",
+              videoArchiver.concurrency(),
+              IO_QUEUE_CAPACITY,
+              job -> finish(job, videoArchiver.archive(job.video())),
+              job -> finish(job, false));
+      verify =
+          new Stage<>(
+              "verify",
+              videoEncoder.publishConcurrency(),
+              IO_QUEUE_CAPACITY,
+              job -> {
+                if (videoEncoder.publish(job.video())) {
+                  diskSpaceGuard.published(job.video());
+                  if (job.video().isProxy()) {
+                    // the original is still needed, for the full quality encoding
+                    finish(job, true);
+                  } else {
+                    archive.put(job);
+                  }
+                } else {
+                  finish(job, false);
+                }
+              },
+              job -> finish(job, false));
+      encode =
+          new Stage<>(
+              "encode",
+              videoEncoder.concurrency(),
+              ENCODE_QUEUE_CAPACITY,
+              job -> {
+                Stage.waiting(
+                    () -> {
+                      videoEncoder.acquire();
+                      return null;
+                    });
+                log.info("Encoding ({}/{}): {}", job.index() + 1, videos.size(), job.video());
+                if (videoEncoder.encode(job.video())) {
+                  verify.put(job);
+                } else {
+                  finish(job, false);
+                }
+              },
+              job -> finish(job, false));
+      probe =
+          new Stage<>(
+              "probe",
+              1,
+              Math.max(videos.size(), 1),
+              job -> {
+                // hold this (and therefore later) jobs until there's disk space for it
+                if (!Stage.waiting(() -> diskSpaceGuard.reserve(job.video()))) {
+                  finish(job, false);
+                  return;
+                }
+                // stage this and the next few inputs, and scan this, while the previous job is
+                // encoding
+                videoEncoder.prefetch(videos.subList(job.index(), videos.size()));
+                videoEncoder.probe(job.video());
+                encode.put(job);
+              },
+              job -> finish(job, false));
+    }
+
+    private void finish(Job job, boolean result) {
+      results[job.index()] = result;
+      diskSpaceGuard.release(job.video());
+      // (if skipped, or failed before encoding, its staged input is still pinned)
+      videoEncoder.finished(job.video());
+      finished.countDown();
+      log.debug("Stages: {}", this);
+    }
+
+    @Override
+    public void close() {
+      probe.close();
+      encode.close();
+      verify.close();
+      archive.close();
+    }
+
+    @Override
+    public String toString() {
+      return "%s, %s, %s, %s".formatted(probe, encode, verify, archive);
+    }
   }
 }
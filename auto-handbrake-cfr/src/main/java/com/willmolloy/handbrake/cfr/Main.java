@@ -5,8 +5,11 @@ import static com.google.common.base.Preconditions.checkArgument;
 import com.willmolloy.handbrake.core.HandBrake;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,16 +25,23 @@ final class Main {
 
   public static void main(String... args) {
     try {
-      checkArgument(args.length == 3, "Expected 3 args to main method");
+      if (args.length > 0 && args[0].equals("calibrate")) {
+        calibrate(args);
+        return;
+      }
+
+      // (several archive directories can be given, each gets a replica)
+      checkArgument(args.length >= 3, "Expected at least 3 args to main method");
       Path inputDirectory = Path.of(args[0]);
       Path outputDirectory = Path.of(args[1]);
-      Path archiveDirectory = Path.of(args[2]);
+      List<Path> archiveDirectories =
+          Arrays.stream(args).skip(2).map(Path::of).distinct().toList();
 
       log.info(
-          "inputDirectory={}, outputDirectory={}, archiveDirectory={}",
+          "inputDirectory={}, outputDirectory={}, archiveDirectories={}",
           inputDirectory,
           outputDirectory,
-          archiveDirectory);
+          archiveDirectories);
 
       checkArgument(
           Files.isDirectory(inputDirectory),
@@ -41,26 +51,53 @@ final class Main {
           Files.isDirectory(outputDirectory),
           "outputDirectory (%s) is not a directory",
           outputDirectory);
-      checkArgument(
-          Files.isDirectory(archiveDirectory),
-          "archiveDirectory (%s) is not a directory",
-          archiveDirectory);
-
-      if (isRunningInsideDocker()) {
-        try (Stream<Path> archiveDirStream = Files.list(archiveDirectory)) {
-          // test archive directory is non-empty, ensures volume is mounted correctly
-          // hacky but good to be safe
-          checkArgument(
-              archiveDirStream.findAny().isPresent(),
-              "archiveDirectory (%s) directory empty, network drive not mounted?",
-              archiveDirectory);
+      for (Path archiveDirectory : archiveDirectories) {
+        checkArgument(
+            Files.isDirectory(archiveDirectory),
+            "archiveDirectory (%s) is not a directory",
+            archiveDirectory);
+
+        if (isRunningInsideDocker()) {
+          try (Stream<Path> archiveDirStream = Files.list(archiveDirectory)) {
+            // test archive directory is non-empty, ensures volume is mounted correctly
+            // hacky but good to be safe
+            checkArgument(
+                archiveDirStream.findAny().isPresent(),
+                "archiveDirectory (%s) directory empty, network drive not mounted?",
+                archiveDirectory);
+          }
         }
       }
 
+      String configFile = System.getenv(Config.FILE_ENV_VAR);
+      Config config = configFile == null ? Config.defaults() : Config.load(Path.of(configFile));
+      log.info("config={}", config);
+
+      // share a single instance, so all bulk I/O counts towards the bandwidth limit
+      FileTransfer fileTransfer = new FileTransfer(config);
+      InputStager inputStager =
+          config
+              .stageDirectory()
+              .map(directory -> new InputStager(directory, config, fileTransfer))
+              .orElseGet(() -> InputStager.disabled(config, fileTransfer));
+      OutputPublisher outputPublisher =
+          config
+              .encodeDirectory()
+              .map(directory -> new OutputPublisher(directory, fileTransfer))
+              .orElseGet(() -> OutputPublisher.disabled(fileTransfer));
+
       App app =
           new App(
-              new DirectoryScanner(inputDirectory, outputDirectory, archiveDirectory),
-              new JobQueue(new VideoEncoder(HandBrake.newInstance()), new VideoArchiver()));
+              new DirectoryScanner(inputDirectory, outputDirectory, archiveDirectories),
+              new JobQueue(
+                  new VideoEncoder(
+                      HandBrake.newInstance(config::watchdogLimits),
+                      HandBrake.newFfmpegInstance(config.ffmpegPath(), config::watchdogLimits),
+                      inputStager,
+                      outputPublisher,
+                      config),
+                  new VideoArchiver(fileTransfer, config),
+                  new DiskSpaceGuard(config)));
       if (!app.run()) {
         System.exit(1);
       }
@@ -70,6 +107,18 @@ final class Main {
     }
   }
 
+  /** Calibrates the host, writing a tuning profile (see {@link HostCalibrator}). */
+  private static void calibrate(String... args) throws IOException {
+    checkArgument(args.length == 3, "Expected args: calibrate <video> <profile file>");
+    Path video = Path.of(args[1]);
+    Path profileFile = Path.of(args[2]);
+    log.info("video={}, profileFile={}", video, profileFile);
+    checkArgument(Files.isRegularFile(video), "video (%s) is not a file", video);
+
+    int cpus = Runtime.getRuntime().availableProcessors();
+    new HostCalibrator(HandBrake.newInstance(), cpus).calibrate(video, profileFile);
+  }
+
   @SuppressFBWarnings("DMI_HARDCODED_ABSOLUTE_FILENAME")
   private static boolean isRunningInsideDocker() {
     return new File("/.dockerenv").exists();
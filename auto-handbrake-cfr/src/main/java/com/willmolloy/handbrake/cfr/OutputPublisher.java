@@ -0,0 +1,145 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hashing;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Responsible for publishing encoded videos to the output directory.
+ *
+ * <p>If a local scratch directory is configured (see {@link Config#encodeDirectory}), HandBrake
+ * encodes to it, so the muxer isn't limited by a slow (e.g. network) output disk. Encoded files are
+ * then published in the background (one at a time, so they don't compete for the output disk) via
+ * a durable copy-then-rename, while the next video encodes.
+ *
+ * <p>Otherwise, HandBrake encodes directly to the output directory and publishing is a rename.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class OutputPublisher {
+
+  private static final Logger log = LogManager.getLogger();
+
+  @Nullable private final Path directory;
+  private final FileTransfer fileTransfer;
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(Thread.ofVirtual().name("publisher").factory());
+
+  private boolean cleanedUp;
+
+  /**
+   * Constructor.
+   *
+   * @param directory scratch directory
+   * @param fileTransfer used to copy encoded files (so they count towards the bandwidth limit)
+   */
+  OutputPublisher(Path directory, FileTransfer fileTransfer) {
+    this.directory = checkNotNull(directory);
+    this.fileTransfer = checkNotNull(fileTransfer);
+  }
+
+  private OutputPublisher(FileTransfer fileTransfer) {
+    this.directory = null;
+    this.fileTransfer = checkNotNull(fileTransfer);
+  }
+
+  /** Returns an instance which encodes directly to the output directory. */
+  static OutputPublisher disabled(FileTransfer fileTransfer) {
+    return new OutputPublisher(fileTransfer);
+  }
+
+  /**
+   * Returns the temp file for HandBrake to encode the given video to.
+   *
+   * @param video video to encode
+   * @return temp file, in the scratch directory if configured
+   * @throws IOException if an I/O error occurs
+   */
+  Path tempEncodedPath(UnencodedVideo video) throws IOException {
+    if (directory == null) {
+      return video.tempEncodedPath();
+    }
+    cleanUp(directory);
+    // unique per output path, but retaining the file name for readability
+    String hash =
+        Hashing.sha256()
+            .hashString(video.tempEncodedPath().toAbsolutePath().toString(), UTF_8)
+            .toString();
+    return directory.resolve(
+        hash.substring(0, 16) + "-" + checkNotNull(video.tempEncodedPath().getFileName()));
+  }
+
+  /**
+   * Publishes the encoded video to its encoded path. Blocks until it's durable.
+   *
+   * <p>If the encoded path already exists (with similar contents, as verified by the caller), it's
+   * retained.
+   *
+   * @param tempEncodedPath temp file HandBrake encoded to (given by {@link #tempEncodedPath})
+   * @param video encoded video
+   * @throws IOException if an I/O error occurs
+   */
+  void publish(Path tempEncodedPath, UnencodedVideo video) throws IOException {
+    if (directory == null) {
+      Files.move(tempEncodedPath, video.encodedPath(), StandardCopyOption.REPLACE_EXISTING);
+      return;
+    }
+
+    Future<?> future =
+        executor.submit(
+            () -> {
+              Stopwatch stopwatch = Stopwatch.createStarted();
+              if (Files.exists(video.encodedPath())) {
+                // no point rewriting similar contents over the (slow) output disk
+                Files.delete(tempEncodedPath);
+              } else {
+                fileTransfer.move(tempEncodedPath, video.tempEncodedPath(), video.encodedPath());
+              }
+              log.info("Published: {} (elapsed: {})", video.encodedPath(), stopwatch);
+              return null;
+            });
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw ioException;
+      }
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted publishing: %s".formatted(video));
+    }
+  }
+
+  /** Deletes incomplete encodings from a previous run. */
+  private synchronized void cleanUp(Path directory) throws IOException {
+    if (cleanedUp) {
+      return;
+    }
+    Files.createDirectories(directory);
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.filter(UnencodedVideo::isTempEncodedMp4).toList()) {
+        log.warn("Deleting incomplete encoding: {}", file);
+        Files.delete(file);
+      }
+    }
+    cleanedUp = true;
+  }
+}
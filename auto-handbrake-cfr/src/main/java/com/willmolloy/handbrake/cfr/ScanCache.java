@@ -0,0 +1,181 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.SourceInfo;
+import com.willmolloy.handbrake.core.options.Input;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Responsible for caching source scans, so each source is scanned once, rather than every time its
+ * metadata is needed.
+ *
+ * <p>Scans are keyed by the source's original path, size and last modified time, i.e. a source is
+ * rescanned if it changes. The metadata of an unchanged source is free on later runs (see {@link
+ * Config#scanCache}), even if it's staged elsewhere (see {@link InputStager}).
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class ScanCache {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final Splitter FIELDS = Splitter.on(';');
+  private static final Splitter TRACK_FIELDS = Splitter.on(',');
+  // escapes the separators (and spaces), e.g. of codec names
+  private static final Escaper ESCAPER = UrlEscapers.urlFormParameterEscaper();
+
+  @Nullable private final Path cacheFile;
+
+  // path|size|last modified -> source
+  private final Properties cache = new Properties();
+
+  ScanCache(Config config) {
+    this.cacheFile = config.scanCache().orElse(null);
+    if (cacheFile != null && Files.exists(cacheFile)) {
+      try (InputStream in = Files.newInputStream(cacheFile)) {
+        cache.load(in);
+      } catch (IOException e) {
+        log.warn("Error reading scan cache: %s. Rescanning".formatted(cacheFile), e);
+      }
+    }
+  }
+
+  /**
+   * Scans the given input, unless its source is already scanned.
+   *
+   * @param originalPath original path of the source, to key the scan by
+   * @param input input to scan, e.g. a staged copy of the source
+   * @param handBrake HandBrake to scan with
+   * @return source info (of the input), or empty if scanning failed
+   */
+  Optional<SourceInfo> scan(Path originalPath, Input input, HandBrake handBrake) {
+    String key;
+    try {
+      key =
+          "%s|%d|%d"
+              .formatted(
+                  originalPath,
+                  Files.size(originalPath),
+                  Files.getLastModifiedTime(originalPath).toMillis());
+    } catch (IOException e) {
+      log.warn("Error reading source attributes: %s".formatted(originalPath), e);
+      return handBrake.scan(input);
+    }
+
+    String cached = cache.getProperty(key);
+    if (cached != null) {
+      try {
+        return Optional.of(parse(input.path(), cached));
+      } catch (RuntimeException e) {
+        log.warn("Invalid cached scan ({}): {}", key, cached);
+      }
+    }
+
+    Optional<SourceInfo> source = handBrake.scan(input);
+    source.ifPresent(scanned -> store(originalPath, key, scanned));
+    return source;
+  }
+
+  private synchronized void store(Path originalPath, String key, SourceInfo source) {
+    // (previous scans of the source are stale)
+    cache.stringPropertyNames().stream()
+        .filter(cachedKey -> path(cachedKey).equals(originalPath.toString()))
+        .forEach(cache::remove);
+    cache.setProperty(key, format(source));
+    if (cacheFile == null) {
+      return;
+    }
+    try {
+      // write then rename, so a crash doesn't leave a partial file
+      Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".part");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        cache.store(out, "Source scans (see ScanCache)");
+      }
+      Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Error writing scan cache: %s".formatted(cacheFile), e);
+    }
+  }
+
+  /** Path of the given key, i.e. without its size and last modified time. */
+  private static String path(String key) {
+    int lastModified = key.lastIndexOf('|');
+    int size = lastModified > 0 ? key.lastIndexOf('|', lastModified - 1) : -1;
+    return size >= 0 ? key.substring(0, size) : key;
+  }
+
+  /**
+   * Formats the given source, e.g. {@code PT10S;1920;1080;60.0;h264;English,aac,2,48000}: duration,
+   * width, height, frame rate, codec, then an entry per audio track.
+   */
+  @VisibleForTesting
+  static String format(SourceInfo source) {
+    List<String> fields = new ArrayList<>();
+    fields.add(source.duration().toString());
+    fields.add(String.valueOf(source.width()));
+    fields.add(String.valueOf(source.height()));
+    fields.add(String.valueOf(source.frameRate()));
+    fields.add(ESCAPER.escape(source.videoCodec()));
+    for (SourceInfo.AudioTrack track : source.audioTracks()) {
+      fields.add(
+          "%s,%s,%d,%d"
+              .formatted(
+                  ESCAPER.escape(track.language()),
+                  ESCAPER.escape(track.codec()),
+                  track.channels(),
+                  track.sampleRate()));
+    }
+    return String.join(";", fields);
+  }
+
+  /**
+   * Parses the given source (see {@link #format}).
+   *
+   * @throws IllegalArgumentException if the source is malformed
+   */
+  @VisibleForTesting
+  static SourceInfo parse(Path path, String value) {
+    List<String> fields = FIELDS.splitToList(value);
+    checkArgument(fields.size() >= 5, "Invalid source: %s", value);
+    List<SourceInfo.AudioTrack> audioTracks = new ArrayList<>();
+    for (String track : fields.subList(5, fields.size())) {
+      List<String> trackFields = TRACK_FIELDS.splitToList(track);
+      checkArgument(trackFields.size() == 4, "Invalid audio track: %s", track);
+      audioTracks.add(
+          new SourceInfo.AudioTrack(
+              URLDecoder.decode(trackFields.get(0), UTF_8),
+              URLDecoder.decode(trackFields.get(1), UTF_8),
+              Integer.parseInt(trackFields.get(2)),
+              Integer.parseInt(trackFields.get(3))));
+    }
+    return new SourceInfo(
+        path,
+        Duration.parse(fields.get(0)),
+        Integer.parseInt(fields.get(1)),
+        Integer.parseInt(fields.get(2)),
+        Double.parseDouble(fields.get(3)),
+        URLDecoder.decode(fields.get(4), UTF_8),
+        audioTracks);
+  }
+}
@@ -0,0 +1,249 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.willmolloy.handbrake.core.EncodeResult;
+import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.SourceInfo;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Range;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Responsible for calibrating the encoder speed of each source.
+ *
+ * <p>A single speed is either too slow for high resolution sources, or wastes time on low
+ * resolution ones. So a short sample of the source is encoded at a few candidate speeds, measuring
+ * frames per second and bitrate, and the fastest candidate within the target bitrate is chosen (see
+ * {@link Config#speedBitrate}). If none are within it, the slowest (i.e. smallest) is chosen. The
+ * presets are constant quality, so faster speeds cost bitrate, rather than quality.
+ *
+ * <p>Calibrations are cached per class of source, i.e. its resolution, frame rate and codec (and
+ * the encoding options), so most sources aren't calibrated at all (see {@link Config#speedCache}).
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class SpeedCalibrator {
+
+  private static final Logger log = LogManager.getLogger();
+
+  /** Candidate speeds, from fastest to slowest. */
+  @VisibleForTesting
+  static final List<EncoderTuning.Speed> CANDIDATES =
+      List.of(
+          EncoderTuning.Speed.ULTRAFAST,
+          EncoderTuning.Speed.VERYFAST,
+          EncoderTuning.Speed.FAST,
+          EncoderTuning.Speed.MEDIUM);
+
+  private static final Duration SAMPLE_DURATION = Duration.ofSeconds(5);
+  private static final String SAMPLE_PREFIX = "sample-";
+
+  private final HandBrake handBrake;
+  private final Config config;
+  @Nullable private final Path cacheFile;
+
+  // source class -> speed
+  private final Properties cache = new Properties();
+
+  SpeedCalibrator(HandBrake handBrake, Config config) {
+    this.handBrake = checkNotNull(handBrake);
+    this.config = checkNotNull(config);
+    this.cacheFile = config.speedCache().orElse(null);
+    if (cacheFile != null && Files.exists(cacheFile)) {
+      try (InputStream in = Files.newInputStream(cacheFile)) {
+        cache.load(in);
+      } catch (IOException e) {
+        log.warn("Error reading speed cache: %s. Recalibrating".formatted(cacheFile), e);
+      }
+    }
+  }
+
+  /**
+   * Calibrates the encoder speed of the given source, unless its class is already calibrated.
+   *
+   * @param input input to encode
+   * @param source source (scanned) of the input
+   * @param options options the input will be encoded with (including its scheduling, so samples
+   *     are encoded under the same conditions)
+   * @param output file the input will be encoded to, samples are encoded next to it (so on the same
+   *     disk)
+   * @return speed, or empty if calibration is disabled (or failed)
+   */
+  Optional<EncoderTuning.Speed> speed(
+      Input input, SourceInfo source, List<Option> options, Path output) {
+    long targetBitrate = config.speedBitrate();
+    if (targetBitrate == 0) {
+      return Optional.empty();
+    }
+    if (source.duration().compareTo(Duration.ofSeconds(1)) < 0) {
+      log.warn("Source too short to calibrate: {}", source);
+      return Optional.empty();
+    }
+
+    String sourceClass = sourceClass(source, targetBitrate, options);
+    String cached = cache.getProperty(sourceClass);
+    if (cached != null) {
+      Optional<EncoderTuning.Speed> speed = parse(cached);
+      if (speed.isPresent()) {
+        return speed;
+      }
+      log.warn("Invalid cached speed ({}): {}", sourceClass, cached);
+    }
+
+    Optional<EncoderTuning.Speed> speed =
+        calibrate(input, source, targetBitrate, options, sampleOutput(output));
+    speed.ifPresent(calibrated -> store(sourceClass, calibrated));
+    return speed;
+  }
+
+  private Optional<EncoderTuning.Speed> calibrate(
+      Input input, SourceInfo source, long targetBitrate, List<Option> options, Path output) {
+    // a sample from the middle, the start is often a static menu or loading screen
+    Duration sampleDuration =
+        source.duration().compareTo(SAMPLE_DURATION) < 0 ? source.duration() : SAMPLE_DURATION;
+    Range sample = Range.of(source.duration().minus(sampleDuration).dividedBy(2), sampleDuration);
+    double sampleSeconds = sampleDuration.toSeconds();
+
+    EncoderTuning.Speed fastest = null;
+    double fastestFps = 0;
+    for (EncoderTuning.Speed candidate : CANDIDATES) {
+      Optional<EncodeResult> result = encodeSample(input, output, sample, candidate, options);
+      if (result.isEmpty()) {
+        return Optional.empty();
+      }
+      double bitrate = result.get().outputSize() * 8 / sampleSeconds / 1000;
+      double fps =
+          result
+              .get()
+              .averageFps()
+              .orElse(sampleSeconds * source.frameRate() / seconds(result.get().elapsed()));
+      log.info(
+          "Calibrated {}: {} fps, {} kbit/s ({})",
+          candidate,
+          Math.round(fps),
+          Math.round(bitrate),
+          input.path());
+      if (bitrate <= targetBitrate && (fastest == null || fps > fastestFps)) {
+        fastest = candidate;
+        fastestFps = fps;
+      }
+    }
+    // if none are within the target, the slowest (i.e. smallest)
+    EncoderTuning.Speed chosen = fastest != null ? fastest : CANDIDATES.getLast();
+    log.info("Chosen speed: {} ({})", chosen, input.path());
+    return Optional.of(chosen);
+  }
+
+  private Optional<EncodeResult> encodeSample(
+      Input input, Path output, Range sample, EncoderTuning.Speed speed, List<Option> options) {
+    try {
+      // (a new file, HandBrake warns if it already exists)
+      Files.deleteIfExists(output);
+      List<Option> sampleOptions = new ArrayList<>(options);
+      sampleOptions.add(EncoderTuning.speed(speed));
+      sampleOptions.add(sample);
+      EncodeResult result =
+          handBrake
+              .encodeAsync(input, Output.of(output), sampleOptions.toArray(Option[]::new))
+              .get();
+      if (!result.successful()) {
+        log.warn("Error calibrating {}: {}", speed, input.path());
+        return Optional.empty();
+      }
+      return Optional.of(result);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    } catch (Exception e) {
+      log.warn("Error calibrating %s: %s".formatted(speed, input.path()), e);
+      return Optional.empty();
+    } finally {
+      try {
+        Files.deleteIfExists(output);
+      } catch (IOException e) {
+        log.warn("Error deleting calibration sample: %s".formatted(output), e);
+      }
+    }
+  }
+
+  /**
+   * Sample file of the given output, next to it. Named as a temp file (like the output), so it's
+   * cleaned up with incomplete encodings if left behind.
+   */
+  private static Path sampleOutput(Path output) {
+    return output.resolveSibling(SAMPLE_PREFIX + checkNotNull(output.getFileName()));
+  }
+
+  private synchronized void store(String sourceClass, EncoderTuning.Speed speed) {
+    cache.setProperty(sourceClass, speed.name().toLowerCase(Locale.ROOT));
+    if (cacheFile == null) {
+      return;
+    }
+    try {
+      // write then rename, so a crash doesn't leave a partial file
+      Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".part");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        cache.store(out, "Encoder speed calibrations (see SpeedCalibrator)");
+      }
+      Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Error writing speed cache: %s".formatted(cacheFile), e);
+    }
+  }
+
+  /**
+   * Class of the given source, e.g. {@code 1920x1080@60/h264/6000/1a2b3c4d}: resolution, frame
+   * rate, codec, target bitrate, and a hash of the encoding options (excluding scheduling, which
+   * doesn't change the output).
+   */
+  @VisibleForTesting
+  static String sourceClass(SourceInfo source, long targetBitrate, List<Option> options) {
+    String optionArgs =
+        options.stream()
+            .filter(option -> !(option instanceof Scheduling))
+            .flatMap(Option::handBrakeCliArgs)
+            .collect(Collectors.joining(" "));
+    return "%dx%d@%d/%s/%d/%s"
+        .formatted(
+            source.width(),
+            source.height(),
+            Math.round(source.frameRate()),
+            source.videoCodec().isEmpty() ? "unknown" : source.videoCodec(),
+            targetBitrate,
+            Hashing.sha256().hashString(optionArgs, UTF_8).toString().substring(0, 8));
+  }
+
+  private static Optional<EncoderTuning.Speed> parse(String value) {
+    return Arrays.stream(EncoderTuning.Speed.values())
+        .filter(speed -> speed.name().equalsIgnoreCase(value.strip()))
+        .findFirst();
+  }
+
+  private static double seconds(Duration duration) {
+    return Math.max(duration.toNanos() / 1e9, 1e-3);
+  }
+}
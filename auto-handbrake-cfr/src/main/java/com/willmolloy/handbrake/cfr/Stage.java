@@ -0,0 +1,170 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stage of the job pipeline.
+ *
+ * <p>Each stage has its own bounded queue and executor, sized to the resource it uses (e.g. CPU or
+ * disk/network). So work for different resources overlaps predictably, rather than competing at
+ * random times. {@link #put} blocks while the queue is full, so a slow stage applies backpressure
+ * to the stages before it.
+ *
+ * <p>Items are taken from the queue in order, so a single threaded stage processes items in order.
+ *
+ * <p>The service time only counts the work itself, not time spent waiting on other resources, i.e.
+ * blocked putting items on the next stage, or in {@link #waiting}.
+ *
+ * @param <T> item type
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class Stage<T> implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private final String name;
+  private final BlockingQueue<T> queue;
+  private final Task<T> task;
+  private final Consumer<T> onError;
+  private final ExecutorService executor;
+
+  // time the current (stage) thread spent waiting while processing its item
+  private static final ThreadLocal<long[]> WAITING_NANOS =
+      ThreadLocal.withInitial(() -> new long[1]);
+
+  private final LongAdder processed = new LongAdder();
+  private final LongAdder serviceNanos = new LongAdder();
+
+  /**
+   * Constructor. Starts the stage.
+   *
+   * @param name stage name
+   * @param threads number of threads processing items concurrently
+   * @param capacity queue capacity
+   * @param task processes an item (and typically puts it on the next stage)
+   * @param onError invoked if the task throws
+   */
+  Stage(String name, int threads, int capacity, Task<T> task, Consumer<T> onError) {
+    checkArgument(threads > 0, "threads (%s) must be positive", threads);
+    this.name = checkNotNull(name);
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.task = checkNotNull(task);
+    this.onError = checkNotNull(onError);
+    this.executor =
+        Executors.newFixedThreadPool(threads, Thread.ofVirtual().name(name + "-", 1).factory());
+    for (int i = 0; i < threads; i++) {
+      executor.execute(this::run);
+    }
+  }
+
+  /**
+   * Puts an item on the queue, waiting if the queue is full.
+   *
+   * @param item item to process
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void put(T item) throws InterruptedException {
+    waiting(
+        () -> {
+          queue.put(item);
+          return null;
+        });
+  }
+
+  /**
+   * Waits for something (e.g. a resource), excluding the time waited from the service time of the
+   * current stage.
+   *
+   * @param wait waits, returning its result
+   * @param <R> result type
+   * @return result of the wait
+   * @throws InterruptedException if interrupted while waiting
+   */
+  static <R> R waiting(Wait<R> wait) throws InterruptedException {
+    long start = System.nanoTime();
+    try {
+      return wait.await();
+    } finally {
+      WAITING_NANOS.get()[0] += System.nanoTime() - start;
+    }
+  }
+
+  /** Number of items waiting to be processed. */
+  int queueDepth() {
+    return queue.size();
+  }
+
+  /** Mean time taken to process an item (excluding waiting). */
+  Duration meanServiceTime() {
+    long count = processed.sum();
+    return Duration.ofNanos(count == 0 ? 0 : serviceNanos.sum() / count);
+  }
+
+  private void run() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        T item = queue.take();
+        long[] waitingNanos = WAITING_NANOS.get();
+        waitingNanos[0] = 0;
+        long start = System.nanoTime();
+        try {
+          task.process(item);
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Exception e) {
+          log.error("Error in %s stage: %s".formatted(name, item), e);
+          onError.accept(item);
+        } finally {
+          serviceNanos.add(System.nanoTime() - start - waitingNanos[0]);
+          processed.increment();
+        }
+      }
+    } catch (InterruptedException e) {
+      // stage closed
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Stops the stage, interrupting items in progress. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return "%s (queue depth: %d, processed: %d, mean service time: %s)"
+        .formatted(name, queueDepth(), processed.sum(), meanServiceTime());
+  }
+
+  /**
+   * Processes an item.
+   *
+   * @param <T> item type
+   */
+  @FunctionalInterface
+  interface Task<T> {
+    void process(T item) throws Exception;
+  }
+
+  /**
+   * Waits for something.
+   *
+   * @param <R> result type
+   */
+  @FunctionalInterface
+  interface Wait<R> {
+    R await() throws InterruptedException;
+  }
+}
@@ -3,8 +3,10 @@ package com.willmolloy.handbrake.cfr;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Represents an unencoded, unarchived video (.mp4 file).
@@ -17,20 +19,23 @@ final class UnencodedVideo {
   private final Path originalPath;
   private final Path encodedPath;
   private final Path tempEncodedPath;
-  private final Path archivedPath;
-  private final Path tempArchivedPath;
+  private final List<Path> archivedPaths;
+  private final List<Path> tempArchivedPaths;
+  @Nullable private final UnencodedVideo proxy;
 
   private UnencodedVideo(
       Path originalPath,
       Path encodedPath,
       Path tempEncodedPath,
-      Path archivedPath,
-      Path tempArchivedPath) {
+      List<Path> archivedPaths,
+      List<Path> tempArchivedPaths,
+      @Nullable UnencodedVideo proxy) {
     this.originalPath = originalPath;
     this.encodedPath = encodedPath;
     this.tempEncodedPath = tempEncodedPath;
-    this.archivedPath = archivedPath;
-    this.tempArchivedPath = tempArchivedPath;
+    this.archivedPaths = archivedPaths;
+    this.tempArchivedPaths = tempArchivedPaths;
+    this.proxy = proxy;
   }
 
   Path originalPath() {
@@ -45,23 +50,52 @@ final class UnencodedVideo {
     return tempEncodedPath;
   }
 
+  /** Archived path in the first (primary) archive directory. */
   Path archivedPath() {
-    return archivedPath;
+    return archivedPaths.get(0);
   }
 
   Path tempArchivedPath() {
-    return tempArchivedPath;
+    return tempArchivedPaths.get(0);
+  }
+
+  /** Archived paths, one per archive directory. */
+  List<Path> archivedPaths() {
+    return archivedPaths;
+  }
+
+  /** Temp archived paths, one per archive directory (same order as {@link #archivedPaths}). */
+  List<Path> tempArchivedPaths() {
+    return tempArchivedPaths;
+  }
+
+  /**
+   * Proxy of this video, i.e. a fast, low resolution encoding to edit with until the full quality
+   * encoding is ready. Encoded next to it in the output directory, with a {@code .proxy.cfr.mp4}
+   * suffix.
+   *
+   * <p>Same original (and archived) paths, but its encoded paths are the proxy's.
+   */
+  UnencodedVideo proxy() {
+    return checkNotNull(proxy, "Already a proxy: %s", this);
+  }
+
+  boolean isProxy() {
+    return proxy == null;
   }
 
   @Override
   public String toString() {
-    return originalPath.toString();
+    return isProxy() ? originalPath + " (proxy)" : originalPath.toString();
   }
 
   // TODO videos don't have to be .mp4
   private static final String MP4_SUFFIX = ".mp4";
   private static final String ENCODED_SUFFIX = ".cfr.mp4";
   private static final String TEMP_ENCODED_SUFFIX = ".cfr.mp4.part";
+  // (also encoded suffixes, so proxies are treated as encoded files)
+  private static final String PROXY_SUFFIX = ".proxy.cfr.mp4";
+  private static final String TEMP_PROXY_SUFFIX = ".proxy.cfr.mp4.part";
   private static final String TEMP_ARCHIVED_SUFFIX = ".mp4.part";
 
   static boolean isMp4(Path path) {
@@ -89,9 +123,13 @@ final class UnencodedVideo {
 
     private final Path inputDirectory;
     private final Path outputDirectory;
-    private final Path archiveDirectory;
+    private final List<Path> archiveDirectories;
 
     Factory(Path inputDirectory, Path outputDirectory, Path archiveDirectory) {
+      this(inputDirectory, outputDirectory, List.of(archiveDirectory));
+    }
+
+    Factory(Path inputDirectory, Path outputDirectory, List<Path> archiveDirectories) {
       checkArgument(
           Files.isDirectory(inputDirectory),
           "inputDirectory (%s) is not a directory",
@@ -100,14 +138,17 @@ final class UnencodedVideo {
           Files.isDirectory(outputDirectory),
           "outputDirectory (%s) is not a directory",
           outputDirectory);
-      checkArgument(
-          Files.isDirectory(archiveDirectory),
-          "archiveDirectory (%s) is not a directory",
-          archiveDirectory);
+      checkArgument(!archiveDirectories.isEmpty(), "archiveDirectories is empty");
+      for (Path archiveDirectory : archiveDirectories) {
+        checkArgument(
+            Files.isDirectory(archiveDirectory),
+            "archiveDirectory (%s) is not a directory",
+            archiveDirectory);
+      }
 
       this.inputDirectory = inputDirectory;
       this.outputDirectory = outputDirectory;
-      this.archiveDirectory = archiveDirectory;
+      this.archiveDirectories = List.copyOf(archiveDirectories);
     }
 
     UnencodedVideo newUnencodedVideo(Path videoPath) {
@@ -132,12 +173,31 @@ final class UnencodedVideo {
           videoPath,
           inputDirectory);
 
+      List<Path> archivedPaths =
+          archiveDirectories.stream()
+              .map(archiveDirectory -> newDirectory(videoPath, archiveDirectory))
+              .toList();
+      List<Path> tempArchivedPaths =
+          archiveDirectories.stream()
+              .map(
+                  archiveDirectory ->
+                      newDirectory(newSuffix(videoPath, TEMP_ARCHIVED_SUFFIX), archiveDirectory))
+              .toList();
+      UnencodedVideo proxy =
+          new UnencodedVideo(
+              videoPath,
+              newDirectory(newSuffix(videoPath, PROXY_SUFFIX), outputDirectory),
+              newDirectory(newSuffix(videoPath, TEMP_PROXY_SUFFIX), outputDirectory),
+              archivedPaths,
+              tempArchivedPaths,
+              null);
       return new UnencodedVideo(
           videoPath,
           newDirectory(newSuffix(videoPath, ENCODED_SUFFIX), outputDirectory),
           newDirectory(newSuffix(videoPath, TEMP_ENCODED_SUFFIX), outputDirectory),
-          newDirectory(videoPath, archiveDirectory),
-          newDirectory(newSuffix(videoPath, TEMP_ARCHIVED_SUFFIX), archiveDirectory));
+          archivedPaths,
+          tempArchivedPaths,
+          proxy);
     }
 
     private Path newDirectory(Path videoPath, Path newDirectory) {
@@ -1,8 +1,14 @@
 package com.willmolloy.handbrake.cfr;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.common.base.Stopwatch;
 import com.google.common.io.MoreFiles;
+import com.willmolloy.handbrake.cfr.util.Files2;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -15,8 +21,21 @@ class VideoArchiver {
 
   private static final Logger log = LogManager.getLogger();
 
+  private final FileTransfer fileTransfer;
+  private final Config config;
+
+  VideoArchiver(FileTransfer fileTransfer, Config config) {
+    this.fileTransfer = checkNotNull(fileTransfer);
+    this.config = checkNotNull(config);
+  }
+
+  /** Number of videos which can be archived concurrently, see {@link Config#archiveConcurrency}. */
+  int concurrency() {
+    return config.archiveConcurrency();
+  }
+
   /**
-   * Archives the given video.
+   * Archives the given video (to each of its archive directories).
    *
    * @param video video to archive
    * @return {@code true} if archiving was successful
@@ -24,33 +43,48 @@ class VideoArchiver {
   boolean archive(UnencodedVideo video) {
     Stopwatch stopwatch = Stopwatch.createStarted();
     try {
-      if (video.originalPath().equals(video.archivedPath())) {
-        log.info("Archived: {}", video.originalPath());
-        return true;
-      }
+      // the original may already be in an archive directory (i.e. the input directory)
+      boolean retainOriginal = video.archivedPaths().contains(video.originalPath());
+
+      List<Path> tempArchivedPaths = new ArrayList<>();
+      List<Path> archivedPaths = new ArrayList<>();
+      for (int i = 0; i < video.archivedPaths().size(); i++) {
+        Path archivedPath = video.archivedPaths().get(i);
+        if (archivedPath.equals(video.originalPath())) {
+          continue;
+        }
 
-      if (Files.exists(video.archivedPath())) {
-        log.warn("Archived file ({}) already exists", video.archivedPath());
+        if (Files.exists(archivedPath)) {
+          log.warn("Archived file ({}) already exists", archivedPath);
 
-        log.info("Verifying existing archived file contents");
-        if (Files.mismatch(video.originalPath(), video.archivedPath()) != -1) {
-          log.error("Existing archived file contents differ. Skipping archive process");
-          return false;
+          log.info("Verifying existing archived file contents");
+          if (Files2.mismatch(video.originalPath(), archivedPath) != -1) {
+            log.error("Existing archived file contents differ. Skipping archive process");
+            return false;
+          }
         } else {
-          log.info("Deleting: {}", video.originalPath());
-          Files.delete(video.originalPath());
+          MoreFiles.createParentDirectories(archivedPath);
+          tempArchivedPaths.add(video.tempArchivedPaths().get(i));
+          archivedPaths.add(archivedPath);
         }
-      } else {
-        MoreFiles.createParentDirectories(video.archivedPath());
+      }
 
-        log.info("Moving: {} -> {}", video.originalPath(), video.archivedPath());
-        // archive to a temp file first in case something goes wrong
+      if (!archivedPaths.isEmpty()) {
+        // archive to temp files first in case something goes wrong
         // (e.g. app crash while it's uploading to NAS)
-        Files.move(video.originalPath(), video.tempArchivedPath());
-        Files.move(video.tempArchivedPath(), video.archivedPath());
+        if (retainOriginal) {
+          log.info("Copying: {} -> {}", video.originalPath(), archivedPaths);
+          fileTransfer.copy(video.originalPath(), tempArchivedPaths, archivedPaths);
+        } else {
+          log.info("Moving: {} -> {}", video.originalPath(), archivedPaths);
+          fileTransfer.move(video.originalPath(), tempArchivedPaths, archivedPaths);
+        }
+      } else if (!retainOriginal) {
+        log.info("Deleting: {}", video.originalPath());
+        Files.delete(video.originalPath());
       }
 
-      log.info("Archived: {}", video.archivedPath());
+      log.info("Archived: {}", video.archivedPaths());
       return true;
     } catch (Exception e) {
       log.error("Error archiving: %s".formatted(video), e);
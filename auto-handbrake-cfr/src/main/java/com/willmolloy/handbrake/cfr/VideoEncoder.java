@@ -7,49 +7,186 @@ import com.google.common.base.Stopwatch;
 import com.google.common.io.MoreFiles;
 import com.willmolloy.handbrake.cfr.util.Files2;
 import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.SourceInfo;
+import com.willmolloy.handbrake.core.options.Audio;
 import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
 import com.willmolloy.handbrake.core.options.FrameRateControl;
 import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.LogFormat;
+import com.willmolloy.handbrake.core.options.Option;
 import com.willmolloy.handbrake.core.options.Output;
 import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Scheduling;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.stream.IntStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Responsible for encoding videos.
  *
+ * <p>Encodes one video at a time, unless core groups are configured, in which case one video per
+ * core group, each pinned to its group's cores (see {@link Config#encodeCoreGroups}).
+ *
  * @author <a href=https://willmolloy.com>Will Molloy</a>
  */
 class VideoEncoder {
 
   private static final Logger log = LogManager.getLogger();
 
-  private final ReentrantLock lock = new ReentrantLock();
+  // so e.g. a 60.0001 fps source isn't re-timed to 60 fps
+  private static final double RATE_TOLERANCE = 0.01;
+
+  // added to the niceness of full quality encodings, in proxy first mode
+  private static final int FULL_QUALITY_NICE = 10;
 
   private final HandBrake handBrake;
+  private final HandBrake ffmpeg;
+  private final InputStager inputStager;
+  private final OutputPublisher outputPublisher;
+  private final Config config;
+  private final SpeedCalibrator speedCalibrator;
+  private final ScanCache scanCache;
+
+  // one permit per core group, a group is free when its permit is
+  private final int concurrency;
+  private final Semaphore permits;
+  private final Queue<Set<Integer>> freeCoreGroups = new ConcurrentLinkedQueue<>();
+  // thread -> its acquired core group (empty, i.e. any core, if there are no core groups)
+  private final Map<Thread, Set<Integer>> acquiredCoreGroups = new ConcurrentHashMap<>();
+  // probed video -> its scanned source (empty if the scan failed), until it's encoded
+  private final Map<UnencodedVideo, Optional<SourceInfo>> probedSources =
+      new ConcurrentHashMap<>();
 
-  VideoEncoder(HandBrake handBrake) {
+  VideoEncoder(
+      HandBrake handBrake,
+      HandBrake ffmpeg,
+      InputStager inputStager,
+      OutputPublisher outputPublisher,
+      Config config) {
     this.handBrake = checkNotNull(handBrake);
+    this.ffmpeg = checkNotNull(ffmpeg);
+    this.inputStager = checkNotNull(inputStager);
+    this.outputPublisher = checkNotNull(outputPublisher);
+    this.config = checkNotNull(config);
+    this.speedCalibrator = new SpeedCalibrator(handBrake, config);
+    this.scanCache = new ScanCache(config);
+
+    List<Set<Integer>> coreGroups = config.encodeCoreGroups();
+    if (coreGroups.isEmpty()) {
+      freeCoreGroups.add(Set.of());
+    } else {
+      freeCoreGroups.addAll(coreGroups);
+    }
+    concurrency = freeCoreGroups.size();
+    permits = new Semaphore(concurrency);
+  }
+
+  /**
+   * Number of videos which can be encoded concurrently, one per core group (see {@link
+   * Config#encodeCoreGroups}). By default 1, a single HandBrake uses all cores.
+   */
+  int concurrency() {
+    return concurrency;
   }
 
-  /** Acquires the instance. Must call before {@link #encode}. */
+  /**
+   * Number of encoded videos which can be verified and published concurrently (see {@link
+   * Config#publishConcurrency}).
+   */
+  int publishConcurrency() {
+    return config.publishConcurrency();
+  }
+
+  /**
+   * Whether to encode {@link UnencodedVideo#proxy proxies} of every video first (see {@link
+   * Config#encodeProxyFirst}).
+   */
+  boolean proxyFirst() {
+    return config.encodeProxyFirst();
+  }
+
+  /**
+   * Acquires the instance (a core group of it), waiting for one to be free. Must call before {@link
+   * #encode}, on the same thread.
+   */
   void acquire() {
-    lock.lock();
+    permits.acquireUninterruptibly();
+    acquiredCoreGroups.put(Thread.currentThread(), checkNotNull(freeCoreGroups.poll()));
   }
 
   /**
-   * Encodes the given video.
+   * Scans the given upcoming video's source, if encoding it needs a scan (see {@link ScanCache}).
+   * So the scan overlaps the previous encode, rather than delaying this one while holding a core
+   * group. Encoding a probed video uses this scan, even if it failed, so doesn't scan again.
+   * Doesn't require the instance to be acquired.
+   *
+   * @param video video to encode
+   */
+  void probe(UnencodedVideo video) {
+    HandBrake engine = engine(video);
+    if (needsScan(video, engine)) {
+      probedSources.put(
+          video, scanCache.scan(video.originalPath(), Input.of(video.originalPath()), engine));
+    }
+  }
+
+  /**
+   * Starts staging the given upcoming videos (inputs), so they're ready to encode.
+   *
+   * @param upcoming videos to encode, in order
+   */
+  void prefetch(List<UnencodedVideo> upcoming) {
+    inputStager.prefetch(upcoming);
+  }
+
+  /**
+   * Releases what's held for the given video once it's finished with, in case it wasn't encoded
+   * (e.g. skipped, or failed before encoding): its staged input and probed source. Does nothing if
+   * already released (i.e. by {@link #encode}).
+   *
+   * @param video video which is finished with
+   */
+  void finished(UnencodedVideo video) {
+    inputStager.release(video, false);
+    probedSources.remove(video);
+  }
+
+  /**
+   * Encodes the given video, to a temp file. Call {@link #publish} to publish it.
+   *
+   * <p>A {@link UnencodedVideo#proxy proxy} is encoded with the Production Proxy 540p preset and
+   * the fastest encoder speed. In {@link #proxyFirst} mode, full quality encodings run at a lower
+   * CPU priority, as they're no longer holding up editing.
+   *
+   * <p>If a target bitrate is configured, full quality encodings are at the encoder speed
+   * calibrated for the source (see {@link SpeedCalibrator}).
+   *
+   * <p>Encodes with HandBrake, or ffmpeg if configured for the video's directory (see {@link
+   * Config#encodeEngine}). Calibrations are HandBrake's, so don't apply to ffmpeg.
    *
    * @param video video to encode
    * @return {@code true} if encoding was successful
    */
   boolean encode(UnencodedVideo video) {
-    checkState(lock.isHeldByCurrentThread(), "Not acquired");
+    Set<Integer> coreGroup = acquiredCoreGroups.get(Thread.currentThread());
+    checkState(coreGroup != null, "Not acquired");
 
     Stopwatch stopwatch = Stopwatch.createStarted();
+    // the input is staged (pinned) from prefetching, so must be released however this returns
+    boolean handBrakeSuccessful = false;
     try {
       if (Files.exists(video.encodedPath())) {
         log.warn("Encoded file ({}) already exists", video.encodedPath());
@@ -59,46 +196,183 @@ class VideoEncoder {
 
       // to avoid leaving encoded files in an 'incomplete' state, encode to a temp file in case
       // something goes wrong
-      boolean handBrakeSuccessful =
-          handBrake.encode(
-              Input.of(video.originalPath()),
-              Output.of(video.tempEncodedPath()),
-              Preset.productionStandard(),
-              Encoder.h264(),
-              FrameRateControl.constant());
+      Path tempEncodedPath = outputPublisher.tempEncodedPath(video);
+
+      Input input = Input.of(inputStager.input(video));
+      HandBrake engine = engine(video);
+      double rate = config.encodeRate();
+      Config.AudioMode audioMode = config.encodeAudio();
+      boolean calibrate = calibrate(video, engine);
+      Optional<SourceInfo> source = source(video, input, engine);
+
+      List<Option> options = new ArrayList<>();
+      if (video.isProxy()) {
+        options.addAll(
+            List.of(
+                Preset.productionProxy540p(),
+                Encoder.h264(),
+                EncoderTuning.speed(EncoderTuning.Speed.ULTRAFAST),
+                frameRateControl(rate, source),
+                LogFormat.json()));
+      } else {
+        options.addAll(
+            List.of(
+                Preset.productionStandard(),
+                Encoder.h264(),
+                frameRateControl(rate, source),
+                LogFormat.json()));
+        int threads = config.encodeThreads();
+        if (config.encodeProfile() == Config.EncodeProfile.EDITING) {
+          options.add(
+              threads == 0
+                  ? EncoderTuning.editing()
+                  : EncoderTuning.editing(EncoderTuning.Setting.threads(threads)));
+        } else if (threads != 0) {
+          options.add(EncoderTuning.settings(EncoderTuning.Setting.threads(threads)));
+        }
+      }
+      if (audioMode == Config.AudioMode.PASSTHROUGH) {
+        audioPassthrough(source).ifPresent(options::add);
+      }
+      options.addAll(config.encodeScheduling());
+      if (!video.isProxy() && config.encodeProxyFirst()) {
+        options.add(Scheduling.nice(FULL_QUALITY_NICE));
+      }
+      if (!coreGroup.isEmpty()) {
+        options.add(Scheduling.cpus(coreGroup));
+      }
+      if (calibrate) {
+        // (calibrated with the same scheduling, i.e. on the same cores, as the encode)
+        source
+            .flatMap(info -> speedCalibrator.speed(input, info, options, tempEncodedPath))
+            .map(EncoderTuning::speed)
+            .ifPresent(options::add);
+      }
+
+      handBrakeSuccessful =
+          engine.encode(input, Output.of(tempEncodedPath), options.toArray(Option[]::new));
 
       if (!handBrakeSuccessful) {
         log.error("Error encoding: {}", video);
-        return false;
       }
-
+      return handBrakeSuccessful;
+    } catch (Exception e) {
+      log.error("Error encoding: %s".formatted(video), e);
+      return false;
+    } finally {
+      // (a proxy's input is needed again, for the full quality encode)
+      inputStager.release(video, handBrakeSuccessful && !video.isProxy());
+      // ensure released (i.e. if method returns exceptionally)
       release();
+      log.info("Elapsed: {}", stopwatch);
+    }
+  }
+
+  private HandBrake engine(UnencodedVideo video) {
+    return config.encodeEngine(video.originalPath()) == Config.Engine.FFMPEG ? ffmpeg : handBrake;
+  }
+
+  private boolean calibrate(UnencodedVideo video, HandBrake engine) {
+    return !video.isProxy() && config.speedBitrate() != 0 && engine == handBrake;
+  }
+
+  /** Source of the video, as probed, otherwise scanned now (empty if not needed or failed). */
+  private Optional<SourceInfo> source(UnencodedVideo video, Input input, HandBrake engine) {
+    Optional<SourceInfo> probed = probedSources.remove(video);
+    if (probed != null) {
+      return probed;
+    }
+    if (!needsScan(video, engine)) {
+      return Optional.empty();
+    }
+    log.info("Scanning unprobed source: {}", video);
+    return scanCache.scan(video.originalPath(), input, engine);
+  }
+
+  /** Whether encoding needs a scan of the source. (Only scan if needed, it reads the source.) */
+  private boolean needsScan(UnencodedVideo video, HandBrake engine) {
+    return config.encodeRate() != 0
+        || config.encodeAudio() == Config.AudioMode.PASSTHROUGH
+        || calibrate(video, engine);
+  }
+
+  /**
+   * Constant frame rate, capped at the timeline's frame rate (see {@link Config#encodeRate}).
+   *
+   * <p>The source is scanned for its frame rate. If that fails, it's encoded at the timeline's
+   * frame rate (which the editor would conform it to anyway).
+   */
+  private FrameRateControl frameRateControl(double rate, Optional<SourceInfo> source) {
+    if (rate == 0) {
+      return FrameRateControl.constant();
+    }
+    OptionalDouble sourceRate =
+        source.stream()
+            .mapToDouble(SourceInfo::frameRate)
+            .filter(frameRate -> frameRate > 0)
+            .findFirst();
+    if (sourceRate.isPresent() && sourceRate.getAsDouble() <= rate + RATE_TOLERANCE) {
+      return FrameRateControl.constant();
+    }
+    log.info(
+        "Encoding at {} fps (source: {} fps)",
+        rate,
+        sourceRate.isPresent() ? sourceRate.getAsDouble() : "unknown");
+    return FrameRateControl.constant(rate);
+  }
+
+  /**
+   * Passes through every audio track of the source (see {@link Config#encodeAudio}).
+   *
+   * <p>The source is scanned for its audio tracks. If that fails, its audio is as per the preset.
+   */
+  private Optional<Audio> audioPassthrough(Optional<SourceInfo> source) {
+    int tracks = source.map(info -> info.audioTracks().size()).orElse(0);
+    if (tracks == 0) {
+      log.warn("No audio tracks to pass through (scan failed or silent source)");
+      return Optional.empty();
+    }
+    return Optional.of(Audio.passthrough(IntStream.rangeClosed(1, tracks).toArray()));
+  }
+
+  /**
+   * Verifies and publishes the given (successfully {@link #encode encoded}) video to its encoded
+   * path.
+   *
+   * <p>Doesn't require the instance to be acquired, it's all I/O, so it can run while the next
+   * video encodes.
+   *
+   * @param video encoded video
+   * @return {@code true} if publishing was successful
+   */
+  boolean publish(UnencodedVideo video) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      Path tempEncodedPath = outputPublisher.tempEncodedPath(video);
 
       if (Files.exists(video.encodedPath())) {
         log.info("Verifying existing encoded file contents");
-        if (!Files2.contentsSimilar(video.encodedPath(), video.tempEncodedPath())) {
+        if (!Files2.contentsSimilar(video.encodedPath(), tempEncodedPath)) {
           log.error("Existing encoded file contents differ. Aborting encode process");
           return false;
         }
       }
 
-      Files.move(video.tempEncodedPath(), video.encodedPath(), StandardCopyOption.REPLACE_EXISTING);
+      outputPublisher.publish(tempEncodedPath, video);
 
-      log.info("Encoded: {}", video.encodedPath());
+      log.info("Encoded: {} (elapsed: {})", video.encodedPath(), stopwatch);
       return true;
     } catch (Exception e) {
-      log.error("Error encoding: %s".formatted(video), e);
+      log.error("Error publishing: %s".formatted(video), e);
       return false;
-    } finally {
-      // ensure unlocked (i.e. if method returns exceptionally)
-      release();
-      log.info("Elapsed: {}", stopwatch);
     }
   }
 
   private void release() {
-    if (lock.isHeldByCurrentThread()) {
-      lock.unlock();
+    Set<Integer> coreGroup = acquiredCoreGroups.remove(Thread.currentThread());
+    if (coreGroup != null) {
+      freeCoreGroups.add(coreGroup);
+      permits.release();
     }
   }
 }
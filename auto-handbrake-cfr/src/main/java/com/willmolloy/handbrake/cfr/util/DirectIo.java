@@ -0,0 +1,108 @@
+package com.willmolloy.handbrake.cfr.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Direct I/O utility methods.
+ *
+ * <p>Direct I/O bypasses the OS page cache. Reading/writing multi-GB files through the page cache
+ * evicts everything else from memory (e.g. the input HandBrake is currently reading), even though
+ * the files won't be read again anytime soon.
+ *
+ * <p>Direct I/O requires buffers, positions and sizes aligned to the {@link #ALIGNMENT}, and isn't
+ * supported by all file systems (e.g. tmpfs), so callers need a fallback.
+ *
+ * <p>The fallback goes through the page cache. Dropping pages behind a sequential read/write (via
+ * {@code posix_fadvise(POSIX_FADV_DONTNEED)}) isn't possible from Java 21 without JNI or the
+ * preview foreign function API, so the best callers can do is flush writes regularly, so the pages
+ * are clean and cheap for the OS to reclaim.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public final class DirectIo {
+
+  private static final Logger log = LogManager.getLogger();
+
+  /** Alignment required by direct I/O. (Multiple of the block size of any typical device.) */
+  public static final int ALIGNMENT = 4096;
+
+  /**
+   * Opens a file channel for direct I/O, if the file system supports it.
+   *
+   * @param path file to open
+   * @param options open options
+   * @return file channel, or {@link Optional#empty()} if direct I/O is unsupported
+   */
+  public static Optional<FileChannel> tryOpen(Path path, OpenOption... options) {
+    try {
+      if (Files.getFileStore(parentIfNotExists(path)).getBlockSize() > ALIGNMENT) {
+        return Optional.empty();
+      }
+      OpenOption[] directOptions =
+          Stream.concat(Stream.of(options), Stream.of(ExtendedOpenOption.DIRECT))
+              .toArray(OpenOption[]::new);
+      return Optional.of(FileChannel.open(path, directOptions));
+    } catch (IOException | UnsupportedOperationException e) {
+      log.debug("Direct I/O unsupported: {}", path, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Opens a file channel for direct I/O, if the file system supports it, otherwise regular I/O.
+   *
+   * @param path file to open
+   * @param options open options
+   * @return file channel
+   * @throws IOException if an I/O error occurs
+   */
+  public static FileChannel openPreferringDirect(Path path, OpenOption... options)
+      throws IOException {
+    Optional<FileChannel> channel = tryOpen(path, options);
+    return channel.isPresent() ? channel.get() : FileChannel.open(path, options);
+  }
+
+  /**
+   * Allocates a buffer suitable for direct I/O.
+   *
+   * @param capacity capacity, multiple of the {@link #ALIGNMENT}
+   * @return aligned direct buffer
+   */
+  public static ByteBuffer allocate(int capacity) {
+    checkArgument(
+        capacity % ALIGNMENT == 0, "capacity (%s) must be a multiple of %s", capacity, ALIGNMENT);
+    return ByteBuffer.allocateDirect(capacity + ALIGNMENT)
+        .alignedSlice(ALIGNMENT)
+        .limit(capacity)
+        .slice();
+  }
+
+  /**
+   * Rounds the given size up to a multiple of the {@link #ALIGNMENT}.
+   *
+   * @param size size
+   * @return aligned size
+   */
+  public static long alignUp(long size) {
+    return Math.ceilDiv(size, ALIGNMENT) * ALIGNMENT;
+  }
+
+  private static Path parentIfNotExists(Path path) {
+    Path parent = path.toAbsolutePath().getParent();
+    return Files.exists(path) || parent == null ? path : parent;
+  }
+
+  private DirectIo() {}
+}
@@ -1,18 +1,27 @@
 package com.willmolloy.handbrake.cfr.util;
 
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
  * File utility methods. (Extension to {@link Files}.)
  *
+ * <p>Files are read via {@link DirectIo} where possible, so reading multi-GB files doesn't evict
+ * everything else from the page cache. (Otherwise, they're read through the page cache.)
+ *
  * @author <a href=https://willmolloy.com>Will Molloy</a>
  */
 public final class Files2 {
 
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
   /**
    * Tests if two files have similar contents.
    *
@@ -37,20 +46,18 @@ public final class Files2 {
       long allowedMismatchBytes = (long) (tolerance * size);
       long mismatchCount = 0;
 
-      // adapted from Files.mismatch
-      int bufferSize = 8192;
-      byte[] buffer1 = new byte[bufferSize];
-      byte[] buffer2 = new byte[bufferSize];
-
-      try (InputStream in1 = Files.newInputStream(path1);
-          InputStream in2 = Files.newInputStream(path2)) {
+      try (ChunkReader in1 = new ChunkReader(path1);
+          ChunkReader in2 = new ChunkReader(path2)) {
 
-        for (long totalRead = 0; totalRead < size; totalRead += bufferSize) {
-          in1.readNBytes(buffer1, 0, bufferSize);
-          in2.readNBytes(buffer2, 0, bufferSize);
+        for (long totalRead = 0; totalRead < size; totalRead += BUFFER_SIZE) {
+          ByteBuffer buffer1 = in1.next();
+          ByteBuffer buffer2 = in2.next();
 
-          for (int i = 0; i < bufferSize; i++) {
-            if (buffer1[i] != buffer2[i]) {
+          int length = Math.max(buffer1.limit(), buffer2.limit());
+          for (int i = 0; i < length; i++) {
+            byte b1 = i < buffer1.limit() ? buffer1.get(i) : 0;
+            byte b2 = i < buffer2.limit() ? buffer2.get(i) : 0;
+            if (b1 != b2) {
               mismatchCount++;
               if (mismatchCount > allowedMismatchBytes) {
                 return false;
@@ -66,5 +73,70 @@ public final class Files2 {
     }
   }
 
+  /**
+   * Finds the position of the first mismatched byte in the contents of two files.
+   *
+   * <p>Same as {@link Files#mismatch}, except files are read via {@link DirectIo} where possible.
+   *
+   * @param path1 first file
+   * @param path2 second file
+   * @return position of the first mismatch or {@code -1} if there is no mismatch
+   * @throws IOException if an I/O error occurs
+   */
+  public static long mismatch(Path path1, Path path2) throws IOException {
+    if (Files.isSameFile(path1, path2)) {
+      return -1;
+    }
+
+    try (ChunkReader in1 = new ChunkReader(path1);
+        ChunkReader in2 = new ChunkReader(path2)) {
+
+      for (long position = 0; ; ) {
+        ByteBuffer buffer1 = in1.next();
+        ByteBuffer buffer2 = in2.next();
+
+        int length = Math.min(buffer1.limit(), buffer2.limit());
+        int mismatch = buffer1.slice(0, length).mismatch(buffer2.slice(0, length));
+        if (mismatch != -1) {
+          return position + mismatch;
+        }
+        if (buffer1.limit() != buffer2.limit()) {
+          return position + length;
+        }
+        if (length == 0) {
+          return -1;
+        }
+        position += length;
+      }
+    }
+  }
+
+  /** Reads a file sequentially, in chunks. */
+  private static final class ChunkReader implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = DirectIo.allocate(BUFFER_SIZE);
+
+    ChunkReader(Path path) throws IOException {
+      channel = DirectIo.openPreferringDirect(path, READ);
+    }
+
+    /** Reads the next chunk. Returns a buffer ready to be read, empty if at the end of the file. */
+    ByteBuffer next() throws IOException {
+      buffer.clear();
+      // (direct I/O can't read from the unaligned position at the end of the file)
+      while (buffer.hasRemaining() && channel.position() < channel.size()) {
+        if (channel.read(buffer) < 0) {
+          break;
+        }
+      }
+      return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
   private Files2() {}
 }
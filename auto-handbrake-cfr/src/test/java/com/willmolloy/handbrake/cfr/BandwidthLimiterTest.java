@@ -0,0 +1,56 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Stopwatch;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BandwidthLimiterTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class BandwidthLimiterTest {
+
+  private final AtomicLong bytesPerSecond = new AtomicLong();
+
+  private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(bytesPerSecond::get);
+
+  @Test
+  void unlimited_doesNotBlock() {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    for (int i = 0; i < 1000; i++) {
+      bandwidthLimiter.acquire(Integer.MAX_VALUE);
+    }
+
+    assertThat(stopwatch.elapsed()).isLessThan(Duration.ofSeconds(1));
+  }
+
+  @Test
+  void limited_blocksOnceIdleCapacityIsUsed() {
+    bytesPerSecond.set(1000);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    // up to 1 second of idle capacity is stored, the rest has to wait
+    for (int i = 0; i < 3; i++) {
+      bandwidthLimiter.acquire(1000);
+    }
+
+    assertThat(stopwatch.elapsed()).isAtLeast(Duration.ofMillis(900));
+  }
+
+  @Test
+  void limitCanBeAdjustedWhileRunning() {
+    bytesPerSecond.set(1);
+    bandwidthLimiter.acquire(1);
+
+    bytesPerSecond.set(0);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    bandwidthLimiter.acquire(Integer.MAX_VALUE);
+
+    assertThat(stopwatch.elapsed()).isLessThan(Duration.ofSeconds(1));
+  }
+}
@@ -0,0 +1,468 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.willmolloy.handbrake.core.WatchdogLimits;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Properties;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ConfigTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class ConfigTest {
+
+  private FileSystem fileSystem;
+
+  @BeforeEach
+  void setUp() {
+    fileSystem = Jimfs.newFileSystem(Configuration.unix());
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    fileSystem.close();
+  }
+
+  @Test
+  void defaults() {
+    Config config = Config.defaults();
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/archive/file.mp4"))).isEqualTo(1);
+    assertThat(config.archiveConcurrency()).isEqualTo(1);
+    assertThat(config.publishConcurrency()).isEqualTo(1);
+    assertThat(config.bandwidthLimit(LocalTime.NOON)).isEqualTo(0);
+    assertThat(config.watchdogLimits()).isEqualTo(WatchdogLimits.defaults());
+    assertThat(config.stageWait()).isEqualTo(Duration.ofMinutes(10));
+    assertThat(config.spaceOutputRatio()).isEqualTo(2);
+    assertThat(config.spaceProxyRatio()).isEqualTo(0.25);
+    assertThat(config.encodeProfile()).isEqualTo(Config.EncodeProfile.STANDARD);
+    assertThat(config.encodeRate()).isEqualTo(0);
+    assertThat(config.encodeAudio()).isEqualTo(Config.AudioMode.PRESET);
+    assertThat(config.encodeProxyFirst()).isFalse();
+    assertThat(config.speedBitrate()).isEqualTo(0);
+    assertThat(config.speedCache()).isEmpty();
+    assertThat(config.scanCache()).isEmpty();
+    assertThat(config.encodeThreads()).isEqualTo(0);
+    assertThat(config.encodeScheduling()).isEmpty();
+    assertThat(config.encodeCoreGroups()).isEmpty();
+    assertThat(config.encodeEngine(fileSystem.getPath("/input/file.mp4")))
+        .isEqualTo(Config.Engine.HANDBRAKE);
+    assertThat(config.ffmpegPath()).isEqualTo("ffmpeg");
+  }
+
+  @Test
+  void loadsPropertiesFile() throws IOException {
+    Path file =
+        Files.writeString(fileSystem.getPath("/config.properties"), "archive.streams = 4\n");
+
+    Config config = Config.load(file);
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/archive/file.mp4"))).isEqualTo(4);
+  }
+
+  @Test
+  void reloadsPropertiesFileWhenModified() throws IOException {
+    Path file =
+        Files.writeString(fileSystem.getPath("/config.properties"), "archive.streams = 4\n");
+    Config config = Config.load(file);
+
+    Files.writeString(file, "archive.streams = 8\n");
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+    config.reload();
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/archive/file.mp4"))).isEqualTo(8);
+  }
+
+  @Test
+  void reloadRetainsPreviousConfigOnError() throws IOException {
+    Path file =
+        Files.writeString(fileSystem.getPath("/config.properties"), "archive.streams = 4\n");
+    Config config = Config.load(file);
+
+    Files.delete(file);
+    config.reload();
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/archive/file.mp4"))).isEqualTo(4);
+  }
+
+  @Test
+  void reloadRetainsPreviousConfigOnInvalidSetting() throws IOException {
+    Path file =
+        Files.writeString(fileSystem.getPath("/config.properties"), "archive.streams = 4\n");
+    Config config = Config.load(file);
+
+    Files.writeString(file, "archive.streams = 8\nencode.threads = many\n");
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+    config.reload();
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/archive/file.mp4"))).isEqualTo(4);
+    assertThat(config.encodeThreads()).isEqualTo(0);
+  }
+
+  @Test
+  void reloadRetainsPreviousConfigOnInvalidPerDirectorySetting() throws IOException {
+    Path file =
+        Files.writeString(fileSystem.getPath("/config.properties"), "archive.streams = 4\n");
+    Config config = Config.load(file);
+
+    Files.writeString(file, "archive.streams = 8\narchive.streams./nas = 0\n");
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+    config.reload();
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/nas/file.mp4"))).isEqualTo(4);
+  }
+
+  @Test
+  void loadInvalidSettingThrowsException() throws IOException {
+    Path file =
+        Files.writeString(
+            fileSystem.getPath("/config.properties"),
+            "bandwidth.limit.schedule = 00:00-00:01=0, 09:00-18:00=fast\n");
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> Config.load(file));
+
+    assertThat(thrown).hasMessageThat().contains("fast");
+  }
+
+  @Test
+  void tuningProfileProvidesDefaults() throws IOException {
+    Files.writeString(
+        fileSystem.getPath("/tuning.properties"), "encode.cores = 0-3;4-7\nencode.threads = 4\n");
+    Path file =
+        Files.writeString(
+            fileSystem.getPath("/config.properties"), "tuning.profile = tuning.properties\n");
+
+    Config config = Config.load(file);
+
+    assertThat(config.encodeCoreGroups())
+        .containsExactly(Set.of(0, 1, 2, 3), Set.of(4, 5, 6, 7))
+        .inOrder();
+    assertThat(config.encodeThreads()).isEqualTo(4);
+  }
+
+  @Test
+  void propertiesFileOverridesTuningProfile() throws IOException {
+    Files.writeString(fileSystem.getPath("/tuning.properties"), "encode.threads = 4\n");
+    Path file =
+        Files.writeString(
+            fileSystem.getPath("/config.properties"),
+            "tuning.profile = tuning.properties\nencode.threads = 2\n");
+
+    Config config = Config.load(file);
+
+    assertThat(config.encodeThreads()).isEqualTo(2);
+  }
+
+  @Test
+  void missingTuningProfileIsIgnored() throws IOException {
+    Path file =
+        Files.writeString(
+            fileSystem.getPath("/config.properties"),
+            "tuning.profile = tuning.properties\narchive.streams = 4\n");
+
+    Config config = Config.load(file);
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/archive/file.mp4"))).isEqualTo(4);
+    assertThat(config.encodeThreads()).isEqualTo(0);
+  }
+
+  @Test
+  void bandwidthLimitSchedule() {
+    Properties properties = new Properties();
+    properties.setProperty("bandwidth.limit", "1000");
+    properties.setProperty("bandwidth.limit.schedule", "09:00-17:00=100, 22:00-06:00=0");
+    Config config = Config.of(properties);
+
+    assertThat(config.bandwidthLimit(LocalTime.of(8, 59))).isEqualTo(1000);
+    assertThat(config.bandwidthLimit(LocalTime.of(9, 0))).isEqualTo(100);
+    assertThat(config.bandwidthLimit(LocalTime.of(16, 59))).isEqualTo(100);
+    assertThat(config.bandwidthLimit(LocalTime.of(17, 0))).isEqualTo(1000);
+    assertThat(config.bandwidthLimit(LocalTime.of(23, 0))).isEqualTo(0);
+    assertThat(config.bandwidthLimit(LocalTime.of(1, 0))).isEqualTo(0);
+  }
+
+  @Test
+  void invalidBandwidthLimitScheduleThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("bandwidth.limit.schedule", "09:00=100");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> config.bandwidthLimit(LocalTime.NOON));
+
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("Invalid bandwidth.limit.schedule window: 09:00=100");
+  }
+
+  @Test
+  void perDirectorySettingsUseLongestMatchingDirectory() {
+    Properties properties = new Properties();
+    properties.setProperty("archive.streams", "2");
+    properties.setProperty("archive.streams./nas", "4");
+    properties.setProperty("archive.streams./nas/slow", "8");
+    Config config = Config.of(properties);
+
+    assertThat(config.archiveStreams(fileSystem.getPath("/local/file.mp4"))).isEqualTo(2);
+    assertThat(config.archiveStreams(fileSystem.getPath("/nas/file.mp4"))).isEqualTo(4);
+    assertThat(config.archiveStreams(fileSystem.getPath("/nas/slow/file.mp4"))).isEqualTo(8);
+    assertThat(config.archiveStreams(fileSystem.getPath("/nasty/file.mp4"))).isEqualTo(2);
+  }
+
+  @Test
+  void archiveStreamsDirectoryIsLongestMatchingDirectory_otherwiseRoot() {
+    Properties properties = new Properties();
+    properties.setProperty("archive.streams", "2");
+    properties.setProperty("archive.streams./nas", "4");
+    Config config = Config.of(properties);
+
+    assertThat(config.archiveStreamsDirectory(fileSystem.getPath("/local/show/file.mp4")))
+        .isEqualTo(fileSystem.getPath("/"));
+    assertThat(config.archiveStreamsDirectory(fileSystem.getPath("/nas/show/file.mp4")))
+        .isEqualTo(fileSystem.getPath("/nas"));
+  }
+
+  @Test
+  void invalidStreamsThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("archive.streams", "0");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> config.archiveStreams(fileSystem.getPath("/file.mp4")));
+
+    assertThat(thrown).hasMessageThat().isEqualTo("archive.streams (0) must be positive");
+  }
+
+  @Test
+  void watchdogLimits() {
+    Properties properties = new Properties();
+    properties.setProperty("watchdog.stall", "0");
+    properties.setProperty("watchdog.duration.factor", "1.5");
+    Config config = Config.of(properties);
+
+    assertThat(config.watchdogLimits()).isEqualTo(new WatchdogLimits(Duration.ZERO, 1.5));
+  }
+
+  @Test
+  void invalidWatchdogStallThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("watchdog.stall", "-1");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::watchdogLimits);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("watchdog.stall (-1) must not be negative");
+  }
+
+  @Test
+  void encodeProfile() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.profile", "Editing");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeProfile()).isEqualTo(Config.EncodeProfile.EDITING);
+  }
+
+  @Test
+  void invalidEncodeProfileThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.profile", "fast");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::encodeProfile);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("Invalid encode.profile: fast");
+  }
+
+  @Test
+  void encodeRate() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.rate", "59.94");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeRate()).isEqualTo(59.94);
+  }
+
+  @Test
+  void invalidEncodeRateThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.rate", "0.5");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::encodeRate);
+
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("encode.rate (0.5) must be 0 or between 1 and 1000");
+  }
+
+  @Test
+  void encodeAudio() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.audio", "Passthrough");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeAudio()).isEqualTo(Config.AudioMode.PASSTHROUGH);
+  }
+
+  @Test
+  void invalidEncodeAudioThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.audio", "copy");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::encodeAudio);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("Invalid encode.audio: copy");
+  }
+
+  @Test
+  void encodeProxyFirst() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.proxy", "true");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeProxyFirst()).isTrue();
+  }
+
+  @Test
+  void speedBitrate() {
+    Properties properties = new Properties();
+    properties.setProperty("speed.bitrate", "8000");
+    Config config = Config.of(properties);
+
+    assertThat(config.speedBitrate()).isEqualTo(8000);
+  }
+
+  @Test
+  void negativeSpeedBitrateThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("speed.bitrate", "-1");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::speedBitrate);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("speed.bitrate (-1) must not be negative");
+  }
+
+  @Test
+  void encodeThreads() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.threads", "6");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeThreads()).isEqualTo(6);
+  }
+
+  @Test
+  void negativeEncodeThreadsThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.threads", "-1");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::encodeThreads);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("encode.threads (-1) must not be negative");
+  }
+
+  @Test
+  void encodeScheduling() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.nice", "10");
+    properties.setProperty("encode.ionice", "Best-Effort");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeScheduling())
+        .containsExactly(Scheduling.nice(10), Scheduling.ioClass(Scheduling.IoClass.BEST_EFFORT))
+        .inOrder();
+  }
+
+  @Test
+  void invalidEncodeIoniceThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.ionice", "fast");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::encodeScheduling);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("Invalid encode.ionice: fast");
+  }
+
+  @Test
+  void encodeCoreGroups() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.cores", "0-3, 8; 4-7,9");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeCoreGroups())
+        .containsExactly(Set.of(0, 1, 2, 3, 8), Set.of(4, 5, 6, 7, 9))
+        .inOrder();
+  }
+
+  @Test
+  void overlappingEncodeCoreGroupsThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.cores", "0-3;3-7");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, config::encodeCoreGroups);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("encode.cores (0-3;3-7) repeats CPU 3");
+  }
+
+  @Test
+  void encodeEngine() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.engine./input/gameplay", "FFmpeg");
+    properties.setProperty("ffmpeg.path", "/usr/local/bin/ffmpeg");
+    Config config = Config.of(properties);
+
+    assertThat(config.encodeEngine(fileSystem.getPath("/input/file.mp4")))
+        .isEqualTo(Config.Engine.HANDBRAKE);
+    assertThat(config.encodeEngine(fileSystem.getPath("/input/gameplay/file.mp4")))
+        .isEqualTo(Config.Engine.FFMPEG);
+    assertThat(config.ffmpegPath()).isEqualTo("/usr/local/bin/ffmpeg");
+  }
+
+  @Test
+  void invalidEncodeEngineThrowsException() {
+    Properties properties = new Properties();
+    properties.setProperty("encode.engine", "fast");
+    Config config = Config.of(properties);
+
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> config.encodeEngine(fileSystem.getPath("/file.mp4")));
+
+    assertThat(thrown).hasMessageThat().isEqualTo("Invalid encode.engine: fast");
+  }
+}
@@ -0,0 +1,195 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.io.Resources;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * DiskSpaceGuardTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class DiskSpaceGuardTest {
+
+  private FileSystem fileSystem;
+  private Path inputDirectory;
+  private Path testVideo;
+
+  private UnencodedVideo.Factory factory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    fileSystem =
+        Jimfs.newFileSystem(Configuration.unix().toBuilder().setMaxSize(8 * 1024 * 1024).build());
+
+    inputDirectory = Files.createDirectories(fileSystem.getPath("/input"));
+    Path outputDirectory = Files.createDirectories(fileSystem.getPath("/output"));
+    Path archiveDirectory = Files.createDirectories(fileSystem.getPath("/archive"));
+
+    testVideo = Path.of(Resources.getResource("Big_Buck_Bunny_360_10s_1MB.mp4").toURI());
+
+    factory = new UnencodedVideo.Factory(inputDirectory, outputDirectory, archiveDirectory);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    fileSystem.close();
+  }
+
+  @Test
+  void tryReserve_whenRoom_returnsTrue() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("2");
+    UnencodedVideo video = video("video1.mp4");
+
+    // When
+    boolean result = diskSpaceGuard.tryReserve(video);
+
+    // Then
+    assertThat(result).isTrue();
+  }
+
+  @Test
+  void tryReserve_whenNoRoomForEstimatedOutput_returnsFalse() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("100");
+    UnencodedVideo video = video("video1.mp4");
+
+    // When
+    boolean result = diskSpaceGuard.tryReserve(video);
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @Test
+  void tryReserve_accountsForRunningJobs_untilReleased() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("4");
+    UnencodedVideo video1 = video("video1.mp4");
+    UnencodedVideo video2 = video("video2.mp4");
+    assertThat(diskSpaceGuard.tryReserve(video1)).isTrue();
+
+    // When & Then
+    assertThat(diskSpaceGuard.tryReserve(video2)).isFalse();
+    diskSpaceGuard.release(video1);
+    assertThat(diskSpaceGuard.tryReserve(video2)).isTrue();
+  }
+
+  @Test
+  void tryReserve_accountsForRunningJobsEncodedOutput_untilPublished() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("4");
+    UnencodedVideo video1 = video("video1.mp4");
+    UnencodedVideo video2 = video("video2.mp4");
+    assertThat(diskSpaceGuard.tryReserve(video1)).isTrue();
+    Files.write(video1.encodedPath(), new byte[1]);
+
+    // When & Then
+    assertThat(diskSpaceGuard.tryReserve(video2)).isFalse();
+    diskSpaceGuard.published(video1);
+    assertThat(diskSpaceGuard.tryReserve(video2)).isTrue();
+  }
+
+  @Test
+  void reserve_whenNoRoomEvenWithoutOtherJobs_returnsFalseWithoutWaiting() throws Exception {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("100");
+    UnencodedVideo video = video("video1.mp4");
+
+    // When
+    boolean result = diskSpaceGuard.reserve(video);
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @Test
+  void estimateEncodedSize_usesActualEncodedSizes_onceKnown() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("2");
+    UnencodedVideo video = video("video1.mp4");
+    long sourceSize = Files.size(video.originalPath());
+    assertThat(diskSpaceGuard.estimateEncodedSize(1000, false)).isEqualTo(2000);
+
+    // When
+    diskSpaceGuard.tryReserve(video);
+    Files.write(video.encodedPath(), new byte[(int) (sourceSize / 2)]);
+    diskSpaceGuard.published(video);
+    diskSpaceGuard.release(video);
+
+    // Then
+    assertThat(diskSpaceGuard.estimateEncodedSize(1000, false)).isEqualTo(500);
+  }
+
+  @Test
+  void estimateEncodedSize_ignoresFailedEncodes() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("2");
+    UnencodedVideo video = video("video1.mp4");
+    long sourceSize = Files.size(video.originalPath());
+
+    // When
+    diskSpaceGuard.tryReserve(video);
+    // e.g. a partial output, or an existing output which differs
+    Files.write(video.encodedPath(), new byte[(int) (sourceSize / 2)]);
+    diskSpaceGuard.release(video);
+
+    // Then
+    assertThat(diskSpaceGuard.estimateEncodedSize(1000, false)).isEqualTo(2000);
+  }
+
+  @Test
+  void estimateEncodedSize_ignoresProxySizes() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("2");
+    UnencodedVideo proxy = video("video1.mp4").proxy();
+    long sourceSize = Files.size(proxy.originalPath());
+
+    // When
+    diskSpaceGuard.tryReserve(proxy);
+    Files.write(proxy.encodedPath(), new byte[(int) (sourceSize / 2)]);
+    diskSpaceGuard.published(proxy);
+
+    // Then
+    assertThat(diskSpaceGuard.estimateEncodedSize(1000, false)).isEqualTo(2000);
+  }
+
+  @Test
+  void estimateEncodedSize_ofProxies_usesProxyRatio_thenActualProxySizes() throws IOException {
+    // Given
+    DiskSpaceGuard diskSpaceGuard = diskSpaceGuard("2");
+    UnencodedVideo proxy = video("video1.mp4").proxy();
+    long sourceSize = Files.size(proxy.originalPath());
+    assertThat(diskSpaceGuard.estimateEncodedSize(1000, true)).isEqualTo(250);
+
+    // When
+    diskSpaceGuard.tryReserve(proxy);
+    Files.write(proxy.encodedPath(), new byte[(int) (sourceSize / 10)]);
+    diskSpaceGuard.published(proxy);
+
+    // Then
+    assertThat(diskSpaceGuard.estimateEncodedSize(1000, true)).isEqualTo(100);
+  }
+
+  private DiskSpaceGuard diskSpaceGuard(String outputRatio) {
+    Properties properties = new Properties();
+    properties.setProperty("space.reserve", "0");
+    properties.setProperty("space.output.ratio", outputRatio);
+    return new DiskSpaceGuard(Config.of(properties));
+  }
+
+  private UnencodedVideo video(String name) throws IOException {
+    return factory.newUnencodedVideo(Files.copy(testVideo, inputDirectory.resolve(name)));
+  }
+}
@@ -0,0 +1,330 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.io.Resources;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.google.common.truth.StreamSubject;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * FileTransferTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class FileTransferTest {
+
+  // separate file systems simulate separate file stores (e.g. local disk and NAS)
+  private FileSystem sourceFileSystem;
+  private FileSystem targetFileSystem;
+  private FileSystem target2FileSystem;
+  private Path testVideo;
+
+  private final FileTransfer fileTransfer = new FileTransfer(Config.defaults());
+
+  @BeforeEach
+  void setUp() throws Exception {
+    sourceFileSystem = Jimfs.newFileSystem(Configuration.unix());
+    targetFileSystem = Jimfs.newFileSystem(Configuration.unix());
+    target2FileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    testVideo = Path.of(Resources.getResource("Big_Buck_Bunny_360_10s_1MB.mp4").toURI());
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    sourceFileSystem.close();
+    targetFileSystem.close();
+    target2FileSystem.close();
+  }
+
+  @Test
+  void move_withinFileStore_renames() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = sourceFileSystem.getPath("/archive/file.mp4.part");
+    Path target = sourceFileSystem.getPath("/archive/file.mp4");
+    Files.createDirectories(target.getParent());
+
+    // When
+    fileTransfer.move(source, tempTarget, target);
+
+    // Then
+    assertThatDirectory(sourceFileSystem).containsExactly(target);
+    assertThat(Files.mismatch(testVideo, target)).isEqualTo(-1);
+  }
+
+  @Test
+  void move_acrossFileStores_copiesToTarget_andDeletesSource() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = targetFileSystem.getPath("/archive/file.mp4.part");
+    Path target = targetFileSystem.getPath("/archive/file.mp4");
+    Files.createDirectories(target.getParent());
+
+    // When
+    fileTransfer.move(source, tempTarget, target);
+
+    // Then
+    assertThatDirectory(sourceFileSystem).isEmpty();
+    assertThatDirectory(targetFileSystem).containsExactly(target);
+    assertThat(Files.mismatch(testVideo, target)).isEqualTo(-1);
+  }
+
+  @Test
+  void copy_retainsSource_andLastModifiedTime() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    FileTime lastModifiedTime = FileTime.fromMillis(1_000_000);
+    Files.setLastModifiedTime(source, lastModifiedTime);
+    Path tempTarget = targetFileSystem.getPath("/file.mp4.part");
+    Path target = targetFileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.copy(source, tempTarget, target);
+
+    // Then
+    assertThatDirectory(sourceFileSystem).containsExactly(source);
+    assertThatDirectory(targetFileSystem).containsExactly(target);
+    assertThat(Files.mismatch(source, target)).isEqualTo(-1);
+    assertThat(Files.getLastModifiedTime(target)).isEqualTo(lastModifiedTime);
+  }
+
+  @Test
+  void copy_emptyFile() throws IOException {
+    // Given
+    Path source = Files.createFile(sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = targetFileSystem.getPath("/file.mp4.part");
+    Path target = targetFileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.copy(source, tempTarget, target);
+
+    // Then
+    assertThatDirectory(targetFileSystem).containsExactly(target);
+    assertThat(Files.size(target)).isEqualTo(0);
+  }
+
+  @Test
+  void copy_withSeveralStreams() throws IOException {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("archive.streams", "4");
+    FileTransfer fileTransfer = new FileTransfer(Config.of(properties));
+
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = targetFileSystem.getPath("/file.mp4.part");
+    Path target = targetFileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.copy(source, tempTarget, target);
+
+    // Then
+    assertThatDirectory(targetFileSystem).containsExactly(target);
+    assertThat(Files.mismatch(source, target)).isEqualTo(-1);
+  }
+
+  @Test
+  void copy_toDirectoriesSharingFileStore_limitsStoreToLeastStreams() throws IOException {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("archive.streams./fast", "8");
+    properties.setProperty("archive.streams./slow", "2");
+    FileTransfer fileTransfer = new FileTransfer(Config.of(properties));
+
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path fastTarget = targetFileSystem.getPath("/fast/file.mp4");
+    Path slowTarget = targetFileSystem.getPath("/slow/file.mp4");
+    Files.createDirectories(fastTarget.getParent());
+    Files.createDirectories(slowTarget.getParent());
+
+    // When
+    fileTransfer.copy(source, fastTarget.resolveSibling("file.mp4.part"), fastTarget);
+    int fastOnly = fileTransfer.fileStoreStreams(fastTarget);
+    fileTransfer.copy(source, slowTarget.resolveSibling("file.mp4.part"), slowTarget);
+
+    // Then
+    assertThat(fastOnly).isEqualTo(8);
+    assertThat(fileTransfer.fileStoreStreams(fastTarget)).isEqualTo(2);
+    assertThat(fileTransfer.fileStoreStreams(slowTarget)).isEqualTo(2);
+    assertThat(Files.mismatch(source, fastTarget)).isEqualTo(-1);
+    assertThat(Files.mismatch(source, slowTarget)).isEqualTo(-1);
+  }
+
+  @Test
+  void copy_afterReloadRaisingStreams_raisesStoreLimit() throws IOException {
+    // Given
+    Path configFile =
+        Files.writeString(sourceFileSystem.getPath("/config.properties"), "archive.streams = 2\n");
+    Config config = Config.load(configFile);
+    FileTransfer fileTransfer = new FileTransfer(config);
+
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path target1 = targetFileSystem.getPath("/show1/file.mp4");
+    Path target2 = targetFileSystem.getPath("/show2/file.mp4");
+    Files.createDirectories(target1.getParent());
+    Files.createDirectories(target2.getParent());
+    fileTransfer.copy(source, target1.resolveSibling("file.mp4.part"), target1);
+
+    // When
+    Files.writeString(configFile, "archive.streams = 8\n");
+    Files.setLastModifiedTime(configFile, FileTime.fromMillis(0));
+    config.reload();
+    fileTransfer.copy(source, target2.resolveSibling("file.mp4.part"), target2);
+
+    // Then
+    assertThat(fileTransfer.fileStoreStreams(target1)).isEqualTo(8);
+    assertThat(fileTransfer.fileStoreStreams(target2)).isEqualTo(8);
+    assertThat(Files.mismatch(source, target2)).isEqualTo(-1);
+  }
+
+  @Test
+  void copy_withDirectIo() throws IOException {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("archive.direct", "true");
+    FileTransfer fileTransfer = new FileTransfer(Config.of(properties));
+
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = targetFileSystem.getPath("/file.mp4.part");
+    Path target = targetFileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.copy(source, tempTarget, target);
+
+    // Then
+    assertThatDirectory(targetFileSystem).containsExactly(target);
+    assertThat(Files.mismatch(source, target)).isEqualTo(-1);
+  }
+
+  @Test
+  void copy_toSeveralTargets_replicatesToEachTarget() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    FileTime lastModifiedTime = FileTime.fromMillis(1_000_000);
+    Files.setLastModifiedTime(source, lastModifiedTime);
+    Path tempTarget = targetFileSystem.getPath("/file.mp4.part");
+    Path target = targetFileSystem.getPath("/file.mp4");
+    Path tempTarget2 = target2FileSystem.getPath("/file.mp4.part");
+    Path target2 = target2FileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.copy(source, List.of(tempTarget, tempTarget2), List.of(target, target2));
+
+    // Then
+    assertThatDirectory(sourceFileSystem).containsExactly(source);
+    assertThatDirectory(targetFileSystem).containsExactly(target);
+    assertThatDirectory(target2FileSystem).containsExactly(target2);
+    assertThat(Files.mismatch(source, target)).isEqualTo(-1);
+    assertThat(Files.mismatch(source, target2)).isEqualTo(-1);
+    assertThat(Files.getLastModifiedTime(target2)).isEqualTo(lastModifiedTime);
+  }
+
+  @Test
+  void copy_toOneTarget_viaReplication_verifiesAndCommitsTarget() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = targetFileSystem.getPath("/file.mp4.part");
+    Path target = targetFileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.copy(source, List.of(tempTarget), List.of(target));
+
+    // Then
+    assertThatDirectory(sourceFileSystem).containsExactly(source);
+    assertThatDirectory(targetFileSystem).containsExactly(target);
+    assertThat(Files.mismatch(source, target)).isEqualTo(-1);
+  }
+
+  @Test
+  void move_toOneTargetWithinFileStore_viaReplication_renames() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = sourceFileSystem.getPath("/archive/file.mp4.part");
+    Path target = sourceFileSystem.getPath("/archive/file.mp4");
+    Files.createDirectories(target.getParent());
+
+    // When
+    fileTransfer.move(source, List.of(tempTarget), List.of(target));
+
+    // Then
+    assertThatDirectory(sourceFileSystem).containsExactly(target);
+    assertThat(Files.mismatch(testVideo, target)).isEqualTo(-1);
+  }
+
+  @Test
+  void move_toSeveralTargets_copiesToEachTarget_andDeletesSource() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = targetFileSystem.getPath("/file.mp4.part");
+    Path target = targetFileSystem.getPath("/file.mp4");
+    Path tempTarget2 = target2FileSystem.getPath("/file.mp4.part");
+    Path target2 = target2FileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.move(source, List.of(tempTarget, tempTarget2), List.of(target, target2));
+
+    // Then
+    assertThatDirectory(sourceFileSystem).isEmpty();
+    assertThat(Files.mismatch(testVideo, target)).isEqualTo(-1);
+    assertThat(Files.mismatch(testVideo, target2)).isEqualTo(-1);
+  }
+
+  @Test
+  void move_toSeveralTargets_renamesWithinFileStore() throws IOException {
+    // Given
+    Path source = Files.copy(testVideo, sourceFileSystem.getPath("/file.mp4"));
+    Path tempTarget = sourceFileSystem.getPath("/archive/file.mp4.part");
+    Path target = sourceFileSystem.getPath("/archive/file.mp4");
+    Files.createDirectories(target.getParent());
+    Path tempTarget2 = targetFileSystem.getPath("/file.mp4.part");
+    Path target2 = targetFileSystem.getPath("/file.mp4");
+
+    // When
+    fileTransfer.move(source, List.of(tempTarget, tempTarget2), List.of(target, target2));
+
+    // Then
+    assertThatDirectory(sourceFileSystem).containsExactly(target);
+    assertThatDirectory(targetFileSystem).containsExactly(target2);
+    assertThat(Files.mismatch(testVideo, target)).isEqualTo(-1);
+    assertThat(Files.mismatch(testVideo, target2)).isEqualTo(-1);
+  }
+
+  @Test
+  void ranges_splitsLargeFilesIntoOneChunkAlignedRangePerStream() {
+    long size = 1024L * 1024 * 1024 + 1;
+
+    assertThat(FileTransfer.ranges(size, 4))
+        .containsExactly(
+            new FileTransfer.Range(0, 276824064),
+            new FileTransfer.Range(276824064, 553648128),
+            new FileTransfer.Range(553648128, 830472192),
+            new FileTransfer.Range(830472192, size))
+        .inOrder();
+  }
+
+  @Test
+  void ranges_doesNotSplitSmallFiles() {
+    assertThat(FileTransfer.ranges(1_000_000, 4))
+        .containsExactly(new FileTransfer.Range(0, 1_000_000));
+    assertThat(FileTransfer.ranges(0, 4)).isEmpty();
+  }
+
+  private static StreamSubject assertThatDirectory(FileSystem fileSystem) throws IOException {
+    try (Stream<Path> testFiles = Files.walk(fileSystem.getPath("/"))) {
+      return assertThat(testFiles.filter(Files::isRegularFile));
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.willmolloy.handbrake.core.EncodeResult;
+import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Range;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * HostCalibratorTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@ExtendWith(MockitoExtension.class)
+class HostCalibratorTest {
+
+  @Mock private HandBrake mockHandBrake;
+
+  @TempDir private Path tempDirectory;
+
+  @Test
+  void grid_isConcurrencyTimesThreads() {
+    HostCalibrator hostCalibrator = new HostCalibrator(mockHandBrake, 8);
+
+    assertThat(hostCalibrator.grid())
+        .containsExactly(
+            new HostCalibrator.Tuning(1, 0),
+            new HostCalibrator.Tuning(1, 8),
+            new HostCalibrator.Tuning(1, 16),
+            new HostCalibrator.Tuning(2, 0),
+            new HostCalibrator.Tuning(2, 4),
+            new HostCalibrator.Tuning(2, 8),
+            new HostCalibrator.Tuning(4, 0),
+            new HostCalibrator.Tuning(4, 2),
+            new HostCalibrator.Tuning(4, 4))
+        .inOrder();
+  }
+
+  @Test
+  void grid_withSingleCpu_isNotConcurrent() {
+    HostCalibrator hostCalibrator = new HostCalibrator(mockHandBrake, 1);
+
+    assertThat(hostCalibrator.grid())
+        .containsExactly(
+            new HostCalibrator.Tuning(1, 0),
+            new HostCalibrator.Tuning(1, 1),
+            new HostCalibrator.Tuning(1, 2))
+        .inOrder();
+  }
+
+  @Test
+  void tuning_splitsCpusIntoGroups() {
+    HostCalibrator.Tuning tuning = new HostCalibrator.Tuning(2, 4);
+
+    assertThat(tuning.coreGroups(8)).containsExactly(Set.of(0, 1, 2, 3), Set.of(4, 5, 6, 7));
+    assertThat(tuning.cores(8)).isEqualTo("0-3;4-7");
+    assertThat(new HostCalibrator.Tuning(1, 0).cores(8)).isEmpty();
+  }
+
+  @Test
+  void calibrate_writesBestTuningToProfile() throws IOException {
+    // Given
+    // 100 fps alone, 30 fps each when concurrent, but 70 fps each with 2 encodes of 4 threads
+    Set<Option> halves =
+        Set.of(Scheduling.cpus(Set.of(0, 1, 2, 3)), Scheduling.cpus(Set.of(4, 5, 6, 7)));
+    when(mockHandBrake.encodeAsync(any(), any(), any(Option[].class)))
+        .thenAnswer(
+            invocation -> {
+              List<Option> options = Arrays.asList((Option[]) invocation.getRawArguments()[2]);
+              double fps = 100;
+              if (options.stream().anyMatch(Scheduling.class::isInstance)) {
+                fps =
+                    options.stream().anyMatch(halves::contains)
+                            && options.contains(
+                                EncoderTuning.settings(EncoderTuning.Setting.threads(4)))
+                        ? 70
+                        : 30;
+              }
+              return CompletableFuture.completedFuture(
+                  new EncodeResult(
+                      0, Duration.ofSeconds(1), OptionalDouble.of(fps), 0, Optional.empty()));
+            });
+    HostCalibrator hostCalibrator = new HostCalibrator(mockHandBrake, 8);
+    Path profileFile = tempDirectory.resolve("tuning.properties");
+
+    // When
+    HostCalibrator.Tuning best =
+        hostCalibrator.calibrate(Files.createFile(tempDirectory.resolve("video.mp4")), profileFile);
+
+    // Then
+    assertThat(best).isEqualTo(new HostCalibrator.Tuning(2, 4));
+    Properties profile = new Properties();
+    try (InputStream in = Files.newInputStream(profileFile)) {
+      profile.load(in);
+    }
+    assertThat(profile).containsExactly("encode.cores", "0-3;4-7", "encode.threads", "4");
+    // 3 single encodes, then 2 and 4 concurrent encodes
+    verify(mockHandBrake, times(3 + 3 * 2 + 3 * 4))
+        .encodeAsync(any(), any(), any(Option[].class));
+  }
+
+  @Test
+  void calibrate_encodesShortSamples() throws IOException {
+    // Given
+    when(mockHandBrake.encodeAsync(any(), any(), any(Option[].class)))
+        .thenAnswer(
+            invocation -> {
+              List<Option> options = Arrays.asList((Option[]) invocation.getRawArguments()[2]);
+              assertThat(options).contains(Range.of(Duration.ZERO, Duration.ofSeconds(10)));
+              return CompletableFuture.completedFuture(
+                  new EncodeResult(
+                      0, Duration.ofSeconds(1), OptionalDouble.of(60), 0, Optional.empty()));
+            });
+    HostCalibrator hostCalibrator = new HostCalibrator(mockHandBrake, 1);
+
+    // When
+    hostCalibrator.calibrate(
+        Files.createFile(tempDirectory.resolve("video.mp4")),
+        tempDirectory.resolve("tuning.properties"));
+
+    // Then
+    verify(mockHandBrake, times(3)).encodeAsync(any(), any(), any(Option[].class));
+  }
+
+  @Test
+  void calibrate_whenEncodeFails_throwsException_andDoesNotWriteProfile() throws IOException {
+    // Given
+    when(mockHandBrake.encodeAsync(any(), any(), any(Option[].class)))
+        .thenReturn(
+            CompletableFuture.completedFuture(
+                new EncodeResult(
+                    1, Duration.ofSeconds(1), OptionalDouble.empty(), 0, Optional.empty())));
+    HostCalibrator hostCalibrator = new HostCalibrator(mockHandBrake, 1);
+    Path video = Files.createFile(tempDirectory.resolve("video.mp4"));
+    Path profileFile = tempDirectory.resolve("tuning.properties");
+
+    // When
+    IOException thrown =
+        assertThrows(IOException.class, () -> hostCalibrator.calibrate(video, profileFile));
+
+    // Then
+    assertThat(thrown).hasMessageThat().startsWith("Error calibrating");
+    assertThat(Files.exists(profileFile)).isFalse();
+  }
+}
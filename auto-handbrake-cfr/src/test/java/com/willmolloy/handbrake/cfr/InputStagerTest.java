@@ -0,0 +1,261 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.io.Resources;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.google.common.truth.StreamSubject;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * InputStagerTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class InputStagerTest {
+
+  // separate file systems simulate separate file stores (e.g. NAS and local disk)
+  private FileSystem inputFileSystem;
+  private FileSystem scratchFileSystem;
+  private Path scratchDirectory;
+  private Path testVideo;
+  private Path testVideo2;
+
+  private UnencodedVideo.Factory factory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    inputFileSystem = Jimfs.newFileSystem(Configuration.unix());
+    scratchFileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    Path inputDirectory = Files.createDirectories(inputFileSystem.getPath("/input"));
+    scratchDirectory = scratchFileSystem.getPath("/scratch");
+
+    testVideo = Path.of(Resources.getResource("Big_Buck_Bunny_360_10s_1MB.mp4").toURI());
+    testVideo2 = Path.of(Resources.getResource("Big_Buck_Bunny_360_10s_2MB.mp4").toURI());
+
+    factory = new UnencodedVideo.Factory(inputDirectory, inputDirectory, inputDirectory);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    inputFileSystem.close();
+    scratchFileSystem.close();
+  }
+
+  @Test
+  void prefetch_stagesInputToScratchDirectory() throws Exception {
+    // Given
+    InputStager inputStager = inputStager(new Properties());
+    UnencodedVideo video = video("video1.mp4", testVideo);
+
+    // When
+    inputStager.prefetch(List.of(video));
+    Path input = inputStager.input(video);
+
+    // Then
+    assertThat(input.getFileSystem()).isSameInstanceAs(scratchFileSystem);
+    assertThat(input.getFileName().toString()).endsWith("-video1.mp4");
+    assertThat(Files.mismatch(testVideo, input)).isEqualTo(-1);
+  }
+
+  @Test
+  void input_whenNotPrefetched_returnsOriginal() throws Exception {
+    // Given
+    InputStager inputStager = inputStager(new Properties());
+    UnencodedVideo video = video("video1.mp4", testVideo);
+
+    // When
+    Path input = inputStager.input(video);
+
+    // Then
+    assertThat(input).isEqualTo(video.originalPath());
+  }
+
+  @Test
+  void input_whenDisabled_returnsOriginal() throws Exception {
+    // Given
+    Config config = Config.defaults();
+    InputStager inputStager = InputStager.disabled(config, new FileTransfer(config));
+    UnencodedVideo video = video("video1.mp4", testVideo);
+
+    // When
+    inputStager.prefetch(List.of(video));
+    Path input = inputStager.input(video);
+
+    // Then
+    assertThat(input).isEqualTo(video.originalPath());
+  }
+
+  @Test
+  void prefetch_onlyStagesNextFewInputs() throws Exception {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("stage.prefetch", "1");
+    InputStager inputStager = inputStager(properties);
+    UnencodedVideo video1 = video("video1.mp4", testVideo);
+    UnencodedVideo video2 = video("video2.mp4", testVideo2);
+
+    // When
+    inputStager.prefetch(List.of(video1, video2));
+
+    // Then
+    assertThat(inputStager.input(video1)).isNotEqualTo(video1.originalPath());
+    assertThat(inputStager.input(video2)).isEqualTo(video2.originalPath());
+  }
+
+  @Test
+  void release_whenEncoded_deletesStagedInput() throws Exception {
+    // Given
+    InputStager inputStager = inputStager(new Properties());
+    UnencodedVideo video = video("video1.mp4", testVideo);
+    inputStager.prefetch(List.of(video));
+    inputStager.input(video);
+
+    // When
+    inputStager.release(video, true);
+
+    // Then
+    assertThatScratchDirectory().isEmpty();
+  }
+
+  @Test
+  void release_whenNotEncoded_keepsStagedInputForReuse() throws Exception {
+    // Given
+    InputStager inputStager = inputStager(new Properties());
+    UnencodedVideo video = video("video1.mp4", testVideo);
+    inputStager.prefetch(List.of(video));
+    Path staged = inputStager.input(video);
+
+    // When
+    inputStager.release(video, false);
+    inputStager.prefetch(List.of(video));
+
+    // Then
+    assertThat(inputStager.input(video)).isEqualTo(staged);
+    assertThatScratchDirectory().containsExactly(staged);
+  }
+
+  @Test
+  void release_whenSkippedBeforeEncoding_unpinsStagedInput() throws Exception {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("stage.budget", String.valueOf(Files.size(testVideo2) + 1));
+    properties.setProperty("stage.wait", "0");
+    InputStager inputStager = inputStager(properties);
+    UnencodedVideo video1 = video("video1.mp4", testVideo);
+    UnencodedVideo video2 = video("video2.mp4", testVideo2);
+    inputStager.prefetch(List.of(video1));
+
+    // When
+    // (e.g. no disk space for it, so its input is never used, maybe still staging)
+    inputStager.release(video1, false);
+    inputStager.prefetch(List.of(video2));
+    Path staged2 = inputStager.input(video2);
+
+    // Then
+    assertThat(staged2).isNotEqualTo(video2.originalPath());
+    assertThatScratchDirectory().containsExactly(staged2);
+  }
+
+  @Test
+  void whenBudgetExceeded_evictsLeastRecentlyUsedUnpinnedInputs() throws Exception {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("stage.budget", String.valueOf(Files.size(testVideo2) + 1));
+    InputStager inputStager = inputStager(properties);
+    UnencodedVideo video1 = video("video1.mp4", testVideo);
+    UnencodedVideo video2 = video("video2.mp4", testVideo2);
+    inputStager.prefetch(List.of(video1));
+    inputStager.input(video1);
+    inputStager.release(video1, false);
+
+    // When
+    inputStager.prefetch(List.of(video2));
+    Path staged2 = inputStager.input(video2);
+
+    // Then
+    assertThatScratchDirectory().containsExactly(staged2);
+  }
+
+  @Test
+  void whenBudgetExceededByPinnedInputs_andWaitTimesOut_returnsOriginal() throws Exception {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("stage.budget", String.valueOf(Files.size(testVideo2) + 1));
+    properties.setProperty("stage.wait", "0");
+    InputStager inputStager = inputStager(properties);
+    UnencodedVideo video1 = video("video1.mp4", testVideo);
+    UnencodedVideo video2 = video("video2.mp4", testVideo2);
+    inputStager.prefetch(List.of(video1));
+    Path staged1 = inputStager.input(video1);
+
+    // When
+    inputStager.prefetch(List.of(video2));
+    Path input2 = inputStager.input(video2);
+
+    // Then
+    assertThat(input2).isEqualTo(video2.originalPath());
+    assertThatScratchDirectory().containsExactly(staged1);
+  }
+
+  @Test
+  void whenLargerThanBudget_returnsOriginal() throws Exception {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty("stage.budget", "1");
+    InputStager inputStager = inputStager(properties);
+    UnencodedVideo video = video("video1.mp4", testVideo);
+
+    // When
+    inputStager.prefetch(List.of(video));
+    Path input = inputStager.input(video);
+
+    // Then
+    assertThat(input).isEqualTo(video.originalPath());
+    assertThatScratchDirectory().isEmpty();
+  }
+
+  @Test
+  void whenInputIsAlreadyLocal_returnsOriginal() throws Exception {
+    // Given
+    Config config = Config.defaults();
+    InputStager inputStager =
+        new InputStager(inputFileSystem.getPath("/scratch"), config, new FileTransfer(config));
+    UnencodedVideo video = video("video1.mp4", testVideo);
+
+    // When
+    inputStager.prefetch(List.of(video));
+    Path input = inputStager.input(video);
+
+    // Then
+    assertThat(input).isEqualTo(video.originalPath());
+  }
+
+  private InputStager inputStager(Properties properties) {
+    Config config = Config.of(properties);
+    return new InputStager(scratchDirectory, config, new FileTransfer(config));
+  }
+
+  private UnencodedVideo video(String name, Path contents) throws IOException {
+    return factory.newUnencodedVideo(
+        Files.copy(contents, inputFileSystem.getPath("/input").resolve(name)));
+  }
+
+  private StreamSubject assertThatScratchDirectory() throws IOException {
+    try (Stream<Path> files = Files.walk(scratchDirectory)) {
+      return assertThat(files.filter(Files::isRegularFile));
+    }
+  }
+}
@@ -4,7 +4,10 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -16,6 +19,8 @@ import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.IntStream;
@@ -44,6 +49,7 @@ class JobQueueTest {
 
   @Mock private VideoEncoder mockVideoEncoder;
   @Mock private VideoArchiver mockVideoArchiver;
+  @Mock private DiskSpaceGuard mockDiskSpaceGuard;
   @InjectMocks private JobQueue jobQueue;
 
   private FileSystem fileSystem;
@@ -63,6 +69,11 @@ class JobQueueTest {
     Files.createDirectories(archiveDirectory);
 
     factory = new UnencodedVideo.Factory(inputDirectory, outputDirectory, archiveDirectory);
+
+    // (not every test gets as far as reserving disk space)
+    lenient().when(mockDiskSpaceGuard.reserve(any())).thenReturn(true);
+    lenient().when(mockVideoEncoder.publishConcurrency()).thenReturn(1);
+    lenient().when(mockVideoArchiver.concurrency()).thenReturn(1);
   }
 
   @AfterEach
@@ -74,6 +85,7 @@ class JobQueueTest {
   void encodesVideoFilesAndArchivesOriginals() throws Exception {
     // Given
     whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
     when(mockVideoArchiver.archive(any())).thenReturn(true);
 
     Files.createDirectories(inputDirectory.resolve("NestedFolder"));
@@ -91,10 +103,141 @@ class JobQueueTest {
     assertThat(result).isTrue();
     for (UnencodedVideo video : videos) {
       verify(mockVideoEncoder).encode(same(video));
+      verify(mockVideoEncoder).publish(same(video));
       verify(mockVideoArchiver).archive(same(video));
     }
   }
 
+  @Test
+  void probesEachVideo_beforeEncodingIt() throws Exception {
+    // Given
+    whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    List<UnencodedVideo> videos =
+        List.of(
+            factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video2.mp4")));
+
+    // When
+    jobQueue.process(videos);
+
+    // Then
+    for (UnencodedVideo video : videos) {
+      InOrder inOrder = inOrder(mockVideoEncoder);
+      inOrder.verify(mockVideoEncoder).probe(same(video));
+      inOrder.verify(mockVideoEncoder).encode(same(video));
+    }
+  }
+
+  @Test
+  void whenPublishingFails_skipsArchiving_andStillProcessesOtherVideos_andReturnsFalseOverall()
+      throws Exception {
+    // Given
+    whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true, false, true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    List<UnencodedVideo> videos =
+        List.of(
+            factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video2.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video3.mp4")));
+
+    // When
+    boolean result = jobQueue.process(videos);
+
+    // Then
+    assertThat(result).isFalse();
+    for (UnencodedVideo video : videos) {
+      verify(mockVideoEncoder).encode(same(video));
+      verify(mockVideoEncoder).publish(same(video));
+    }
+    verify(mockVideoArchiver).archive(same(videos.get(0)));
+    verify(mockVideoArchiver, times(0)).archive(same(videos.get(1)));
+    verify(mockVideoArchiver).archive(same(videos.get(2)));
+  }
+
+  @Test
+  void releasesDiskSpace_whenJobsFinish() throws Exception {
+    // Given
+    whenVideoEncoderReturns(true, false);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    List<UnencodedVideo> videos =
+        List.of(
+            factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video2.mp4")));
+
+    // When
+    jobQueue.process(videos);
+
+    // Then
+    for (UnencodedVideo video : videos) {
+      InOrder inOrder = inOrder(mockDiskSpaceGuard);
+      inOrder.verify(mockDiskSpaceGuard).reserve(same(video));
+      inOrder.verify(mockDiskSpaceGuard).release(same(video));
+    }
+    // encoding space is released (and the encoded size recorded) once published, if successful
+    InOrder inOrder = inOrder(mockDiskSpaceGuard, mockVideoArchiver);
+    inOrder.verify(mockDiskSpaceGuard).published(same(videos.get(0)));
+    inOrder.verify(mockVideoArchiver).archive(same(videos.get(0)));
+    verify(mockDiskSpaceGuard, never()).published(same(videos.get(1)));
+  }
+
+  @Test
+  void whenNoDiskSpaceForJob_skipsIt_andStillProcessesOtherVideos_andReturnsFalseOverall()
+      throws Exception {
+    // Given
+    when(mockDiskSpaceGuard.reserve(any())).thenReturn(false, true);
+    whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    List<UnencodedVideo> videos =
+        List.of(
+            factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video2.mp4")));
+
+    // When
+    boolean result = jobQueue.process(videos);
+
+    // Then
+    assertThat(result).isFalse();
+    verify(mockVideoEncoder, never()).encode(same(videos.get(0)));
+    verify(mockVideoEncoder).encode(same(videos.get(1)));
+    verify(mockDiskSpaceGuard).release(same(videos.get(0)));
+    // its input may have been prefetched by now, and won't be encoded
+    verify(mockVideoEncoder).finished(same(videos.get(0)));
+  }
+
+  @Test
+  void whenProbingFails_skipsIt_andReleasesIt_andReturnsFalseOverall() throws Exception {
+    // Given
+    whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    List<UnencodedVideo> videos =
+        List.of(
+            factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video2.mp4")));
+    doThrow(new IllegalStateException("test")).when(mockVideoEncoder).probe(same(videos.get(0)));
+
+    // When
+    boolean result = jobQueue.process(videos);
+
+    // Then
+    assertThat(result).isFalse();
+    verify(mockVideoEncoder, never()).encode(same(videos.get(0)));
+    verify(mockVideoEncoder).encode(same(videos.get(1)));
+    verify(mockDiskSpaceGuard).release(same(videos.get(0)));
+    verify(mockVideoEncoder).finished(same(videos.get(0)));
+    verify(mockVideoEncoder).finished(same(videos.get(1)));
+  }
+
   @ParameterizedTest
   @MethodSource("anyEncodeOrArchiveFailed")
   void
@@ -106,6 +249,7 @@ class JobQueueTest {
     // Given
     whenVideoEncoderReturns(
         firstEncodingSuccessful, secondEncodingSuccessful, thirdEncodingSuccessful);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
     when(mockVideoArchiver.archive(any())).thenReturn(true);
 
     Files.createDirectories(inputDirectory.resolve("NestedFolder"));
@@ -145,6 +289,7 @@ class JobQueueTest {
       throws Exception {
     // Given
     whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
     when(mockVideoArchiver.archive(any()))
         .thenReturn(firstArchingSuccessful, secondArchivingSuccessful, thirdArchivingSuccessful);
 
@@ -171,6 +316,7 @@ class JobQueueTest {
   void encodesInOrder() {
     // Given
     whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
     when(mockVideoArchiver.archive(any())).thenReturn(true);
 
     List<UnencodedVideo> videos =
@@ -192,7 +338,96 @@ class JobQueueTest {
     }
   }
 
+  @Test
+  void encodesConcurrently_upToVideoEncoderConcurrency() {
+    // Given
+    when(mockVideoEncoder.concurrency()).thenReturn(2);
+    CountDownLatch bothEncoding = new CountDownLatch(2);
+    when(mockVideoEncoder.encode(any()))
+        .then(
+            invocation -> {
+              // only completes if the other video encodes at the same time
+              bothEncoding.countDown();
+              return bothEncoding.await(10, TimeUnit.SECONDS);
+            });
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    List<UnencodedVideo> videos =
+        List.of(
+            factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video2.mp4")));
+
+    // When
+    boolean result = jobQueue.process(videos);
+
+    // Then
+    assertThat(result).isTrue();
+    for (UnencodedVideo video : videos) {
+      verify(mockVideoEncoder).encode(same(video));
+    }
+  }
+
+  @Test
+  void proxyFirst_encodesProxiesOfEveryVideoFirst_withoutArchivingThem() throws Exception {
+    // Given
+    whenVideoEncoderReturns(true);
+    when(mockVideoEncoder.proxyFirst()).thenReturn(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    List<UnencodedVideo> videos =
+        List.of(
+            factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video2.mp4")),
+            factory.newUnencodedVideo(inputDirectory.resolve("video3.mp4")));
+    // (e.g. by a previous run)
+    Files.createFile(videos.get(1).proxy().encodedPath());
+    Files.createFile(videos.get(2).encodedPath());
+
+    // When
+    boolean result = jobQueue.process(videos);
+
+    // Then
+    assertThat(result).isTrue();
+
+    InOrder inOrder = inOrder(mockVideoEncoder);
+    inOrder.verify(mockVideoEncoder).encode(same(videos.get(0).proxy()));
+    for (UnencodedVideo video : videos) {
+      inOrder.verify(mockVideoEncoder).encode(same(video));
+    }
+    verify(mockVideoEncoder).publish(same(videos.get(0).proxy()));
+    verify(mockVideoEncoder, times(0)).encode(same(videos.get(1).proxy()));
+    verify(mockVideoEncoder, times(0)).encode(same(videos.get(2).proxy()));
+    verify(mockVideoArchiver, times(0)).archive(same(videos.get(0).proxy()));
+    for (UnencodedVideo video : videos) {
+      verify(mockVideoArchiver).archive(same(video));
+    }
+  }
+
+  @Test
+  void proxyFirst_whenProxyFails_stillEncodesFullQuality_andReturnsFalseOverall() {
+    // Given
+    whenVideoEncoderReturns(false, true);
+    when(mockVideoEncoder.proxyFirst()).thenReturn(true);
+    when(mockVideoEncoder.publish(any())).thenReturn(true);
+    when(mockVideoArchiver.archive(any())).thenReturn(true);
+
+    UnencodedVideo video = factory.newUnencodedVideo(inputDirectory.resolve("video1.mp4"));
+
+    // When
+    boolean result = jobQueue.process(List.of(video));
+
+    // Then
+    assertThat(result).isFalse();
+    verify(mockVideoEncoder).encode(same(video.proxy()));
+    verify(mockVideoEncoder).encode(same(video));
+    verify(mockVideoArchiver).archive(same(video));
+  }
+
   private void whenVideoEncoderReturns(boolean... results) {
+    when(mockVideoEncoder.concurrency()).thenReturn(1);
+
     // simulate the locking behaviour of VideoEncoder
     // TODO kinda ugly (leaky abstraction), but best tradeoff?
     Lock lock = new ReentrantLock();
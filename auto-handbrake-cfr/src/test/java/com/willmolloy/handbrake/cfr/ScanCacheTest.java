@@ -0,0 +1,181 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.SourceInfo;
+import com.willmolloy.handbrake.core.options.Input;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * ScanCacheTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@ExtendWith(MockitoExtension.class)
+class ScanCacheTest {
+
+  @Mock private HandBrake mockHandBrake;
+
+  @TempDir private Path tempDirectory;
+
+  private Path video;
+  private Path cacheFile;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    video = Files.write(tempDirectory.resolve("my video.mp4"), new byte[10]);
+    cacheFile = tempDirectory.resolve("scans.properties");
+  }
+
+  @Test
+  void scansEachSourceOnce() {
+    // Given
+    when(mockHandBrake.scan(Input.of(video))).thenReturn(Optional.of(source(video)));
+    ScanCache scanCache = new ScanCache(Config.defaults());
+
+    // When
+    Optional<SourceInfo> first = scanCache.scan(video, Input.of(video), mockHandBrake);
+    Optional<SourceInfo> second = scanCache.scan(video, Input.of(video), mockHandBrake);
+
+    // Then
+    assertThat(first).hasValue(source(video));
+    assertThat(second).hasValue(source(video));
+    verify(mockHandBrake, times(1)).scan(any());
+  }
+
+  @Test
+  void cachesScansAcrossInstances_ofStagedInputs() {
+    // Given
+    when(mockHandBrake.scan(Input.of(video))).thenReturn(Optional.of(source(video)));
+    scanCache().scan(video, Input.of(video), mockHandBrake);
+
+    Path staged = tempDirectory.resolve("stage/my video.mp4");
+
+    // When
+    Optional<SourceInfo> source = scanCache().scan(video, Input.of(staged), mockHandBrake);
+
+    // Then
+    assertThat(source).hasValue(source(staged));
+    verify(mockHandBrake, never()).scan(Input.of(staged));
+  }
+
+  @Test
+  void changedSource_isRescanned_replacingItsStaleScan() throws IOException {
+    // Given
+    when(mockHandBrake.scan(Input.of(video))).thenReturn(Optional.of(source(video)));
+    scanCache().scan(video, Input.of(video), mockHandBrake);
+
+    Files.write(video, new byte[20]);
+
+    // When
+    scanCache().scan(video, Input.of(video), mockHandBrake);
+
+    // Then
+    verify(mockHandBrake, times(2)).scan(any());
+    Properties cached = new Properties();
+    try (InputStream in = Files.newInputStream(cacheFile)) {
+      cached.load(in);
+    }
+    assertThat(cached.stringPropertyNames())
+        .containsExactly(
+            "%s|20|%d".formatted(video, Files.getLastModifiedTime(video).toMillis()));
+  }
+
+  @Test
+  void failedScan_isNotCached() {
+    // Given
+    when(mockHandBrake.scan(Input.of(video))).thenReturn(Optional.empty());
+    ScanCache scanCache = scanCache();
+
+    // When
+    Optional<SourceInfo> first = scanCache.scan(video, Input.of(video), mockHandBrake);
+    Optional<SourceInfo> second = scanCache.scan(video, Input.of(video), mockHandBrake);
+
+    // Then
+    assertThat(first).isEmpty();
+    assertThat(second).isEmpty();
+    verify(mockHandBrake, times(2)).scan(any());
+    assertThat(Files.exists(cacheFile)).isFalse();
+  }
+
+  @Test
+  void invalidCachedScan_isRescanned() throws IOException {
+    // Given
+    Properties cached = new Properties();
+    cached.setProperty(
+        "%s|10|%d".formatted(video, Files.getLastModifiedTime(video).toMillis()), "PT10S;1920");
+    try (OutputStream out = Files.newOutputStream(cacheFile)) {
+      cached.store(out, null);
+    }
+    when(mockHandBrake.scan(Input.of(video))).thenReturn(Optional.of(source(video)));
+
+    // When
+    Optional<SourceInfo> source = scanCache().scan(video, Input.of(video), mockHandBrake);
+
+    // Then
+    assertThat(source).hasValue(source(video));
+    verify(mockHandBrake).scan(any());
+  }
+
+  @Test
+  void formatAndParse_roundTrips() {
+    // Given
+    SourceInfo source =
+        new SourceInfo(
+            video,
+            Duration.ofMillis(10500),
+            1920,
+            1080,
+            59.94,
+            "h264",
+            List.of(
+                new SourceInfo.AudioTrack("English", "E-AC3 (5.1 ch)", 6, 48000),
+                new SourceInfo.AudioTrack("", "aac", 2, 44100)));
+
+    // When
+    String formatted = ScanCache.format(source);
+
+    // Then
+    assertThat(formatted)
+        .isEqualTo("PT10.5S;1920;1080;59.94;h264;English,E-AC3+%285.1+ch%29,6,48000;,aac,2,44100");
+    assertThat(ScanCache.parse(video, formatted)).isEqualTo(source);
+  }
+
+  private ScanCache scanCache() {
+    Properties properties = new Properties();
+    properties.setProperty("scan.cache", cacheFile.toString());
+    return new ScanCache(Config.of(properties));
+  }
+
+  private static SourceInfo source(Path path) {
+    return new SourceInfo(
+        path,
+        Duration.ofMinutes(10),
+        2560,
+        1440,
+        144,
+        "h264",
+        List.of(new SourceInfo.AudioTrack("English", "aac", 2, 48000)));
+  }
+}
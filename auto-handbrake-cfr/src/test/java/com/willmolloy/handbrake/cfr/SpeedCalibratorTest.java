@@ -0,0 +1,260 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.willmolloy.handbrake.core.EncodeResult;
+import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.SourceInfo;
+import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Range;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * SpeedCalibratorTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@ExtendWith(MockitoExtension.class)
+class SpeedCalibratorTest {
+
+  private static final Input INPUT = Input.of(Path.of("input.mp4"));
+  private static final SourceInfo SOURCE =
+      new SourceInfo(
+          Path.of("input.mp4"), Duration.ofMinutes(10), 1920, 1080, 60, "h264", List.of());
+  private static final List<Option> OPTIONS = List.of(Preset.productionStandard(), Encoder.h264());
+  private static final Path OUTPUT = Path.of("output/input.cfr.mp4.part");
+
+  // 5 second samples, so 625 bytes is 1 kbit/s
+  private static final Map<EncoderTuning.Speed, Long> SAMPLE_SIZES =
+      Map.of(
+          EncoderTuning.Speed.ULTRAFAST, 625L * 12000,
+          EncoderTuning.Speed.VERYFAST, 625L * 8000,
+          EncoderTuning.Speed.FAST, 625L * 6000,
+          EncoderTuning.Speed.MEDIUM, 625L * 5500);
+  private static final Map<EncoderTuning.Speed, Double> SAMPLE_FPS =
+      Map.of(
+          EncoderTuning.Speed.ULTRAFAST, 400.0,
+          EncoderTuning.Speed.VERYFAST, 250.0,
+          EncoderTuning.Speed.FAST, 120.0,
+          EncoderTuning.Speed.MEDIUM, 80.0);
+
+  @Mock private HandBrake mockHandBrake;
+
+  @TempDir private Path tempDirectory;
+
+  @Test
+  void disabled_doesNotCalibrate() {
+    // Given
+    SpeedCalibrator speedCalibrator = speedCalibrator(0);
+
+    // When
+    Optional<EncoderTuning.Speed> speed = speedCalibrator.speed(INPUT, SOURCE, OPTIONS, OUTPUT);
+
+    // Then
+    assertThat(speed).isEmpty();
+    verify(mockHandBrake, never()).encodeAsync(any(), any(), any(Option[].class));
+  }
+
+  @Test
+  void choosesFastestSpeedWithinTargetBitrate() {
+    // Given
+    whenHandBrakeEncodesSamples();
+    SpeedCalibrator speedCalibrator = speedCalibrator(9000);
+
+    // When
+    Optional<EncoderTuning.Speed> speed = speedCalibrator.speed(INPUT, SOURCE, OPTIONS, OUTPUT);
+
+    // Then
+    assertThat(speed).hasValue(EncoderTuning.Speed.VERYFAST);
+    for (EncoderTuning.Speed candidate : SpeedCalibrator.CANDIDATES) {
+      verify(mockHandBrake)
+          .encodeAsync(
+              any(),
+              any(),
+              any(),
+              any(),
+              any(),
+              // a 5 second sample from the middle
+              eq(EncoderTuning.speed(candidate)),
+              eq(Range.of(Duration.ofSeconds(297), Duration.ofSeconds(5))));
+    }
+  }
+
+  @Test
+  void encodesSamplesWithTheSameScheduling() {
+    // Given
+    whenHandBrakeEncodesSamples();
+    SpeedCalibrator speedCalibrator = speedCalibrator(9000);
+
+    // When
+    speedCalibrator.speed(
+        INPUT,
+        SOURCE,
+        List.of(Preset.productionStandard(), Scheduling.nice(10), Scheduling.cpus(Set.of(0, 1))),
+        OUTPUT);
+
+    // Then
+    verify(mockHandBrake, times(SpeedCalibrator.CANDIDATES.size()))
+        .encodeAsync(
+            any(),
+            any(),
+            eq(Preset.productionStandard()),
+            eq(Scheduling.nice(10)),
+            eq(Scheduling.cpus(Set.of(0, 1))),
+            any(),
+            any());
+  }
+
+  @Test
+  void noSpeedWithinTargetBitrate_choosesSlowest() {
+    // Given
+    whenHandBrakeEncodesSamples();
+    SpeedCalibrator speedCalibrator = speedCalibrator(1000);
+
+    // When
+    Optional<EncoderTuning.Speed> speed = speedCalibrator.speed(INPUT, SOURCE, OPTIONS, OUTPUT);
+
+    // Then
+    assertThat(speed).hasValue(EncoderTuning.Speed.MEDIUM);
+  }
+
+  @Test
+  void cachesSpeedPerSourceClass_acrossInstances() throws Exception {
+    // Given
+    whenHandBrakeEncodesSamples();
+    Path cacheFile = tempDirectory.resolve("speed.properties");
+    speedCalibrator(9000, cacheFile).speed(INPUT, SOURCE, OPTIONS, OUTPUT);
+
+    SourceInfo sameClass =
+        new SourceInfo(
+            Path.of("other.mp4"), Duration.ofMinutes(1), 1920, 1080, 59.94, "h264", List.of());
+
+    // When
+    Optional<EncoderTuning.Speed> speed =
+        speedCalibrator(9000, cacheFile)
+            .speed(
+                Input.of(sameClass.path()),
+                sameClass,
+                List.of(Preset.productionStandard(), Encoder.h264(), Scheduling.nice(10)),
+                OUTPUT);
+
+    // Then
+    assertThat(speed).hasValue(EncoderTuning.Speed.VERYFAST);
+    verify(mockHandBrake, times(SpeedCalibrator.CANDIDATES.size()))
+        .encodeAsync(any(), any(), any(Option[].class));
+    assertThat(Files.readString(cacheFile)).contains("=veryfast");
+  }
+
+  @Test
+  void sourceClass_differsByResolutionFrameRateCodecAndOptions() {
+    String sourceClass = SpeedCalibrator.sourceClass(SOURCE, 9000, OPTIONS);
+
+    assertThat(sourceClass).startsWith("1920x1080@60/h264/9000/");
+    assertThat(
+            SpeedCalibrator.sourceClass(
+                new SourceInfo(
+                    SOURCE.path(), SOURCE.duration(), 1280, 720, 60, "h264", List.of()),
+                9000,
+                OPTIONS))
+        .isNotEqualTo(sourceClass);
+    assertThat(
+            SpeedCalibrator.sourceClass(
+                new SourceInfo(
+                    SOURCE.path(), SOURCE.duration(), 1920, 1080, 144, "h264", List.of()),
+                9000,
+                OPTIONS))
+        .isNotEqualTo(sourceClass);
+    assertThat(
+            SpeedCalibrator.sourceClass(
+                new SourceInfo(
+                    SOURCE.path(), SOURCE.duration(), 1920, 1080, 60, "hevc", List.of()),
+                9000,
+                OPTIONS))
+        .isNotEqualTo(sourceClass);
+    assertThat(
+            SpeedCalibrator.sourceClass(
+                SOURCE, 9000, List.of(Preset.productionStandard(), Encoder.h265())))
+        .isNotEqualTo(sourceClass);
+  }
+
+  @Test
+  void whenSampleFails_returnsEmpty_andDoesNotCache() {
+    // Given
+    when(mockHandBrake.encodeAsync(any(), any(), any(Option[].class)))
+        .thenReturn(
+            CompletableFuture.completedFuture(
+                new EncodeResult(
+                    1, Duration.ofSeconds(1), OptionalDouble.empty(), 0, Optional.empty())));
+    SpeedCalibrator speedCalibrator = speedCalibrator(9000);
+
+    // When
+    Optional<EncoderTuning.Speed> first = speedCalibrator.speed(INPUT, SOURCE, OPTIONS, OUTPUT);
+    Optional<EncoderTuning.Speed> second = speedCalibrator.speed(INPUT, SOURCE, OPTIONS, OUTPUT);
+
+    // Then
+    assertThat(first).isEmpty();
+    assertThat(second).isEmpty();
+    verify(mockHandBrake, times(2)).encodeAsync(any(), any(), any(Option[].class));
+  }
+
+  private void whenHandBrakeEncodesSamples() {
+    when(mockHandBrake.encodeAsync(any(), any(), any(Option[].class)))
+        .thenAnswer(
+            invocation -> {
+              List<Option> options = Arrays.asList((Option[]) invocation.getRawArguments()[2]);
+              EncoderTuning.Speed speed =
+                  SpeedCalibrator.CANDIDATES.stream()
+                      .filter(candidate -> options.contains(EncoderTuning.speed(candidate)))
+                      .findFirst()
+                      .orElseThrow();
+              return CompletableFuture.completedFuture(
+                  new EncodeResult(
+                      0,
+                      Duration.ofSeconds(1),
+                      OptionalDouble.of(SAMPLE_FPS.get(speed)),
+                      SAMPLE_SIZES.get(speed),
+                      Optional.empty()));
+            });
+  }
+
+  private SpeedCalibrator speedCalibrator(long targetBitrate) {
+    Properties properties = new Properties();
+    properties.setProperty("speed.bitrate", String.valueOf(targetBitrate));
+    return new SpeedCalibrator(mockHandBrake, Config.of(properties));
+  }
+
+  private SpeedCalibrator speedCalibrator(long targetBitrate, Path cacheFile) {
+    Properties properties = new Properties();
+    properties.setProperty("speed.bitrate", String.valueOf(targetBitrate));
+    properties.setProperty("speed.cache", cacheFile.toString());
+    return new SpeedCalibrator(mockHandBrake, Config.of(properties));
+  }
+}
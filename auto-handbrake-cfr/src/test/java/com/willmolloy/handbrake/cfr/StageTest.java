@@ -0,0 +1,156 @@
+package com.willmolloy.handbrake.cfr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * StageTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class StageTest {
+
+  @Test
+  void singleThreaded_processesItemsInOrder() throws Exception {
+    // Given
+    List<Integer> processed = new CopyOnWriteArrayList<>();
+    CountDownLatch finished = new CountDownLatch(100);
+
+    try (Stage<Integer> stage =
+        new Stage<>(
+            "test",
+            1,
+            10,
+            item -> {
+              processed.add(item);
+              finished.countDown();
+            },
+            item -> {})) {
+      // When
+      for (int i = 0; i < 100; i++) {
+        stage.put(i);
+      }
+      finished.await();
+
+      // Then
+      assertThat(processed).containsExactlyElementsIn(IntStream.range(0, 100).boxed().toList());
+      assertThat(processed).isInOrder();
+      assertThat(stage.queueDepth()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  void whenTaskThrows_invokesErrorHandler_andContinues() throws Exception {
+    // Given
+    List<Integer> failed = new CopyOnWriteArrayList<>();
+    List<Integer> processed = new CopyOnWriteArrayList<>();
+    CountDownLatch finished = new CountDownLatch(3);
+
+    try (Stage<Integer> stage =
+        new Stage<>(
+            "test",
+            1,
+            10,
+            item -> {
+              if (item == 2) {
+                throw new RuntimeException();
+              }
+              processed.add(item);
+              finished.countDown();
+            },
+            item -> {
+              failed.add(item);
+              finished.countDown();
+            })) {
+      // When
+      stage.put(1);
+      stage.put(2);
+      stage.put(3);
+      finished.await();
+
+      // Then
+      assertThat(processed).containsExactly(1, 3).inOrder();
+      assertThat(failed).containsExactly(2);
+    }
+  }
+
+  @Test
+  void whenQueueFull_blocksUntilRoom() throws Exception {
+    // Given
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch proceed = new CountDownLatch(1);
+
+    try (Stage<Integer> stage =
+        new Stage<>(
+            "test",
+            1,
+            1,
+            item -> {
+              started.countDown();
+              proceed.await();
+            },
+            item -> {})) {
+      stage.put(1);
+      started.await();
+      stage.put(2);
+
+      // When
+      Thread producer = Thread.ofVirtual().start(() -> put(stage, 3));
+      producer.join(100);
+
+      // Then
+      assertThat(producer.isAlive()).isTrue();
+      assertThat(stage.queueDepth()).isEqualTo(1);
+      proceed.countDown();
+      producer.join();
+      assertThat(stage.meanServiceTime().isZero()).isFalse();
+    }
+  }
+
+  @Test
+  void meanServiceTime_excludesWaiting() throws Exception {
+    // Given
+    CountDownLatch secondStarted = new CountDownLatch(1);
+
+    try (Stage<Integer> stage =
+        new Stage<>(
+            "test",
+            1,
+            10,
+            item -> {
+              if (item == 1) {
+                Stage.waiting(
+                    () -> {
+                      Thread.sleep(500);
+                      return null;
+                    });
+              } else {
+                secondStarted.countDown();
+              }
+            },
+            item -> {})) {
+      // When
+      stage.put(1);
+      stage.put(2);
+      // (the first item is recorded before the second starts)
+      secondStarted.await();
+
+      // Then
+      assertThat(stage.meanServiceTime()).isLessThan(Duration.ofMillis(250));
+    }
+  }
+
+  private static void put(Stage<Integer> stage, int item) {
+    try {
+      stage.put(item);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
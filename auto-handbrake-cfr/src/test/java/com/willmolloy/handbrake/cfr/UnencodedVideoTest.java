@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -68,6 +69,41 @@ class UnencodedVideoTest {
         .isEqualTo(archiveDirectory.resolve("file.mp4.part"));
   }
 
+  @Test
+  void proxy_computesProxyPathsNextToEncodedPaths() {
+    // Given
+    Path mp4File = inputDirectory.resolve("file.mp4");
+    UnencodedVideo unencodedVideo = factory.newUnencodedVideo(mp4File);
+
+    // When
+    UnencodedVideo proxy = unencodedVideo.proxy();
+
+    // Then
+    assertThat(unencodedVideo.isProxy()).isFalse();
+    assertThat(proxy.isProxy()).isTrue();
+    assertThat(proxy.originalPath()).isSameInstanceAs(mp4File);
+
+    assertThat(proxy.encodedPath()).isEqualTo(outputDirectory.resolve("file.proxy.cfr.mp4"));
+    assertThat(proxy.tempEncodedPath())
+        .isEqualTo(outputDirectory.resolve("file.proxy.cfr.mp4.part"));
+    assertThat(UnencodedVideo.isEncodedMp4(proxy.encodedPath())).isTrue();
+    assertThat(UnencodedVideo.isTempEncodedMp4(proxy.tempEncodedPath())).isTrue();
+
+    assertThat(proxy.archivedPaths()).isEqualTo(unencodedVideo.archivedPaths());
+  }
+
+  @Test
+  void proxy_ofProxy_throwsException() {
+    // Given
+    UnencodedVideo proxy = factory.newUnencodedVideo(inputDirectory.resolve("file.mp4")).proxy();
+
+    // When
+    NullPointerException thrown = assertThrows(NullPointerException.class, proxy::proxy);
+
+    // Then
+    assertThat(thrown).hasMessageThat().isEqualTo("Already a proxy: %s".formatted(proxy));
+  }
+
   @Test
   void factory_newUnencodedVideo_retainsDirectoryStructureRelativeToInput() {
     // Given
@@ -90,6 +126,34 @@ class UnencodedVideoTest {
         .isEqualTo(archiveDirectory.resolve("Nested/Nested2/file.mp4.part"));
   }
 
+  @Test
+  void factory_newUnencodedVideo_withSeveralArchiveDirectories_computesArchivePathForEach()
+      throws IOException {
+    // Given
+    Path archiveDirectory2 = Files.createDirectories(fileSystem.getPath("archive2"));
+    UnencodedVideo.Factory factory =
+        new UnencodedVideo.Factory(
+            inputDirectory, outputDirectory, List.of(archiveDirectory, archiveDirectory2));
+    Path mp4File = inputDirectory.resolve("Nested/file.mp4");
+
+    // When
+    UnencodedVideo unencodedVideo = factory.newUnencodedVideo(mp4File);
+
+    // Then
+    assertThat(unencodedVideo.archivedPaths())
+        .containsExactly(
+            archiveDirectory.resolve("Nested/file.mp4"),
+            archiveDirectory2.resolve("Nested/file.mp4"))
+        .inOrder();
+    assertThat(unencodedVideo.tempArchivedPaths())
+        .containsExactly(
+            archiveDirectory.resolve("Nested/file.mp4.part"),
+            archiveDirectory2.resolve("Nested/file.mp4.part"))
+        .inOrder();
+    assertThat(unencodedVideo.archivedPath())
+        .isEqualTo(archiveDirectory.resolve("Nested/file.mp4"));
+  }
+
   @Test
   void factory_newUnencodedVideo_rejectsNonMp4File() {
     // Given
@@ -219,4 +283,15 @@ class UnencodedVideoTest {
     // When & Then
     assertThat(unencodedVideo.toString()).isEqualTo(mp4File.toString());
   }
+
+  @Test
+  void toString_ofProxy_returnsOriginalPathAndProxy() {
+    // Given
+    Path mp4File = inputDirectory.resolve("file.mp4");
+
+    UnencodedVideo proxy = factory.newUnencodedVideo(mp4File).proxy();
+
+    // When & Then
+    assertThat(proxy.toString()).isEqualTo(mp4File + " (proxy)");
+  }
 }
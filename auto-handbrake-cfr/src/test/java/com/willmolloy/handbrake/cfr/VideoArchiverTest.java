@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -31,7 +32,8 @@ class VideoArchiverTest {
 
   private UnencodedVideo.Factory unencodedVideoFactory;
 
-  private final VideoArchiver videoArchiver = new VideoArchiver();
+  private final VideoArchiver videoArchiver =
+      new VideoArchiver(new FileTransfer(Config.defaults()), Config.defaults());
 
   @BeforeEach
   void setUp() throws Exception {
@@ -141,6 +143,70 @@ class VideoArchiverTest {
     assertThatTestDirectory().containsExactly(unencodedVideo.originalPath());
   }
 
+  @Test
+  void withSeveralArchiveDirectories_archivesToEach() throws IOException {
+    // Given
+    Path archiveDirectory2 = fileSystem.getPath("/archive2/Videos/Gameplay");
+    Files.createDirectories(archiveDirectory2);
+    UnencodedVideo.Factory factory =
+        new UnencodedVideo.Factory(
+            inputDirectory, inputDirectory, List.of(archiveDirectory, archiveDirectory2));
+    UnencodedVideo unencodedVideo =
+        factory.newUnencodedVideo(Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    boolean result = videoArchiver.archive(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThatTestDirectory()
+        .containsExactly(
+            archiveDirectory.resolve("file.mp4"), archiveDirectory2.resolve("file.mp4"));
+    assertThat(Files.mismatch(testVideo, archiveDirectory2.resolve("file.mp4"))).isEqualTo(-1);
+  }
+
+  @Test
+  void withSeveralArchiveDirectories_whenOneArchiveFileAlreadyExists_archivesToOthers()
+      throws IOException {
+    // Given
+    Path archiveDirectory2 = fileSystem.getPath("/archive2/Videos/Gameplay");
+    Files.createDirectories(archiveDirectory2);
+    Files.copy(testVideo, archiveDirectory.resolve("file.mp4"));
+    UnencodedVideo.Factory factory =
+        new UnencodedVideo.Factory(
+            inputDirectory, inputDirectory, List.of(archiveDirectory, archiveDirectory2));
+    UnencodedVideo unencodedVideo =
+        factory.newUnencodedVideo(Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    boolean result = videoArchiver.archive(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThatTestDirectory()
+        .containsExactly(
+            archiveDirectory.resolve("file.mp4"), archiveDirectory2.resolve("file.mp4"));
+  }
+
+  @Test
+  void withSeveralArchiveDirectories_whenInputDirectoryIsAnArchiveDirectory_retainsOriginal()
+      throws IOException {
+    // Given
+    UnencodedVideo.Factory factory =
+        new UnencodedVideo.Factory(
+            inputDirectory, inputDirectory, List.of(inputDirectory, archiveDirectory));
+    UnencodedVideo unencodedVideo =
+        factory.newUnencodedVideo(Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    boolean result = videoArchiver.archive(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThatTestDirectory()
+        .containsExactly(unencodedVideo.originalPath(), archiveDirectory.resolve("file.mp4"));
+  }
+
   @Test
   void exceptionCaughtReturnsFalse() {
     // When
@@ -4,30 +4,46 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.common.io.Resources;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 import com.google.common.truth.StreamSubject;
+import com.willmolloy.handbrake.core.EncodeResult;
 import com.willmolloy.handbrake.core.HandBrake;
+import com.willmolloy.handbrake.core.SourceInfo;
+import com.willmolloy.handbrake.core.options.Audio;
 import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
 import com.willmolloy.handbrake.core.options.FrameRateControl;
 import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.LogFormat;
 import com.willmolloy.handbrake.core.options.Option;
 import com.willmolloy.handbrake.core.options.Output;
 import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Scheduling;
 import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
@@ -49,7 +65,9 @@ class VideoEncoderTest {
   private UnencodedVideo.Factory unencodedVideoFactory;
 
   @Mock private HandBrake mockHandBrake;
-  @InjectMocks private VideoEncoder videoEncoder;
+  @Mock private HandBrake mockFfmpeg;
+  @Mock private InputStager mockInputStager;
+  private VideoEncoder videoEncoder;
 
   @BeforeEach
   void setUp() throws Exception {
@@ -68,6 +86,16 @@ class VideoEncoderTest {
 
     unencodedVideoFactory =
         new UnencodedVideo.Factory(inputDirectory, outputDirectory, archiveDirectory);
+
+    Config config = Config.defaults();
+    FileTransfer fileTransfer = new FileTransfer(config);
+    videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
   }
 
   @AfterEach
@@ -86,7 +114,7 @@ class VideoEncoderTest {
 
     // When
     videoEncoder.acquire();
-    boolean result = videoEncoder.encode(unencodedVideo);
+    boolean result = videoEncoder.encode(unencodedVideo) && videoEncoder.publish(unencodedVideo);
 
     // Then
     assertThat(result).isTrue();
@@ -108,7 +136,7 @@ class VideoEncoderTest {
 
     // When
     videoEncoder.acquire();
-    boolean result = videoEncoder.encode(unencodedVideo);
+    boolean result = videoEncoder.encode(unencodedVideo) && videoEncoder.publish(unencodedVideo);
 
     // Then
     assertThat(result).isTrue();
@@ -117,6 +145,46 @@ class VideoEncoderTest {
         .containsExactly(unencodedVideo.originalPath(), unencodedVideo.encodedPath());
   }
 
+  @Test
+  void withScratchDirectory_encodesToScratch_andPublishesToOutput() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    try (FileSystem scratchFileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+      Path scratchDirectory = scratchFileSystem.getPath("/scratch");
+      Config config = Config.defaults();
+      FileTransfer fileTransfer = new FileTransfer(config);
+      VideoEncoder videoEncoder =
+          new VideoEncoder(
+              mockHandBrake,
+              mockFfmpeg,
+              InputStager.disabled(config, fileTransfer),
+              new OutputPublisher(scratchDirectory, fileTransfer),
+              config);
+
+      UnencodedVideo unencodedVideo =
+          unencodedVideoFactory.newUnencodedVideo(
+              Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+      // When
+      videoEncoder.acquire();
+      boolean result = videoEncoder.encode(unencodedVideo) && videoEncoder.publish(unencodedVideo);
+
+      // Then
+      assertThat(result).isTrue();
+      verify(mockHandBrake)
+          .encode(
+              any(Input.class),
+              argThat(output -> output.path().startsWith(scratchDirectory)),
+              any(Option[].class));
+      assertThatTestDirectory()
+          .containsExactly(unencodedVideo.originalPath(), unencodedVideo.encodedPath());
+      try (Stream<Path> scratchFiles = Files.list(scratchDirectory)) {
+        assertThat(scratchFiles).isEmpty();
+      }
+    }
+  }
+
   @Test
   void whenHandBrakeUnsuccessful_retainsUnencodedFile_andReturnsFalse() throws IOException {
     // Given
@@ -128,7 +196,7 @@ class VideoEncoderTest {
 
     // When
     videoEncoder.acquire();
-    boolean result = videoEncoder.encode(unencodedVideo);
+    boolean result = videoEncoder.encode(unencodedVideo) && videoEncoder.publish(unencodedVideo);
 
     // Then
     assertThat(result).isFalse();
@@ -148,7 +216,7 @@ class VideoEncoderTest {
 
     // When
     videoEncoder.acquire();
-    boolean result = videoEncoder.encode(unencodedVideo);
+    boolean result = videoEncoder.encode(unencodedVideo) && videoEncoder.publish(unencodedVideo);
 
     // Then
     assertThat(result).isFalse();
@@ -156,6 +224,67 @@ class VideoEncoderTest {
     assertThatTestDirectory().containsExactly(unencodedVideo.originalPath());
   }
 
+  @Test
+  void whenCreatingOutputDirectoryFails_releasesStagedInput_andReturnsFalse() throws IOException {
+    // Given
+    Config config = Config.defaults();
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            mockInputStager,
+            OutputPublisher.disabled(new FileTransfer(config)),
+            config);
+
+    Files.createDirectories(inputDirectory.resolve("Halo"));
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("Halo/file.mp4")));
+    // a file in place of the output directory
+    Files.createFile(outputDirectory.resolve("Halo"));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isFalse();
+    verify(mockInputStager).release(unencodedVideo, false);
+    verifyNoInteractions(mockHandBrake);
+  }
+
+  @Test
+  void proxy_whenEncoded_keepsStagedInput_forFullQualityEncode() throws Exception {
+    // Given
+    whenHandBrakeReturns(true);
+    Config config = Config.defaults();
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            mockInputStager,
+            OutputPublisher.disabled(new FileTransfer(config)),
+            config);
+
+    UnencodedVideo video =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    UnencodedVideo proxy = video.proxy();
+    when(mockInputStager.input(any())).thenReturn(video.originalPath());
+
+    // When
+    videoEncoder.acquire();
+    boolean proxyResult = videoEncoder.encode(proxy);
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(video);
+
+    // Then
+    assertThat(proxyResult).isTrue();
+    assertThat(result).isTrue();
+    verify(mockInputStager).release(proxy, false);
+    verify(mockInputStager).release(video, true);
+  }
+
   @Test
   void whenEncodedFileAlreadyExists_overwrites_andReturnsTrue() throws IOException {
     // Given
@@ -169,7 +298,7 @@ class VideoEncoderTest {
 
     // When
     videoEncoder.acquire();
-    boolean result = videoEncoder.encode(unencodedVideo);
+    boolean result = videoEncoder.encode(unencodedVideo) && videoEncoder.publish(unencodedVideo);
 
     // Then
     assertThat(result).isTrue();
@@ -192,7 +321,7 @@ class VideoEncoderTest {
 
     // When
     videoEncoder.acquire();
-    boolean result = videoEncoder.encode(unencodedVideo);
+    boolean result = videoEncoder.encode(unencodedVideo) && videoEncoder.publish(unencodedVideo);
 
     // Then
     assertThat(result).isFalse();
@@ -204,6 +333,573 @@ class VideoEncoderTest {
             unencodedVideo.encodedPath());
   }
 
+  @Test
+  void encode_leavesTempFile_untilPublished() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThatTestDirectory()
+        .containsExactly(unencodedVideo.originalPath(), unencodedVideo.tempEncodedPath());
+  }
+
+  @Test
+  void withEditingProfile_tunesEncoderForEditing() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.profile", "editing");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json(),
+            EncoderTuning.editing());
+  }
+
+  @Test
+  void withFfmpegEngine_encodesWithFfmpeg() throws IOException {
+    // Given
+    whenEncodeReturns(mockFfmpeg, true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.engine", "ffmpeg");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockFfmpeg)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json());
+    verifyNoInteractions(mockHandBrake);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"standard", "editing"})
+  void withThreads_limitsEncoderThreads(String profile) throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.profile", profile);
+    properties.setProperty("encode.threads", "4");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json(),
+            profile.equals("editing")
+                ? EncoderTuning.editing(EncoderTuning.Setting.threads(4))
+                : EncoderTuning.settings(EncoderTuning.Setting.threads(4)));
+  }
+
+  @ParameterizedTest
+  @CsvSource({"144, 60", "60.0001, 0", "30, 0"})
+  void withRate_encodesSourcesAboveIt_atIt(double sourceRate, double expectedRate)
+      throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.rate", "60");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    when(mockHandBrake.scan(Input.of(unencodedVideo.originalPath())))
+        .thenReturn(
+            Optional.of(
+                new SourceInfo(
+                    unencodedVideo.originalPath(),
+                    Duration.ofSeconds(10),
+                    1920,
+                    1080,
+                    sourceRate,
+                    "h264",
+                    List.of())));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            expectedRate == 0
+                ? FrameRateControl.constant()
+                : FrameRateControl.constant(expectedRate),
+            LogFormat.json());
+  }
+
+  @Test
+  void probe_scansSourceAheadOfEncoding_soEncodingDoesNotRescan() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.rate", "60");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    when(mockHandBrake.scan(Input.of(unencodedVideo.originalPath())))
+        .thenReturn(
+            Optional.of(
+                new SourceInfo(
+                    unencodedVideo.originalPath(),
+                    Duration.ofSeconds(10),
+                    1920,
+                    1080,
+                    144,
+                    "h264",
+                    List.of())));
+
+    // When
+    videoEncoder.probe(unencodedVideo);
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockHandBrake).scan(any());
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(60),
+            LogFormat.json());
+  }
+
+  @Test
+  void probe_whenScanFails_encodingDoesNotRescan() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.rate", "60");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    when(mockHandBrake.scan(Input.of(unencodedVideo.originalPath()))).thenReturn(Optional.empty());
+
+    // When
+    videoEncoder.probe(unencodedVideo);
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    // (the scan isn't retried while holding the core group, the rate is the timeline's)
+    assertThat(result).isTrue();
+    verify(mockHandBrake).scan(any());
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(60),
+            LogFormat.json());
+  }
+
+  @Test
+  void probe_whenScanNotNeeded_doesNotScan() {
+    // Given
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(inputDirectory.resolve("file.mp4"));
+
+    // When
+    videoEncoder.probe(unencodedVideo);
+
+    // Then
+    verifyNoInteractions(mockHandBrake);
+  }
+
+  @Test
+  void withAudioPassthrough_passesThroughEveryAudioTrack() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.audio", "passthrough");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    when(mockHandBrake.scan(Input.of(unencodedVideo.originalPath())))
+        .thenReturn(
+            Optional.of(
+                new SourceInfo(
+                    unencodedVideo.originalPath(),
+                    Duration.ofSeconds(10),
+                    1920,
+                    1080,
+                    60,
+                    "h264",
+                    List.of(
+                        new SourceInfo.AudioTrack("English", "aac", 2, 48000),
+                        new SourceInfo.AudioTrack("English", "aac", 1, 48000)))));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json(),
+            Audio.passthrough(1, 2));
+  }
+
+  @Test
+  void withAudioPassthrough_whenScanFails_encodesAudioAsPerPreset() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.audio", "passthrough");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    when(mockHandBrake.scan(any())).thenReturn(Optional.empty());
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json());
+  }
+
+  @Test
+  void proxy_encodesWithProxyPresetAtFastestSpeed_toProxyPath() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+    UnencodedVideo proxy =
+        unencodedVideoFactory
+            .newUnencodedVideo(Files.copy(testVideo, inputDirectory.resolve("file.mp4")))
+            .proxy();
+
+    // When
+    videoEncoder.acquire();
+    boolean encodeResult = videoEncoder.encode(proxy);
+    boolean publishResult = videoEncoder.publish(proxy);
+
+    // Then
+    assertThat(encodeResult).isTrue();
+    assertThat(publishResult).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(proxy.originalPath()),
+            Output.of(proxy.tempEncodedPath()),
+            Preset.productionProxy540p(),
+            Encoder.h264(),
+            EncoderTuning.speed(EncoderTuning.Speed.ULTRAFAST),
+            FrameRateControl.constant(),
+            LogFormat.json());
+    assertThat(Files.exists(proxy.encodedPath())).isTrue();
+  }
+
+  @Test
+  void withProxyFirst_encodesFullQualityAtLowerPriority() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.proxy", "true");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(videoEncoder.proxyFirst()).isTrue();
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json(),
+            Scheduling.nice(10));
+  }
+
+  @Test
+  void withSpeedBitrate_encodesAtCalibratedSpeed() throws IOException {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("speed.bitrate", "1000000");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    when(mockHandBrake.scan(any()))
+        .thenReturn(
+            Optional.of(
+                new SourceInfo(
+                    unencodedVideo.originalPath(),
+                    Duration.ofSeconds(10),
+                    640,
+                    360,
+                    30,
+                    "h264",
+                    List.of())));
+    // every speed is within the target, the fastest (ultrafast) is chosen
+    when(mockHandBrake.encodeAsync(any(), any(), any(Option[].class)))
+        .thenReturn(
+            CompletableFuture.completedFuture(
+                new EncodeResult(
+                    0, Duration.ofSeconds(1), OptionalDouble.of(100), 1000, Optional.empty())));
+
+    // When
+    videoEncoder.acquire();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json(),
+            EncoderTuning.speed(EncoderTuning.Speed.ULTRAFAST));
+  }
+
+  @Test
+  void withSchedulingAndCoreGroups_encodesOneVideoPerCoreGroup_onItsCores() throws Exception {
+    // Given
+    whenHandBrakeReturns(true);
+
+    Properties properties = new Properties();
+    properties.setProperty("encode.nice", "10");
+    properties.setProperty("encode.cores", "0-1;2-3");
+    Config config = Config.of(properties);
+    FileTransfer fileTransfer = new FileTransfer(config);
+    VideoEncoder videoEncoder =
+        new VideoEncoder(
+            mockHandBrake,
+            mockFfmpeg,
+            InputStager.disabled(config, fileTransfer),
+            OutputPublisher.disabled(fileTransfer),
+            config);
+
+    UnencodedVideo unencodedVideo =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo, inputDirectory.resolve("file.mp4")));
+    UnencodedVideo unencodedVideo2 =
+        unencodedVideoFactory.newUnencodedVideo(
+            Files.copy(testVideo2, inputDirectory.resolve("file2.mp4")));
+
+    // When
+    videoEncoder.acquire();
+    Thread thread =
+        Thread.ofVirtual()
+            .start(
+                () -> {
+                  videoEncoder.acquire();
+                  videoEncoder.encode(unencodedVideo2);
+                });
+    thread.join();
+    boolean result = videoEncoder.encode(unencodedVideo);
+
+    // Then
+    assertThat(videoEncoder.concurrency()).isEqualTo(2);
+    assertThat(result).isTrue();
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo.originalPath()),
+            Output.of(unencodedVideo.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json(),
+            Scheduling.nice(10),
+            Scheduling.cpus(List.of(0, 1)));
+    verify(mockHandBrake)
+        .encode(
+            Input.of(unencodedVideo2.originalPath()),
+            Output.of(unencodedVideo2.tempEncodedPath()),
+            Preset.productionStandard(),
+            Encoder.h264(),
+            FrameRateControl.constant(),
+            LogFormat.json(),
+            Scheduling.nice(10),
+            Scheduling.cpus(List.of(2, 3)));
+  }
+
   @Test
   void whenNotAcquired_throwsException() {
     // When
@@ -215,7 +911,11 @@ class VideoEncoderTest {
   }
 
   private void whenHandBrakeReturns(boolean result) {
-    when(mockHandBrake.encode(any(Input.class), any(Output.class), any(Option[].class)))
+    whenEncodeReturns(mockHandBrake, result);
+  }
+
+  private static void whenEncodeReturns(HandBrake handBrake, boolean result) {
+    when(handBrake.encode(any(Input.class), any(Output.class), any(Option[].class)))
         .thenAnswer(
             (Answer<Boolean>)
                 invocation -> {
@@ -235,7 +935,8 @@ class VideoEncoderTest {
             Output.of(unencodedVideo.tempEncodedPath()),
             Preset.productionStandard(),
             Encoder.h264(),
-            FrameRateControl.constant());
+            FrameRateControl.constant(),
+            LogFormat.json());
   }
 
   private StreamSubject assertThatTestDirectory() throws IOException {
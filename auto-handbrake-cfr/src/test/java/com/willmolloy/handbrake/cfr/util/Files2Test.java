@@ -0,0 +1,97 @@
+package com.willmolloy.handbrake.cfr.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Files2Test.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class Files2Test {
+
+  private FileSystem fileSystem;
+  private byte[] contents;
+
+  @BeforeEach
+  void setUp() {
+    fileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    // span several buffers
+    contents = new byte[3 * 1024 * 1024 + 123];
+    new Random(0).nextBytes(contents);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    fileSystem.close();
+  }
+
+  @Test
+  void mismatch_sameContents_returnsMinusOne() throws IOException {
+    Path path1 = Files.write(fileSystem.getPath("/1.mp4"), contents);
+    Path path2 = Files.write(fileSystem.getPath("/2.mp4"), contents);
+
+    assertThat(Files2.mismatch(path1, path2)).isEqualTo(-1);
+    assertThat(Files2.mismatch(path1, path1)).isEqualTo(-1);
+  }
+
+  @Test
+  void mismatch_differentContents_returnsPositionOfFirstMismatch() throws IOException {
+    Path path1 = Files.write(fileSystem.getPath("/1.mp4"), contents);
+    contents[2 * 1024 * 1024 + 5]++;
+    Path path2 = Files.write(fileSystem.getPath("/2.mp4"), contents);
+
+    assertThat(Files2.mismatch(path1, path2)).isEqualTo(2 * 1024 * 1024 + 5);
+  }
+
+  @Test
+  void mismatch_prefix_returnsSizeOfSmallerFile() throws IOException {
+    Path path1 = Files.write(fileSystem.getPath("/1.mp4"), contents);
+    Path path2 = Files.write(fileSystem.getPath("/2.mp4"), Arrays.copyOf(contents, 1024 * 1024));
+
+    assertThat(Files2.mismatch(path1, path2)).isEqualTo(1024 * 1024);
+    assertThat(Files2.mismatch(path2, path1)).isEqualTo(1024 * 1024);
+  }
+
+  @Test
+  void contentsSimilar_fewMismatches_returnsTrue() throws IOException {
+    Path path1 = Files.write(fileSystem.getPath("/1.mp4"), contents);
+    for (int i = 0; i < contents.length; i += 1000) {
+      contents[i]++;
+    }
+    Path path2 = Files.write(fileSystem.getPath("/2.mp4"), contents);
+
+    assertThat(Files2.contentsSimilar(path1, path2)).isTrue();
+  }
+
+  @Test
+  void contentsSimilar_manyMismatches_returnsFalse() throws IOException {
+    Path path1 = Files.write(fileSystem.getPath("/1.mp4"), contents);
+    for (int i = 0; i < contents.length; i += 10) {
+      contents[i]++;
+    }
+    Path path2 = Files.write(fileSystem.getPath("/2.mp4"), contents);
+
+    assertThat(Files2.contentsSimilar(path1, path2)).isFalse();
+  }
+
+  @Test
+  void contentsSimilar_differentSizes_returnsFalse() throws IOException {
+    Path path1 = Files.write(fileSystem.getPath("/1.mp4"), contents);
+    Path path2 = Files.write(fileSystem.getPath("/2.mp4"), Arrays.copyOf(contents, 1024 * 1024));
+
+    assertThat(Files2.contentsSimilar(path1, path2)).isFalse();
+  }
+}
@@ -0,0 +1,3 @@
+plugins {
+  id("me.champeau.jmh") version "0.7.2"
+}
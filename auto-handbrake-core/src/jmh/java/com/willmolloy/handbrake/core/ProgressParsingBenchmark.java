@@ -0,0 +1,117 @@
+package com.willmolloy.handbrake.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks consuming HandBrake output: the byte level {@link LineScanner} and {@link
+ * ProgressParser}, compared with decoding every line ({@link BufferedReader#lines}) and matching a
+ * regex.
+ *
+ * <p>Run with {@code -prof gc} to compare allocation ({@code gc.alloc.rate.norm}).
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+public class ProgressParsingBenchmark {
+
+  // the previous implementation (regex in HandBrakeLogger)
+  private static final Pattern ENCODING_ETA_PATTERN =
+      Pattern.compile(
+          "Encoding: task 1 of 1, ((\\d+)[.]\\d+ % [(]\\d+[.]\\d+ fps, avg \\d+[.]\\d+ fps, ETA \\d+h\\d+m\\d+s[)])");
+
+  private static final Logger log = LogManager.getLogger();
+
+  /** Number of progress lines. */
+  @Param({"10000"})
+  public int progressLines;
+
+  private byte[] output;
+
+  /** Creates HandBrake like output, mostly progress (terminated by {@code \r}). */
+  @Setup
+  public void setUp() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < progressLines; i++) {
+      if (i % 100 == 0) {
+        builder.append("[12:00:00] sync: first pts audio 0x1 is 0\n");
+      }
+      double percent = 100.0 * i / progressLines;
+      builder.append(
+          String.format(
+              Locale.ROOT,
+              "Encoding: task 1 of 1, %.2f %% (%.2f fps, avg %.2f fps, ETA 00h%02dm%02ds)\r",
+              percent,
+              60 + i % 7 / 10.0,
+              62.3,
+              (progressLines - i) / 600 % 60,
+              (progressLines - i) / 10 % 60));
+    }
+    output = builder.toString().getBytes(UTF_8);
+  }
+
+  /** Decodes every line, then matches a regex. */
+  @Benchmark
+  public void readerLinesAndRegex(Blackhole blackhole) throws IOException {
+    HashSet<Integer> remainingProgressPercentsToLog =
+        IntStream.iterate(0, i -> i <= 100, i -> i + 10)
+            .boxed()
+            .collect(Collectors.toCollection(HashSet::new));
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new ByteArrayInputStream(output), UTF_8))) {
+      reader
+          .lines()
+          .forEach(
+              line -> {
+                log.debug(line);
+                Matcher m = ENCODING_ETA_PATTERN.matcher(line);
+                if (m.matches()) {
+                  int percent = Integer.parseInt(m.group(2));
+                  blackhole.consume(remainingProgressPercentsToLog.remove(percent));
+                }
+              });
+    }
+  }
+
+  /** Scans bytes, only decoding non-progress lines. */
+  @Benchmark
+  public void byteScanner(Blackhole blackhole) throws IOException {
+    HandBrakeLogger handBrakeLogger =
+        new HandBrakeLogger(List.of(Path.of("input.mp4")), blackhole::consume);
+    LineScanner.scan(new ByteArrayInputStream(output), UTF_8, handBrakeLogger);
+  }
+}
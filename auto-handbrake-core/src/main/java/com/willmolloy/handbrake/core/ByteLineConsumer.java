@@ -0,0 +1,24 @@
+package com.willmolloy.handbrake.core;
+
+import java.util.function.Consumer;
+
+/**
+ * Consumer of process output lines, which can consume lines as bytes (i.e. before they're decoded
+ * into Strings).
+ *
+ * @see LineScanner
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+interface ByteLineConsumer extends Consumer<String> {
+
+  /**
+   * Consumes a line, as bytes. The bytes are only valid for the duration of the call (the buffer
+   * is reused).
+   *
+   * @param bytes buffer containing the line (excluding the line terminator)
+   * @param from index of the first byte of the line
+   * @param to index after the last byte of the line
+   * @return {@code true} if consumed, otherwise the line is decoded and passed to {@link #accept}
+   */
+  boolean accept(byte[] bytes, int from, int to);
+}
@@ -3,11 +3,11 @@ package com.willmolloy.handbrake.core;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import org.apache.logging.log4j.LogManager;
@@ -42,32 +42,97 @@ class Cli {
 
     Process process = null;
     try {
-      process = processBuilderSupplier.get().command(command).redirectErrorStream(true).start();
-
-      try (InputStream inputStream = process.getInputStream()) {
-        try (BufferedReader reader =
-            new BufferedReader(new InputStreamReader(inputStream, Charset.defaultCharset()))) {
-          reader.lines().forEach(processLogConsumer);
-        }
-      }
-
-      int exitCode = process.waitFor();
-      if (exitCode != 0) {
-        log.error("Command ({}) executed with non-zero exit code: {}", command, exitCode);
-        return false;
-      }
-      return true;
+      process = start(command);
+      return waitFor(process, command, processLogConsumer) == 0;
     } catch (Exception e) {
       log.error("Error executing: %s".formatted(command), e);
       return false;
     } finally {
       if (process != null) {
-        process.destroy();
-        if (process.isAlive()) {
-          log.warn("Destroying forcibly: {}", command);
-          process.destroyForcibly();
-        }
+        destroy(process, command);
       }
     }
   }
+
+  /**
+   * Executes the given command, asynchronously.
+   *
+   * <p>Cancelling (or otherwise completing) the returned future before the command exits destroys
+   * the command's process, including its descendants.
+   *
+   * @param command command to execute
+   * @param processLogConsumer consumer of the command's process logs (i.e. {@link
+   *     Process#getInputStream}), invoked on another thread
+   * @return future of the command's exit code
+   */
+  CompletableFuture<Integer> executeAsync(
+      List<String> command, Consumer<String> processLogConsumer) {
+    log.info("Executing: {}", command);
+
+    Process process;
+    try {
+      process = start(command);
+    } catch (IOException e) {
+      log.error("Error executing: %s".formatted(command), e);
+      return CompletableFuture.failedFuture(e);
+    }
+
+    CompletableFuture<Integer> future = new CompletableFuture<>();
+    future.whenComplete(
+        (exitCode, e) -> {
+          if (e != null) {
+            destroy(process, command);
+          }
+        });
+
+    Thread.ofVirtual()
+        .name("cli-" + process.pid())
+        .start(
+            () -> {
+              int exitCode;
+              try {
+                exitCode = waitFor(process, command, processLogConsumer);
+              } catch (Exception e) {
+                if (!future.isDone()) {
+                  log.error("Error executing: %s".formatted(command), e);
+                }
+                destroy(process, command);
+                future.completeExceptionally(e);
+                return;
+              }
+              destroy(process, command);
+              future.complete(exitCode);
+            });
+    return future;
+  }
+
+  private Process start(List<String> command) throws IOException {
+    return processBuilderSupplier.get().command(command).redirectErrorStream(true).start();
+  }
+
+  private static int waitFor(
+      Process process, List<String> command, Consumer<String> processLogConsumer)
+      throws IOException, InterruptedException {
+    try (InputStream inputStream = process.getInputStream()) {
+      LineScanner.scan(inputStream, Charset.defaultCharset(), processLogConsumer);
+    }
+
+    int exitCode = process.waitFor();
+    if (exitCode != 0) {
+      log.error("Command ({}) executed with non-zero exit code: {}", command, exitCode);
+    }
+    return exitCode;
+  }
+
+  private static void destroy(Process process, List<String> command) {
+    // collect descendants first, they're no longer descendants once the process exits
+    List<ProcessHandle> descendants = process.descendants().toList();
+    descendants.forEach(ProcessHandle::destroy);
+    process.destroy();
+    if (process.isAlive()) {
+      log.warn("Destroying forcibly: {}", command);
+      descendants.forEach(ProcessHandle::destroyForcibly);
+      process.destroyForcibly();
+    }
+  }
 }
@@ -0,0 +1,197 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Stopwatch;
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Base of the implementations which run an encoder (i.e. HandBrakeCLI or ffmpeg) via the {@link
+ * Cli}, watched by the {@link Watchdog}, publishing its progress.
+ *
+ * @param <L> logger of the encoder's process
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+abstract class CliEncoder<L extends EncoderLogger> implements HandBrake {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private final Cli cli;
+  private final Watchdog watchdog;
+
+  private final SubmissionPublisher<ProgressEvent> progressPublisher = new SubmissionPublisher<>();
+
+  CliEncoder(Cli cli, Watchdog watchdog) {
+    this.cli = checkNotNull(cli);
+    this.watchdog = checkNotNull(watchdog);
+    progressPublisher.subscribe(new ProgressLogger());
+  }
+
+  /** Executable (and its args which precede all others), e.g. {@code [HandBrakeCLI]}. */
+  abstract Stream<String> executable();
+
+  /**
+   * Args to encode the given input.
+   *
+   * @throws IllegalArgumentException if an option isn't supported
+   */
+  abstract Stream<String> encodeArgs(Input input, Output output, Option... options);
+
+  /**
+   * Creates the logger of a process.
+   *
+   * @param input input the process encodes
+   * @param listener listener of progress events (and the source)
+   */
+  abstract L newLogger(Path input, HandBrakeLogger.Listener listener);
+
+  @Override
+  public Flow.Publisher<ProgressEvent> progress() {
+    return progressPublisher;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The encoder is stopped if it breaches the {@link WatchdogLimits}.
+   */
+  @Override
+  public boolean encode(Input input, Output output, Option... options) {
+    return await(execute(encodeCommand(input, output, options), input.path(), options), input);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Stopping encoding destroys the encoder's process (and any processes it started). The encoder
+   * is stopped if it breaches the {@link WatchdogLimits}, the returned future completes
+   * exceptionally with a {@link java.util.concurrent.TimeoutException}, giving the reason.
+   */
+  @Override
+  public CompletableFuture<EncodeResult> encodeAsync(
+      Input input, Output output, Option... options) {
+    List<String> command = encodeCommand(input, output, options);
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    Execution<L> execution = execute(command, input.path(), options);
+    L logger = execution.logger();
+    CompletableFuture<EncodeResult> result =
+        execution
+            .exitCode()
+            .thenApply(
+                exitCode ->
+                    new EncodeResult(
+                        // the encoder can exit successfully despite reporting an error
+                        exitCode == 0 ? logger.completionError().orElse(0) : exitCode,
+                        stopwatch.elapsed(),
+                        logger.averageFps(),
+                        outputSize(output.path()),
+                        logger.source()));
+    // dependent futures don't propagate cancellation, so do it manually
+    result.whenComplete(
+        (encodeResult, e) -> {
+          if (e != null) {
+            execution.exitCode().cancel(true);
+          }
+        });
+    return result;
+  }
+
+  private List<String> encodeCommand(Input input, Output output, Option... options) {
+    if (Files.exists(output.path())) {
+      log.warn("Output ({}) already exists", output.path());
+    }
+    return getCommand(options, encodeArgs(input, output, options));
+  }
+
+  Cli cli() {
+    return cli;
+  }
+
+  /**
+   * Executes the encoder, watched by the watchdog.
+   *
+   * @param command command to execute
+   * @param input input the encoder encodes
+   * @param options options the encoder encodes with (to watch it against encodes of its class)
+   * @return execution
+   */
+  Execution<L> execute(List<String> command, Path input, Option... options) {
+    Watchdog.Watch watch =
+        watchdog.watch(
+            // progress is sampled, so drop it for subscribers which are behind, rather than block
+            event -> progressPublisher.offer(event, (subscriber, dropped) -> false), options);
+    L logger = newLogger(input, watch);
+    CompletableFuture<Integer> exitCode;
+    try {
+      exitCode = watch.start(cli.executeAsync(command, logger));
+    } catch (Exception e) {
+      exitCode = CompletableFuture.failedFuture(e);
+    }
+    return new Execution<>(logger, exitCode);
+  }
+
+  /**
+   * Waits for the execution to complete. Stops the encoder if interrupted.
+   *
+   * @param execution execution
+   * @param description what's being encoded, for logging
+   * @return {@code true} if execution was successful
+   */
+  static boolean await(Execution<?> execution, Object description) {
+    try {
+      // the encoder can exit successfully despite reporting an error
+      return execution.exitCode().get() == 0
+          && execution.logger().completionError().orElse(0) == 0;
+    } catch (InterruptedException e) {
+      log.warn("Interrupted encoding: {}", description);
+      execution.exitCode().cancel(true);
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      log.error("Error encoding: %s".formatted(description), e.getCause());
+      return false;
+    }
+  }
+
+  /** Command to run the encoder with the given args, through the scheduling commands (if any). */
+  List<String> getCommand(Option[] options, Stream<String> args) {
+    return Stream.of(
+            // run the encoder through the scheduling commands (if any), e.g. nice -n 10 ...
+            Arrays.stream(options)
+                .filter(Scheduling.class::isInstance)
+                .map(Scheduling.class::cast)
+                .flatMap(Scheduling::launcherArgs),
+            executable(),
+            args)
+        .flatMap(Function.identity())
+        .toList();
+  }
+
+  static long outputSize(Path output) {
+    try {
+      return Files.exists(output) ? Files.size(output) : 0;
+    } catch (IOException e) {
+      log.warn("Error reading output size: %s".formatted(output), e);
+      return 0;
+    }
+  }
+
+  record Execution<L extends EncoderLogger>(L logger, CompletableFuture<Integer> exitCode) {}
+}
@@ -0,0 +1,41 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * Result of a HandBrake encode.
+ *
+ * @see HandBrake#encodeAsync
+ * @param exitCode HandBrake process exit code (or the error HandBrake reported on completion, if it
+ *     exited with 0 regardless)
+ * @param elapsed time taken
+ * @param averageFps average frames per second, as last reported by HandBrake (empty if HandBrake
+ *     didn't report progress)
+ * @param outputSize size of the output file in bytes (0 if it doesn't exist)
+ * @param source source metadata, as scanned by HandBrake (empty unless HandBrake reported it, see
+ *     {@link com.willmolloy.handbrake.core.options.LogFormat#json})
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public record EncodeResult(
+    int exitCode,
+    Duration elapsed,
+    OptionalDouble averageFps,
+    long outputSize,
+    Optional<SourceInfo> source) {
+
+  /** Constructor. */
+  public EncodeResult {
+    checkNotNull(elapsed);
+    checkNotNull(averageFps);
+    checkNotNull(source);
+  }
+
+  /** Whether encoding was successful. */
+  public boolean successful() {
+    return exitCode == 0;
+  }
+}
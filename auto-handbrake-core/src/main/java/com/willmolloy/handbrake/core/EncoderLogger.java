@@ -0,0 +1,33 @@
+package com.willmolloy.handbrake.core;
+
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+
+/**
+ * Logger of an encoder process (i.e. HandBrake or ffmpeg), which parses what it reports.
+ *
+ * @see CliEncoder
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+interface EncoderLogger extends Consumer<String> {
+
+  /**
+   * Source metadata of the (first) input, as reported by the encoder.
+   *
+   * @return source metadata, or empty if the encoder hasn't reported it
+   */
+  Optional<SourceInfo> source();
+
+  /** Average frames per second which the encoder has reported last. */
+  OptionalDouble averageFps();
+
+  /**
+   * Error the encoder reported on completion, 0 if none. (Some exit successfully despite an error.)
+   * By default, empty (errors are only reported via the exit code).
+   */
+  default OptionalInt completionError() {
+    return OptionalInt.empty();
+  }
+}
@@ -0,0 +1,104 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Output;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * ffmpeg implementation, i.e. runs ffmpeg rather than HandBrake.
+ *
+ * <p>For some sources, converting to CFR with ffmpeg is much quicker than HandBrake's preset
+ * pipeline, e.g. when the audio is passed through. The HandBrake options are translated into ffmpeg
+ * args (see {@link FfmpegOptions}), ffmpeg is run through the same {@link Cli}, and watched by the
+ * same {@link Watchdog}.
+ *
+ * @see HandBrake#newFfmpegInstance
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class FfmpegImpl extends CliEncoder<FfmpegLogger> {
+
+  private final String ffmpeg;
+
+  /**
+   * Constructor.
+   *
+   * @param cli CLI
+   * @param watchdog watchdog
+   * @param ffmpeg ffmpeg executable
+   */
+  FfmpegImpl(Cli cli, Watchdog watchdog, String ffmpeg) {
+    super(cli, watchdog);
+    checkArgument(!ffmpeg.isBlank(), "ffmpeg must not be blank");
+    this.ffmpeg = ffmpeg;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if an option isn't supported by ffmpeg
+   */
+  @Override
+  public boolean encode(Input input, Output output, Option... options) {
+    return super.encode(input, output, options);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if an option isn't supported by ffmpeg
+   */
+  @Override
+  public CompletableFuture<EncodeResult> encodeAsync(
+      Input input, Output output, Option... options) {
+    return super.encodeAsync(input, output, options);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Runs ffmpeg without encoding (i.e. to a null output, for no time), reading the source from
+   * its description of the input.
+   */
+  @Override
+  public Optional<SourceInfo> scan(Input input) {
+    List<String> command =
+        getCommand(
+            new Option[0],
+            Stream.of("-i", input.path().toString(), "-t", "0", "-f", "null", "-"));
+    Execution<FfmpegLogger> execution = execute(command, input.path());
+    if (!await(execution, input)) {
+      return Optional.empty();
+    }
+    return execution.logger().source();
+  }
+
+  @Override
+  Stream<String> executable() {
+    return Stream.of(ffmpeg, "-hide_banner", "-nostdin");
+  }
+
+  @Override
+  Stream<String> encodeArgs(Input input, Output output, Option... options) {
+    List<String> handBrakeArgs =
+        Stream.concat(Stream.of(input, output), Arrays.stream(options))
+            .flatMap(Option::handBrakeCliArgs)
+            .toList();
+    return Stream.concat(
+        // overwrite (as HandBrake does), and report progress on stdout
+        Stream.of("-y", "-nostats", "-progress", "pipe:1"),
+        FfmpegOptions.translate(handBrakeArgs).stream());
+  }
+
+  @Override
+  FfmpegLogger newLogger(Path input, HandBrakeLogger.Listener listener) {
+    return new FfmpegLogger(input, listener);
+  }
+}
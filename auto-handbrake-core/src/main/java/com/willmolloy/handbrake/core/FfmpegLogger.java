@@ -0,0 +1,212 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * ffmpeg logger. This class is NOT threadsafe. Use once per ffmpeg process.
+ *
+ * <p>Logs all ffmpeg output as DEBUG.
+ *
+ * <p>Reads the source metadata from ffmpeg's description of its input, and parses ffmpeg's
+ * progress (i.e. {@code -progress}, blocks of {@code key=value} lines) into {@link
+ * ProgressEvent}s, as {@link HandBrakeLogger} does for HandBrake. ffmpeg only reports its average
+ * frames per second, so that's reported as the current frames per second too.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class FfmpegLogger implements EncoderLogger {
+
+  // e.g. "  Duration: 00:00:10.00, start: 0.000000, bitrate: 1 kb/s"
+  private static final Pattern DURATION =
+      Pattern.compile("^\\s*Duration: (\\d+):(\\d+):(\\d+(?:\\.\\d+)?)");
+  // e.g. "  Stream #0:0[0x1](und): Video: h264 (High) (avc1 / 0x31637661), yuv420p(progressive),
+  // 1920x1080 [SAR 1:1 DAR 16:9], 5000 kb/s, 60 fps, 60 tbr, 90k tbn (default)"
+  private static final Pattern VIDEO_STREAM =
+      Pattern.compile("^\\s*Stream #0:\\d+.*?: Video: (\\w+).*?, (\\d+)x(\\d+)");
+  private static final Pattern FRAME_RATE = Pattern.compile(", (\\d+(?:\\.\\d+)?) (?:fps|tbr)");
+  // e.g. "  Stream #0:1[0x2](eng): Audio: aac (LC) (mp4a / 0x6134706D), 48000 Hz, stereo, fltp"
+  private static final Pattern AUDIO_STREAM =
+      Pattern.compile(
+          "^\\s*Stream #0:\\d+(?:\\[\\w+])?(?:\\((\\w+)\\))?: Audio: (\\w+).*?, (\\d+) Hz, "
+              + "([^,]+)");
+  // e.g. "out_time_us=5000000"
+  private static final Pattern PROGRESS = Pattern.compile("^([a-z_0-9]+)=(\\S*)$");
+
+  private final Logger log;
+  private final Path input;
+  private final HandBrakeLogger.Listener listener;
+
+  // source, until it's reported
+  private boolean readingInput;
+  private Duration duration = Duration.ZERO;
+  private int width;
+  private int height;
+  private double frameRate;
+  private String videoCodec = "";
+  private final List<SourceInfo.AudioTrack> audioTracks = new ArrayList<>();
+  @Nullable private SourceInfo source;
+
+  // progress, of the current block
+  private long frame;
+  private double fps;
+  private long outTimeMicros;
+  private double speed;
+  private double averageFps = Double.NaN;
+
+  @VisibleForTesting
+  FfmpegLogger(Logger log, Path input, HandBrakeLogger.Listener listener) {
+    this.log = checkNotNull(log);
+    this.input = checkNotNull(input);
+    this.listener = checkNotNull(listener);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param input input
+   * @param listener listener of progress events (and the source)
+   */
+  FfmpegLogger(Path input, HandBrakeLogger.Listener listener) {
+    this(LogManager.getLogger(), input, listener);
+  }
+
+  @Override
+  public void accept(String logLine) {
+    log.debug(logLine);
+
+    Matcher progress = PROGRESS.matcher(logLine);
+    if (progress.matches()) {
+      onProgress(progress.group(1), progress.group(2));
+      return;
+    }
+    if (logLine.startsWith("Input #0")) {
+      readingInput = true;
+    } else if (logLine.startsWith("Output #") || logLine.startsWith("Stream mapping:")) {
+      onSource();
+    } else if (readingInput) {
+      onInputLine(logLine);
+    }
+  }
+
+  private void onInputLine(String logLine) {
+    Matcher matcher = DURATION.matcher(logLine);
+    if (matcher.find()) {
+      duration =
+          Duration.ofHours(Long.parseLong(matcher.group(1)))
+              .plusMinutes(Long.parseLong(matcher.group(2)))
+              .plusNanos((long) (Double.parseDouble(matcher.group(3)) * 1e9));
+      return;
+    }
+    matcher = VIDEO_STREAM.matcher(logLine);
+    if (matcher.find()) {
+      // the first video, as HandBrake encodes the first title
+      if (videoCodec.isEmpty()) {
+        videoCodec = matcher.group(1);
+        width = Integer.parseInt(matcher.group(2));
+        height = Integer.parseInt(matcher.group(3));
+        Matcher frameRateMatcher = FRAME_RATE.matcher(logLine);
+        frameRate = frameRateMatcher.find() ? Double.parseDouble(frameRateMatcher.group(1)) : 0;
+      }
+      return;
+    }
+    matcher = AUDIO_STREAM.matcher(logLine);
+    if (matcher.find()) {
+      // (und is undetermined)
+      String language = matcher.group(1) == null ? "und" : matcher.group(1);
+      audioTracks.add(
+          new SourceInfo.AudioTrack(
+              language.equals("und") ? "" : language,
+              matcher.group(2),
+              channels(matcher.group(4).strip()),
+              Integer.parseInt(matcher.group(3))));
+    }
+  }
+
+  private void onSource() {
+    if (!readingInput) {
+      return;
+    }
+    readingInput = false;
+    source = new SourceInfo(input, duration, width, height, frameRate, videoCodec, audioTracks);
+    log.info("Source: {}", source);
+    listener.onSource(source);
+  }
+
+  private void onProgress(String key, String value) {
+    try {
+      switch (key) {
+        case "frame" -> frame = Long.parseLong(value);
+        case "fps" -> fps = Double.parseDouble(value);
+        // (out_time_ms is microseconds too, an ffmpeg bug)
+        case "out_time_us" -> outTimeMicros = Long.parseLong(value);
+        case "speed" -> speed = Double.parseDouble(value.replace("x", ""));
+        // ends the block
+        case "progress" -> onProgressBlock();
+        default -> {
+          // e.g. bitrate, size
+        }
+      }
+    } catch (NumberFormatException e) {
+      // e.g. "N/A" before the first frame
+    }
+  }
+
+  private void onProgressBlock() {
+    // (sources are reported before progress, even if ffmpeg didn't describe its output)
+    onSource();
+
+    Duration outTime = Duration.ofNanos(outTimeMicros * 1000);
+    double percent =
+        duration.isZero() ? 0 : Math.min(100, outTime.toNanos() * 100.0 / duration.toNanos());
+    Duration eta =
+        speed > 0 && outTime.compareTo(duration) < 0
+            ? Duration.ofNanos((long) (duration.minus(outTime).toNanos() / speed))
+            : Duration.ZERO;
+    if (frame > 0) {
+      averageFps = fps;
+    }
+    listener.onProgress(new ProgressEvent(input, 1, 1, percent, fps, fps, eta));
+  }
+
+  private static int channels(String layout) {
+    return switch (layout) {
+      case "mono" -> 1;
+      case "stereo" -> 2;
+      case "2.1", "3.0" -> 3;
+      case "quad", "4.0" -> 4;
+      case "5.0", "5.0(side)" -> 5;
+      case "5.1", "5.1(side)" -> 6;
+      case "7.1", "7.1(wide)" -> 8;
+      default -> 0;
+    };
+  }
+
+  /**
+   * Source metadata, as described by ffmpeg.
+   *
+   * @return source metadata, or empty if ffmpeg hasn't described it
+   */
+  @Override
+  public Optional<SourceInfo> source() {
+    return Optional.ofNullable(source);
+  }
+
+  /** Average frames per second which ffmpeg has reported last. */
+  @Override
+  public OptionalDouble averageFps() {
+    return Double.isNaN(averageFps) ? OptionalDouble.empty() : OptionalDouble.of(averageFps);
+  }
+}
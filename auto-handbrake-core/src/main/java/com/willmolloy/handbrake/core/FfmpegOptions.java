@@ -0,0 +1,172 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Splitter;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates HandBrake options (i.e. HandBrakeCLI args) into ffmpeg args.
+ *
+ * <p>Only the options which have an ffmpeg equivalent are supported, e.g. not custom presets or
+ * peak frame rate. The presets are approximated by the quality (CRF) and scaling of the HandBrake
+ * presets, the output won't be identical.
+ *
+ * <p>HandBrake's audio passthrough falls back to AAC for codecs the container doesn't support,
+ * ffmpeg passes every codec through (so e.g. a TrueHD track can fail an MP4 output).
+ *
+ * @see FfmpegImpl
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+final class FfmpegOptions {
+
+  /** Preset name -> ffmpeg args. */
+  private static final Map<String, List<String>> PRESETS =
+      Map.of(
+          "Production Max", List.of("-crf", "18"),
+          "Production Standard", List.of("-crf", "22"),
+          // every frame a keyframe, as HandBrake's
+          "Production Proxy 540p", List.of("-vf", "scale=-2:540", "-g", "1", "-crf", "22"));
+
+  /** HandBrake encoder -> ffmpeg video codec. */
+  private static final Map<String, String> ENCODERS =
+      Map.of(
+          "x264", "libx264",
+          "x265", "libx265",
+          "nvenc_h264", "h264_nvenc",
+          "nvenc_h265", "hevc_nvenc");
+
+  /** HandBrake audio encoder -> ffmpeg audio codec. */
+  private static final Map<String, String> AUDIO_ENCODERS = Map.of("copy", "copy", "av_aac", "aac");
+
+  /** HandBrake mixdown -> number of channels. */
+  private static final Map<String, Integer> MIXDOWNS =
+      Map.of("mono", 1, "stereo", 2, "dpl2", 2, "5point1", 6, "7point1", 8);
+
+  private static final Splitter COMMA = Splitter.on(',');
+
+  /**
+   * Translates the given HandBrakeCLI args.
+   *
+   * @param handBrakeArgs HandBrakeCLI args, including the input and output
+   * @return ffmpeg args, the input first and the output last
+   * @throws IllegalArgumentException if an option isn't supported by ffmpeg
+   */
+  static List<String> translate(List<String> handBrakeArgs) {
+    String input = null;
+    String output = null;
+    String encoder = null;
+    String encoderSettings = null;
+    List<String> inputArgs = new ArrayList<>();
+    List<String> args = new ArrayList<>();
+
+    for (int i = 0; i < handBrakeArgs.size(); i++) {
+      String arg = handBrakeArgs.get(i);
+      switch (arg) {
+        case "--input" -> input = value(handBrakeArgs, ++i);
+        case "--output" -> output = value(handBrakeArgs, ++i);
+        case "--preset" -> {
+          String preset = value(handBrakeArgs, ++i);
+          List<String> presetArgs = PRESETS.get(preset);
+          checkArgument(presetArgs != null, "Preset not supported by ffmpeg: %s", preset);
+          args.addAll(presetArgs);
+        }
+        case "--encoder" -> {
+          encoder = translate(ENCODERS, "Encoder", value(handBrakeArgs, ++i));
+          args.addAll(List.of("-c:v", encoder));
+        }
+        case "--encoder-preset" -> args.addAll(List.of("-preset", value(handBrakeArgs, ++i)));
+        case "--encoder-tune" -> args.addAll(List.of("-tune", value(handBrakeArgs, ++i)));
+        case "--encoder-level" -> {
+          String level = value(handBrakeArgs, ++i);
+          if (!level.equals("auto")) {
+            args.addAll(List.of("-level", level));
+          }
+        }
+        // (needs the encoder, which may come after)
+        case "--encopts" -> encoderSettings = value(handBrakeArgs, ++i);
+        case "--cfr" -> args.addAll(List.of("-fps_mode", "cfr"));
+        // i.e. same as source
+        case "--vfr" -> args.addAll(List.of("-fps_mode", "passthrough"));
+        case "--rate" -> args.addAll(List.of("-r", value(handBrakeArgs, ++i)));
+        case "--audio" -> {
+          // the first video, as HandBrake encodes the first title
+          args.addAll(List.of("-map", "0:v:0"));
+          for (String track : COMMA.split(value(handBrakeArgs, ++i))) {
+            args.addAll(List.of("-map", "0:a:" + (Integer.parseInt(track) - 1)));
+          }
+        }
+        case "--aencoder" -> {
+          List<String> encoders = COMMA.splitToList(value(handBrakeArgs, ++i));
+          for (int track = 0; track < encoders.size(); track++) {
+            String audioEncoder = translate(AUDIO_ENCODERS, "Audio encoder", encoders.get(track));
+            args.addAll(List.of("-c:a:" + track, audioEncoder));
+          }
+        }
+        case "--mixdown" -> {
+          List<String> mixdowns = COMMA.splitToList(value(handBrakeArgs, ++i));
+          for (int track = 0; track < mixdowns.size(); track++) {
+            args.addAll(
+                List.of(
+                    "-ac:a:" + track,
+                    String.valueOf(translate(MIXDOWNS, "Mixdown", mixdowns.get(track)))));
+          }
+        }
+        // ffmpeg passes every codec through, so nothing to fall back from
+        case "--audio-copy-mask", "--audio-fallback" -> value(handBrakeArgs, ++i);
+        // seeking the input (before it's opened) is quicker than decoding up to the start
+        case "--start-at" -> inputArgs.addAll(List.of("-ss", seconds(value(handBrakeArgs, ++i))));
+        case "--stop-at" -> args.addAll(List.of("-t", seconds(value(handBrakeArgs, ++i))));
+        // ffmpeg's progress is always machine readable (see FfmpegLogger)
+        case "--json" -> {}
+        default -> throw new IllegalArgumentException("Option not supported by ffmpeg: " + arg);
+      }
+    }
+    checkArgument(input != null, "No input: %s", handBrakeArgs);
+    checkArgument(output != null, "No output: %s", handBrakeArgs);
+
+    if (encoderSettings != null) {
+      args.addAll(List.of(encoderSettingsKey(encoder), encoderSettings));
+    }
+
+    List<String> ffmpegArgs = new ArrayList<>(inputArgs);
+    ffmpegArgs.addAll(List.of("-i", input));
+    ffmpegArgs.addAll(args);
+    ffmpegArgs.add(output);
+    return ffmpegArgs;
+  }
+
+  private static String encoderSettingsKey(@Nullable String encoder) {
+    checkArgument(encoder != null, "Encoder settings not supported by ffmpeg without an encoder");
+    return switch (encoder) {
+      case "libx264" -> "-x264-params";
+      case "libx265" -> "-x265-params";
+      default ->
+          throw new IllegalArgumentException(
+              "Encoder settings not supported by ffmpeg for encoder: " + encoder);
+    };
+  }
+
+  private static <T> T translate(Map<String, T> values, String description, String value) {
+    T translated = values.get(value);
+    checkArgument(translated != null, "%s not supported by ffmpeg: %s", description, value);
+    return translated;
+  }
+
+  /** Value of a time option, e.g. {@code seconds:10}. */
+  private static String seconds(String value) {
+    checkArgument(value.startsWith("seconds:"), "Time not supported by ffmpeg: %s", value);
+    return value.substring("seconds:".length());
+  }
+
+  private static String value(List<String> handBrakeArgs, int index) {
+    checkArgument(
+        index < handBrakeArgs.size(), "Missing value of: %s", handBrakeArgs.get(index - 1));
+    return handBrakeArgs.get(index);
+  }
+
+  private FfmpegOptions() {}
+}
@@ -1,12 +1,26 @@
 package com.willmolloy.handbrake.core;
 
+import com.google.common.base.Stopwatch;
 import com.willmolloy.handbrake.core.options.Input;
 import com.willmolloy.handbrake.core.options.Option;
 import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Preset;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Supplier;
 
 /**
  * HandBrake interface.
  *
+ * <p>Implemented by HandBrake itself (see {@link #newInstance}), or by ffmpeg, translating the
+ * HandBrake options (see {@link #newFfmpegInstance}).
+ *
  * @author <a href=https://willmolloy.com>Will Molloy</a>
  */
 public interface HandBrake {
@@ -21,7 +35,117 @@ public interface HandBrake {
    */
   boolean encode(Input input, Output output, Option... options);
 
+  /**
+   * Runs HandBrake encoding, asynchronously.
+   *
+   * <p>Cancelling the returned future (or otherwise completing it, e.g. via {@link
+   * CompletableFuture#orTimeout}) stops encoding.
+   *
+   * <p>By default, runs {@link #encode} on a new thread. It can't be stopped, and the result
+   * only reports success.
+   *
+   * @param input input file
+   * @param output output file
+   * @param options HandBrake options
+   * @return future of the encoding result
+   */
+  default CompletableFuture<EncodeResult> encodeAsync(
+      Input input, Output output, Option... options) {
+    CompletableFuture<EncodeResult> future = new CompletableFuture<>();
+    Thread.ofVirtual()
+        .start(
+            () -> {
+              Stopwatch stopwatch = Stopwatch.createStarted();
+              try {
+                boolean successful = encode(input, output, options);
+                long outputSize = Files.exists(output.path()) ? Files.size(output.path()) : 0;
+                future.complete(
+                    new EncodeResult(
+                        successful ? 0 : 1,
+                        stopwatch.elapsed(),
+                        OptionalDouble.empty(),
+                        outputSize,
+                        Optional.empty()));
+              } catch (Exception e) {
+                future.completeExceptionally(e);
+              }
+            });
+    return future;
+  }
+
+  /**
+   * Scans the given input, without encoding it.
+   *
+   * <p>By default, scans nothing.
+   *
+   * @param input input file
+   * @return source info, or empty if scanning failed
+   */
+  default Optional<SourceInfo> scan(Input input) {
+    return Optional.empty();
+  }
+
+  /**
+   * Compiles the given options into a custom preset file, to reuse for many encodes, rather than
+   * giving every encode the same (long) list of options.
+   *
+   * <p>Compiled at most once per instance, for the same file, name and options.
+   *
+   * <p>By default, presets aren't supported, so this throws.
+   *
+   * @param file preset file to write (its directory must exist)
+   * @param name name of the custom preset
+   * @param options HandBrake options to compile, e.g. a base {@link Preset} and {@link
+   *     com.willmolloy.handbrake.core.options.EncoderTuning}
+   * @return the custom preset, imported from the file
+   * @throws IOException if compiling failed
+   */
+  default Preset compilePreset(Path file, String name, Option... options) throws IOException {
+    throw new IOException("Presets not supported: %s".formatted(name));
+  }
+
+  /**
+   * Publishes encoding progress, of every encode run by this instance.
+   *
+   * <p>Progress is published as HandBrake reports it (a few times a second). Each subscriber has a
+   * bounded buffer. If a subscriber falls behind, progress it hasn't got room for is dropped for
+   * that subscriber, rather than stalling HandBrake.
+   *
+   * <p>By default, publishes nothing.
+   *
+   * @return progress publisher
+   */
+  default Flow.Publisher<ProgressEvent> progress() {
+    SubmissionPublisher<ProgressEvent> publisher = new SubmissionPublisher<>();
+    publisher.close();
+    return publisher;
+  }
+
   static HandBrake newInstance() {
-    return new HandBrakeImpl(new Cli(ProcessBuilder::new));
+    return newInstance(WatchdogLimits::defaults);
+  }
+
+  /**
+   * Creates an instance, which stops HandBrake if it breaches the given limits (e.g. if it hangs).
+   *
+   * @param watchdogLimits limits, supplied whenever they're checked (so they can change)
+   * @return HandBrake instance
+   */
+  static HandBrake newInstance(Supplier<WatchdogLimits> watchdogLimits) {
+    return new HandBrakeImpl(new Cli(ProcessBuilder::new), new Watchdog(watchdogLimits));
+  }
+
+  /**
+   * Creates an instance which runs ffmpeg, rather than HandBrake. The options are translated into
+   * ffmpeg args, options without an ffmpeg equivalent (e.g. custom presets) aren't supported.
+   *
+   * <p>Stops ffmpeg if it breaches the given limits, as with {@link #newInstance(Supplier)}.
+   *
+   * @param ffmpeg ffmpeg executable, e.g. {@code ffmpeg} (on the path)
+   * @param watchdogLimits limits, supplied whenever they're checked (so they can change)
+   * @return ffmpeg instance
+   */
+  static HandBrake newFfmpegInstance(String ffmpeg, Supplier<WatchdogLimits> watchdogLimits) {
+    return new FfmpegImpl(new Cli(ProcessBuilder::new), new Watchdog(watchdogLimits), ffmpeg);
   }
 }
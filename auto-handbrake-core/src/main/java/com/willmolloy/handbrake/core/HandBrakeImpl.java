@@ -1,15 +1,20 @@
 package com.willmolloy.handbrake.core;
 
-import static com.google.common.base.Preconditions.checkNotNull;
-
 import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.LogFormat;
 import com.willmolloy.handbrake.core.options.Option;
 import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Preset;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -20,39 +25,80 @@ import org.apache.logging.log4j.Logger;
  * @see HandBrake#newInstance
  * @author <a href=https://willmolloy.com>Will Molloy</a>
  */
-class HandBrakeImpl implements HandBrake {
+class HandBrakeImpl extends CliEncoder<HandBrakeLogger> {
 
   private static final Logger log = LogManager.getLogger();
 
-  private final Cli cli;
+  // commands of the presets compiled by this instance
+  private final Set<List<String>> compiledPresets = ConcurrentHashMap.newKeySet();
 
-  HandBrakeImpl(Cli cli) {
-    this.cli = checkNotNull(cli);
+  HandBrakeImpl(Cli cli, Watchdog watchdog) {
+    super(cli, watchdog);
   }
 
   @Override
-  public boolean encode(Input input, Output output, Option... options) {
-    if (Files.exists(output.path())) {
-      log.warn("Output ({}) already exists", output.path());
-    }
+  Stream<String> executable() {
+    // TODO ugly hack... can't seem to install HandBrake in docker with HandBrakeCLI on path
+    return Stream.of(isRunningInsideDocker() ? "/HandBrake/build/HandBrakeCLI" : "HandBrakeCLI");
+  }
 
-    List<String> command =
-        getCommand(Stream.concat(Stream.of(input, output), Arrays.stream(options)));
+  @Override
+  Stream<String> encodeArgs(Input input, Output output, Option... options) {
+    return Stream.concat(Stream.of(input, output), Arrays.stream(options))
+        .flatMap(Option::handBrakeCliArgs);
+  }
+
+  @Override
+  HandBrakeLogger newLogger(Path input, HandBrakeLogger.Listener listener) {
+    return new HandBrakeLogger(input, listener);
+  }
 
-    try {
-      return cli.execute(command, new HandBrakeLogger());
-    } catch (Exception e) {
-      log.error("Error encoding: %s".formatted(input), e);
-      return false;
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Runs HandBrakeCLI with {@code --scan}, reading the source from its JSON output (see {@link
+   * LogFormat#json}).
+   */
+  @Override
+  public Optional<SourceInfo> scan(Input input) {
+    List<String> command =
+        getCommand(
+            new Option[0],
+            Stream.concat(
+                Stream.of(input, LogFormat.json()).flatMap(Option::handBrakeCliArgs),
+                Stream.of("--scan")));
+    Execution<HandBrakeLogger> execution = execute(command, input.path());
+    if (!await(execution, input)) {
+      return Optional.empty();
     }
+    return execution.logger().source();
   }
 
-  private List<String> getCommand(Stream<Option> options) {
-    return Stream.concat(
-            // TODO ugly hack... can't seem to install HandBrake in docker with HandBrakeCLI on path
-            Stream.of(isRunningInsideDocker() ? "/HandBrake/build/HandBrakeCLI" : "HandBrakeCLI"),
-            options.flatMap(Option::handBrakeCliArgs))
-        .toList();
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Runs HandBrakeCLI to export the preset (i.e. {@code --preset-export}), it doesn't encode.
+   */
+  @Override
+  public synchronized Preset compilePreset(Path file, String name, Option... options)
+      throws IOException {
+    Preset preset = Preset.importFile(file, name);
+    List<String> command =
+        getCommand(
+            options,
+            Stream.concat(
+                Stream.of("--preset-export", name, "--preset-export-file", file.toString()),
+                Arrays.stream(options).flatMap(Option::handBrakeCliArgs)));
+    if (compiledPresets.contains(command)) {
+      return preset;
+    }
+
+    if (!cli().execute(command, log::debug) || !Files.exists(file)) {
+      throw new IOException("Error compiling preset (%s): %s".formatted(name, file));
+    }
+    compiledPresets.add(command);
+    log.info("Compiled preset ({}): {}", name, file);
+    return preset;
   }
 
   @SuppressFBWarnings("DMI_HARDCODED_ABSOLUTE_FILENAME")
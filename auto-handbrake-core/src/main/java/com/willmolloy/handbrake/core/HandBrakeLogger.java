@@ -3,12 +3,13 @@ package com.willmolloy.handbrake.core;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
-import java.util.HashSet;
-import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -17,45 +18,211 @@ import org.apache.logging.log4j.Logger;
  *
  * <p>Logs all HandBrake output as DEBUG.
  *
- * <p>Logs HandBrake ETA every 10% of progress as INFO.
+ * <p>Parses HandBrake progress into {@link ProgressEvent}s. Progress lines are parsed as bytes (see
+ * {@link ProgressParser}), and only decoded if logging them.
+ *
+ * <p>If HandBrake outputs JSON (see {@link com.willmolloy.handbrake.core.options.LogFormat#json}),
+ * progress is read from the JSON messages instead (see {@link JsonMessageReader}), along with the
+ * scanned source metadata and completion state.
  *
  * @author <a href=https://willmolloy.com>Will Molloy</a>
  */
-class HandBrakeLogger implements Consumer<String> {
-
-  // HandBrake output logs look like:
-  // Encoding: task 1 of 1, 1.63 % (60.56 fps, avg 83.01 fps, ETA 00h22m29s)
-  // (always task 1 of 1 since HandBrakeImpl called 1 video at a time)
-  private static final Pattern ENCODING_ETA_PATTERN =
-      Pattern.compile(
-          "Encoding: task 1 of 1, ((\\d+)[.]\\d+ % [(]\\d+[.]\\d+ fps, avg \\d+[.]\\d+ fps, ETA \\d+h\\d+m\\d+s[)])");
-
-  private final HashSet<Integer> remainingProgressPercentsToLog =
-      IntStream.iterate(0, i -> i <= 100, i -> i + 10)
-          .boxed()
-          .collect(Collectors.toCollection(HashSet::new));
+class HandBrakeLogger implements ByteLineConsumer, EncoderLogger {
 
   private final Logger log;
+  private final Path input;
+  private final Listener listener;
+
+  private final ProgressParser progressParser = new ProgressParser();
+  private final JsonMessageReader jsonMessageReader = new JsonMessageReader(this::onJsonMessage);
+  @Nullable private SourceInfo source;
+  private int completionError = -1;
+  private double averageFps = Double.NaN;
 
   @VisibleForTesting
-  HandBrakeLogger(Logger log) {
+  HandBrakeLogger(Logger log, Path input, Listener listener) {
     this.log = checkNotNull(log);
+    this.input = checkNotNull(input);
+    this.listener = checkNotNull(listener);
   }
 
-  HandBrakeLogger() {
-    this(LogManager.getLogger());
+  /**
+   * Constructor.
+   *
+   * @param input input HandBrake encodes
+   * @param listener listener of progress events (and the source)
+   */
+  HandBrakeLogger(Path input, Listener listener) {
+    this(LogManager.getLogger(), input, listener);
+  }
+
+  @Override
+  public boolean accept(byte[] bytes, int from, int to) {
+    if (log.isDebugEnabled() || jsonMessageReader.inMessage()) {
+      // logging every line (or reading JSON), so it needs decoding anyway
+      return false;
+    }
+    if (progressParser.parse(bytes, from, to)) {
+      onTextProgress();
+      return true;
+    }
+    return false;
   }
 
   @Override
   public void accept(String logLine) {
     log.debug(logLine);
 
-    Matcher m = ENCODING_ETA_PATTERN.matcher(logLine);
-    if (m.matches()) {
-      int percent = Integer.parseInt(m.group(2));
-      if (remainingProgressPercentsToLog.remove(percent)) {
-        log.info(m.group(1));
+    if (jsonMessageReader.accept(logLine)) {
+      return;
+    }
+    if (progressParser.parse(logLine)) {
+      onTextProgress();
+    }
+  }
+
+  private void onTextProgress() {
+    onProgress(
+        progressParser.task(),
+        progressParser.taskCount(),
+        progressParser.percent(),
+        progressParser.fps(),
+        progressParser.averageFps(),
+        progressParser.etaSeconds());
+  }
+
+  private void onJsonMessage(String name, Object json) {
+    switch (name) {
+      case "Progress" -> onJsonProgress(json);
+      case "JSON Title Set" -> onJsonTitleSet(json);
+      default -> {
+        // e.g. version, not needed
       }
     }
   }
+
+  private void onJsonProgress(Object json) {
+    switch (Json.getString(json, "State").orElse("")) {
+      case "WORKING" ->
+          onProgress(
+              (int) Json.getNumber(json, "Working.Pass").orElse(1),
+              (int) Json.getNumber(json, "Working.PassCount").orElse(1),
+              Json.getNumber(json, "Working.Progress").orElse(0) * 100,
+              Json.getNumber(json, "Working.Rate").orElse(0),
+              Json.getNumber(json, "Working.RateAvg").orElse(Double.NaN),
+              (long) Json.getNumber(json, "Working.ETASeconds").orElse(0));
+      case "WORKDONE" -> {
+        completionError = (int) Json.getNumber(json, "WorkDone.Error").orElse(0);
+        if (completionError != 0) {
+          log.warn("HandBrake completed with error: {} ({})", errorName(completionError), input);
+        }
+      }
+      default -> {
+        // e.g. scanning, muxing
+      }
+    }
+  }
+
+  private void onJsonTitleSet(Object json) {
+    List<?> titles = Json.getList(json, "TitleList");
+    if (titles.isEmpty()) {
+      log.warn("HandBrake found no titles: {}", input);
+      return;
+    }
+    // the first title is encoded, unless a title is given
+    Object title = titles.get(0);
+
+    OptionalDouble ticks = Json.getNumber(title, "Duration.Ticks");
+    Duration duration =
+        ticks.isPresent()
+            // HandBrake's clock runs at 90 kHz
+            ? Duration.ofNanos((long) (ticks.getAsDouble() * 1_000_000_000 / 90_000))
+            : Duration.ofHours((long) Json.getNumber(title, "Duration.Hours").orElse(0))
+                .plusMinutes((long) Json.getNumber(title, "Duration.Minutes").orElse(0))
+                .plusSeconds((long) Json.getNumber(title, "Duration.Seconds").orElse(0));
+    double frameRateDen = Json.getNumber(title, "FrameRate.Den").orElse(0);
+    List<SourceInfo.AudioTrack> audioTracks =
+        Json.getList(title, "AudioList").stream()
+            .map(
+                audio ->
+                    new SourceInfo.AudioTrack(
+                        Json.getString(audio, "Language").orElse(""),
+                        Json.getString(audio, "CodecName").orElse(""),
+                        (int) Json.getNumber(audio, "ChannelCount").orElse(0),
+                        (int) Json.getNumber(audio, "SampleRate").orElse(0)))
+            .toList();
+
+    SourceInfo source =
+        new SourceInfo(
+            input,
+            duration,
+            (int) Json.getNumber(title, "Geometry.Width").orElse(0),
+            (int) Json.getNumber(title, "Geometry.Height").orElse(0),
+            frameRateDen > 0 ? Json.getNumber(title, "FrameRate.Num").orElse(0) / frameRateDen : 0,
+            Json.getString(title, "VideoCodec").orElse(""),
+            audioTracks);
+    this.source = source;
+    log.info("Source: {}", source);
+    listener.onSource(source);
+  }
+
+  private void onProgress(
+      int task, int taskCount, double percent, double fps, double averageFps, long etaSeconds) {
+    this.averageFps = averageFps;
+
+    listener.onProgress(
+        new ProgressEvent(
+            input,
+            task,
+            taskCount,
+            percent,
+            fps,
+            averageFps,
+            Duration.ofSeconds(etaSeconds)));
+  }
+
+  private static String errorName(int error) {
+    // hb_error_code
+    return switch (error) {
+      case 1 -> "cancelled";
+      case 2 -> "wrong input";
+      case 3 -> "initialisation failed";
+      case 4 -> "unknown";
+      case 5 -> "read failed";
+      default -> String.valueOf(error);
+    };
+  }
+
+  /**
+   * Source metadata, as scanned by HandBrake (JSON output only).
+   *
+   * @return source metadata, or empty if HandBrake hasn't reported it
+   */
+  @Override
+  public Optional<SourceInfo> source() {
+    return Optional.ofNullable(source);
+  }
+
+  /** Error HandBrake reported on completion (JSON output only), 0 if none. */
+  @Override
+  public OptionalInt completionError() {
+    return completionError < 0 ? OptionalInt.empty() : OptionalInt.of(completionError);
+  }
+
+  /** Average frames per second which HandBrake has reported last. */
+  @Override
+  public OptionalDouble averageFps() {
+    return Double.isNaN(averageFps) ? OptionalDouble.empty() : OptionalDouble.of(averageFps);
+  }
+
+  /** Listener of what HandBrake reports. Invoked on the thread consuming HandBrake's output. */
+  @FunctionalInterface
+  interface Listener {
+
+    /** Invoked on each progress report. */
+    void onProgress(ProgressEvent event);
+
+    /** Invoked once a source has been scanned (JSON output only), before its progress. */
+    default void onSource(SourceInfo source) {}
+  }
 }
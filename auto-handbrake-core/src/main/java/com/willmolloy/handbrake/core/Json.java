@@ -0,0 +1,247 @@
+package com.willmolloy.handbrake.core;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * Minimal JSON parser, for HandBrake's JSON output.
+ *
+ * <p>Parses into plain Java values: objects are {@link Map}s, arrays are {@link List}s, numbers
+ * are {@link Double}s, strings are {@link String}s, booleans are {@link Boolean}s and null is
+ * {@code null}. Core has no JSON library dependency, and HandBrake's output doesn't need one.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+final class Json {
+
+  private final CharSequence json;
+  private int index;
+
+  private Json(CharSequence json) {
+    this.json = json;
+  }
+
+  /**
+   * Parses the given JSON.
+   *
+   * @param json JSON text
+   * @return parsed value
+   * @throws IllegalArgumentException if the JSON is malformed
+   */
+  static Object parse(CharSequence json) {
+    Json parser = new Json(json);
+    Object value = parser.value();
+    parser.whitespace();
+    if (parser.index < json.length()) {
+      throw parser.error("Unexpected trailing content");
+    }
+    return value;
+  }
+
+  /**
+   * Gets the value at the given path.
+   *
+   * @param json parsed JSON
+   * @param path dot separated object keys and array indices, e.g. {@code "TitleList.0.Path"}
+   * @return value, or empty if it doesn't exist (or is null)
+   */
+  static Optional<Object> get(Object json, String path) {
+    Object value = json;
+    for (String key : path.split("\\.")) {
+      if (value instanceof Map<?, ?> map) {
+        value = map.get(key);
+      } else if (value instanceof List<?> list
+          && isIndex(key)
+          && Integer.parseInt(key) < list.size()) {
+        value = list.get(Integer.parseInt(key));
+      } else {
+        return Optional.empty();
+      }
+    }
+    return Optional.ofNullable(value);
+  }
+
+  /** Gets the number at the given path, or empty if it doesn't exist or isn't a number. */
+  static OptionalDouble getNumber(Object json, String path) {
+    return get(json, path)
+        .filter(Double.class::isInstance)
+        .map(value -> OptionalDouble.of((Double) value))
+        .orElse(OptionalDouble.empty());
+  }
+
+  /** Gets the string at the given path, or empty if it doesn't exist or isn't a string. */
+  static Optional<String> getString(Object json, String path) {
+    return get(json, path).filter(String.class::isInstance).map(String.class::cast);
+  }
+
+  /** Gets the array at the given path, or an empty list if it doesn't exist or isn't an array. */
+  static List<?> getList(Object json, String path) {
+    return get(json, path)
+        .<List<?>>map(value -> value instanceof List<?> list ? list : List.of())
+        .orElse(List.of());
+  }
+
+  private static boolean isIndex(String key) {
+    return !key.isEmpty() && key.length() < 10 && key.chars().allMatch(Character::isDigit);
+  }
+
+  private Object value() {
+    whitespace();
+    if (index >= json.length()) {
+      throw error("Unexpected end");
+    }
+    char c = json.charAt(index);
+    return switch (c) {
+      case '{' -> object();
+      case '[' -> array();
+      case '"' -> string();
+      case 't' -> literal("true", Boolean.TRUE);
+      case 'f' -> literal("false", Boolean.FALSE);
+      case 'n' -> literal("null", null);
+      default -> {
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          yield number();
+        }
+        throw error("Unexpected character '%s'".formatted(c));
+      }
+    };
+  }
+
+  private Map<String, Object> object() {
+    Map<String, Object> object = new LinkedHashMap<>();
+    index++;
+    whitespace();
+    if (peek() == '}') {
+      index++;
+      return Collections.unmodifiableMap(object);
+    }
+    while (true) {
+      whitespace();
+      if (peek() != '"') {
+        throw error("Expected key");
+      }
+      String key = string();
+      whitespace();
+      expect(':');
+      object.put(key, value());
+      whitespace();
+      if (peek() == ',') {
+        index++;
+      } else {
+        expect('}');
+        return Collections.unmodifiableMap(object);
+      }
+    }
+  }
+
+  private List<Object> array() {
+    List<Object> array = new ArrayList<>();
+    index++;
+    whitespace();
+    if (peek() == ']') {
+      index++;
+      return Collections.unmodifiableList(array);
+    }
+    while (true) {
+      array.add(value());
+      whitespace();
+      if (peek() == ',') {
+        index++;
+      } else {
+        expect(']');
+        return Collections.unmodifiableList(array);
+      }
+    }
+  }
+
+  private String string() {
+    index++;
+    StringBuilder string = new StringBuilder();
+    while (true) {
+      if (index >= json.length()) {
+        throw error("Unterminated string");
+      }
+      char c = json.charAt(index++);
+      if (c == '"') {
+        return string.toString();
+      }
+      if (c != '\\') {
+        string.append(c);
+        continue;
+      }
+      if (index >= json.length()) {
+        throw error("Unterminated string");
+      }
+      char escaped = json.charAt(index++);
+      switch (escaped) {
+        case '"', '\\', '/' -> string.append(escaped);
+        case 'b' -> string.append('\b');
+        case 'f' -> string.append('\f');
+        case 'n' -> string.append('\n');
+        case 'r' -> string.append('\r');
+        case 't' -> string.append('\t');
+        case 'u' -> {
+          if (index + 4 > json.length()) {
+            throw error("Invalid unicode escape");
+          }
+          try {
+            string.append(
+                (char) Integer.parseInt(json.subSequence(index, index + 4).toString(), 16));
+          } catch (NumberFormatException e) {
+            throw error("Invalid unicode escape");
+          }
+          index += 4;
+        }
+        default -> throw error("Invalid escape '%s'".formatted(escaped));
+      }
+    }
+  }
+
+  private Double number() {
+    int start = index;
+    while (index < json.length() && "+-0123456789.eE".indexOf(json.charAt(index)) >= 0) {
+      index++;
+    }
+    try {
+      return Double.valueOf(json.subSequence(start, index).toString());
+    } catch (NumberFormatException e) {
+      throw error("Invalid number");
+    }
+  }
+
+  private Object literal(String literal, @Nullable Object value) {
+    if (index + literal.length() > json.length()
+        || !json.subSequence(index, index + literal.length()).toString().equals(literal)) {
+      throw error("Invalid literal");
+    }
+    index += literal.length();
+    return value;
+  }
+
+  private void whitespace() {
+    while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+      index++;
+    }
+  }
+
+  private char peek() {
+    return index < json.length() ? json.charAt(index) : 0;
+  }
+
+  private void expect(char c) {
+    if (peek() != c) {
+      throw error("Expected '%s'".formatted(c));
+    }
+    index++;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException("%s at index %d".formatted(message, index));
+  }
+}
@@ -0,0 +1,119 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the JSON messages HandBrake prints with {@code --json}. This class is NOT threadsafe.
+ *
+ * <p>HandBrake prints each message as a name followed by pretty printed JSON, spread over several
+ * lines, e.g. {@code "Progress: {"}, ..., {@code "}"}. It's mixed in with other (text) output. So
+ * lines are read incrementally, as they're output: a message starts on a line beginning with a
+ * name and an opening brace, and ends once its braces are balanced, at which point it's parsed
+ * (see {@link Json}). A message is only buffered until it ends, not the whole output.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class JsonMessageReader {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final Pattern MESSAGE_START = Pattern.compile("^([A-Z][A-Za-z ]*): \\{");
+
+  /** Guards against an unbalanced message buffering the rest of the output. */
+  private static final int MAX_MESSAGE_LENGTH = 16 * 1024 * 1024;
+
+  private final BiConsumer<String, Object> messageConsumer;
+
+  private final StringBuilder message = new StringBuilder();
+  @Nullable private String name;
+  private int depth;
+  private boolean inString;
+  private boolean escaped;
+
+  /**
+   * Constructor.
+   *
+   * @param messageConsumer consumer of each message's name (e.g. "Progress") and parsed JSON
+   */
+  JsonMessageReader(BiConsumer<String, Object> messageConsumer) {
+    this.messageConsumer = checkNotNull(messageConsumer);
+  }
+
+  /**
+   * Reads a line of output.
+   *
+   * @param line line of output
+   * @return {@code true} if the line is part of a JSON message
+   */
+  boolean accept(String line) {
+    int from = 0;
+    if (name == null) {
+      Matcher matcher = MESSAGE_START.matcher(line);
+      if (!matcher.lookingAt()) {
+        return false;
+      }
+      name = matcher.group(1);
+      from = matcher.end() - 1;
+    }
+
+    int to = line.length();
+    for (int i = from; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+        }
+      } else if (c == '"') {
+        inString = true;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+        if (depth == 0) {
+          to = i + 1;
+          break;
+        }
+      }
+    }
+    message.append(line, from, to).append('\n');
+
+    if (depth == 0) {
+      String messageName = name;
+      String json = message.toString();
+      reset();
+      try {
+        messageConsumer.accept(messageName, Json.parse(json));
+      } catch (IllegalArgumentException e) {
+        log.warn("Error parsing HandBrake JSON ({}): {}", messageName, e.getMessage());
+      }
+    } else if (message.length() > MAX_MESSAGE_LENGTH) {
+      log.warn("HandBrake JSON ({}) too long, ignoring it", name);
+      reset();
+    }
+    return true;
+  }
+
+  /** Whether a message has started, but not yet ended. */
+  boolean inMessage() {
+    return name != null;
+  }
+
+  private void reset() {
+    message.setLength(0);
+    name = null;
+    depth = 0;
+    inString = false;
+    escaped = false;
+  }
+}
@@ -0,0 +1,98 @@
+package com.willmolloy.handbrake.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits process output into lines, like {@link java.io.BufferedReader#lines} (i.e. lines are
+ * terminated by {@code \n}, {@code \r} or {@code \r\n}).
+ *
+ * <p>Unlike {@link java.io.BufferedReader}, lines are scanned in a reused byte buffer, and only
+ * decoded into Strings if a {@link ByteLineConsumer} doesn't consume them as bytes. So frequent
+ * lines (i.e. HandBrake progress) don't create garbage.
+ *
+ * <p>Assumes the charset encodes {@code \n} and {@code \r} as single bytes (e.g. UTF-8).
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+final class LineScanner {
+
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+
+  private LineScanner() {}
+
+  /**
+   * Scans the given stream, until the end of the stream.
+   *
+   * @param inputStream stream to scan
+   * @param charset charset to decode lines with
+   * @param lineConsumer consumer of lines, if a {@link ByteLineConsumer} it's given the bytes first
+   * @throws IOException if an I/O error occurs
+   */
+  static void scan(InputStream inputStream, Charset charset, Consumer<String> lineConsumer)
+      throws IOException {
+    ByteLineConsumer byteLineConsumer =
+        lineConsumer instanceof ByteLineConsumer consumer ? consumer : null;
+
+    byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    int lineStart = 0;
+    int position = 0;
+    int limit = 0;
+    boolean skipLineFeed = false;
+
+    while (true) {
+      if (position == limit) {
+        if (lineStart > 0) {
+          // discard scanned lines
+          System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+          limit -= lineStart;
+          position -= lineStart;
+          lineStart = 0;
+        } else if (limit == buffer.length) {
+          // line longer than the buffer
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+          if (limit > lineStart) {
+            accept(buffer, lineStart, limit, charset, lineConsumer, byteLineConsumer);
+          }
+          return;
+        }
+        limit += read;
+        continue;
+      }
+
+      byte b = buffer[position++];
+      if (skipLineFeed) {
+        skipLineFeed = false;
+        if (b == '\n') {
+          // \r\n is a single line terminator
+          lineStart = position;
+          continue;
+        }
+      }
+      if (b == '\n' || b == '\r') {
+        accept(buffer, lineStart, position - 1, charset, lineConsumer, byteLineConsumer);
+        lineStart = position;
+        skipLineFeed = b == '\r';
+      }
+    }
+  }
+
+  private static void accept(
+      byte[] buffer,
+      int from,
+      int to,
+      Charset charset,
+      Consumer<String> lineConsumer,
+      ByteLineConsumer byteLineConsumer) {
+    if (byteLineConsumer == null || !byteLineConsumer.accept(buffer, from, to)) {
+      lineConsumer.accept(new String(buffer, from, to - from, charset));
+    }
+  }
+}
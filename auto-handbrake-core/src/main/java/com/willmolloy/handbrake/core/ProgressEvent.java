@@ -0,0 +1,52 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * HandBrake encoding progress, as reported by HandBrake.
+ *
+ * @see HandBrake#progress
+ * @param input input file being encoded
+ * @param task HandBrake task (i.e. encoding pass), starting from 1
+ * @param taskCount number of HandBrake tasks
+ * @param percent progress of the task, from 0 to 100
+ * @param fps current frames per second
+ * @param averageFps average frames per second
+ * @param eta estimated time remaining
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public record ProgressEvent(
+    Path input,
+    int task,
+    int taskCount,
+    double percent,
+    double fps,
+    double averageFps,
+    Duration eta) {
+
+  /** Constructor. */
+  public ProgressEvent {
+    checkNotNull(input);
+    checkNotNull(eta);
+  }
+
+  /**
+   * Formats progress like HandBrake does, e.g. "1.63 % (60.56 fps, avg 83.01 fps, ETA 00h22m29s)".
+   */
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ROOT,
+        "%.2f %% (%.2f fps, avg %.2f fps, ETA %02dh%02dm%02ds)",
+        percent,
+        fps,
+        averageFps,
+        eta.toHours(),
+        eta.toMinutesPart(),
+        eta.toSecondsPart());
+  }
+}
@@ -0,0 +1,88 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Logs HandBrake progress every 10% as INFO.
+ *
+ * <p>Subscribed to {@link HandBrake#progress}, so progress events are delivered one at a time.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class ProgressLogger implements Flow.Subscriber<ProgressEvent> {
+
+  private final Logger log;
+
+  // by input, as several encodes may be running
+  private final Map<Path, Progress> progressByInput = new HashMap<>();
+
+  @SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+  private Flow.Subscription subscription;
+
+  @VisibleForTesting
+  ProgressLogger(Logger log) {
+    this.log = checkNotNull(log);
+  }
+
+  ProgressLogger() {
+    this(LogManager.getLogger());
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = checkNotNull(subscription);
+    subscription.request(1);
+  }
+
+  @Override
+  public void onNext(ProgressEvent event) {
+    Progress progress = progressByInput.get(event.input());
+    if (progress == null || progress.isRestart(event)) {
+      progress = new Progress();
+      progressByInput.put(event.input(), progress);
+    }
+    progress.last = event;
+
+    int percent = (int) event.percent();
+    if (percent % 10 == 0 && percent <= 100 && !progress.loggedPercents[percent / 10]) {
+      progress.loggedPercents[percent / 10] = true;
+      log.info("{}: {}", event.input(), event);
+    }
+    if (event.task() == event.taskCount() && event.percent() >= 100) {
+      progressByInput.remove(event.input());
+    }
+
+    subscription.request(1);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    log.warn("Error receiving progress", throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    progressByInput.clear();
+  }
+
+  private static final class Progress {
+    // every 10%, from 0 to 100 (rather than a Set, to avoid boxing)
+    private final boolean[] loggedPercents = new boolean[11];
+
+    private ProgressEvent last;
+
+    /** Whether the input is being encoded again, or the next pass started. */
+    private boolean isRestart(ProgressEvent event) {
+      return event.task() != last.task() || event.percent() < last.percent();
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package com.willmolloy.handbrake.core;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Parses HandBrake progress lines, straight from bytes (or from already decoded lines). This class
+ * is NOT threadsafe.
+ *
+ * <p>Progress lines look like: {@code Encoding: task 1 of 1, 1.63 % (60.56 fps, avg 83.01 fps, ETA
+ * 00h22m29s)}. Equivalent to a regex, but without decoding the line or allocating, since HandBrake
+ * reports progress many times a second.
+ *
+ * <p>The parsed values are available via the accessors, until the next line is parsed.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+final class ProgressParser {
+
+  private static final byte[] ENCODING_TASK = "Encoding: task ".getBytes(US_ASCII);
+  private static final byte[] OF = " of ".getBytes(US_ASCII);
+  private static final byte[] COMMA = ", ".getBytes(US_ASCII);
+  private static final byte[] PERCENT = " % (".getBytes(US_ASCII);
+  private static final byte[] FPS_AVG = " fps, avg ".getBytes(US_ASCII);
+  private static final byte[] FPS_ETA = " fps, ETA ".getBytes(US_ASCII);
+
+  // the line is either bytes or chars
+  private byte[] bytes;
+  private CharSequence chars;
+  private int position;
+  private int limit;
+
+  private int task;
+  private int taskCount;
+  private double percent;
+  private double fps;
+  private double averageFps;
+  private long etaSeconds;
+
+  /**
+   * Parses the given line.
+   *
+   * @param bytes buffer containing the line
+   * @param from index of the first byte of the line
+   * @param to index after the last byte of the line
+   * @return {@code true} if the line is a progress line
+   */
+  boolean parse(byte[] bytes, int from, int to) {
+    this.bytes = bytes;
+    this.position = from;
+    this.limit = to;
+    return parse();
+  }
+
+  /**
+   * Parses the given line.
+   *
+   * @param line line
+   * @return {@code true} if the line is a progress line
+   */
+  boolean parse(CharSequence line) {
+    this.chars = line;
+    this.position = 0;
+    this.limit = line.length();
+    return parse();
+  }
+
+  private boolean parse() {
+    try {
+      if (!expect(ENCODING_TASK)) {
+        return false;
+      }
+      int task = parseInt();
+      if (task < 0 || !expect(OF)) {
+        return false;
+      }
+      int taskCount = parseInt();
+      if (taskCount < 0 || !expect(COMMA)) {
+        return false;
+      }
+      double percent = parseDecimal();
+      if (percent < 0 || !expect(PERCENT)) {
+        return false;
+      }
+      double fps = parseDecimal();
+      if (fps < 0 || !expect(FPS_AVG)) {
+        return false;
+      }
+      double averageFps = parseDecimal();
+      if (averageFps < 0 || !expect(FPS_ETA)) {
+        return false;
+      }
+      int hours = parseInt();
+      if (hours < 0 || !expect('h')) {
+        return false;
+      }
+      int minutes = parseInt();
+      if (minutes < 0 || !expect('m')) {
+        return false;
+      }
+      int seconds = parseInt();
+      if (seconds < 0 || !expect('s') || !expect(')') || position != limit) {
+        return false;
+      }
+
+      this.task = task;
+      this.taskCount = taskCount;
+      this.percent = percent;
+      this.fps = fps;
+      this.averageFps = averageFps;
+      this.etaSeconds = hours * 3600L + minutes * 60L + seconds;
+      return true;
+    } finally {
+      // don't retain the line
+      this.bytes = null;
+      this.chars = null;
+    }
+  }
+
+  int task() {
+    return task;
+  }
+
+  int taskCount() {
+    return taskCount;
+  }
+
+  double percent() {
+    return percent;
+  }
+
+  double fps() {
+    return fps;
+  }
+
+  double averageFps() {
+    return averageFps;
+  }
+
+  long etaSeconds() {
+    return etaSeconds;
+  }
+
+  private boolean expect(byte[] expected) {
+    if (limit - position < expected.length) {
+      return false;
+    }
+    for (byte b : expected) {
+      if (at(position++) != b) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean expect(char expected) {
+    if (position < limit && at(position) == expected) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  /** Parses digits, returns -1 if there are none (or too many). */
+  private int parseInt() {
+    int start = position;
+    long value = 0;
+    while (position < limit && isDigit(at(position))) {
+      value = value * 10 + (at(position++) - '0');
+      if (value > Integer.MAX_VALUE) {
+        return -1;
+      }
+    }
+    return position == start ? -1 : (int) value;
+  }
+
+  /** Parses digits, a point, then digits. Returns -1 if malformed. */
+  private double parseDecimal() {
+    int integer = parseInt();
+    if (integer < 0 || !expect('.')) {
+      return -1;
+    }
+    int start = position;
+    long fraction = 0;
+    long scale = 1;
+    while (position < limit && isDigit(at(position)) && scale < 1_000_000_000L) {
+      fraction = fraction * 10 + (at(position++) - '0');
+      scale *= 10;
+    }
+    if (position == start || (position < limit && isDigit(at(position)))) {
+      return -1;
+    }
+    // a single (correctly rounded) division, so equal to Double.parseDouble
+    return (double) (integer * scale + fraction) / scale;
+  }
+
+  private int at(int index) {
+    return bytes != null ? bytes[index] : chars.charAt(index);
+  }
+
+  private static boolean isDigit(int b) {
+    return b >= '0' && b <= '9';
+  }
+}
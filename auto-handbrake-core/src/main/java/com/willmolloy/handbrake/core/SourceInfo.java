@@ -0,0 +1,55 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Source (input) metadata, as scanned by HandBrake.
+ *
+ * @see EncodeResult#source
+ * @param path input file
+ * @param duration duration
+ * @param width width in pixels
+ * @param height height in pixels
+ * @param frameRate frames per second
+ * @param videoCodec video codec, e.g. "h264" (empty if unknown)
+ * @param audioTracks audio tracks
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public record SourceInfo(
+    Path path,
+    Duration duration,
+    int width,
+    int height,
+    double frameRate,
+    String videoCodec,
+    List<AudioTrack> audioTracks) {
+
+  /** Constructor. */
+  public SourceInfo {
+    checkNotNull(path);
+    checkNotNull(duration);
+    checkNotNull(videoCodec);
+    audioTracks = List.copyOf(audioTracks);
+  }
+
+  /**
+   * Audio track.
+   *
+   * @param language language, e.g. "English"
+   * @param codec codec, e.g. "aac"
+   * @param channels number of channels
+   * @param sampleRate sample rate in Hz
+   */
+  public record AudioTrack(String language, String codec, int channels, int sampleRate) {
+
+    /** Constructor. */
+    public AudioTrack {
+      checkNotNull(language);
+      checkNotNull(codec);
+    }
+  }
+}
@@ -0,0 +1,278 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import com.willmolloy.handbrake.core.options.Option;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Watchdog of HandBrake processes. Stops a process which breaches its {@link WatchdogLimits}.
+ *
+ * <p>HandBrake can hang (e.g. on a corrupt source or a stuck network read), which would hold up
+ * every encode queued behind it. So each process is {@link Watch watched}: if HandBrake stops
+ * reporting progress, or runs far longer than expected, its execution is completed exceptionally
+ * (with the reason), which destroys the process (see {@link Cli#executeAsync}).
+ *
+ * <p>The expected duration of an encode is the source's pixels (i.e. frames by resolution) divided
+ * by the slowest pixel rate of recent successful encodes of the same class, i.e. with the same
+ * preset, encoder and encoder tuning (so e.g. fast proxy encodes don't shorten the limit of full
+ * quality ones). Encodes of only part of the input (e.g. calibration samples) aren't recorded.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class Watchdog {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static final long CHECK_INTERVAL_SECONDS = 1;
+
+  private static final int HISTORY_SIZE = 10;
+
+  // option args which determine an encode's class, i.e. its speed (per pixel)
+  private static final Set<String> CLASS_ARGS =
+      Set.of("--preset", "--encoder", "--encoder-preset", "--encoder-tune", "--encopts");
+  // option args which encode only part of the input
+  private static final Set<String> PARTIAL_ARGS = Set.of("--start-at", "--stop-at");
+
+  private final Supplier<WatchdogLimits> limits;
+  private final Ticker ticker;
+  private final ScheduledExecutorService scheduler;
+
+  // encode class -> pixels per second of its recent successful encodes
+  private final Map<String, Deque<Double>> pixelRateHistory = new HashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param limits limits, supplied for each check (so they can change)
+   */
+  Watchdog(Supplier<WatchdogLimits> limits) {
+    this(
+        limits,
+        Ticker.systemTicker(),
+        Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("watchdog").factory()));
+  }
+
+  @VisibleForTesting
+  Watchdog(Supplier<WatchdogLimits> limits, Ticker ticker, ScheduledExecutorService scheduler) {
+    this.limits = checkNotNull(limits);
+    this.ticker = checkNotNull(ticker);
+    this.scheduler = checkNotNull(scheduler);
+  }
+
+  /**
+   * Creates a watch for a HandBrake process about to start.
+   *
+   * @param progressConsumer consumer of the process's progress events, passed on by the watch
+   * @param options options the process encodes with
+   * @return watch, to listen to the process's {@link HandBrakeLogger}
+   */
+  Watch watch(Consumer<ProgressEvent> progressConsumer, Option... options) {
+    List<String> args = Arrays.stream(options).flatMap(Option::handBrakeCliArgs).toList();
+    boolean partial = args.stream().anyMatch(PARTIAL_ARGS::contains);
+    return new Watch(progressConsumer, encodeClass(args), partial);
+  }
+
+  /**
+   * Class of an encode with the given options args, i.e. the args which determine its speed.
+   *
+   * @param args options args
+   * @return class, e.g. {@code "--preset Production Standard --encoder x264"}
+   */
+  @VisibleForTesting
+  static String encodeClass(List<String> args) {
+    List<String> classArgs = new ArrayList<>();
+    for (int i = 0; i < args.size() - 1; i++) {
+      if (CLASS_ARGS.contains(args.get(i))) {
+        classArgs.add(args.get(i));
+        classArgs.add(args.get(i + 1));
+      }
+    }
+    return String.join(" ", classArgs);
+  }
+
+  /**
+   * Maximum duration of encoding the given source.
+   *
+   * @param source source
+   * @param passes number of encoding passes
+   * @param encodeClass class of the encode (see {@link #encodeClass})
+   * @return maximum duration, or empty if there's no limit
+   */
+  @VisibleForTesting
+  Optional<Duration> maxDuration(SourceInfo source, int passes, String encodeClass) {
+    double durationFactor = limits.get().durationFactor();
+    OptionalDouble pixelRate = slowestPixelRate(encodeClass);
+    if (durationFactor <= 0
+        || pixelRate.isEmpty()
+        || source.frameRate() <= 0
+        || framePixels(source) <= 0
+        || source.duration().isZero()) {
+      return Optional.empty();
+    }
+    double frames = source.duration().toNanos() / 1e9 * source.frameRate() * Math.max(passes, 1);
+    double pixels = frames * framePixels(source);
+    double seconds = pixels / pixelRate.getAsDouble() * durationFactor;
+    return Optional.of(Duration.ofNanos((long) (seconds * 1e9)));
+  }
+
+  /** Pixels of each of the source's frames. */
+  private static double framePixels(SourceInfo source) {
+    return (double) source.width() * source.height();
+  }
+
+  private synchronized OptionalDouble slowestPixelRate(String encodeClass) {
+    return pixelRateHistory.getOrDefault(encodeClass, new ArrayDeque<>()).stream()
+        .mapToDouble(Double::doubleValue)
+        .min();
+  }
+
+  private synchronized void recordPixelRate(String encodeClass, double pixelRate) {
+    Deque<Double> history =
+        pixelRateHistory.computeIfAbsent(encodeClass, key -> new ArrayDeque<>());
+    history.addLast(pixelRate);
+    if (history.size() > HISTORY_SIZE) {
+      history.removeFirst();
+    }
+  }
+
+  /**
+   * Watch of a HandBrake process.
+   *
+   * <p>Progress (and sources) are listened to on the thread consuming HandBrake's output, limits
+   * are checked on the watchdog's thread.
+   */
+  class Watch implements HandBrakeLogger.Listener {
+
+    private final Consumer<ProgressEvent> progressConsumer;
+    private final String encodeClass;
+    private final boolean partial;
+
+    private volatile long lastProgressNanos = ticker.read();
+    @Nullable private volatile Path input;
+    @Nullable private volatile Deadline deadline;
+    private volatile double pixelRate = Double.NaN;
+
+    // only accessed by the thread consuming HandBrake's output
+    @Nullable private SourceInfo source;
+    // pixels of each of the input's frames, 0 if unknown
+    private double inputFramePixels;
+
+    private Watch(Consumer<ProgressEvent> progressConsumer, String encodeClass, boolean partial) {
+      this.progressConsumer = checkNotNull(progressConsumer);
+      this.encodeClass = checkNotNull(encodeClass);
+      this.partial = partial;
+    }
+
+    @Override
+    public void onSource(SourceInfo source) {
+      this.source = source;
+    }
+
+    @Override
+    public void onProgress(ProgressEvent event) {
+      long now = ticker.read();
+      lastProgressNanos = now;
+      if (!event.input().equals(input)) {
+        // started encoding
+        input = event.input();
+        SourceInfo inputSource =
+            source != null && source.path().equals(event.input()) ? source : null;
+        inputFramePixels = inputSource != null ? framePixels(inputSource) : 0;
+        Optional<Duration> maxDuration =
+            inputSource != null
+                ? maxDuration(inputSource, event.taskCount(), encodeClass)
+                : Optional.empty();
+        maxDuration.ifPresent(duration -> log.debug("Maximum duration: {}", duration));
+        deadline = maxDuration.map(duration -> new Deadline(now, duration)).orElse(null);
+      }
+      pixelRate = event.averageFps() * inputFramePixels;
+      progressConsumer.accept(event);
+    }
+
+    /**
+     * Starts watching the given execution, until it completes. Records its pixel rate, if
+     * successful (and it encoded the whole input).
+     *
+     * @param execution execution of the HandBrake process, completing with its exit code
+     * @return the given execution
+     */
+    CompletableFuture<Integer> start(CompletableFuture<Integer> execution) {
+      ScheduledFuture<?> checks =
+          scheduler.scheduleAtFixedRate(
+              () -> {
+                try {
+                  check(execution);
+                } catch (RuntimeException e) {
+                  // e.g. invalid limits, keep checking (a periodic task stops if it throws)
+                  log.warn("Error checking HandBrake", e);
+                }
+              },
+              CHECK_INTERVAL_SECONDS,
+              CHECK_INTERVAL_SECONDS,
+              TimeUnit.SECONDS);
+      execution.whenComplete(
+          (exitCode, e) -> {
+            checks.cancel(false);
+            if (e == null && exitCode == 0 && !partial && pixelRate > 0) {
+              recordPixelRate(encodeClass, pixelRate);
+            }
+          });
+      return execution;
+    }
+
+    /**
+     * Checks the limits, completing the execution exceptionally if breached.
+     *
+     * @param execution execution of the HandBrake process
+     */
+    @VisibleForTesting
+    void check(CompletableFuture<Integer> execution) {
+      long now = ticker.read();
+      Duration stallTimeout = limits.get().stallTimeout();
+      Deadline deadline = this.deadline;
+
+      String reason = null;
+      if (!stallTimeout.isZero() && now - lastProgressNanos > stallTimeout.toNanos()) {
+        reason = "no progress for %s".formatted(stallTimeout);
+      } else if (deadline != null && now - deadline.startNanos() > deadline.maxDurationNanos()) {
+        reason = "exceeded maximum duration (%s)".formatted(deadline.maxDuration());
+      }
+
+      if (reason != null && !execution.isDone()) {
+        log.error("Stopping HandBrake, {}: {}", reason, input);
+        execution.completeExceptionally(new TimeoutException("HandBrake " + reason));
+      }
+    }
+  }
+
+  private record Deadline(long startNanos, Duration maxDuration) {
+    long maxDurationNanos() {
+      return maxDuration.toNanos();
+    }
+  }
+}
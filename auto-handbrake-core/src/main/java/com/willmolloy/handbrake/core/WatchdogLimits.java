@@ -0,0 +1,34 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+
+/**
+ * Limits on how long HandBrake may run, before it's stopped.
+ *
+ * @see HandBrake#newInstance(java.util.function.Supplier)
+ * @param stallTimeout maximum time without HandBrake reporting progress ({@link Duration#ZERO}
+ *     disables it)
+ * @param durationFactor maximum duration of an encode, relative to its expected duration, i.e. the
+ *     source's pixels divided by the slowest recent pixel rate of encodes of its class (0 disables
+ *     it). Only applies once there's a recent encode of the class, and if HandBrake reports the
+ *     source (see {@link com.willmolloy.handbrake.core.options.LogFormat#json}).
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public record WatchdogLimits(Duration stallTimeout, double durationFactor) {
+
+  /** Constructor. */
+  public WatchdogLimits {
+    checkNotNull(stallTimeout);
+    checkArgument(
+        !stallTimeout.isNegative(), "stallTimeout (%s) must not be negative", stallTimeout);
+    checkArgument(durationFactor >= 0, "durationFactor (%s) must not be negative", durationFactor);
+  }
+
+  /** Default limits: 10 minutes without progress, or 3 times the expected duration. */
+  public static WatchdogLimits defaults() {
+    return new WatchdogLimits(Duration.ofMinutes(10), 3);
+  }
+}
@@ -0,0 +1,99 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * HandBrake audio, i.e. which audio tracks are kept, and how.
+ *
+ * <p>Each option is a complete audio selection (HandBrake only applies its last {@code --audio}),
+ * so give one of them. Without one, the {@link Preset}'s audio selection applies (e.g. only the
+ * first track, re-encoded).
+ *
+ * @see <a href=https://handbrake.fr/docs/en/latest/cli/command-line-reference.html>Audio
+ *     Options</a>
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public sealed interface Audio extends Option permits Internals.OptionImpl {
+
+  /**
+   * Selects the given tracks, encoded as per the {@link Preset}.
+   *
+   * @param tracks track numbers, from 1
+   */
+  static Audio tracks(int... tracks) {
+    return new Internals.OptionImpl("--audio", trackList(tracks));
+  }
+
+  /**
+   * Selects the given tracks, passed through unchanged (i.e. {@code --aencoder copy}).
+   *
+   * <p>No re-encoding, so it's cheaper and there's no generational loss. Tracks in a codec the
+   * output container doesn't support are encoded to AAC instead.
+   *
+   * @param tracks track numbers, from 1
+   */
+  static Audio passthrough(int... tracks) {
+    return new Internals.OptionImpl(
+        "--audio",
+        trackList(tracks),
+        "--aencoder",
+        perTrack("copy", tracks.length),
+        "--audio-copy-mask",
+        Internals.PASSTHROUGH_CODECS,
+        "--audio-fallback",
+        "av_aac");
+  }
+
+  /**
+   * Selects the given tracks, encoded as per the {@link Preset} but mixed down to the given
+   * channel layout.
+   *
+   * @param mixdown channel layout
+   * @param tracks track numbers, from 1
+   */
+  static Audio mixdown(Mixdown mixdown, int... tracks) {
+    return new Internals.OptionImpl(
+        "--audio", trackList(tracks), "--mixdown", perTrack(mixdown.value(), tracks.length));
+  }
+
+  private static String trackList(int... tracks) {
+    checkArgument(tracks.length > 0, "tracks must not be empty");
+    Set<Integer> selected = new HashSet<>();
+    for (int track : tracks) {
+      checkArgument(track > 0, "track (%s) must be positive", track);
+      checkArgument(selected.add(track), "Duplicate track: %s", track);
+    }
+    return Arrays.stream(tracks).mapToObj(String::valueOf).collect(Collectors.joining(","));
+  }
+
+  // HandBrake takes per track settings as a list, matching the selected tracks
+  private static String perTrack(String value, int tracks) {
+    return String.join(",", Collections.nCopies(tracks, value));
+  }
+
+  /** Audio channel layout. */
+  enum Mixdown {
+    MONO("mono"),
+    STEREO("stereo"),
+    /** Dolby Pro Logic II, i.e. stereo with matrix encoded surround. */
+    DPL2("dpl2"),
+    FIVE_POINT_ONE("5point1"),
+    SEVEN_POINT_ONE("7point1");
+
+    private final String value;
+
+    Mixdown(String value) {
+      this.value = value;
+    }
+
+    private String value() {
+      return value;
+    }
+  }
+}
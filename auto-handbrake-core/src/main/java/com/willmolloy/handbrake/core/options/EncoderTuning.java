@@ -0,0 +1,187 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * HandBrake encoder tuning, i.e. trading encoding speed against output size (at the same quality).
+ *
+ * <p>Applies to the CPU encoders ({@link Encoder#h264()} and {@link Encoder#h265()}).
+ *
+ * @see <a href=https://handbrake.fr/docs/en/latest/cli/command-line-reference.html>Video
+ *     Options</a>
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public sealed interface EncoderTuning extends Option permits Internals.OptionImpl {
+
+  /**
+   * Encoder speed preset.
+   *
+   * <p>Overrides the speed of the {@link Preset}. Faster speeds encode quicker, but output larger
+   * files.
+   */
+  static EncoderTuning speed(Speed speed) {
+    return new Internals.OptionImpl("--encoder-preset", speed.value());
+  }
+
+  /** Encoder tune, i.e. optimises the encoder for a type of source or use of the output. */
+  static EncoderTuning tune(Tune tune) {
+    return new Internals.OptionImpl("--encoder-tune", tune.value());
+  }
+
+  /**
+   * Encoder level, i.e. caps the output's bitrate and resolution, so it plays on devices only
+   * supporting up to that level.
+   *
+   * @param level level, e.g. {@code "4.1"}, or {@code "auto"}
+   */
+  static EncoderTuning level(String level) {
+    checkArgument(Internals.LEVELS.contains(level), "Invalid level: %s", level);
+    return new Internals.OptionImpl("--encoder-level", level);
+  }
+
+  /**
+   * Advanced encoder settings (i.e. {@code --encopts}).
+   *
+   * <p>Given together, as HandBrake only applies its last {@code --encopts}.
+   *
+   * @param settings settings, each key given at most once
+   */
+  static EncoderTuning settings(Setting... settings) {
+    checkArgument(settings.length > 0, "settings must not be empty");
+    Set<String> keys = new HashSet<>();
+    for (Setting setting : settings) {
+      checkArgument(keys.add(setting.key()), "Duplicate setting: %s", setting.key());
+    }
+    return new Internals.OptionImpl(
+        "--encopts",
+        Arrays.stream(settings)
+            .map(setting -> setting.key() + "=" + setting.value())
+            .collect(Collectors.joining(":")));
+  }
+
+  /**
+   * Tuning for editing (H.264), i.e. so the output is quick to seek and scrub in editing software.
+   *
+   * <p>A short keyframe interval (so seeking decodes few frames), the {@link Tune#FASTDECODE} tune
+   * and no B-frame pyramid (so each frame depends on fewer others, and is cheaper to decode). At
+   * the cost of larger output (measured by auto-handbrake-cfr's EditingProfileBenchmark).
+   *
+   * <p>Includes {@link #settings}, so don't give them as well (HandBrake only applies the last).
+   * Instead, give any other settings to this.
+   *
+   * @param settings other settings, e.g. {@link Setting#threads}
+   */
+  static EncoderTuning editing(Setting... settings) {
+    List<Setting> editingSettings = new ArrayList<>();
+    editingSettings.add(Setting.keyframeInterval(Internals.EDITING_KEYFRAME_INTERVAL));
+    editingSettings.add(Setting.bframePyramid(false));
+    editingSettings.addAll(Arrays.asList(settings));
+    return new Internals.OptionImpl(
+        Stream.of(tune(Tune.FASTDECODE), settings(editingSettings.toArray(Setting[]::new)))
+            .flatMap(Option::handBrakeCliArgs)
+            .toList());
+  }
+
+  /** Encoder speed preset, from fastest to slowest. */
+  enum Speed {
+    ULTRAFAST,
+    SUPERFAST,
+    VERYFAST,
+    FASTER,
+    FAST,
+    MEDIUM,
+    SLOW,
+    SLOWER,
+    VERYSLOW,
+    PLACEBO;
+
+    private String value() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /** Encoder tune. */
+  enum Tune {
+    /** Live action (H.264 only). */
+    FILM,
+    ANIMATION,
+    GRAIN,
+    /** Slideshows (H.264 only). */
+    STILLIMAGE,
+    PSNR,
+    SSIM,
+    /** Cheaper to decode, e.g. for smoother playback and scrubbing, but larger output. */
+    FASTDECODE,
+    ZEROLATENCY;
+
+    private String value() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /**
+   * Advanced encoder setting.
+   *
+   * @param key setting key, e.g. {@code "threads"}
+   * @param value setting value
+   */
+  record Setting(String key, String value) {
+
+    private static final Pattern KEY = Pattern.compile("[a-z0-9][a-z0-9-]*");
+    private static final Pattern VALUE = Pattern.compile("[^:=\\s]+");
+
+    /** Constructor. */
+    public Setting {
+      checkArgument(KEY.matcher(key).matches(), "Invalid key: %s", key);
+      checkArgument(VALUE.matcher(value).matches(), "Invalid value (%s): %s", key, value);
+    }
+
+    /**
+     * Number of encoding threads.
+     *
+     * @param threads number of threads, or 0 to size to the CPUs the encoder may run on
+     */
+    public static Setting threads(int threads) {
+      checkArgument(threads >= 0, "threads (%s) must not be negative", threads);
+      return new Setting("threads", String.valueOf(threads));
+    }
+
+    /**
+     * Maximum interval between keyframes.
+     *
+     * @param frames maximum number of frames from one keyframe to the next
+     */
+    public static Setting keyframeInterval(int frames) {
+      checkArgument(frames > 0, "frames (%s) must be positive", frames);
+      return new Setting("keyint", String.valueOf(frames));
+    }
+
+    /**
+     * Whether B-frames may be referenced by other frames (i.e. a B-frame pyramid), H.264 only.
+     * Smaller output, but frames are more expensive to decode.
+     */
+    public static Setting bframePyramid(boolean enabled) {
+      return new Setting("b-pyramid", enabled ? "normal" : "none");
+    }
+
+    /**
+     * Number of threads for the lookahead (frame type decisions), H.264 only.
+     *
+     * @param threads number of threads, or 0 to derive from {@link #threads}
+     */
+    public static Setting lookaheadThreads(int threads) {
+      checkArgument(threads >= 0, "threads (%s) must not be negative", threads);
+      return new Setting("lookahead-threads", String.valueOf(threads));
+    }
+  }
+}
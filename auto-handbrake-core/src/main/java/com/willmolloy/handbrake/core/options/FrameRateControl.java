@@ -1,5 +1,9 @@
 package com.willmolloy.handbrake.core.options;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.math.BigDecimal;
+
 /**
  * HandBrake frame rate controls.
  *
@@ -14,6 +18,20 @@ public sealed interface FrameRateControl extends Option permits Internals.Option
     return new Internals.OptionImpl("--cfr");
   }
 
+  /**
+   * Constant frame rate, of the given rate (rather than the source's).
+   *
+   * <p>E.g. to encode a high frame rate source at the frame rate of the editing timeline, so frames
+   * which would be dropped by the editor aren't encoded (or stored).
+   *
+   * @param rate frames per second, from 1 to 1000, e.g. {@code 60} or {@code 29.97}
+   */
+  static FrameRateControl constant(double rate) {
+    checkArgument(rate >= 1 && rate <= 1000, "rate (%s) must be between 1 and 1000", rate);
+    return new Internals.OptionImpl(
+        "--rate", BigDecimal.valueOf(rate).stripTrailingZeros().toPlainString(), "--cfr");
+  }
+
   /** Variable frame rate. */
   static FrameRateControl variable() {
     return new Internals.OptionImpl("--vfr");
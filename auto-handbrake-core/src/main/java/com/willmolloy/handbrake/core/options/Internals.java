@@ -2,6 +2,7 @@ package com.willmolloy.handbrake.core.options;
 
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -13,12 +14,25 @@ import java.util.stream.Stream;
  */
 final class Internals {
 
+  /** Keyframe interval of {@link EncoderTuning#editing}, i.e. 0.5 seconds at 60 fps. */
+  static final int EDITING_KEYFRAME_INTERVAL = 30;
+
+  /** Audio codecs passed through by {@link Audio#passthrough}, i.e. all HandBrake supports. */
+  static final String PASSTHROUGH_CODECS = "aac,ac3,eac3,truehd,dts,dtshd,mp2,mp3,flac,opus";
+
+  /** Encoder levels, of H.264 and H.265. */
+  static final Set<String> LEVELS =
+      Set.of(
+          "auto", "1.0", "1b", "1.1", "1.2", "1.3", "2.0", "2.1", "2.2", "3.0", "3.1", "3.2", "4.0",
+          "4.1", "4.2", "5.0", "5.1", "5.2", "6.0", "6.1", "6.2");
+
   /**
    * Generic option implementation.
    *
    * @param optionArgs HandBrakeCLI option args
    */
-  record OptionImpl(List<String> optionArgs) implements Preset, Encoder, FrameRateControl {
+  record OptionImpl(List<String> optionArgs)
+      implements Preset, Encoder, EncoderTuning, FrameRateControl, LogFormat, Audio, Range {
     OptionImpl(String... optionArgs) {
       this(List.of(optionArgs));
     }
@@ -45,5 +59,26 @@ final class Internals {
     }
   }
 
+  /**
+   * Option implementation specific to scheduling.
+   *
+   * @param command command (and its args) to run HandBrakeCLI through
+   */
+  record SchedulingImpl(List<String> command) implements Scheduling {
+    SchedulingImpl(String... command) {
+      this(List.of(command));
+    }
+
+    @Override
+    public Stream<String> handBrakeCliArgs() {
+      return Stream.empty();
+    }
+
+    @Override
+    public Stream<String> launcherArgs() {
+      return command.stream();
+    }
+  }
+
   private Internals() {}
 }
@@ -0,0 +1,22 @@
+package com.willmolloy.handbrake.core.options;
+
+/**
+ * HandBrake log formats.
+ *
+ * @see <a href=https://handbrake.fr/docs/en/latest/cli/command-line-reference.html>General
+ *     Options</a>
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public sealed interface LogFormat extends Option permits Internals.OptionImpl {
+
+  /**
+   * JSON.
+   *
+   * <p>HandBrake reports progress, completion and the scanned source as JSON, rather than text. So
+   * progress is read from structured output (which doesn't change format between HandBrake
+   * versions), and source metadata (e.g. duration, resolution) is available at no extra cost.
+   */
+  static LogFormat json() {
+    return new Internals.OptionImpl("--json");
+  }
+}
@@ -1,5 +1,10 @@
 package com.willmolloy.handbrake.core.options;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.file.Path;
+
 /**
  * HandBrake presets.
  *
@@ -23,6 +28,29 @@ public sealed interface Preset extends Option permits Internals.OptionImpl {
     return preset("Production Standard");
   }
 
+  /**
+   * Production Proxy 540p preset.
+   *
+   * <p>Fast to encode and to edit with (downscaled, every frame a keyframe), e.g. to start editing
+   * before the full quality encoding is ready.
+   */
+  static Preset productionProxy540p() {
+    return preset("Production Proxy 540p");
+  }
+
+  /**
+   * Custom preset, imported from a file (e.g. compiled by {@link
+   * com.willmolloy.handbrake.core.HandBrake#compilePreset}).
+   *
+   * @param file preset file
+   * @param name name of the preset in the file
+   */
+  static Preset importFile(Path file, String name) {
+    checkNotNull(file);
+    checkArgument(!name.isBlank(), "name must not be blank");
+    return new Internals.OptionImpl("--preset-import-file", file.toString(), "--preset", name);
+  }
+
   private static Preset preset(String value) {
     return new Internals.OptionImpl("--preset", value);
   }
@@ -0,0 +1,34 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.time.Duration;
+
+/**
+ * HandBrake range, i.e. encodes only part of the input.
+ *
+ * @see <a href=https://handbrake.fr/docs/en/latest/cli/command-line-reference.html>Source
+ *     Options</a>
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public sealed interface Range extends Option permits Internals.OptionImpl {
+
+  /**
+   * Range of the given duration, from the given start (both in whole seconds, truncated).
+   *
+   * <p>E.g. to encode a short sample of the input.
+   *
+   * @param start start, from the beginning of the input
+   * @param duration duration, at least 1 second
+   */
+  static Range of(Duration start, Duration duration) {
+    checkArgument(!start.isNegative(), "start (%s) must not be negative", start);
+    checkArgument(duration.toSeconds() >= 1, "duration (%s) must be at least 1 second", duration);
+    return new Internals.OptionImpl(
+        "--start-at",
+        "seconds:" + start.toSeconds(),
+        // (relative to the start)
+        "--stop-at",
+        "seconds:" + duration.toSeconds());
+  }
+}
@@ -0,0 +1,86 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Process scheduling of HandBrake, i.e. how it competes with the rest of the host for CPU and
+ * disk.
+ *
+ * <p>Unlike other options, these aren't HandBrakeCLI args (so {@link #handBrakeCliArgs} is empty).
+ * Instead HandBrakeCLI is run through a command which applies them, e.g. {@code nice -n 10
+ * HandBrakeCLI ...}. The commands are standard on Linux (coreutils/util-linux, or BusyBox), so
+ * these only apply there. Several can be given, they're applied in order.
+ *
+ * @see <a href=https://man7.org/linux/man-pages/man1/nice.1.html>nice</a>
+ * @see <a href=https://man7.org/linux/man-pages/man1/ionice.1.html>ionice</a>
+ * @see <a href=https://man7.org/linux/man-pages/man1/taskset.1.html>taskset</a>
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+public sealed interface Scheduling extends Option permits Internals.SchedulingImpl {
+
+  /** Command (and its args) to run HandBrakeCLI through, e.g. {@code [nice, -n, 10]}. */
+  Stream<String> launcherArgs();
+
+  /**
+   * Niceness (CPU priority).
+   *
+   * @param adjustment added to the niceness of this process, from -20 (highest priority, needs
+   *     privileges) to 19 (lowest priority)
+   */
+  static Scheduling nice(int adjustment) {
+    checkArgument(
+        adjustment >= -20 && adjustment <= 19,
+        "adjustment (%s) must be between -20 and 19",
+        adjustment);
+    return new Internals.SchedulingImpl("nice", "-n", String.valueOf(adjustment));
+  }
+
+  /**
+   * I/O scheduling class (disk priority).
+   *
+   * <p>E.g. {@link IoClass#IDLE} so HandBrake's reads and writes don't slow down other disk users.
+   */
+  static Scheduling ioClass(IoClass ioClass) {
+    return new Internals.SchedulingImpl("ionice", "-c", String.valueOf(ioClass.value));
+  }
+
+  /**
+   * CPU affinity, i.e. the CPUs HandBrake may run on.
+   *
+   * <p>E.g. to give concurrent encodes their own cores (so they don't evict each other's caches or
+   * move between NUMA nodes). HandBrake's encoders size their thread pools to the CPUs they may
+   * run on.
+   *
+   * @param cpus CPU numbers (as in {@code /proc/cpuinfo})
+   */
+  static Scheduling cpus(Collection<Integer> cpus) {
+    checkArgument(!cpus.isEmpty(), "cpus must not be empty");
+    for (int cpu : cpus) {
+      checkArgument(cpu >= 0, "cpu (%s) must not be negative", cpu);
+    }
+    return new Internals.SchedulingImpl(
+        "taskset",
+        "-c",
+        cpus.stream().sorted().distinct().map(String::valueOf).collect(Collectors.joining(",")));
+  }
+
+  /** I/O scheduling class. */
+  enum IoClass {
+    /** Served first, regardless of other disk users. Needs privileges. */
+    REALTIME(1),
+    /** Default class, shares the disk fairly. */
+    BEST_EFFORT(2),
+    /** Only served when no other process has used the disk for a while. */
+    IDLE(3);
+
+    private final int value;
+
+    IoClass(int value) {
+      this.value = value;
+    }
+  }
+}
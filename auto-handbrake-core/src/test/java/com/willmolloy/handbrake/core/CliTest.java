@@ -76,6 +76,14 @@ class CliTest {
     verify(mockProcessBuilder).command(List.of("xyz"));
   }
 
+  @Test
+  void executeAsync_completesWithExitCode() throws Exception {
+    when(mockProcess.waitFor()).thenReturn(1);
+
+    assertThat(cli.executeAsync(List.of("abc"), new EmptyConsumer()).get()).isEqualTo(1);
+    verify(mockProcessBuilder).command(List.of("abc"));
+  }
+
   private static final class EmptyInputStream extends InputStream {
     @Override
     public int read() {
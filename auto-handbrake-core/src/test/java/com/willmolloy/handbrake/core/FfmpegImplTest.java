@@ -0,0 +1,210 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.FrameRateControl;
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Scheduling;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * FfmpegImplTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@ExtendWith(MockitoExtension.class)
+class FfmpegImplTest {
+
+  private static final List<String> DESCRIPTION =
+      List.of(
+          "Input #0, mov,mp4,m4a,3gp,3g2,mj2, from 'input.mp4':",
+          "  Duration: 00:00:10.00, start: 0.000000, bitrate: 5123 kb/s",
+          "  Stream #0:0[0x1](und): Video: h264 (High) (avc1 / 0x31637661), yuv420p(progressive),"
+              + " 1920x1080 [SAR 1:1 DAR 16:9], 5000 kb/s, 144 fps, 144 tbr, 90k tbn (default)",
+          "Output #0, mp4, to 'output.mp4':");
+
+  @Mock private Cli mockCli;
+
+  @SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+  private FfmpegImpl ffmpeg;
+
+  @SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+  private FileSystem fileSystem;
+
+  private Path input;
+  private Path output;
+
+  @BeforeEach
+  void setUp() {
+    ffmpeg = new FfmpegImpl(mockCli, new Watchdog(WatchdogLimits::defaults), "ffmpeg");
+    fileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    input = fileSystem.getPath("input.mp4");
+    output = fileSystem.getPath("output.mp4");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    fileSystem.close();
+  }
+
+  @Test
+  void successfulEncodingReturnsTrue() {
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(0));
+
+    assertThat(
+            ffmpeg.encode(
+                Input.of(input),
+                Output.of(output),
+                Preset.productionStandard(),
+                Encoder.h264(),
+                FrameRateControl.constant(),
+                Scheduling.nice(10)))
+        .isTrue();
+    verify(mockCli)
+        .executeAsync(
+            eq(
+                List.of(
+                    "nice",
+                    "-n",
+                    "10",
+                    "ffmpeg",
+                    "-hide_banner",
+                    "-nostdin",
+                    "-y",
+                    "-nostats",
+                    "-progress",
+                    "pipe:1",
+                    "-i",
+                    "input.mp4",
+                    "-crf",
+                    "22",
+                    "-c:v",
+                    "libx264",
+                    "-fps_mode",
+                    "cfr",
+                    "output.mp4")),
+            isA(FfmpegLogger.class));
+  }
+
+  @Test
+  void unsuccessfulEncodingReturnsFalse() {
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(1));
+
+    assertThat(ffmpeg.encode(Input.of(input), Output.of(output))).isFalse();
+  }
+
+  @Test
+  void unsupportedOption_throwsException_withoutRunningFfmpeg() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ffmpeg.encode(Input.of(input), Output.of(output), FrameRateControl.peak()));
+
+    verifyNoInteractions(mockCli);
+  }
+
+  @Test
+  void encodeAsync_completesWithEncodeResult() throws Exception {
+    // Given
+    when(mockCli.executeAsync(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<String> logger = invocation.getArgument(1);
+              DESCRIPTION.forEach(logger);
+              List.of("frame=1440", "fps=300.00", "out_time_us=10000000", "progress=end")
+                  .forEach(logger);
+              Files.write(output, new byte[10]);
+              return CompletableFuture.completedFuture(0);
+            });
+
+    // When
+    EncodeResult result = ffmpeg.encodeAsync(Input.of(input), Output.of(output)).get();
+
+    // Then
+    assertThat(result.successful()).isTrue();
+    assertThat(result.averageFps()).isEqualTo(OptionalDouble.of(300));
+    assertThat(result.outputSize()).isEqualTo(10);
+    assertThat(result.source()).hasValue(source());
+  }
+
+  @Test
+  void scan_returnsSource() {
+    // Given
+    when(mockCli.executeAsync(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<String> logger = invocation.getArgument(1);
+              DESCRIPTION.forEach(logger);
+              return CompletableFuture.completedFuture(0);
+            });
+
+    // When
+    Optional<SourceInfo> source = ffmpeg.scan(Input.of(input));
+
+    // Then
+    assertThat(source).hasValue(source());
+    verify(mockCli)
+        .executeAsync(
+            eq(
+                List.of(
+                    "ffmpeg",
+                    "-hide_banner",
+                    "-nostdin",
+                    "-i",
+                    "input.mp4",
+                    "-t",
+                    "0",
+                    "-f",
+                    "null",
+                    "-")),
+            isA(FfmpegLogger.class));
+  }
+
+  @Test
+  void scan_whenFfmpegFails_returnsEmpty() {
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(1));
+
+    assertThat(ffmpeg.scan(Input.of(input))).isEmpty();
+  }
+
+  @Test
+  void compilePreset_throwsException() {
+    assertThrows(
+        IOException.class,
+        () -> ffmpeg.compilePreset(fileSystem.getPath("presets.json"), "Custom"));
+  }
+
+  private SourceInfo source() {
+    return new SourceInfo(input, Duration.ofSeconds(10), 1920, 1080, 144, "h264", List.of());
+  }
+}
@@ -0,0 +1,153 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.mockito.Mockito.inOrder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * FfmpegLoggerTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@ExtendWith(MockitoExtension.class)
+class FfmpegLoggerTest {
+
+  private static final Path INPUT = Path.of("input.mp4");
+
+  private static final List<String> DESCRIPTION =
+      List.of(
+          "Input #0, mov,mp4,m4a,3gp,3g2,mj2, from 'input.mp4':",
+          "  Metadata:",
+          "    major_brand     : isom",
+          "  Duration: 00:01:40.00, start: 0.000000, bitrate: 5123 kb/s",
+          "  Stream #0:0[0x1](und): Video: h264 (High) (avc1 / 0x31637661), yuv420p(progressive),"
+              + " 1920x1080 [SAR 1:1 DAR 16:9], 5000 kb/s, 144 fps, 144 tbr, 90k tbn (default)",
+          "  Stream #0:1[0x2](eng): Audio: aac (LC) (mp4a / 0x6134706D), 48000 Hz, stereo, fltp,"
+              + " 128 kb/s (default)",
+          "  Stream #0:2[0x3](und): Audio: opus (Opus / 0x7375704F), 48000 Hz, mono, fltp",
+          "Stream mapping:",
+          "  Stream #0:0 -> #0:0 (h264 (native) -> h264 (libx264))",
+          "Output #0, mp4, to 'output.mp4':",
+          "  Stream #0:0: Video: h264 (avc1 / 0x31637661), yuv420p, 1280x720, q=2-31, 60 fps");
+
+  @Mock private Logger mockLogger;
+
+  private final List<ProgressEvent> events = new ArrayList<>();
+  private final List<SourceInfo> sources = new ArrayList<>();
+
+  @Test
+  void logsEverythingAsDebug_and_readsSource() {
+    // Given
+    FfmpegLogger ffmpegLogger = new FfmpegLogger(mockLogger, INPUT, listener());
+
+    // When
+    DESCRIPTION.forEach(ffmpegLogger);
+
+    // Then
+    InOrder inOrder = inOrder(mockLogger);
+    for (String log : DESCRIPTION) {
+      inOrder.verify(mockLogger).debug(log);
+    }
+    SourceInfo expected =
+        new SourceInfo(
+            INPUT,
+            Duration.ofSeconds(100),
+            1920,
+            1080,
+            144,
+            "h264",
+            List.of(
+                new SourceInfo.AudioTrack("eng", "aac", 2, 48000),
+                new SourceInfo.AudioTrack("", "opus", 1, 48000)));
+    assertThat(ffmpegLogger.source()).hasValue(expected);
+    assertThat(sources).containsExactly(expected);
+  }
+
+  @Test
+  void publishesProgress() {
+    // Given
+    FfmpegLogger ffmpegLogger = new FfmpegLogger(mockLogger, INPUT, listener());
+    DESCRIPTION.forEach(ffmpegLogger);
+
+    // When
+    List.of(
+            "frame=0",
+            "fps=0.00",
+            "out_time_us=N/A",
+            "speed=N/A",
+            "progress=continue",
+            "frame=3618",
+            "fps=120.50",
+            "bitrate=5000.0kbits/s",
+            "out_time_us=25000000",
+            "out_time=00:00:25.000000",
+            "speed=2.5x",
+            "progress=continue",
+            "frame=14472",
+            "fps=121.00",
+            "out_time_us=100000000",
+            "speed=2.51x",
+            "progress=end")
+        .forEach(ffmpegLogger);
+
+    // Then
+    assertThat(events)
+        .containsExactly(
+            new ProgressEvent(INPUT, 1, 1, 0, 0, 0, Duration.ZERO),
+            new ProgressEvent(INPUT, 1, 1, 25, 120.5, 120.5, Duration.ofSeconds(30)),
+            new ProgressEvent(INPUT, 1, 1, 100, 121, 121, Duration.ZERO))
+        .inOrder();
+    assertThat(ffmpegLogger.averageFps()).isEqualTo(OptionalDouble.of(121));
+  }
+
+  @Test
+  void progressWithoutDescription_reportsSourceOnce() {
+    // Given
+    FfmpegLogger ffmpegLogger = new FfmpegLogger(mockLogger, INPUT, listener());
+
+    // When
+    List.of("Input #0, mov,mp4,m4a,3gp,3g2,mj2, from 'input.mp4':", "progress=continue")
+        .forEach(ffmpegLogger);
+    ffmpegLogger.accept("progress=end");
+
+    // Then
+    assertThat(sources).hasSize(1);
+    assertThat(events).hasSize(2);
+  }
+
+  @Test
+  void noProgress_noAverageFps() {
+    FfmpegLogger ffmpegLogger = new FfmpegLogger(mockLogger, INPUT, listener());
+
+    ffmpegLogger.accept("Unknown encoder 'libx264'");
+
+    assertThat(ffmpegLogger.averageFps()).isEmpty();
+    assertThat(ffmpegLogger.source()).isEmpty();
+  }
+
+  private HandBrakeLogger.Listener listener() {
+    return new HandBrakeLogger.Listener() {
+      @Override
+      public void onProgress(ProgressEvent event) {
+        events.add(event);
+      }
+
+      @Override
+      public void onSource(SourceInfo source) {
+        sources.add(source);
+      }
+    };
+  }
+}
@@ -0,0 +1,158 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.willmolloy.handbrake.core.options.Audio;
+import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
+import com.willmolloy.handbrake.core.options.FrameRateControl;
+import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.LogFormat;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Output;
+import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Range;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * FfmpegOptionsTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class FfmpegOptionsTest {
+
+  @Test
+  void translatesCfrConversion() {
+    assertThat(
+            translate(
+                Preset.productionStandard(),
+                Encoder.h264(),
+                FrameRateControl.constant(60),
+                LogFormat.json(),
+                Audio.passthrough(1, 2)))
+        .containsExactly(
+            "-i",
+            "input.mp4",
+            "-crf",
+            "22",
+            "-c:v",
+            "libx264",
+            "-r",
+            "60",
+            "-fps_mode",
+            "cfr",
+            "-map",
+            "0:v:0",
+            "-map",
+            "0:a:0",
+            "-map",
+            "0:a:1",
+            "-c:a:0",
+            "copy",
+            "-c:a:1",
+            "copy",
+            "output.mp4")
+        .inOrder();
+  }
+
+  @Test
+  void translatesEncoderTuning() {
+    assertThat(
+            translate(
+                EncoderTuning.editing(EncoderTuning.Setting.threads(4)),
+                EncoderTuning.speed(EncoderTuning.Speed.VERYFAST),
+                Encoder.h265()))
+        .containsExactly(
+            "-i",
+            "input.mp4",
+            "-tune",
+            "fastdecode",
+            "-preset",
+            "veryfast",
+            "-c:v",
+            "libx265",
+            // the settings come last, once the encoder is known
+            "-x265-params",
+            "keyint=30:b-pyramid=none:threads=4",
+            "output.mp4")
+        .inOrder();
+  }
+
+  @Test
+  void translatesRange_seekingInput() {
+    assertThat(translate(Range.of(Duration.ofSeconds(30), Duration.ofSeconds(5))))
+        .containsExactly("-ss", "30", "-i", "input.mp4", "-t", "5", "output.mp4")
+        .inOrder();
+  }
+
+  @Test
+  void translatesProxyPreset_andMixdown() {
+    assertThat(
+            translate(Preset.productionProxy540p(), Audio.mixdown(Audio.Mixdown.FIVE_POINT_ONE, 2)))
+        .containsExactly(
+            "-i",
+            "input.mp4",
+            "-vf",
+            "scale=-2:540",
+            "-g",
+            "1",
+            "-crf",
+            "22",
+            "-map",
+            "0:v:0",
+            "-map",
+            "0:a:1",
+            "-ac:a:0",
+            "6",
+            "output.mp4")
+        .inOrder();
+  }
+
+  @Test
+  void unsupportedOption_throwsException() {
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> translate(FrameRateControl.peak()));
+
+    assertThat(thrown).hasMessageThat().isEqualTo("Option not supported by ffmpeg: --pfr");
+  }
+
+  @Test
+  void customPreset_throwsException() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> translate(Preset.importFile(Path.of("presets.json"), "Custom")));
+
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("Option not supported by ffmpeg: --preset-import-file");
+  }
+
+  @Test
+  void encoderSettingsForGpuEncoder_throwsException() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                translate(
+                    Encoder.h264Gpu(), EncoderTuning.settings(EncoderTuning.Setting.threads(4))));
+
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("Encoder settings not supported by ffmpeg for encoder: h264_nvenc");
+  }
+
+  private static List<String> translate(Option... options) {
+    return FfmpegOptions.translate(
+        Stream.concat(
+                Stream.of(Input.of(Path.of("input.mp4")), Output.of(Path.of("output.mp4"))),
+                Stream.of(options))
+            .flatMap(Option::handBrakeCliArgs)
+            .toList());
+  }
+}
@@ -1,31 +1,44 @@
 package com.willmolloy.handbrake.core;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
 import com.willmolloy.handbrake.core.options.FrameRateControl;
 import com.willmolloy.handbrake.core.options.Input;
+import com.willmolloy.handbrake.core.options.LogFormat;
 import com.willmolloy.handbrake.core.options.Output;
 import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Scheduling;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -39,7 +52,8 @@ class HandBrakeImplTest {
 
   @Mock private Cli mockCli;
 
-  @InjectMocks private HandBrakeImpl handBrake;
+  @SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
+  private HandBrakeImpl handBrake;
 
   @SuppressFBWarnings("UWF_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR")
   private FileSystem fileSystem;
@@ -49,6 +63,7 @@ class HandBrakeImplTest {
 
   @BeforeEach
   void setUp() {
+    handBrake = new HandBrakeImpl(mockCli, new Watchdog(WatchdogLimits::defaults));
     fileSystem = Jimfs.newFileSystem(Configuration.unix());
 
     input = fileSystem.getPath("input.mp4");
@@ -62,7 +77,7 @@ class HandBrakeImplTest {
 
   @Test
   void successfulEncodingReturnsTrue() {
-    when(mockCli.execute(anyList(), any())).thenReturn(true);
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(0));
 
     assertThat(
             handBrake.encode(
@@ -73,7 +88,7 @@ class HandBrakeImplTest {
                 FrameRateControl.constant()))
         .isTrue();
     verify(mockCli)
-        .execute(
+        .executeAsync(
             eq(
                 List.of(
                     "HandBrakeCLI",
@@ -91,27 +106,339 @@ class HandBrakeImplTest {
 
   @Test
   void outputAlreadyExistsOverwrites() throws IOException {
-    when(mockCli.execute(anyList(), any())).thenReturn(true);
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(0));
     Files.createFile(output);
 
     assertThat(handBrake.encode(Input.of(input), Output.of(output))).isTrue();
     verify(mockCli)
-        .execute(
+        .executeAsync(
             eq(List.of("HandBrakeCLI", "--input", "input.mp4", "--output", "output.mp4")),
             isA(HandBrakeLogger.class));
   }
 
+  @Test
+  void schedulingOptions_runHandBrakeThroughSchedulingCommands() {
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(0));
+
+    assertThat(
+            handBrake.encode(
+                Input.of(input),
+                Output.of(output),
+                Scheduling.nice(10),
+                Encoder.h264(),
+                Scheduling.ioClass(Scheduling.IoClass.IDLE),
+                Scheduling.cpus(List.of(0, 1))))
+        .isTrue();
+    verify(mockCli)
+        .executeAsync(
+            eq(
+                List.of(
+                    "nice",
+                    "-n",
+                    "10",
+                    "ionice",
+                    "-c",
+                    "3",
+                    "taskset",
+                    "-c",
+                    "0,1",
+                    "HandBrakeCLI",
+                    "--input",
+                    "input.mp4",
+                    "--output",
+                    "output.mp4",
+                    "--encoder",
+                    "x264")),
+            isA(HandBrakeLogger.class));
+  }
+
   @Test
   void unsuccessfulEncodingReturnsFalse() {
-    when(mockCli.execute(anyList(), any())).thenReturn(false);
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(1));
 
     assertThat(handBrake.encode(Input.of(input), Output.of(output))).isFalse();
   }
 
   @Test
   void exceptionThrownReturnsFalse() {
-    when(mockCli.execute(anyList(), any())).thenThrow(new RuntimeException("error"));
+    when(mockCli.executeAsync(anyList(), any())).thenThrow(new RuntimeException("error"));
 
     assertThat(handBrake.encode(Input.of(input), Output.of(output))).isFalse();
   }
+
+  @Test
+  void whenHandBrakeReportsError_returnsFalse() {
+    // Given
+    when(mockCli.executeAsync(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<String> logger = invocation.getArgument(1);
+              logger.accept("Progress: {\"State\": \"WORKDONE\", \"WorkDone\": {\"Error\": 2}}");
+              return CompletableFuture.completedFuture(0);
+            });
+
+    // When
+    boolean result = handBrake.encode(Input.of(input), Output.of(output), LogFormat.json());
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @Test
+  void publishesProgress() throws Exception {
+    // Given
+    List<ProgressEvent> events = new CopyOnWriteArrayList<>();
+    CountDownLatch received = new CountDownLatch(2);
+    handBrake
+        .progress()
+        .subscribe(
+            new Flow.Subscriber<>() {
+              @Override
+              public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+              }
+
+              @Override
+              public void onNext(ProgressEvent event) {
+                events.add(event);
+                received.countDown();
+              }
+
+              @Override
+              public void onError(Throwable throwable) {}
+
+              @Override
+              public void onComplete() {}
+            });
+    when(mockCli.executeAsync(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<String> logger = invocation.getArgument(1);
+              logger.accept(progress("50.00"));
+              logger.accept(progress("100.00"));
+              return CompletableFuture.completedFuture(0);
+            });
+
+    // When
+    handBrake.encode(Input.of(input), Output.of(output));
+
+    // Then
+    received.await();
+    assertThat(events.stream().map(ProgressEvent::percent).toList())
+        .containsExactly(50.0, 100.0)
+        .inOrder();
+    assertThat(events.get(0).input()).isEqualTo(input);
+  }
+
+  @Test
+  void encodeAsync_completesWithEncodeResult() throws Exception {
+    // Given
+    when(mockCli.executeAsync(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<String> logger = invocation.getArgument(1);
+              logger.accept(progress("100.00"));
+              Files.write(output, new byte[10]);
+              return CompletableFuture.completedFuture(0);
+            });
+
+    // When
+    EncodeResult result = handBrake.encodeAsync(Input.of(input), Output.of(output)).get();
+
+    // Then
+    assertThat(result.successful()).isTrue();
+    assertThat(result.exitCode()).isEqualTo(0);
+    assertThat(result.averageFps()).isEqualTo(OptionalDouble.of(62.3));
+    assertThat(result.outputSize()).isEqualTo(10);
+    verify(mockCli)
+        .executeAsync(
+            eq(List.of("HandBrakeCLI", "--input", "input.mp4", "--output", "output.mp4")),
+            isA(HandBrakeLogger.class));
+  }
+
+  @Test
+  void encodeAsync_json_completesWithSource() throws Exception {
+    // Given
+    when(mockCli.executeAsync(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<String> logger = invocation.getArgument(1);
+              List.of(
+                      "JSON Title Set: {",
+                      "    \"TitleList\": [{\"Duration\": {\"Ticks\": 900000}, "
+                          + "\"FrameRate\": {\"Den\": 1, \"Num\": 60}, "
+                          + "\"Geometry\": {\"Height\": 1080, \"Width\": 1920}}]",
+                      "}")
+                  .forEach(logger);
+              return CompletableFuture.completedFuture(0);
+            });
+
+    // When
+    EncodeResult result =
+        handBrake.encodeAsync(Input.of(input), Output.of(output), LogFormat.json()).get();
+
+    // Then
+    assertThat(result.source())
+        .hasValue(new SourceInfo(input, Duration.ofSeconds(10), 1920, 1080, 60, "", List.of()));
+    verify(mockCli)
+        .executeAsync(
+            eq(
+                List.of(
+                    "HandBrakeCLI", "--input", "input.mp4", "--output", "output.mp4", "--json")),
+            isA(HandBrakeLogger.class));
+  }
+
+  @Test
+  void scan_returnsSource() {
+    // Given
+    when(mockCli.executeAsync(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<String> logger = invocation.getArgument(1);
+              List.of(
+                      "JSON Title Set: {",
+                      "    \"TitleList\": [{\"Duration\": {\"Ticks\": 900000}, "
+                          + "\"FrameRate\": {\"Den\": 1, \"Num\": 144}, "
+                          + "\"Geometry\": {\"Height\": 1080, \"Width\": 1920}}]",
+                      "}")
+                  .forEach(logger);
+              return CompletableFuture.completedFuture(0);
+            });
+
+    // When
+    Optional<SourceInfo> source = handBrake.scan(Input.of(input));
+
+    // Then
+    assertThat(source)
+        .hasValue(new SourceInfo(input, Duration.ofSeconds(10), 1920, 1080, 144, "", List.of()));
+    verify(mockCli)
+        .executeAsync(
+            eq(List.of("HandBrakeCLI", "--input", "input.mp4", "--json", "--scan")),
+            isA(HandBrakeLogger.class));
+  }
+
+  @Test
+  void scan_whenHandBrakeFails_returnsEmpty() {
+    // Given
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(1));
+
+    // When
+    Optional<SourceInfo> source = handBrake.scan(Input.of(input));
+
+    // Then
+    assertThat(source).isEmpty();
+  }
+
+  @Test
+  void encodeAsync_nonZeroExitCode_completesWithUnsuccessfulResult() throws Exception {
+    // Given
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(3));
+
+    // When
+    EncodeResult result = handBrake.encodeAsync(Input.of(input), Output.of(output)).get();
+
+    // Then
+    assertThat(result.successful()).isFalse();
+    assertThat(result.exitCode()).isEqualTo(3);
+    assertThat(result.averageFps()).isEqualTo(OptionalDouble.empty());
+    assertThat(result.outputSize()).isEqualTo(0);
+  }
+
+  @Test
+  void whenHandBrakeStopsProgressing_stopsIt_andReturnsFalse() {
+    // Given
+    HandBrakeImpl handBrakeWithLimits =
+        new HandBrakeImpl(
+            mockCli, new Watchdog(() -> new WatchdogLimits(Duration.ofMillis(1), 0)));
+    CompletableFuture<Integer> execution = new CompletableFuture<>();
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(execution);
+
+    // When
+    boolean result = handBrakeWithLimits.encode(Input.of(input), Output.of(output));
+
+    // Then
+    assertThat(result).isFalse();
+    assertThat(execution.isCompletedExceptionally()).isTrue();
+  }
+
+  @Test
+  void encodeAsync_whenCancelled_cancelsExecution() {
+    // Given
+    CompletableFuture<Integer> execution = new CompletableFuture<>();
+    when(mockCli.executeAsync(anyList(), any())).thenReturn(execution);
+    CompletableFuture<EncodeResult> result =
+        handBrake.encodeAsync(Input.of(input), Output.of(output));
+
+    // When
+    result.cancel(true);
+
+    // Then
+    assertThat(execution.isCancelled()).isTrue();
+  }
+
+  @Test
+  void compilePreset_exportsPresetOnce_andReturnsIt() throws IOException {
+    // Given
+    Path presetFile = fileSystem.getPath("presets.json");
+    when(mockCli.execute(anyList(), any()))
+        .then(
+            invocation -> {
+              Files.writeString(presetFile, "{}");
+              return true;
+            });
+
+    // When
+    Preset preset =
+        handBrake.compilePreset(
+            presetFile,
+            "Custom",
+            Preset.productionStandard(),
+            EncoderTuning.speed(EncoderTuning.Speed.FAST));
+    Preset again =
+        handBrake.compilePreset(
+            presetFile,
+            "Custom",
+            Preset.productionStandard(),
+            EncoderTuning.speed(EncoderTuning.Speed.FAST));
+
+    // Then
+    assertThat(preset).isEqualTo(Preset.importFile(presetFile, "Custom"));
+    assertThat(again).isEqualTo(preset);
+    verify(mockCli, times(1))
+        .execute(
+            eq(
+                List.of(
+                    "HandBrakeCLI",
+                    "--preset-export",
+                    "Custom",
+                    "--preset-export-file",
+                    "presets.json",
+                    "--preset",
+                    "Production Standard",
+                    "--encoder-preset",
+                    "fast")),
+            any());
+  }
+
+  @Test
+  void compilePreset_whenHandBrakeFails_throwsException() {
+    // Given
+    when(mockCli.execute(anyList(), any())).thenReturn(false);
+
+    // When
+    IOException thrown =
+        assertThrows(
+            IOException.class,
+            () ->
+                handBrake.compilePreset(
+                    fileSystem.getPath("presets.json"), "Custom", Preset.productionStandard()));
+
+    // Then
+    assertThat(thrown).hasMessageThat().isEqualTo("Error compiling preset (Custom): presets.json");
+  }
+
+  private static String progress(String percent) {
+    return "Encoding: task 1 of 1, %s %% (61.80 fps, avg 62.30 fps, ETA 00h00m00s)"
+        .formatted(percent);
+  }
 }
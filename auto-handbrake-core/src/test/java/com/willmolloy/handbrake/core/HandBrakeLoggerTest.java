@@ -1,17 +1,20 @@
 package com.willmolloy.handbrake.core;
 
-import static org.mockito.ArgumentMatchers.anyString;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.mockito.Mockito.inOrder;
-import static org.mockito.Mockito.times;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.OptionalInt;
 import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InOrder;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -25,11 +28,13 @@ class HandBrakeLoggerTest {
 
   @Mock private Logger mockLogger;
 
-  @InjectMocks private HandBrakeLogger handBrakeEtaLogger;
+  private final List<ProgressEvent> events = new ArrayList<>();
 
   @Test
-  void logsEverythingAsDebug_and_logsEtaEvery10PercentOfProgressAsInfo() {
+  void logsEverythingAsDebug_and_publishesProgress() {
     // Given
+    Path input = Path.of("input.mp4");
+    HandBrakeLogger handBrakeLogger = new HandBrakeLogger(mockLogger, input, events::add);
     List<String> fakeHandBrakeLogs =
         List.of(
             "HandBrake 1.4.2 (2021100300) - MinGW x86_64 - https://handbrake.fr",
@@ -64,29 +69,192 @@ class HandBrakeLoggerTest {
             "HandBrake has exited.");
 
     // When
-    fakeHandBrakeLogs.forEach(handBrakeEtaLogger);
+    fakeHandBrakeLogs.forEach(handBrakeLogger);
 
     // Then
     InOrder inOrder = inOrder(mockLogger);
-
     for (String log : fakeHandBrakeLogs) {
       inOrder.verify(mockLogger).debug(log);
     }
+    verifyNoMoreInteractions(mockLogger);
 
-    inOrder = inOrder(mockLogger);
-    inOrder.verify(mockLogger).info("0.63 % (61.80 fps, avg 62.30 fps, ETA 00h10m00s)");
-    inOrder.verify(mockLogger).info("10.44 % (61.80 fps, avg 62.30 fps, ETA 00h09m00s)");
-    inOrder.verify(mockLogger).info("20.63 % (61.80 fps, avg 62.30 fps, ETA 00h08m00s)");
-    inOrder.verify(mockLogger).info("30.63 % (61.80 fps, avg 62.30 fps, ETA 00h07m00s)");
-    inOrder.verify(mockLogger).info("40.36 % (61.80 fps, avg 62.30 fps, ETA 00h06m00s)");
-    inOrder.verify(mockLogger).info("50.72 % (61.80 fps, avg 62.30 fps, ETA 00h05m00s)");
-    inOrder.verify(mockLogger).info("60.45 % (61.80 fps, avg 62.30 fps, ETA 00h04m00s)");
-    inOrder.verify(mockLogger).info("70.06 % (61.80 fps, avg 62.30 fps, ETA 00h03m00s)");
-    inOrder.verify(mockLogger).info("80.77 % (61.80 fps, avg 62.30 fps, ETA 00h02m00s)");
-    inOrder.verify(mockLogger).info("90.32 % (61.80 fps, avg 62.30 fps, ETA 00h01m00s)");
-    inOrder.verify(mockLogger).info("100.00 % (61.80 fps, avg 62.30 fps, ETA 00h00m00s)");
-    verify(mockLogger, times(11)).info(anyString());
+    assertThat(events).hasSize(22);
+    assertThat(events.get(0))
+        .isEqualTo(new ProgressEvent(input, 1, 1, 0.63, 61.80, 62.30, Duration.ofMinutes(10)));
+    assertThat(events.get(21))
+        .isEqualTo(new ProgressEvent(input, 1, 1, 100, 61.80, 62.30, Duration.ZERO));
+    assertThat(events.get(21).toString())
+        .isEqualTo("100.00 % (61.80 fps, avg 62.30 fps, ETA 00h00m00s)");
+    assertThat(handBrakeLogger.averageFps().getAsDouble()).isEqualTo(62.30);
+  }
 
-    verifyNoMoreInteractions(mockLogger);
+  @Test
+  void consumesProgressAsBytes_withoutDecoding() {
+    // Given
+    Path input = Path.of("input.mp4");
+    HandBrakeLogger handBrakeLogger = new HandBrakeLogger(mockLogger, input, events::add);
+    byte[] progress =
+        "Encoding: task 1 of 1, 0.63 % (61.80 fps, avg 62.30 fps, ETA 00h10m00s)"
+            .getBytes(US_ASCII);
+    byte[] other = "Encode done!".getBytes(US_ASCII);
+
+    // When
+    boolean progressConsumed = handBrakeLogger.accept(progress, 0, progress.length);
+    boolean otherConsumed = handBrakeLogger.accept(other, 0, other.length);
+
+    // Then
+    assertThat(progressConsumed).isTrue();
+    assertThat(otherConsumed).isFalse();
+    assertThat(events)
+        .containsExactly(
+            new ProgressEvent(input, 1, 1, 0.63, 61.80, 62.30, Duration.ofMinutes(10)));
+  }
+
+  @Test
+  void publishesEachPass() {
+    // Given
+    Path input = Path.of("input.mp4");
+    HandBrakeLogger handBrakeLogger = new HandBrakeLogger(mockLogger, input, events::add);
+
+    // When
+    List.of(
+            "Encoding: task 1 of 2, 50.00 % (61.80 fps, avg 62.30 fps, ETA 00h00m30s)",
+            "Encoding: task 2 of 2, 10.00 % (61.80 fps, avg 62.30 fps, ETA 00h00m15s)")
+        .forEach(handBrakeLogger);
+
+    // Then
+    assertThat(events.stream().map(ProgressEvent::task).toList()).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  void json_publishesProgress_andReadsSourceAndCompletion() {
+    // Given
+    Path input = Path.of("input.mp4");
+    HandBrakeLogger handBrakeLogger = new HandBrakeLogger(mockLogger, input, events::add);
+    List<String> fakeHandBrakeLogs =
+        """
+        Version: {
+            "Name": "HandBrake",
+            "VersionString": "1.7.2"
+        }
+        Progress: {
+            "Scanning": {
+                "Preview": 0,
+                "PreviewCount": 10,
+                "Progress": 0.5,
+                "SequenceID": 0,
+                "Title": 1,
+                "TitleCount": 1
+            },
+            "State": "SCANNING"
+        }
+        [12:00:00] scan: decoding previews for title 1
+        JSON Title Set: {
+            "MainFeature": 0,
+            "TitleList": [
+                {
+                    "AudioList": [
+                        {
+                            "ChannelCount": 2,
+                            "CodecName": "aac",
+                            "Description": "English (AAC LC, 2.0 ch)",
+                            "Language": "English",
+                            "SampleRate": 48000
+                        }
+                    ],
+                    "Duration": {
+                        "Hours": 0,
+                        "Minutes": 0,
+                        "Seconds": 10,
+                        "Ticks": 900000
+                    },
+                    "FrameRate": {
+                        "Den": 1001,
+                        "Num": 30000
+                    },
+                    "Geometry": {
+                        "Height": 360,
+                        "Width": 640
+                    },
+                    "Path": "input.mp4",
+                    "VideoCodec": "h264"
+                }
+            ]
+        }
+        Progress: {
+            "State": "WORKING",
+            "Working": {
+                "ETASeconds": 600,
+                "Pass": 1,
+                "PassCount": 1,
+                "PassID": 0,
+                "Paused": 0,
+                "Progress": 0.25,
+                "Rate": 61.8,
+                "RateAvg": 62.3,
+                "SequenceID": 1
+            }
+        }
+        Progress: {
+            "State": "WORKDONE",
+            "WorkDone": {
+                "Error": 0,
+                "SequenceID": 1
+            }
+        }
+        """
+            .lines()
+            .toList();
+
+    // When
+    fakeHandBrakeLogs.forEach(handBrakeLogger);
+
+    // Then
+    assertThat(events)
+        .containsExactly(new ProgressEvent(input, 1, 1, 25, 61.8, 62.3, Duration.ofMinutes(10)));
+    assertThat(handBrakeLogger.source())
+        .hasValue(
+            new SourceInfo(
+                input,
+                Duration.ofSeconds(10),
+                640,
+                360,
+                30000.0 / 1001,
+                "h264",
+                List.of(new SourceInfo.AudioTrack("English", "aac", 2, 48000))));
+    assertThat(handBrakeLogger.completionError()).isEqualTo(OptionalInt.of(0));
+    assertThat(handBrakeLogger.averageFps().getAsDouble()).isEqualTo(62.3);
+  }
+
+  @Test
+  void json_completionError() {
+    // Given
+    HandBrakeLogger handBrakeLogger =
+        new HandBrakeLogger(mockLogger, Path.of("input.mp4"), events::add);
+
+    // When
+    handBrakeLogger.accept("Progress: {\"State\": \"WORKDONE\", \"WorkDone\": {\"Error\": 2}}");
+
+    // Then
+    assertThat(handBrakeLogger.completionError()).isEqualTo(OptionalInt.of(2));
+    assertThat(handBrakeLogger.source()).isEmpty();
+  }
+
+  @Test
+  void json_consumesProgressAsDecodedLines() {
+    // Given
+    HandBrakeLogger handBrakeLogger =
+        new HandBrakeLogger(mockLogger, Path.of("input.mp4"), events::add);
+    byte[] start = "Progress: {".getBytes(US_ASCII);
+    byte[] body = "\"State\": \"WORKING\"".getBytes(US_ASCII);
+
+    // When
+    boolean startConsumed = handBrakeLogger.accept(start, 0, start.length);
+    handBrakeLogger.accept("Progress: {");
+    boolean bodyConsumed = handBrakeLogger.accept(body, 0, body.length);
+
+    // Then
+    assertThat(startConsumed).isFalse();
+    assertThat(bodyConsumed).isFalse();
   }
 }
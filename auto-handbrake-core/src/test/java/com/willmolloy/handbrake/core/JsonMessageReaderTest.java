@@ -0,0 +1,103 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JsonMessageReaderTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class JsonMessageReaderTest {
+
+  private final List<String> names = new ArrayList<>();
+  private final List<Object> messages = new ArrayList<>();
+
+  private final JsonMessageReader reader =
+      new JsonMessageReader(
+          (name, json) -> {
+            names.add(name);
+            messages.add(json);
+          });
+
+  @Test
+  void readsMessagesSpreadOverLines_amongstTextOutput() {
+    // Given
+    List<String> output =
+        """
+        [12:00:00] hb_init: starting libhb thread
+        Progress: {
+            "State": "WORKING",
+            "Working": {
+                "Progress": 0.5
+            }
+        }
+        [12:00:01] sync: first pts video is 0
+        JSON Title Set: {
+            "TitleList": [
+                {
+                    "Path": "input.mp4"
+                }
+            ]
+        }
+        """
+            .lines()
+            .toList();
+
+    // When
+    List<Boolean> consumed = output.stream().map(reader::accept).toList();
+
+    // Then
+    assertThat(names).containsExactly("Progress", "JSON Title Set").inOrder();
+    assertThat(messages.get(0))
+        .isEqualTo(Map.of("State", "WORKING", "Working", Map.of("Progress", 0.5)));
+    assertThat(messages.get(1))
+        .isEqualTo(Map.of("TitleList", List.of(Map.of("Path", "input.mp4"))));
+    assertThat(consumed.get(0)).isFalse();
+    assertThat(consumed.subList(1, 7)).doesNotContain(false);
+    assertThat(consumed.get(7)).isFalse();
+    assertThat(consumed.subList(8, 15)).doesNotContain(false);
+    assertThat(reader.inMessage()).isFalse();
+  }
+
+  @Test
+  void bracesInStrings_dontEndMessage() {
+    // When
+    reader.accept("Version: {");
+    reader.accept("    \"Name\": \"} { \\\" }\"");
+    boolean inMessage = reader.inMessage();
+    reader.accept("}");
+
+    // Then
+    assertThat(inMessage).isTrue();
+    assertThat(messages).containsExactly(Map.of("Name", "} { \" }"));
+  }
+
+  @Test
+  void singleLineMessage() {
+    // When
+    boolean consumed = reader.accept("Progress: {\"State\": \"WORKDONE\"}");
+
+    // Then
+    assertThat(consumed).isTrue();
+    assertThat(names).containsExactly("Progress");
+    assertThat(messages).containsExactly(Map.of("State", "WORKDONE"));
+    assertThat(reader.inMessage()).isFalse();
+  }
+
+  @Test
+  void malformedMessage_isSkipped_andReadingContinues() {
+    // When
+    reader.accept("Progress: {");
+    reader.accept("    \"State\" \"WORKING\"");
+    reader.accept("}");
+    reader.accept("Progress: {\"State\": \"WORKDONE\"}");
+
+    // Then
+    assertThat(messages).containsExactly(Map.of("State", "WORKDONE"));
+  }
+}
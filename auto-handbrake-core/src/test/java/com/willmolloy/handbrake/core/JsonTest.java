@@ -0,0 +1,83 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * JsonTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class JsonTest {
+
+  @Test
+  void parsesValues() {
+    // Given
+    String json =
+        """
+        {
+            "String": "a \\"quoted\\" \\\\ \\u00e9 \\n string",
+            "Integer": 42,
+            "Decimal": -0.37,
+            "Exponent": 1.5e3,
+            "True": true,
+            "False": false,
+            "Null": null,
+            "Array": [1, "two", [], {}],
+            "Object": {"Nested": {"Key": "value"}}
+        }
+        """;
+
+    // When
+    Object value = Json.parse(json);
+
+    // Then
+    Map<String, Object> expected = new LinkedHashMap<>();
+    expected.put("String", "a \"quoted\" \\ \u00e9 \n string");
+    expected.put("Integer", 42.0);
+    expected.put("Decimal", -0.37);
+    expected.put("Exponent", 1500.0);
+    expected.put("True", true);
+    expected.put("False", false);
+    expected.put("Null", null);
+    expected.put("Array", Arrays.asList(1.0, "two", List.of(), Map.of()));
+    expected.put("Object", Map.of("Nested", Map.of("Key", "value")));
+    assertThat(value).isEqualTo(expected);
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {"", "{", "{\"Key\" 1}", "{\"Key\": 1,}", "[1 2]", "\"unterminated", "tru", "1 2"})
+  void malformed_throwsIllegalArgumentException(String json) {
+    assertThrows(IllegalArgumentException.class, () -> Json.parse(json));
+  }
+
+  @Test
+  void get_followsPathThroughObjectsAndArrays() {
+    // Given
+    Object json =
+        Json.parse(
+            """
+            {"TitleList": [{"Path": "input.mp4", "Duration": {"Ticks": 900000}}]}
+            """);
+
+    // When & Then
+    assertThat(Json.getString(json, "TitleList.0.Path")).hasValue("input.mp4");
+    assertThat(Json.getNumber(json, "TitleList.0.Duration.Ticks").getAsDouble())
+        .isEqualTo(900000);
+    assertThat(Json.getList(json, "TitleList")).hasSize(1);
+    assertThat(Json.get(json, "TitleList.1.Path")).isEmpty();
+    assertThat(Json.get(json, "TitleList.Path")).isEmpty();
+    assertThat(Json.getNumber(json, "TitleList.0.Path").isPresent()).isFalse();
+    assertThat(Json.getList(json, "Missing")).isEmpty();
+  }
+}
@@ -0,0 +1,107 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * LineScannerTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class LineScannerTest {
+
+  @Test
+  void splitsLinesLikeBufferedReader() throws IOException {
+    // Given
+    String output = "line 1\nline 2\rline 3\r\nline 4\n\nline 6";
+
+    // When
+    List<String> lines = scan(output);
+
+    // Then
+    assertThat(lines).containsExactlyElementsIn(output.lines().toList()).inOrder();
+    assertThat(lines).containsExactly("line 1", "line 2", "line 3", "line 4", "", "line 6");
+  }
+
+  @Test
+  void handlesLinesLongerThanBuffer() throws IOException {
+    // Given
+    String longLine = "a".repeat(100_000);
+
+    // When
+    List<String> lines = scan(longLine + "\r\n" + longLine + "\n");
+
+    // Then
+    assertThat(lines).containsExactly(longLine, longLine);
+  }
+
+  @Test
+  void carriageReturnLineFeedSplitAcrossReads() throws IOException {
+    // Given
+    // line terminator straddles the initial buffer size
+    String line = "a".repeat(8191);
+
+    // When
+    List<String> lines = scan(line + "\r\n" + "b");
+
+    // Then
+    assertThat(lines).containsExactly(line, "b").inOrder();
+  }
+
+  @Test
+  void decodesUtf8() throws IOException {
+    // Given
+    String multiByte = "\u3053\u3093\u306b\u3061\u306f";
+
+    // When
+    List<String> lines = scan(multiByte + "\nHandBrake");
+
+    // Then
+    assertThat(lines).containsExactly(multiByte, "HandBrake").inOrder();
+  }
+
+  @Test
+  void byteLineConsumer_onlyDecodesLinesNotConsumedAsBytes() throws IOException {
+    // Given
+    List<String> consumedAsBytes = new ArrayList<>();
+    List<String> decoded = new ArrayList<>();
+    ByteLineConsumer consumer =
+        new ByteLineConsumer() {
+          @Override
+          public boolean accept(byte[] bytes, int from, int to) {
+            if (bytes[from] == 'x') {
+              consumedAsBytes.add(new String(bytes, from, to - from, UTF_8));
+              return true;
+            }
+            return false;
+          }
+
+          @Override
+          public void accept(String line) {
+            decoded.add(line);
+          }
+        };
+
+    // When
+    LineScanner.scan(
+        new ByteArrayInputStream("x1\ry2\rx3\ny4".getBytes(UTF_8)), UTF_8, consumer);
+
+    // Then
+    assertThat(consumedAsBytes).containsExactly("x1", "x3").inOrder();
+    assertThat(decoded).containsExactly("y2", "y4").inOrder();
+  }
+
+  private static List<String> scan(String output) throws IOException {
+    List<String> lines = new ArrayList<>();
+    Consumer<String> consumer = lines::add;
+    LineScanner.scan(new ByteArrayInputStream(output.getBytes(UTF_8)), UTF_8, consumer);
+    return lines;
+  }
+}
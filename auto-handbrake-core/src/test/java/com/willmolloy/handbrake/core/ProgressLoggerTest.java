@@ -0,0 +1,97 @@
+package com.willmolloy.handbrake.core;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * ProgressLoggerTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+@ExtendWith(MockitoExtension.class)
+class ProgressLoggerTest {
+
+  @Mock private Logger mockLogger;
+  @Mock private Flow.Subscription mockSubscription;
+
+  private final Path input = Path.of("input.mp4");
+
+  private ProgressLogger progressLogger;
+
+  @BeforeEach
+  void setUp() {
+    progressLogger = new ProgressLogger(mockLogger);
+    progressLogger.onSubscribe(mockSubscription);
+  }
+
+  @Test
+  void logsProgressEvery10PercentAsInfo() {
+    // Given
+    double[] percents = {
+      0.63, 0.75, 5.15, 10.44, 15.15, 20.63, 25.24, 30.63, 35.23, 40.36, 45.81, 50.72, 55.31, 60.45,
+      65.12, 70.06, 75.80, 80.77, 85.56, 90.32, 95.21, 100.00
+    };
+    double[] loggedPercents = {
+      0.63, 10.44, 20.63, 30.63, 40.36, 50.72, 60.45, 70.06, 80.77, 90.32, 100.00
+    };
+
+    // When
+    for (double percent : percents) {
+      progressLogger.onNext(event(input, 1, percent));
+    }
+
+    // Then
+    InOrder inOrder = inOrder(mockLogger);
+    for (double percent : loggedPercents) {
+      inOrder.verify(mockLogger).info("{}: {}", input, event(input, 1, percent));
+    }
+    verify(mockLogger, times(11)).info(anyString(), any(Object.class), any(Object.class));
+  }
+
+  @Test
+  void requestsOneEventAtATime() {
+    // When
+    progressLogger.onNext(event(input, 1, 0.5));
+    progressLogger.onNext(event(input, 1, 1.5));
+
+    // Then
+    verify(mockSubscription, times(3)).request(1);
+  }
+
+  @Test
+  void tracksProgressOfEachInput() {
+    // Given
+    Path input2 = Path.of("input2.mp4");
+
+    // When
+    progressLogger.onNext(event(input, 1, 0.5));
+    progressLogger.onNext(event(input2, 1, 0.5));
+    progressLogger.onNext(event(input, 1, 1.5));
+    progressLogger.onNext(event(input2, 1, 10.5));
+
+    // Then
+    InOrder inOrder = inOrder(mockLogger);
+    inOrder.verify(mockLogger).info("{}: {}", input, event(input, 1, 0.5));
+    inOrder.verify(mockLogger).info("{}: {}", input2, event(input2, 1, 0.5));
+    inOrder.verify(mockLogger).info("{}: {}", input2, event(input2, 1, 10.5));
+    verify(mockLogger, times(3)).info(anyString(), any(Object.class), any(Object.class));
+  }
+
+  private static ProgressEvent event(Path input, int task, double percent) {
+    return new ProgressEvent(input, task, 1, percent, 61.80, 62.30, Duration.ofMinutes(1));
+  }
+}
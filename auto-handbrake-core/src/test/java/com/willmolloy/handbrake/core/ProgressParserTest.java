@@ -0,0 +1,94 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * ProgressParserTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class ProgressParserTest {
+
+  private final ProgressParser progressParser = new ProgressParser();
+
+  @Test
+  void parsesProgress() {
+    // Given
+    byte[] line =
+        "Encoding: task 2 of 3, 1.63 % (60.56 fps, avg 83.01 fps, ETA 01h22m29s)"
+            .getBytes(US_ASCII);
+
+    // When
+    boolean result = progressParser.parse(line, 0, line.length);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThat(progressParser.task()).isEqualTo(2);
+    assertThat(progressParser.taskCount()).isEqualTo(3);
+    assertThat(progressParser.percent()).isEqualTo(1.63);
+    assertThat(progressParser.fps()).isEqualTo(60.56);
+    assertThat(progressParser.averageFps()).isEqualTo(83.01);
+    assertThat(progressParser.etaSeconds()).isEqualTo(3600 + 22 * 60 + 29);
+  }
+
+  @Test
+  void parsesDecodedProgress() {
+    // Given
+    String line = "Encoding: task 2 of 3, 1.63 % (60.56 fps, avg 83.01 fps, ETA 01h22m29s)";
+
+    // When
+    boolean result = progressParser.parse(line);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThat(progressParser.task()).isEqualTo(2);
+    assertThat(progressParser.taskCount()).isEqualTo(3);
+    assertThat(progressParser.percent()).isEqualTo(1.63);
+    assertThat(progressParser.fps()).isEqualTo(60.56);
+    assertThat(progressParser.averageFps()).isEqualTo(83.01);
+    assertThat(progressParser.etaSeconds()).isEqualTo(3600 + 22 * 60 + 29);
+  }
+
+  @Test
+  void parsesProgressWithinBuffer() {
+    // Given
+    byte[] buffer =
+        "xxEncoding: task 1 of 1, 100.00 % (61.80 fps, avg 62.30 fps, ETA 00h00m00s)yy"
+            .getBytes(US_ASCII);
+
+    // When
+    boolean result = progressParser.parse(buffer, 2, buffer.length - 2);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThat(progressParser.percent()).isEqualTo(100.0);
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "",
+        "Encode done!",
+        "Encoding: task 1 of 1, 1.63 %",
+        "Encoding: task 1 of 1, 1.63 % (60.56 fps, avg 83.01 fps, ETA 00h22m29s",
+        "Encoding: task 1 of 1, 1.63 % (60.56 fps, avg 83.01 fps, ETA 00h22m29s) ",
+        "Encoding: task one of 1, 1.63 % (60.56 fps, avg 83.01 fps, ETA 00h22m29s)",
+        "Encoding: task 1 of 1, 1 % (60.56 fps, avg 83.01 fps, ETA 00h22m29s)",
+        "Encoding: task 1 of 1, 1.63 % (60.56 fps, avg 83.01 fps, ETA 99999999999h22m29s)"
+      })
+  void rejectsNonProgress(String line) {
+    // Given
+    byte[] bytes = line.getBytes(US_ASCII);
+
+    // When
+    boolean result = progressParser.parse(bytes, 0, bytes.length);
+
+    // Then
+    assertThat(result).isFalse();
+  }
+}
@@ -0,0 +1,288 @@
+package com.willmolloy.handbrake.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.base.Ticker;
+import com.willmolloy.handbrake.core.options.Encoder;
+import com.willmolloy.handbrake.core.options.EncoderTuning;
+import com.willmolloy.handbrake.core.options.Option;
+import com.willmolloy.handbrake.core.options.Preset;
+import com.willmolloy.handbrake.core.options.Range;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * WatchdogTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class WatchdogTest {
+
+  private static final Option[] FULL_QUALITY = {Preset.productionStandard(), Encoder.h264()};
+  private static final Option[] PROXY = {
+    Preset.productionProxy540p(), Encoder.h264(), EncoderTuning.speed(EncoderTuning.Speed.ULTRAFAST)
+  };
+
+  private final Path input = Path.of("input.mp4");
+  private final FakeTicker ticker = new FakeTicker();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final List<ProgressEvent> events = new ArrayList<>();
+
+  private WatchdogLimits limits = new WatchdogLimits(Duration.ofMinutes(10), 3);
+  private final Watchdog watchdog = new Watchdog(() -> limits, ticker, scheduler);
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  void noProgress_forStallTimeout_stopsExecution() {
+    // Given
+    Watchdog.Watch watch = watchdog.watch(events::add);
+    CompletableFuture<Integer> execution = new CompletableFuture<>();
+    ticker.advance(Duration.ofMinutes(10));
+    watch.check(execution);
+    assertThat(execution.isDone()).isFalse();
+
+    // When
+    ticker.advance(Duration.ofSeconds(1));
+    watch.check(execution);
+
+    // Then
+    ExecutionException e = assertThrows(ExecutionException.class, execution::get);
+    assertThat(e).hasCauseThat().isInstanceOf(TimeoutException.class);
+    assertThat(e).hasCauseThat().hasMessageThat().isEqualTo("HandBrake no progress for PT10M");
+  }
+
+  @Test
+  void progress_resetsStallTimeout_andIsPassedOn() {
+    // Given
+    Watchdog.Watch watch = watchdog.watch(events::add);
+    CompletableFuture<Integer> execution = new CompletableFuture<>();
+    ProgressEvent event = progress(50);
+
+    // When
+    ticker.advance(Duration.ofMinutes(9));
+    watch.onProgress(event);
+    ticker.advance(Duration.ofMinutes(9));
+    watch.check(execution);
+
+    // Then
+    assertThat(execution.isDone()).isFalse();
+    assertThat(events).containsExactly(event);
+  }
+
+  @Test
+  void stallTimeoutZero_disablesIt() {
+    // Given
+    limits = new WatchdogLimits(Duration.ZERO, 3);
+    Watchdog.Watch watch = watchdog.watch(events::add);
+    CompletableFuture<Integer> execution = new CompletableFuture<>();
+
+    // When
+    ticker.advance(Duration.ofDays(1));
+    watch.check(execution);
+
+    // Then
+    assertThat(execution.isDone()).isFalse();
+  }
+
+  @Test
+  void exceedingMaxDuration_stopsExecution() {
+    // Given
+    recordEncode(30);
+    Watchdog.Watch watch = watchdog.watch(events::add);
+    CompletableFuture<Integer> execution = new CompletableFuture<>();
+    // 10 seconds at 30 fps, encoded at 30 fps, takes 10 seconds, so stopped after 30 seconds
+    watch.onSource(source(Duration.ofSeconds(10), 30));
+    watch.onProgress(progress(0));
+    ticker.advance(Duration.ofSeconds(30));
+    watch.onProgress(progress(50));
+    watch.check(execution);
+    assertThat(execution.isDone()).isFalse();
+
+    // When
+    ticker.advance(Duration.ofSeconds(1));
+    watch.onProgress(progress(51));
+    watch.check(execution);
+
+    // Then
+    ExecutionException e = assertThrows(ExecutionException.class, execution::get);
+    assertThat(e)
+        .hasCauseThat()
+        .hasMessageThat()
+        .isEqualTo("HandBrake exceeded maximum duration (PT30S)");
+  }
+
+  @Test
+  void maxDuration_withoutHistory_isEmpty() {
+    assertThat(watchdog.maxDuration(source(Duration.ofSeconds(10), 30), 1, "")).isEmpty();
+  }
+
+  @Test
+  void maxDuration_usesSlowestRecentEncode_andPasses() {
+    // Given
+    recordEncode(60);
+    recordEncode(30);
+    recordEncode(90);
+
+    // When
+    Optional<Duration> maxDuration =
+        watchdog.maxDuration(source(Duration.ofSeconds(10), 30), 2, "");
+
+    // Then
+    assertThat(maxDuration).hasValue(Duration.ofMinutes(1));
+  }
+
+  @Test
+  void fastEncodesOfAnotherClass_followedBySlowOne_doesntStopIt() {
+    // Given
+    recordEncode(30, FULL_QUALITY);
+    // enough proxies to fill the history
+    for (int i = 0; i < 10; i++) {
+      recordEncode(600, PROXY);
+    }
+    Watchdog.Watch watch = watchdog.watch(events::add, FULL_QUALITY);
+    CompletableFuture<Integer> execution = new CompletableFuture<>();
+    watch.onSource(source(Duration.ofSeconds(10), 30));
+    watch.onProgress(progress(0));
+
+    // When
+    ticker.advance(Duration.ofSeconds(20));
+    watch.onProgress(progress(66));
+    watch.check(execution);
+
+    // Then
+    assertThat(execution.isDone()).isFalse();
+    assertThat(watchdog.maxDuration(source(Duration.ofSeconds(10), 30), 1, encodeClass(PROXY)))
+        .hasValue(Duration.ofMillis(1500));
+  }
+
+  @Test
+  void maxDuration_ignoresPartialEncodes() {
+    // Given
+    recordEncode(30, FULL_QUALITY);
+    Option[] sample = {
+      Preset.productionStandard(), Encoder.h264(), Range.of(Duration.ZERO, Duration.ofSeconds(5))
+    };
+    for (int i = 0; i < 10; i++) {
+      recordEncode(300, sample);
+    }
+
+    // When
+    Optional<Duration> maxDuration =
+        watchdog.maxDuration(source(Duration.ofSeconds(10), 30), 1, encodeClass(FULL_QUALITY));
+
+    // Then
+    assertThat(maxDuration).hasValue(Duration.ofSeconds(30));
+  }
+
+  @Test
+  void maxDuration_isRelativeToResolution() {
+    // Given
+    // 540p at 120 fps, i.e. the same pixel rate as 1080p at 30 fps
+    Watchdog.Watch watch = watchdog.watch(events::add);
+    watch.onSource(source(Duration.ofSeconds(10), 30, 960, 540));
+    watch.onProgress(new ProgressEvent(input, 1, 1, 100, 120, 120, Duration.ZERO));
+    watch.start(CompletableFuture.completedFuture(0));
+
+    // When
+    Optional<Duration> maxDuration =
+        watchdog.maxDuration(source(Duration.ofSeconds(10), 30), 1, "");
+
+    // Then
+    assertThat(maxDuration).hasValue(Duration.ofSeconds(30));
+  }
+
+  @Test
+  void encodeClass_isTheArgsDeterminingSpeed() {
+    assertThat(
+            Watchdog.encodeClass(
+                List.of(
+                    "--preset",
+                    "Production Standard",
+                    "--encoder",
+                    "x264",
+                    "--cfr",
+                    "--encoder-preset",
+                    "fast",
+                    "--start-at",
+                    "seconds:0")))
+        .isEqualTo("--preset Production Standard --encoder x264 --encoder-preset fast");
+  }
+
+  @Test
+  void maxDuration_ignoresUnsuccessfulEncodes() {
+    // Given
+    Watchdog.Watch watch = watchdog.watch(events::add);
+    watch.onSource(source(Duration.ofSeconds(10), 30));
+    watch.onProgress(new ProgressEvent(input, 1, 1, 50, 1, 1, Duration.ZERO));
+
+    // When
+    watch.start(CompletableFuture.completedFuture(1));
+
+    // Then
+    assertThat(watchdog.maxDuration(source(Duration.ofSeconds(10), 30), 1, "")).isEmpty();
+  }
+
+  @Test
+  void durationFactorZero_disablesIt() {
+    // Given
+    limits = new WatchdogLimits(Duration.ofMinutes(10), 0);
+    recordEncode(30);
+
+    // When & Then
+    assertThat(watchdog.maxDuration(source(Duration.ofSeconds(10), 30), 1, "")).isEmpty();
+  }
+
+  private void recordEncode(double averageFps, Option... options) {
+    Watchdog.Watch watch = watchdog.watch(events::add, options);
+    watch.onSource(source(Duration.ofSeconds(10), 30));
+    watch.onProgress(new ProgressEvent(input, 1, 1, 100, averageFps, averageFps, Duration.ZERO));
+    watch.start(CompletableFuture.completedFuture(0));
+  }
+
+  private ProgressEvent progress(double percent) {
+    return new ProgressEvent(input, 1, 1, percent, 30, 30, Duration.ZERO);
+  }
+
+  private SourceInfo source(Duration duration, double frameRate) {
+    return source(duration, frameRate, 1920, 1080);
+  }
+
+  private SourceInfo source(Duration duration, double frameRate, int width, int height) {
+    return new SourceInfo(input, duration, width, height, frameRate, "h264", List.of());
+  }
+
+  private static String encodeClass(Option... options) {
+    return Watchdog.encodeClass(
+        Arrays.stream(options).flatMap(Option::handBrakeCliArgs).toList());
+  }
+
+  private static final class FakeTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(Duration duration) {
+      nanos += duration.toNanos();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * AudioTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class AudioTest {
+
+  @Test
+  void tracksExpectedHandBrakeCliArgs() {
+    assertThat(Audio.tracks(1, 3).handBrakeCliArgs()).containsExactly("--audio", "1,3").inOrder();
+  }
+
+  @Test
+  void passthroughExpectedHandBrakeCliArgs() {
+    assertThat(Audio.passthrough(1, 2).handBrakeCliArgs())
+        .containsExactly(
+            "--audio",
+            "1,2",
+            "--aencoder",
+            "copy,copy",
+            "--audio-copy-mask",
+            "aac,ac3,eac3,truehd,dts,dtshd,mp2,mp3,flac,opus",
+            "--audio-fallback",
+            "av_aac")
+        .inOrder();
+  }
+
+  @ParameterizedTest
+  @MethodSource
+  void mixdownExpectedHandBrakeCliArgs(Audio.Mixdown mixdown, String expectedMixdown) {
+    assertThat(Audio.mixdown(mixdown, 2).handBrakeCliArgs())
+        .containsExactly("--audio", "2", "--mixdown", expectedMixdown)
+        .inOrder();
+  }
+
+  static Stream<Arguments> mixdownExpectedHandBrakeCliArgs() {
+    return Stream.of(
+        Arguments.of(Audio.Mixdown.MONO, "mono"),
+        Arguments.of(Audio.Mixdown.STEREO, "stereo"),
+        Arguments.of(Audio.Mixdown.DPL2, "dpl2"),
+        Arguments.of(Audio.Mixdown.FIVE_POINT_ONE, "5point1"),
+        Arguments.of(Audio.Mixdown.SEVEN_POINT_ONE, "7point1"));
+  }
+
+  @Test
+  void mixdownOfEachTrack() {
+    assertThat(Audio.mixdown(Audio.Mixdown.STEREO, 1, 2).handBrakeCliArgs())
+        .containsExactly("--audio", "1,2", "--mixdown", "stereo,stereo")
+        .inOrder();
+  }
+
+  @Test
+  void noTracksThrowsException() {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, Audio::tracks);
+    assertThat(e).hasMessageThat().isEqualTo("tracks must not be empty");
+  }
+
+  @Test
+  void nonPositiveTrackThrowsException() {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> Audio.passthrough(1, 0));
+    assertThat(e).hasMessageThat().isEqualTo("track (0) must be positive");
+  }
+
+  @Test
+  void duplicateTrackThrowsException() {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> Audio.tracks(1, 2, 1));
+    assertThat(e).hasMessageThat().isEqualTo("Duplicate track: 1");
+  }
+}
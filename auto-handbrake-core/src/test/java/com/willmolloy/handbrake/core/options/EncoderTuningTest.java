@@ -0,0 +1,134 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * EncoderTuningTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class EncoderTuningTest {
+
+  @ParameterizedTest
+  @MethodSource
+  void testFactoriesExpectedHandBrakeCliArgs(
+      EncoderTuning encoderTuning, String expectedKey, String expectedValue) {
+    assertThat(encoderTuning.handBrakeCliArgs())
+        .containsExactly(expectedKey, expectedValue)
+        .inOrder();
+  }
+
+  static Stream<Arguments> testFactoriesExpectedHandBrakeCliArgs() {
+    return Stream.of(
+        Arguments.of(
+            EncoderTuning.speed(EncoderTuning.Speed.VERYFAST), "--encoder-preset", "veryfast"),
+        Arguments.of(
+            EncoderTuning.tune(EncoderTuning.Tune.FASTDECODE), "--encoder-tune", "fastdecode"),
+        Arguments.of(EncoderTuning.level("4.1"), "--encoder-level", "4.1"),
+        Arguments.of(EncoderTuning.level("auto"), "--encoder-level", "auto"),
+        Arguments.of(
+            EncoderTuning.settings(
+                EncoderTuning.Setting.threads(8),
+                EncoderTuning.Setting.lookaheadThreads(2),
+                new EncoderTuning.Setting("keyint", "60")),
+            "--encopts",
+            "threads=8:lookahead-threads=2:keyint=60"),
+        Arguments.of(
+            EncoderTuning.settings(
+                EncoderTuning.Setting.keyframeInterval(30),
+                EncoderTuning.Setting.bframePyramid(true)),
+            "--encopts",
+            "keyint=30:b-pyramid=normal"));
+  }
+
+  @Test
+  void editing_fastDecodeTune_shortKeyframeInterval_noBframePyramid() {
+    assertThat(EncoderTuning.editing().handBrakeCliArgs())
+        .containsExactly("--encoder-tune", "fastdecode", "--encopts", "keyint=30:b-pyramid=none")
+        .inOrder();
+  }
+
+  @Test
+  void editing_withOtherSettings_givesThemTogether() {
+    assertThat(EncoderTuning.editing(EncoderTuning.Setting.threads(4)).handBrakeCliArgs())
+        .containsExactly(
+            "--encoder-tune", "fastdecode", "--encopts", "keyint=30:b-pyramid=none:threads=4")
+        .inOrder();
+  }
+
+  @Test
+  void editing_withEditingSetting_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> EncoderTuning.editing(EncoderTuning.Setting.keyframeInterval(60)));
+    assertThat(e).hasMessageThat().isEqualTo("Duplicate setting: keyint");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "4", "4.3", "7.0", "high"})
+  void level_invalid_throwsException(String level) {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> EncoderTuning.level(level));
+    assertThat(e).hasMessageThat().isEqualTo("Invalid level: " + level);
+  }
+
+  @Test
+  void settings_duplicateKey_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                EncoderTuning.settings(
+                    EncoderTuning.Setting.threads(8), EncoderTuning.Setting.threads(4)));
+    assertThat(e).hasMessageThat().isEqualTo("Duplicate setting: threads");
+  }
+
+  @Test
+  void settings_empty_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, EncoderTuning::settings);
+    assertThat(e).hasMessageThat().isEqualTo("settings must not be empty");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"1:ref=16", "1=2", "", "1 2"})
+  void setting_invalidValue_throwsException(String value) {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class, () -> new EncoderTuning.Setting("bframes", value));
+    assertThat(e).hasMessageThat().isEqualTo("Invalid value (bframes): " + value);
+  }
+
+  @Test
+  void setting_invalidKey_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class, () -> new EncoderTuning.Setting("b:frames", "3"));
+    assertThat(e).hasMessageThat().isEqualTo("Invalid key: b:frames");
+  }
+
+  @Test
+  void keyframeInterval_notPositive_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class, () -> EncoderTuning.Setting.keyframeInterval(0));
+    assertThat(e).hasMessageThat().isEqualTo("frames (0) must be positive");
+  }
+
+  @Test
+  void threads_negative_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> EncoderTuning.Setting.threads(-1));
+    assertThat(e).hasMessageThat().isEqualTo("threads (-1) must not be negative");
+  }
+}
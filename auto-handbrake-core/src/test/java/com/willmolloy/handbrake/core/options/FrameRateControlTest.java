@@ -1,11 +1,14 @@
 package com.willmolloy.handbrake.core.options;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.stream.Stream;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 /**
  * FrameRateControlTest.
@@ -27,4 +30,27 @@ class FrameRateControlTest {
         Arguments.of(FrameRateControl.variable(), "--vfr"),
         Arguments.of(FrameRateControl.peak(), "--pfr"));
   }
+
+  @ParameterizedTest
+  @MethodSource
+  void constantRateExpectedHandBrakeCliArgs(double rate, String expectedRate) {
+    assertThat(FrameRateControl.constant(rate).handBrakeCliArgs())
+        .containsExactly("--rate", expectedRate, "--cfr")
+        .inOrder();
+  }
+
+  static Stream<Arguments> constantRateExpectedHandBrakeCliArgs() {
+    return Stream.of(
+        Arguments.of(60, "60"), Arguments.of(29.97, "29.97"), Arguments.of(1000, "1000"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(doubles = {0, 0.5, 1001, Double.NaN})
+  void constantRate_outOfRange_throwsException(double rate) {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> FrameRateControl.constant(rate));
+    assertThat(e)
+        .hasMessageThat()
+        .isEqualTo("rate (%s) must be between 1 and 1000".formatted(rate));
+  }
 }
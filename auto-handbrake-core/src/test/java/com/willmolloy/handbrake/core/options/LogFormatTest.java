@@ -0,0 +1,26 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.truth.Truth8.assertThat;
+
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * LogFormatTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class LogFormatTest {
+
+  @ParameterizedTest
+  @MethodSource
+  void testFactoriesExpectedHandBrakeCliArgs(LogFormat logFormat, String expectedKey) {
+    assertThat(logFormat.handBrakeCliArgs()).containsExactly(expectedKey).inOrder();
+  }
+
+  static Stream<Arguments> testFactoriesExpectedHandBrakeCliArgs() {
+    return Stream.of(Arguments.of(LogFormat.json(), "--json"));
+  }
+}
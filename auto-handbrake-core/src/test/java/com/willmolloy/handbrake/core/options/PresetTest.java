@@ -2,7 +2,9 @@ package com.willmolloy.handbrake.core.options;
 
 import static com.google.common.truth.Truth8.assertThat;
 
+import java.nio.file.Path;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -24,6 +26,16 @@ class PresetTest {
   static Stream<Arguments> testFactoriesExpectedHandBrakeCliArgs() {
     return Stream.of(
         Arguments.of(Preset.productionMax(), "--preset", "Production Max"),
-        Arguments.of(Preset.productionStandard(), "--preset", "Production Standard"));
+        Arguments.of(Preset.productionStandard(), "--preset", "Production Standard"),
+        Arguments.of(Preset.productionProxy540p(), "--preset", "Production Proxy 540p"));
+  }
+
+  @Test
+  void importFileExpectedHandBrakeCliArgs() {
+    Preset preset = Preset.importFile(Path.of("presets.json"), "Custom");
+
+    assertThat(preset.handBrakeCliArgs())
+        .containsExactly("--preset-import-file", "presets.json", "--preset", "Custom")
+        .inOrder();
   }
 }
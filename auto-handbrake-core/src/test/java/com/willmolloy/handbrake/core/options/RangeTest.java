@@ -0,0 +1,43 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * RangeTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class RangeTest {
+
+  @Test
+  void testFactoryExpectedHandBrakeCliArgs() {
+    Range range = Range.of(Duration.ofSeconds(30), Duration.ofMillis(5500));
+
+    assertThat(range.handBrakeCliArgs())
+        .containsExactly("--start-at", "seconds:30", "--stop-at", "seconds:5")
+        .inOrder();
+  }
+
+  @Test
+  void negativeStartThrowsException() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> Range.of(Duration.ofSeconds(-1), Duration.ofSeconds(5)));
+    assertThat(e).hasMessageThat().isEqualTo("start (PT-1S) must not be negative");
+  }
+
+  @Test
+  void durationUnderOneSecondThrowsException() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> Range.of(Duration.ZERO, Duration.ofMillis(999)));
+    assertThat(e).hasMessageThat().isEqualTo("duration (PT0.999S) must be at least 1 second");
+  }
+}
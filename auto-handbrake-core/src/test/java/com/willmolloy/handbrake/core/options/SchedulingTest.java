@@ -0,0 +1,64 @@
+package com.willmolloy.handbrake.core.options;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * SchedulingTest.
+ *
+ * @author <a href=https://willmolloy.com>Will Molloy</a>
+ */
+class SchedulingTest {
+
+  @ParameterizedTest
+  @MethodSource
+  void testFactoriesExpectedLauncherArgs(Scheduling scheduling, List<String> expectedArgs) {
+    assertThat(scheduling.launcherArgs()).containsExactlyElementsIn(expectedArgs).inOrder();
+    assertThat(scheduling.handBrakeCliArgs()).isEmpty();
+  }
+
+  static Stream<Arguments> testFactoriesExpectedLauncherArgs() {
+    return Stream.of(
+        Arguments.of(Scheduling.nice(10), List.of("nice", "-n", "10")),
+        Arguments.of(Scheduling.nice(-5), List.of("nice", "-n", "-5")),
+        Arguments.of(Scheduling.ioClass(Scheduling.IoClass.REALTIME), List.of("ionice", "-c", "1")),
+        Arguments.of(
+            Scheduling.ioClass(Scheduling.IoClass.BEST_EFFORT), List.of("ionice", "-c", "2")),
+        Arguments.of(Scheduling.ioClass(Scheduling.IoClass.IDLE), List.of("ionice", "-c", "3")),
+        Arguments.of(Scheduling.cpus(List.of(3, 1, 2, 1)), List.of("taskset", "-c", "1,2,3")));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {-21, 20})
+  void nice_outOfRange_throwsException(int adjustment) {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> Scheduling.nice(adjustment));
+    assertThat(e)
+        .hasMessageThat()
+        .isEqualTo("adjustment (%s) must be between -20 and 19".formatted(adjustment));
+  }
+
+  @Test
+  void cpus_empty_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> Scheduling.cpus(Set.of()));
+    assertThat(e).hasMessageThat().isEqualTo("cpus must not be empty");
+  }
+
+  @Test
+  void cpus_negative_throwsException() {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> Scheduling.cpus(Set.of(0, -1)));
+    assertThat(e).hasMessageThat().isEqualTo("cpu (-1) must not be negative");
+  }
+}